@@ -4,6 +4,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import com.leafshop.config.AppProperties;
 
@@ -13,6 +14,7 @@ import java.util.Set;
 
 @SpringBootApplication
 @EnableCaching
+@EnableScheduling
 @EnableConfigurationProperties({AppProperties.class})
 public class Server {
 
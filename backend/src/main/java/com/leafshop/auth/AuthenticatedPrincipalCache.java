@@ -0,0 +1,140 @@
+package com.leafshop.auth;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheInvalidationBus;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Cache principal đã xác thực theo token ID (jti), TTL ngắn (app.jwt.principal-cache-ttl-ms).
+ *
+ * - Lần đầu gặp một token trên node: đọc tài khoản (username-index) để chắc tài khoản còn active
+ *   và role trong token vẫn đúng; các request sau cùng token không đọc DynamoDB.
+ * - Tài khoản bị khoá hoặc đổi role: {@link #invalidateUser(String)} xoá entry trên node này và
+ *   phát qua {@link CacheInvalidationBus} cho các node khác.
+ * Token cũ không có jti dùng chính chuỗi token làm khoá.
+ */
+@Slf4j
+@Component
+public class AuthenticatedPrincipalCache {
+
+    static final String CACHE_NAME = "principals";
+
+    private final UserDetailsService userDetailsService;
+    private final CacheInvalidationBus invalidationBus;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final Map<String, CachedPrincipal> principals = new ConcurrentHashMap<>();
+
+    public AuthenticatedPrincipalCache(UserDetailsService userDetailsService,
+                                       CacheInvalidationBus invalidationBus,
+                                       @Value("${app.jwt.principal-cache-ttl-ms:60000}") long ttlMs,
+                                       @Value("${app.jwt.principal-cache-max-entries:10000}") int maxEntries) {
+        this.userDetailsService = userDetailsService;
+        this.invalidationBus = invalidationBus;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Principal của token đã được kiểm tra chữ ký; null nếu tài khoản không còn hợp lệ.
+     */
+    public UserDetails resolve(String token, Claims claims) {
+        String cacheKey = claims.getId() != null ? claims.getId() : token;
+        long now = System.currentTimeMillis();
+        CachedPrincipal cached = principals.get(cacheKey);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.userDetails;
+        }
+
+        UserDetails userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+        if (!userDetails.isEnabled()) {
+            log.debug("Rejecting token of disabled account {}", claims.getSubject());
+            return null;
+        }
+        if (!rolesMatch(claims, userDetails.getAuthorities())) {
+            // Role đã đổi sau khi phát hành token: client phải refresh để nhận token mới
+            log.debug("Rejecting token of {}: role changed since issue", claims.getSubject());
+            return null;
+        }
+
+        if (principals.size() >= maxEntries) {
+            principals.values().removeIf(entry -> entry.expiresAt <= now);
+            if (principals.size() >= maxEntries) {
+                principals.clear();
+            }
+        }
+        // Không giữ principal lâu hơn chính token
+        long expiresAt = now + ttlMs;
+        if (claims.getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, claims.getExpiration().getTime());
+        }
+        principals.put(cacheKey, new CachedPrincipal(userDetails, expiresAt));
+        return userDetails;
+    }
+
+    /**
+     * Gọi khi tài khoản bị khoá hoặc đổi role.
+     */
+    public void invalidateUser(String username) {
+        if (username == null) {
+            return;
+        }
+        evictLocal(username);
+        invalidationBus.publish(CACHE_NAME, username);
+    }
+
+    @EventListener
+    public void onRemoteInvalidation(CacheInvalidatedEvent event) {
+        if (!CACHE_NAME.equals(event.getCacheName())) {
+            return;
+        }
+        if (event.getKey() != null) {
+            evictLocal(event.getKey());
+        } else {
+            principals.clear();
+        }
+    }
+
+    private void evictLocal(String username) {
+        principals.values().removeIf(entry -> username.equals(entry.userDetails.getUsername()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean rolesMatch(Claims claims, Collection<? extends GrantedAuthority> authorities) {
+        Object roles = claims.get(JwtUtil.CLAIM_ROLES);
+        if (!(roles instanceof List)) {
+            return true; // token phát hành trước khi có claim roles
+        }
+        Set<String> expected = ((List<Object>) roles).stream()
+                .map(role -> "ROLE_" + role.toString().toUpperCase())
+                .collect(Collectors.toSet());
+        Set<String> actual = new HashSet<>();
+        authorities.forEach(authority -> actual.add(authority.getAuthority()));
+        return expected.equals(actual);
+    }
+
+    private static final class CachedPrincipal {
+        private final UserDetails userDetails;
+        private final long expiresAt;
+
+        private CachedPrincipal(UserDetails userDetails, long expiresAt) {
+            this.userDetails = userDetails;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
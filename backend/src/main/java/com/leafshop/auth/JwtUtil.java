@@ -1,6 +1,7 @@
 package com.leafshop.auth;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -10,10 +11,16 @@ import org.springframework.stereotype.Component;
 
 import java.security.Key;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
 
+    // Role của tài khoản lúc phát hành token (dạng "ADMIN", "CUSTOMER"...)
+    public static final String CLAIM_ROLES = "roles";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
@@ -21,36 +28,54 @@ public class JwtUtil {
     private Long jwtExpirationMs;
 
     private Key key;
+    private JwtParser parser;
 
     @PostConstruct
     public void init() {
         // Use secret bytes to create a signing key
         this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        // Parser là thread-safe, dựng một lần thay vì mỗi request
+        this.parser = Jwts.parser().setSigningKey(key).build();
     }
 
     public String generateToken(String username) {
+        return generateToken(username, null);
+    }
+
+    /**
+     * Token có jti (khoá của cache principal) và role hiện tại của tài khoản.
+     */
+    public String generateToken(String username, String role) {
         Date now = new Date();
         Date expiry = new Date(now.getTime() + jwtExpirationMs);
 
-        return Jwts.builder()
+        var builder = Jwts.builder()
+            .setId(UUID.randomUUID().toString())
             .setSubject(username)
             .setIssuedAt(now)
-            .setExpiration(expiry)
-            .signWith(key, SignatureAlgorithm.HS256)
-            .compact();
+            .setExpiration(expiry);
+        if (role != null && !role.isEmpty()) {
+            builder.claim(CLAIM_ROLES, List.of(role.toUpperCase()));
+        }
+        return builder.signWith(key, SignatureAlgorithm.HS256).compact();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Kiểm tra chữ ký/hạn và trả claims trong một lần parse; rỗng nếu token không hợp lệ.
+     */
+    public Optional<Claims> verify(String token) {
         try {
-            Jwts.parser().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
+            return Optional.of(parser.parseClaimsJws(token).getBody());
         } catch (Exception ex) {
-            return false;
+            return Optional.empty();
         }
     }
 
+    public boolean validateToken(String token) {
+        return verify(token).isPresent();
+    }
+
     public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parser().setSigningKey(key).build().parseClaimsJws(token).getBody();
-        return claims.getSubject();
+        return parser.parseClaimsJws(token).getBody().getSubject();
     }
 }
@@ -0,0 +1,172 @@
+package com.leafshop.auth;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheInvalidationBus;
+import com.leafshop.model.dynamodb.RevokedToken;
+import com.leafshop.repository.RevokedTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter các token đã thu hồi (refresh token value hoặc jti của access token), đặt trước
+ * {@link RevokedTokenRepository}.
+ *
+ * - "Chắc chắn chưa thu hồi" trả lời trong bộ nhớ, không đọc DynamoDB; chỉ khi filter báo có thể
+ *   đã thu hồi mới GetItem để xác nhận.
+ * - Dựng lại từ bảng theo app.jwt.revocation.sync-interval-ms, bỏ các token đã hết hạn (compaction)
+ *   và nhận thu hồi của node khác; giữa hai lần đồng bộ, thu hồi được phát qua {@link CacheInvalidationBus}.
+ * - Chưa nạp xong lần đầu thì kiểm tra thẳng bảng.
+ */
+@Slf4j
+@Component
+public class RevokedTokenFilter {
+
+    static final String CHANNEL_NAME = "revokedTokens";
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final CacheInvalidationBus invalidationBus;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+    // Thu hồi từ lần dựng lại gần nhất: được chép vào filter mới để không mất trong lúc scan
+    private final Map<String, Long> recent = new ConcurrentHashMap<>();
+    private volatile Bloom bloom;
+
+    public RevokedTokenFilter(RevokedTokenRepository revokedTokenRepository,
+                              CacheInvalidationBus invalidationBus,
+                              @Value("${app.jwt.revocation.expected-entries:100000}") int expectedEntries,
+                              @Value("${app.jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.invalidationBus = invalidationBus;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        // Thu hồi gần đây (của node này hoặc nhận qua bus) đã chắc chắn, không cần hỏi filter hay bảng
+        if (recent.containsKey(tokenId)) {
+            return true;
+        }
+        Bloom current = bloom;
+        if (current != null && !current.mightContain(tokenId)) {
+            return false;
+        }
+        return revokedTokenRepository.findByTokenValue(tokenId)
+                .filter(token -> token.getExpiresAt() == null || token.getExpiresAt() > System.currentTimeMillis())
+                .isPresent();
+    }
+
+    public void revoke(String tokenId, Long expiresAt) {
+        if (tokenId == null) {
+            return;
+        }
+        revokedTokenRepository.save(tokenId, expiresAt);
+        addLocal(tokenId);
+        invalidationBus.publish(CHANNEL_NAME, tokenId);
+    }
+
+    @EventListener
+    public void onRemoteRevocation(CacheInvalidatedEvent event) {
+        if (CHANNEL_NAME.equals(event.getCacheName()) && event.getKey() != null) {
+            addLocal(event.getKey());
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.jwt.revocation.sync-interval-ms:300000}")
+    public void rebuild() {
+        long started = System.currentTimeMillis();
+        try {
+            List<RevokedToken> active = revokedTokenRepository.findAllUnexpired(started);
+            Bloom next = new Bloom(Math.max(expectedEntries, active.size() * 2), falsePositiveRate);
+            active.forEach(token -> next.add(token.getPk().substring(RevokedTokenRepository.PK_PREFIX.length())));
+            recent.keySet().forEach(next::add);
+            bloom = next;
+            // Thu hồi đến giữa lần chép ở trên và lúc đổi filter chỉ được ghi vào filter cũ: chép lại
+            recent.keySet().forEach(next::add);
+            recent.values().removeIf(addedAt -> addedAt < started);
+            log.debug("Rebuilt revoked token filter with {} tokens in {} ms", active.size(),
+                    System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            log.warn("Failed to rebuild revoked token filter, keeping previous one: {}", e.getMessage());
+        }
+    }
+
+    private void addLocal(String tokenId) {
+        recent.put(tokenId, System.currentTimeMillis());
+        Bloom current = bloom;
+        if (current != null) {
+            current.add(tokenId);
+        }
+    }
+
+    /**
+     * Bloom filter cố định kích thước, k vị trí lấy bằng double hashing từ FNV-1a 64 bit.
+     */
+    private static final class Bloom {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        private Bloom(int expectedEntries, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, m);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        private void add(String value) {
+            long h1 = fnv1a(value);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << (bit & 63);
+                long previous;
+                do {
+                    previous = bits.get(word);
+                } while ((previous & mask) == 0 && !bits.compareAndSet(word, previous, previous | mask));
+            }
+        }
+
+        private boolean mightContain(String value) {
+            long h1 = fnv1a(value);
+            long h2 = mix(h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long fnv1a(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            value *= 0xc4ceb9fe1a85ec53L;
+            value ^= value >>> 33;
+            return value;
+        }
+    }
+}
@@ -9,9 +9,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.translate.TranslateClient;
 
+import java.time.Duration;
+
 @Configuration
 public class AwsClientConfig {
 
@@ -27,4 +31,22 @@ public class AwsClientConfig {
                 .build();
     }
 
+    /**
+     * Client Bedrock dùng chung: pool kết nối Netty (non-blocking), credentials được cache và tự làm mới.
+     * Gọi model không giữ thread của Tomcat; response dạng stream được đẩy về từng phần.
+     */
+    @Bean(destroyMethod = "close")
+    public BedrockRuntimeAsyncClient bedrockRuntimeAsyncClient(
+            @Value("${bedrock.region:us-east-1}") String bedrockRegion,
+            @Value("${bedrock.max-concurrency:50}") int maxConcurrency,
+            @Value("${bedrock.read-timeout-seconds:60}") long readTimeoutSeconds) {
+        return BedrockRuntimeAsyncClient.builder()
+                .region(Region.of(bedrockRegion))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConcurrency)
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(5))
+                        .readTimeout(Duration.ofSeconds(readTimeoutSeconds)))
+                .build();
+    }
 }
@@ -0,0 +1,181 @@
+package com.leafshop.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+import software.amazon.awssdk.services.bedrockruntime.model.ResponseStream;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Gọi Claude (Messages API) qua {@link BedrockRuntimeAsyncClient} dùng chung.
+ *
+ * - {@link #complete}: một response đầy đủ.
+ * - {@link #stream}: InvokeModelWithResponseStream, {@code onText} được gọi với từng đoạn text ngay khi
+ *   Bedrock trả về (trên thread I/O của SDK, không phải thread của request). Huỷ future trả về sẽ huỷ
+ *   subscription và request HTTP, model ngừng sinh tiếp.
+ */
+@Slf4j
+@Component
+public class BedrockChatClient {
+
+    private static final String ANTHROPIC_VERSION = "bedrock-2023-05-31";
+
+    private final BedrockRuntimeAsyncClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${bedrock.modelId:anthropic.claude-3-sonnet-20240229-v1:0}")
+    private String modelId;
+
+    @Value("${bedrock.max-tokens:1000}")
+    private int maxTokens;
+
+    public BedrockChatClient(BedrockRuntimeAsyncClient client) {
+        this.client = client;
+    }
+
+    public CompletableFuture<String> complete(String systemPrompt, List<Map<String, String>> messages) {
+        InvokeModelRequest request = InvokeModelRequest.builder()
+                .modelId(modelId)
+                .contentType("application/json")
+                .accept("application/json")
+                .body(SdkBytes.fromUtf8String(payload(systemPrompt, messages)))
+                .build();
+        return client.invokeModel(request).thenApply(response -> {
+            try {
+                JsonNode content = objectMapper.readTree(response.body().asUtf8String()).get("content");
+                if (content != null && content.isArray() && content.size() > 0) {
+                    return content.get(0).get("text").asText();
+                }
+                return "";
+            } catch (Exception e) {
+                throw new IllegalStateException("Unreadable Bedrock response", e);
+            }
+        });
+    }
+
+    /**
+     * Future hoàn tất với stop_reason của model ("end_turn", "max_tokens"...; null nếu không nhận được)
+     * khi model trả hết response, hoặc lỗi. Gọi cancel() trên future (ví dụ khi client SSE ngắt kết nối)
+     * để dừng stream.
+     */
+    public CompletableFuture<String> stream(String systemPrompt, List<Map<String, String>> messages, Consumer<String> onText) {
+        InvokeModelWithResponseStreamRequest request = InvokeModelWithResponseStreamRequest.builder()
+                .modelId(modelId)
+                .contentType("application/json")
+                .accept("application/json")
+                .body(SdkBytes.fromUtf8String(payload(systemPrompt, messages)))
+                .build();
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        AtomicReference<String> stopReason = new AtomicReference<>();
+        InvokeModelWithResponseStreamResponseHandler.Visitor visitor = InvokeModelWithResponseStreamResponseHandler.Visitor.builder()
+                .onChunk(chunk -> {
+                    JsonNode event = readEvent(chunk.bytes().asUtf8String());
+                    String text = deltaText(event);
+                    if (text != null && !text.isEmpty() && !result.isDone()) {
+                        onText.accept(text);
+                    }
+                    if (event != null && "message_delta".equals(event.path("type").asText())) {
+                        stopReason.set(event.path("delta").path("stop_reason").asText(null));
+                    }
+                })
+                .build();
+        InvokeModelWithResponseStreamResponseHandler handler = InvokeModelWithResponseStreamResponseHandler.builder()
+                .subscriber(() -> new Subscriber<ResponseStream>() {
+                    @Override
+                    public void onSubscribe(Subscription s) {
+                        subscription.set(s);
+                        if (result.isCancelled()) {
+                            s.cancel();
+                        } else {
+                            s.request(Long.MAX_VALUE);
+                        }
+                    }
+
+                    @Override
+                    public void onNext(ResponseStream event) {
+                        event.accept(visitor);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        // Lỗi được báo qua future của invokeModelWithResponseStream
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                })
+                .build();
+
+        CompletableFuture<Void> call = client.invokeModelWithResponseStream(request, handler);
+        call.whenComplete((ignored, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(stopReason.get());
+            }
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                Subscription s = subscription.get();
+                if (s != null) {
+                    s.cancel();
+                }
+                call.cancel(true);
+                log.debug("Bedrock stream cancelled");
+            }
+        });
+        return result;
+    }
+
+    private JsonNode readEvent(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            log.debug("Skipping unreadable Bedrock stream chunk: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Sự kiện content_block_delta của Messages API: {"type":"content_block_delta","delta":{"type":"text_delta","text":"..."}}
+    // Kết thúc: {"type":"message_delta","delta":{"stop_reason":"end_turn"}}
+    private static String deltaText(JsonNode event) {
+        if (event != null && "content_block_delta".equals(event.path("type").asText())) {
+            return event.path("delta").path("text").asText(null);
+        }
+        return null;
+    }
+
+    private String payload(String systemPrompt, List<Map<String, String>> messages) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("anthropic_version", ANTHROPIC_VERSION);
+        payload.put("max_tokens", maxTokens);
+        payload.put("temperature", 0.7);
+        if (systemPrompt != null && !systemPrompt.isEmpty()) {
+            payload.put("system", systemPrompt);
+        }
+        payload.put("messages", messages);
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot serialize Bedrock payload", e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.leafshop.cache;
+
+import lombok.Value;
+
+/**
+ * Một node khác vừa xoá entry {@code key} (null = toàn bộ) của cache {@code cacheName}.
+ */
+@Value
+public class CacheInvalidatedEvent {
+    String cacheName;
+    String key;
+}
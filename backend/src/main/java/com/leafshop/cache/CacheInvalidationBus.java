@@ -0,0 +1,74 @@
+package com.leafshop.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Phát và nhận thông báo invalidation giữa các node qua Redis pub/sub ({@link #CHANNEL}).
+ *
+ * Node nhận xoá entry L1 tương ứng và phát {@link CacheInvalidatedEvent} cho các bean cần phản ứng
+ * (ví dụ catalog index nạp lại sản phẩm). Thông báo do chính node gửi được bỏ qua.
+ * Khi không gửi được (Redis lỗi), L1 của node khác hết hạn theo TTL của L1.
+ */
+@Slf4j
+public class CacheInvalidationBus implements MessageListener {
+
+    public static final String CHANNEL = "leafshop:cache-invalidation";
+    // key = null nghĩa là xoá toàn bộ cache
+    private static final String ALL_KEYS = "*";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile BiConsumer<String, String> localEvictor = (cacheName, key) -> { };
+
+    public CacheInvalidationBus(RedisTemplate<String, Object> redisTemplate, ApplicationEventPublisher eventPublisher) {
+        this.redisTemplate = redisTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    void onRemoteInvalidation(BiConsumer<String, String> localEvictor) {
+        this.localEvictor = localEvictor;
+    }
+
+    public void publish(String cacheName, String key) {
+        try {
+            Map<String, String> message = new HashMap<>();
+            message.put("node", nodeId);
+            message.put("cache", cacheName);
+            message.put("key", key != null ? key : ALL_KEYS);
+            redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            log.warn("Failed to broadcast invalidation of {}:{}: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Map<String, String> body = objectMapper.readValue(
+                    new String(message.getBody(), StandardCharsets.UTF_8), Map.class);
+            if (nodeId.equals(body.get("node"))) {
+                return;
+            }
+            String cacheName = body.get("cache");
+            String key = ALL_KEYS.equals(body.get("key")) ? null : body.get("key");
+            localEvictor.accept(cacheName, key);
+            eventPublisher.publishEvent(new CacheInvalidatedEvent(cacheName, key));
+        } catch (Exception e) {
+            log.warn("Ignoring malformed cache invalidation message: {}", e.getMessage());
+        }
+    }
+}
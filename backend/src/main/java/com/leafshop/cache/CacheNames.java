@@ -0,0 +1,30 @@
+package com.leafshop.cache;
+
+import java.util.List;
+
+/**
+ * Tên các cache dùng với @Cacheable/@CacheEvict. TTL cấu hình theo cache.ttl-seconds.<tên>.
+ */
+public final class CacheNames {
+
+    // PRODUCT#<id> -> ProductTable META
+    public static final String PRODUCTS = "products";
+    // "all" -> danh sách category, CATEGORY#<id> -> META
+    public static final String CATEGORIES = "categories";
+    // "all" -> danh sách type, TYPE#<id> -> META
+    public static final String PRODUCT_TYPES = "productTypes";
+    // "active" -> bảng size đang dùng
+    public static final String SIZES = "sizes";
+    // PRODUCT#<id> -> review đã duyệt của sản phẩm
+    public static final String APPROVED_REVIEWS = "approvedReviews";
+    // COUPON#<code> -> CouponTable META
+    public static final String COUPONS = "coupons";
+    // userId -> trang đầu lịch sử đơn hàng (META rút gọn, mới nhất trước)
+    public static final String USER_ORDERS = "userOrders";
+
+    public static final List<String> ALL = List.of(PRODUCTS, CATEGORIES, PRODUCT_TYPES, SIZES, APPROVED_REVIEWS, COUPONS,
+            USER_ORDERS);
+
+    private CacheNames() {
+    }
+}
@@ -0,0 +1,25 @@
+package com.leafshop.cache;
+
+import lombok.Value;
+
+/**
+ * Thống kê một cache hai tầng kể từ khi khởi động.
+ */
+@Value
+public class CacheStats {
+
+    Local l1;
+    long l2Hits;
+    long l2Misses;
+    long l2Errors;
+    long remoteInvalidations;
+
+    @Value
+    public static class Local {
+        long hits;
+        long misses;
+        long evictions;
+        int size;
+        long weight;
+    }
+}
@@ -0,0 +1,115 @@
+package com.leafshop.cache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache L1 trong process: LRU giới hạn theo số entry và tổng trọng số, có TTL.
+ *
+ * Trọng số của một giá trị là số phần tử nếu là Collection/Map, số KB nếu là byte[], còn lại là 1,
+ * để một danh sách category lớn không chiếm chỗ như một item đơn lẻ. Đếm hit/miss/eviction cho {@link CacheStats}.
+ */
+public class LocalTtlCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlMs;
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LocalTtlCache(int maxEntries, long maxWeight, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Giá trị còn hạn, hoặc null.
+     */
+    public synchronized Object get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(Object key, Object value) {
+        remove(key);
+        if (value == null) {
+            return;
+        }
+        Entry entry = new Entry(value, weigh(value), System.currentTimeMillis() + ttlMs);
+        entries.put(key, entry);
+        totalWeight += entry.weight;
+
+        Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalWeight > maxWeight) && eldest.hasNext()) {
+            Map.Entry<Object, Entry> candidate = eldest.next();
+            if (candidate.getKey().equals(key) && entries.size() == 1) {
+                break; // luôn giữ giá trị vừa ghi
+            }
+            totalWeight -= candidate.getValue().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void evict(Object key) {
+        remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized CacheStats.Local stats() {
+        return new CacheStats.Local(hits, misses, evictions, entries.size(), totalWeight);
+    }
+
+    private void remove(Object key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    private static long weigh(Object value) {
+        if (value instanceof byte[]) {
+            // Dữ liệu nhị phân (vd. PDF) tính theo KB
+            return Math.max(1, ((byte[]) value).length / 1024);
+        }
+        if (value instanceof Collection) {
+            return Math.max(1, ((Collection<?>) value).size());
+        }
+        if (value instanceof Map) {
+            return Math.max(1, ((Map<?, ?>) value).size());
+        }
+        return 1;
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(Object value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
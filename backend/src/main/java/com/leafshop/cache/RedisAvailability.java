@@ -0,0 +1,28 @@
+package com.leafshop.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Trạng thái Redis dùng chung cho mọi cache: sau một lỗi, bỏ qua Redis trong {@link #RETRY_INTERVAL_MS}
+ * để request không phải chờ timeout kết nối liên tục.
+ */
+@Slf4j
+public class RedisAvailability {
+
+    static final long RETRY_INTERVAL_MS = 30_000;
+
+    private volatile long unavailableUntil;
+
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    public void markUnavailable(String cacheName, RuntimeException e) {
+        boolean wasAvailable = isAvailable();
+        unavailableUntil = System.currentTimeMillis() + RETRY_INTERVAL_MS;
+        if (wasAvailable) {
+            log.warn("Redis unavailable (cache {}), serving from in-process cache for {} ms: {}",
+                    cacheName, RETRY_INTERVAL_MS, e.getMessage());
+        }
+    }
+}
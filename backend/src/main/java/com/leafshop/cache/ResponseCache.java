@@ -0,0 +1,299 @@
+package com.leafshop.cache;
+
+import com.leafshop.catalog.VietnameseTextAnalyzer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Cache câu trả lời của các lời gọi tốn phí/chậm (Bedrock, Translate), khoá theo nội dung đã chuẩn hoá.
+ *
+ * - Tra chính xác: L1 trong process ({@link LocalTtlCache}) rồi Redis ("resp:<namespace>:<sha256>"), TTL theo
+ *   response-cache.<namespace>.ttl-seconds.
+ * - Tra gần đúng (chỉ namespace có similarity-threshold > 0): so cosine giữa vector term (âm tiết đã bỏ dấu
+ *   + bigram, như catalog search) của câu hỏi với các câu đã cache gần đây trên node. Chỉ xét các câu có
+ *   cùng tập từ khoá (các từ giữ nguyên dấu, trừ hư từ/từ hỏi), để "áo đỏ size M" không khớp "áo đen size M".
+ * - Đếm hit chính xác / hit gần đúng / miss cho từng namespace.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    public enum Namespace {
+        // Câu trả lời chatbot: không phân biệt hoa thường/dấu câu, cho phép khớp gần đúng
+        CHAT("chat", true),
+        // Bản dịch: chỉ chuẩn hoá khoảng trắng, chữ hoa và dấu câu ảnh hưởng kết quả
+        TRANSLATE("translate", false);
+
+        private final String key;
+        private final boolean caseInsensitive;
+
+        Namespace(String key, boolean caseInsensitive) {
+            this.key = key;
+            this.caseInsensitive = caseInsensitive;
+        }
+    }
+
+    private static final String REDIS_PREFIX = "resp:";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PUNCTUATION = Pattern.compile("[^\\p{L}\\p{N}\\s]+");
+    // Hư từ/từ hỏi được phép khác nhau giữa hai câu khớp gần đúng; mọi từ khác phải trùng khớp
+    private static final Set<String> FILLER_WORDS = Set.of(
+            "có", "không", "ko", "k", "cho", "tôi", "mình", "bạn", "shop", "ạ", "à", "ơi", "nào", "gì",
+            "được", "với", "là", "em", "anh", "chị", "hỏi", "muốn", "giúp", "nhé", "nha", "nhỉ", "vậy",
+            "thì", "và", "của", "các", "những", "cái", "này", "hay", "xin", "hả", "nè", "đang", "còn");
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisAvailability redisAvailability = new RedisAvailability();
+    private final Map<Namespace, Store> stores = new EnumMap<>(Namespace.class);
+
+    public ResponseCache(RedisTemplate<String, Object> redisTemplate, Environment env) {
+        this.redisTemplate = redisTemplate;
+        int localMaxEntries = env.getProperty("response-cache.local.max-entries", Integer.class, 2000);
+        int similarityCandidates = env.getProperty("response-cache.similarity.max-candidates", Integer.class, 500);
+        for (Namespace namespace : Namespace.values()) {
+            long ttlSeconds = env.getProperty("response-cache." + namespace.key + ".ttl-seconds", Long.class, 3600L);
+            double threshold = env.getProperty("response-cache." + namespace.key + ".similarity-threshold", Double.class, 0.0);
+            stores.put(namespace, new Store(ttlSeconds,
+                    new LocalTtlCache(localMaxEntries, localMaxEntries, TimeUnit.SECONDS.toMillis(ttlSeconds)),
+                    threshold, similarityCandidates));
+        }
+    }
+
+    /**
+     * @param scope phân biệt các câu trả lời khác nhau cho cùng nội dung (ví dụ cặp ngôn ngữ, loại ngữ cảnh)
+     */
+    public Optional<String> get(Namespace namespace, String scope, String text) {
+        Store store = stores.get(namespace);
+        String key = key(namespace, scope, text);
+        String value = lookup(namespace, store, key);
+        if (value != null) {
+            store.exactHits.increment();
+            return Optional.of(value);
+        }
+        if (store.similarityThreshold > 0) {
+            String similarKey = store.findSimilar(scope, VietnameseTextAnalyzer.terms(text), keyTerms(namespace, text));
+            if (similarKey != null) {
+                value = lookup(namespace, store, similarKey);
+                if (value != null) {
+                    store.similarHits.increment();
+                    return Optional.of(value);
+                }
+            }
+        }
+        store.misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(Namespace namespace, String scope, String text, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        Store store = stores.get(namespace);
+        String key = key(namespace, scope, text);
+        store.local.put(key, value);
+        if (redisAvailability.isAvailable()) {
+            try {
+                redisTemplate.opsForValue().set(redisKey(namespace, key), value, store.ttlSeconds, TimeUnit.SECONDS);
+            } catch (RuntimeException e) {
+                redisAvailability.markUnavailable(namespace.key, e);
+            }
+        }
+        if (store.similarityThreshold > 0) {
+            store.remember(scope, key, VietnameseTextAnalyzer.terms(text), keyTerms(namespace, text));
+        }
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        stores.forEach((namespace, store) -> {
+            long exact = store.exactHits.sum();
+            long similar = store.similarHits.sum();
+            long misses = store.misses.sum();
+            long total = exact + similar + misses;
+            Map<String, Object> values = new HashMap<>();
+            values.put("exactHits", exact);
+            values.put("similarHits", similar);
+            values.put("misses", misses);
+            values.put("hitRate", total > 0 ? (double) (exact + similar) / total : 0.0);
+            values.put("local", store.local.stats());
+            stats.put(namespace.key, values);
+        });
+        return stats;
+    }
+
+    private String lookup(Namespace namespace, Store store, String key) {
+        Object local = store.local.get(key);
+        if (local != null) {
+            return local.toString();
+        }
+        if (redisAvailability.isAvailable()) {
+            try {
+                Object value = redisTemplate.opsForValue().get(redisKey(namespace, key));
+                if (value != null) {
+                    store.local.put(key, value.toString());
+                    return value.toString();
+                }
+            } catch (RuntimeException e) {
+                redisAvailability.markUnavailable(namespace.key, e);
+            }
+        }
+        return null;
+    }
+
+    static String normalize(Namespace namespace, String text) {
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFC).strip();
+        if (namespace.caseInsensitive) {
+            normalized = PUNCTUATION.matcher(normalized.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+        }
+        return WHITESPACE.matcher(normalized).replaceAll(" ");
+    }
+
+    /**
+     * Từ khoá của câu (đã chuẩn hoá, giữ dấu): mọi từ trừ {@link #FILLER_WORDS}.
+     */
+    static Set<String> keyTerms(Namespace namespace, String text) {
+        Set<String> terms = new HashSet<>();
+        for (String word : WHITESPACE.split(normalize(namespace, text))) {
+            if (!word.isEmpty() && !FILLER_WORDS.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static String key(Namespace namespace, String scope, String text) {
+        return (scope == null ? "" : scope) + "|" + normalize(namespace, text);
+    }
+
+    private static String redisKey(Namespace namespace, String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(REDIS_PREFIX).append(namespace.key).append(':');
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Store {
+        private final long ttlSeconds;
+        private final LocalTtlCache local;
+        private final double similarityThreshold;
+        private final int maxCandidates;
+        // Câu đã cache gần đây (mới nhất ở đầu) để tra gần đúng
+        private final Deque<Candidate> candidates = new ArrayDeque<>();
+        private final LongAdder exactHits = new LongAdder();
+        private final LongAdder similarHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private Store(long ttlSeconds, LocalTtlCache local, double similarityThreshold, int maxCandidates) {
+            this.ttlSeconds = ttlSeconds;
+            this.local = local;
+            this.similarityThreshold = similarityThreshold;
+            this.maxCandidates = maxCandidates;
+        }
+
+        private synchronized void remember(String scope, String key, List<String> terms, Set<String> keyTerms) {
+            Map<String, Double> vector = vector(terms);
+            if (vector.isEmpty()) {
+                return;
+            }
+            candidates.removeIf(candidate -> candidate.key.equals(key));
+            long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+            candidates.addFirst(new Candidate(scope, key, vector, keyTerms, expiresAt));
+            while (candidates.size() > maxCandidates) {
+                candidates.removeLast();
+            }
+        }
+
+        private synchronized String findSimilar(String scope, List<String> terms, Set<String> keyTerms) {
+            Map<String, Double> query = vector(terms);
+            if (query.isEmpty()) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            String best = null;
+            double bestScore = similarityThreshold;
+            Iterator<Candidate> iterator = candidates.iterator();
+            while (iterator.hasNext()) {
+                Candidate candidate = iterator.next();
+                if (candidate.expiresAt <= now) {
+                    iterator.remove();
+                    continue;
+                }
+                if (!Objects.equals(scope, candidate.scope) || !keyTerms.equals(candidate.keyTerms)) {
+                    continue;
+                }
+                double score = cosine(query, candidate.vector);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = candidate.key;
+                }
+            }
+            return best;
+        }
+
+        // Tần suất term, chuẩn hoá độ dài 1
+        private static Map<String, Double> vector(List<String> terms) {
+            Map<String, Double> vector = new HashMap<>();
+            terms.forEach(term -> vector.merge(term, 1.0, Double::sum));
+            double norm = Math.sqrt(vector.values().stream().mapToDouble(v -> v * v).sum());
+            vector.replaceAll((term, value) -> value / norm);
+            return vector;
+        }
+
+        private static double cosine(Map<String, Double> a, Map<String, Double> b) {
+            Map<String, Double> smaller = a.size() <= b.size() ? a : b;
+            Map<String, Double> larger = smaller == a ? b : a;
+            double dot = 0;
+            for (Map.Entry<String, Double> entry : smaller.entrySet()) {
+                Double other = larger.get(entry.getKey());
+                if (other != null) {
+                    dot += entry.getValue() * other;
+                }
+            }
+            return dot;
+        }
+    }
+
+    private static final class Candidate {
+        private final String scope;
+        private final String key;
+        private final Map<String, Double> vector;
+        private final Set<String> keyTerms;
+        private final long expiresAt;
+
+        private Candidate(String scope, String key, Map<String, Double> vector, Set<String> keyTerms, long expiresAt) {
+            this.scope = scope;
+            this.key = key;
+            this.vector = vector;
+            this.keyTerms = keyTerms;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.leafshop.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache hai tầng: L1 trong process ({@link LocalTtlCache}, TTL ngắn) trước, L2 Redis (chia sẻ giữa các task ECS) sau.
+ *
+ * - Đọc: L1 hit thì trả ngay, không đi mạng; L2 hit thì nạp lại L1.
+ * - Ghi/xoá: cập nhật cả hai tầng; xoá được phát qua {@link CacheInvalidationBus} để node khác bỏ entry L1.
+ * - Khi Redis lỗi, chỉ dùng L1 trong {@link RedisAvailability#RETRY_INTERVAL_MS}
+ *   thay vì làm hỏng request hoặc dồn toàn bộ tải xuống DynamoDB.
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+    private final Cache redis;
+    private final LocalTtlCache local;
+    private final RedisAvailability redisAvailability;
+    private final CacheInvalidationBus invalidationBus;
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder l2Misses = new LongAdder();
+    private final LongAdder l2Errors = new LongAdder();
+    private final LongAdder remoteInvalidations = new LongAdder();
+
+    public TwoLevelCache(String name, Cache redis, LocalTtlCache local, RedisAvailability redisAvailability,
+                         CacheInvalidationBus invalidationBus) {
+        this.name = name;
+        this.redis = redis;
+        this.local = local;
+        this.redisAvailability = redisAvailability;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redis.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object cached = local.get(key);
+        if (cached != null) {
+            return new SimpleValueWrapper(cached);
+        }
+        if (redisAvailability.isAvailable()) {
+            try {
+                ValueWrapper value = redis.get(key);
+                if (value != null) {
+                    l2Hits.increment();
+                    local.put(key, value.get());
+                } else {
+                    l2Misses.increment();
+                }
+                return value;
+            } catch (RuntimeException e) {
+                l2Errors.increment();
+                redisAvailability.markUnavailable(name, e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper value = get(key);
+        if (value == null) {
+            return null;
+        }
+        Object raw = value.get();
+        if (type != null && raw != null && !type.isInstance(raw)) {
+            throw new IllegalStateException("Cached value for " + key + " is not of type " + type.getName());
+        }
+        return (T) raw;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        local.put(key, value);
+        if (value != null && redisAvailability.isAvailable()) {
+            try {
+                redis.put(key, value);
+            } catch (RuntimeException e) {
+                l2Errors.increment();
+                redisAvailability.markUnavailable(name, e);
+            }
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        local.evict(key);
+        if (redisAvailability.isAvailable()) {
+            try {
+                redis.evict(key);
+            } catch (RuntimeException e) {
+                l2Errors.increment();
+                redisAvailability.markUnavailable(name, e);
+            }
+        }
+        invalidationBus.publish(name, String.valueOf(key));
+    }
+
+    @Override
+    public void clear() {
+        local.clear();
+        if (redisAvailability.isAvailable()) {
+            try {
+                redis.clear();
+            } catch (RuntimeException e) {
+                l2Errors.increment();
+                redisAvailability.markUnavailable(name, e);
+            }
+        }
+        invalidationBus.publish(name, null);
+    }
+
+    /**
+     * Node khác đã xoá entry: chỉ bỏ L1 của node này (L2 đã được node đó xoá).
+     */
+    void evictLocal(String key) {
+        remoteInvalidations.increment();
+        if (key != null) {
+            local.evict(key);
+        } else {
+            local.clear();
+        }
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(local.stats(), l2Hits.sum(), l2Misses.sum(), l2Errors.sum(), remoteInvalidations.sum());
+    }
+}
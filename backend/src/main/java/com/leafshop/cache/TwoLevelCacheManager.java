@@ -0,0 +1,67 @@
+package com.leafshop.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bọc {@link RedisCacheManager}: mỗi cache là một {@link TwoLevelCache}.
+ * TTL của L1 là min(cache.l1.ttl-seconds, TTL của cache) để node không giữ dữ liệu cũ lâu hơn Redis.
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final RedisCacheManager redisCacheManager;
+    private final Map<String, Duration> ttls;
+    private final Duration defaultTtl;
+    private final Duration l1Ttl;
+    private final int l1MaxEntries;
+    private final long l1MaxWeight;
+    private final CacheInvalidationBus invalidationBus;
+    private final RedisAvailability redisAvailability = new RedisAvailability();
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, Map<String, Duration> ttls, Duration defaultTtl,
+                                Duration l1Ttl, int l1MaxEntries, long l1MaxWeight,
+                                CacheInvalidationBus invalidationBus) {
+        this.redisCacheManager = redisCacheManager;
+        this.ttls = ttls;
+        this.defaultTtl = defaultTtl;
+        this.l1Ttl = l1Ttl;
+        this.l1MaxEntries = l1MaxEntries;
+        this.l1MaxWeight = l1MaxWeight;
+        this.invalidationBus = invalidationBus;
+        invalidationBus.onRemoteInvalidation((cacheName, key) -> {
+            TwoLevelCache cache = caches.get(cacheName);
+            if (cache != null) {
+                cache.evictLocal(key);
+            }
+        });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, n -> {
+            Duration ttl = ttls.getOrDefault(n, defaultTtl);
+            long localTtlMs = Math.min(l1Ttl.toMillis(), ttl.toMillis());
+            return new TwoLevelCache(n, redisCacheManager.getCache(n),
+                    new LocalTtlCache(l1MaxEntries, l1MaxWeight, localTtlMs), redisAvailability, invalidationBus);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    public Map<String, CacheStats> stats() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+        return stats;
+    }
+}
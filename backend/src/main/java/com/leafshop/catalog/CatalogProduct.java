@@ -0,0 +1,73 @@
+package com.leafshop.catalog;
+
+import com.leafshop.model.dynamodb.ProductTable;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Một sản phẩm trong catalog index: item META cùng toàn bộ VARIANT# và MEDIA# của partition.
+ * Các list là bất biến, thứ tự theo SK giống như khi query trực tiếp DynamoDB.
+ */
+@Value
+public class CatalogProduct {
+
+    String pk;
+    String productId;
+    ProductTable meta;
+    List<ProductTable> variants;
+    List<ProductTable> media;
+
+    /**
+     * Gom các item của một partition PRODUCT#<id> thành CatalogProduct.
+     * Trả về null nếu partition không có item META (sản phẩm đã bị xóa).
+     */
+    public static CatalogProduct fromItems(String pk, List<ProductTable> items) {
+        ProductTable meta = null;
+        List<ProductTable> variants = new ArrayList<>();
+        List<ProductTable> media = new ArrayList<>();
+        for (ProductTable item : items) {
+            String sk = item.getSk();
+            if (sk == null) {
+                continue;
+            }
+            if ("META".equals(sk)) {
+                meta = item;
+            } else if (sk.startsWith("VARIANT#")) {
+                variants.add(item);
+            } else if (sk.startsWith("MEDIA#")) {
+                media.add(item);
+            }
+        }
+        if (meta == null) {
+            return null;
+        }
+        variants.sort(Comparator.comparing(ProductTable::getSk));
+        media.sort(Comparator.comparing(ProductTable::getSk));
+
+        String productId = pk.startsWith("PRODUCT#") ? pk.substring(8) : null;
+        return new CatalogProduct(pk, productId, meta,
+                Collections.unmodifiableList(variants), Collections.unmodifiableList(media));
+    }
+
+    public boolean isActive() {
+        return Boolean.TRUE.equals(meta.getIsActive());
+    }
+
+    /**
+     * updatedAt lớn nhất của META/VARIANT#/MEDIA#: bản đọc sau của cùng partition không nhỏ hơn bản đọc trước.
+     */
+    public long version() {
+        long version = meta.getUpdatedAt() != null ? meta.getUpdatedAt() : 0L;
+        for (ProductTable item : variants) {
+            version = Math.max(version, item.getUpdatedAt() != null ? item.getUpdatedAt() : 0L);
+        }
+        for (ProductTable item : media) {
+            version = Math.max(version, item.getUpdatedAt() != null ? item.getUpdatedAt() : 0L);
+        }
+        return version;
+    }
+}
@@ -0,0 +1,25 @@
+package com.leafshop.catalog;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Điều kiện lọc sản phẩm trên catalog index. Các field null/rỗng được bỏ qua.
+ */
+@Value
+@Builder
+public class CatalogQuery {
+    String keyword;
+    String categoryId;
+    String typeId;
+    Double minPrice;
+    Double maxPrice;
+    String size;
+    String color;
+    @Builder.Default
+    CatalogSort sort = CatalogSort.NEWEST;
+    @Builder.Default
+    boolean activeOnly = true;
+    // Tính facet counts (categoryId, typeId, size, color, price) cho kết quả
+    boolean includeFacets;
+}
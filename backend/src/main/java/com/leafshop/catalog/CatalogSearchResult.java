@@ -0,0 +1,16 @@
+package com.leafshop.catalog;
+
+import com.leafshop.dto.customer.FacetCount;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kết quả search trên CatalogSnapshot: sản phẩm đã lọc/sắp xếp và facet counts (null nếu không yêu cầu).
+ */
+@Value
+public class CatalogSearchResult {
+    List<CatalogProduct> products;
+    Map<String, List<FacetCount>> facets;
+}
@@ -0,0 +1,369 @@
+package com.leafshop.catalog;
+
+import com.leafshop.dto.customer.FacetCount;
+import com.leafshop.model.dynamodb.ProductTable;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Ảnh chụp bất biến của catalog. Mỗi sản phẩm có một ordinal; giá được lưu theo cột (mảng theo
+ * ordinal), các thứ tự sắp xếp được tính sẵn và mỗi giá trị facet (category, type, size, color,
+ * khoảng giá) có một bitmap các ordinal. Lọc là phép AND giữa các bitmap, không có I/O.
+ * Khi có thay đổi, ProductCatalogIndex tạo snapshot mới (copy-on-write).
+ */
+public final class CatalogSnapshot {
+
+    public static final String FACET_CATEGORY = "categoryId";
+    public static final String FACET_TYPE = "typeId";
+    public static final String FACET_SIZE = "size";
+    public static final String FACET_COLOR = "color";
+    public static final String FACET_PRICE = "price";
+
+    // Ranh giới các khoảng giá (VND) dùng cho facet price
+    private static final double[] PRICE_BUCKET_BOUNDS = {100_000, 200_000, 500_000, 1_000_000, 2_000_000};
+
+    private static final CatalogSnapshot EMPTY = new CatalogSnapshot(new CatalogProduct[0]);
+
+    private final CatalogProduct[] products;
+    private final Map<String, Integer> ordinalByPk;
+
+    private final double[] prices; // NaN nếu không có giá
+    private final BitSet active = new BitSet();
+
+    // Bitmap theo giá trị facet; key size/color đã lower-case
+    private final Map<String, BitSet> byCategory = new HashMap<>();
+    private final Map<String, BitSet> byType = new HashMap<>();
+    private final Map<String, BitSet> bySize = new HashMap<>();
+    private final Map<String, BitSet> byColor = new HashMap<>();
+    // "size|color" - size và color phải thuộc cùng một variant
+    private final Map<String, BitSet> bySizeColor = new HashMap<>();
+    private final BitSet[] byPriceBucket = new BitSet[PRICE_BUCKET_BOUNDS.length + 1];
+
+    // Nhãn hiển thị (giữ nguyên chữ hoa/thường lần đầu gặp) cho key lower-case
+    private final Map<String, String> sizeLabels = new HashMap<>();
+    private final Map<String, String> colorLabels = new HashMap<>();
+
+    private final Map<CatalogSort, int[]> orderings = new EnumMap<>(CatalogSort.class);
+
+    private CatalogSnapshot(CatalogProduct[] products) {
+        this.products = products;
+        int n = products.length;
+        this.ordinalByPk = new HashMap<>(n * 2);
+        this.prices = new double[n];
+        for (int bucket = 0; bucket < byPriceBucket.length; bucket++) {
+            byPriceBucket[bucket] = new BitSet(n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            CatalogProduct product = products[i];
+            ProductTable meta = product.getMeta();
+            ordinalByPk.put(product.getPk(), i);
+            active.set(i, product.isActive());
+            prices[i] = meta.getPrice() != null ? meta.getPrice() : Double.NaN;
+            if (meta.getPrice() != null) {
+                byPriceBucket[priceBucket(meta.getPrice())].set(i);
+            }
+            mark(byCategory, meta.getCategoryId(), i);
+            mark(byType, meta.getTypeId(), i);
+
+            for (ProductTable variant : product.getVariants()) {
+                String size = StringUtils.hasText(variant.getSize()) ? variant.getSize() : null;
+                if (size != null) {
+                    mark(bySize, size.toLowerCase(), i);
+                    sizeLabels.putIfAbsent(size.toLowerCase(), size);
+                }
+                if (variant.getColors() == null) {
+                    continue;
+                }
+                for (String color : variant.getColors()) {
+                    if (!StringUtils.hasText(color)) {
+                        continue;
+                    }
+                    mark(byColor, color.toLowerCase(), i);
+                    colorLabels.putIfAbsent(color.toLowerCase(), color);
+                    if (size != null) {
+                        mark(bySizeColor, sizeColorKey(size.toLowerCase(), color.toLowerCase()), i);
+                    }
+                }
+            }
+        }
+
+        for (CatalogSort sort : CatalogSort.values()) {
+            Comparator<ProductTable> comparator = sort.comparator();
+            orderings.put(sort, Arrays.stream(identity(n))
+                    .boxed()
+                    .sorted((a, b) -> comparator.compare(products[a].getMeta(), products[b].getMeta()))
+                    .mapToInt(Integer::intValue)
+                    .toArray());
+        }
+    }
+
+    private static void mark(Map<String, BitSet> bitmaps, String key, int ordinal) {
+        if (StringUtils.hasText(key)) {
+            bitmaps.computeIfAbsent(key, k -> new BitSet()).set(ordinal);
+        }
+    }
+
+    private static String sizeColorKey(String size, String color) {
+        return size + "|" + color;
+    }
+
+    private static int priceBucket(double price) {
+        int bucket = 0;
+        while (bucket < PRICE_BUCKET_BOUNDS.length && price >= PRICE_BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static String priceBucketLabel(int bucket) {
+        long from = bucket == 0 ? 0 : (long) PRICE_BUCKET_BOUNDS[bucket - 1];
+        return bucket == PRICE_BUCKET_BOUNDS.length
+                ? from + "+"
+                : from + "-" + (long) PRICE_BUCKET_BOUNDS[bucket];
+    }
+
+    private static int[] identity(int n) {
+        int[] ordinals = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordinals[i] = i;
+        }
+        return ordinals;
+    }
+
+    public static CatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    public static CatalogSnapshot of(Collection<CatalogProduct> products) {
+        CatalogProduct[] array = products.toArray(new CatalogProduct[0]);
+        // Sắp theo PK để ordinal ổn định giữa các lần build
+        Arrays.sort(array, Comparator.comparing(CatalogProduct::getPk));
+        return new CatalogSnapshot(array);
+    }
+
+    /**
+     * Snapshot mới với sản phẩm được thêm hoặc thay thế.
+     */
+    public CatalogSnapshot with(CatalogProduct product) {
+        return withAll(List.of(product));
+    }
+
+    /**
+     * Snapshot mới với nhiều sản phẩm được thêm hoặc thay thế (build lại một lần).
+     */
+    public CatalogSnapshot withAll(Collection<CatalogProduct> added) {
+        if (added.isEmpty()) {
+            return this;
+        }
+        Map<String, CatalogProduct> byPk = toMap();
+        for (CatalogProduct product : added) {
+            byPk.put(product.getPk(), product);
+        }
+        return of(byPk.values());
+    }
+
+    /**
+     * Snapshot mới không còn sản phẩm có PK này.
+     */
+    public CatalogSnapshot without(String pk) {
+        if (!ordinalByPk.containsKey(pk)) {
+            return this;
+        }
+        Map<String, CatalogProduct> byPk = toMap();
+        byPk.remove(pk);
+        return of(byPk.values());
+    }
+
+    private Map<String, CatalogProduct> toMap() {
+        Map<String, CatalogProduct> byPk = new HashMap<>(products.length * 2);
+        for (CatalogProduct product : products) {
+            byPk.put(product.getPk(), product);
+        }
+        return byPk;
+    }
+
+    public int size() {
+        return products.length;
+    }
+
+    public Optional<CatalogProduct> find(String pk) {
+        Integer ordinal = ordinalByPk.get(pk);
+        return ordinal != null ? Optional.of(products[ordinal]) : Optional.empty();
+    }
+
+    /**
+     * Lọc và sắp xếp theo query, trả về toàn bộ kết quả khớp theo đúng thứ tự
+     * (kèm facet counts nếu query.includeFacets).
+     *
+     * @param keywordScores pk -> điểm từ ProductSearchIndex; null nếu query không có keyword.
+     *                      Chỉ các sản phẩm có trong map mới được giữ lại.
+     */
+    public CatalogSearchResult search(CatalogQuery query, Map<String, Double> keywordScores) {
+        Filter filter = new Filter(query, keywordScores);
+        BitSet matches = filter.apply(null);
+
+        List<CatalogProduct> result = new ArrayList<>(matches.cardinality());
+        for (int ordinal : orderings.get(query.getSort())) {
+            if (matches.get(ordinal)) {
+                result.add(products[ordinal]);
+            }
+        }
+        if (keywordScores != null && query.getSort() == CatalogSort.RELEVANCE) {
+            // List.sort ổn định nên các sản phẩm cùng điểm giữ thứ tự NEWEST
+            result.sort(Comparator.comparing((CatalogProduct p) -> keywordScores.get(p.getPk())).reversed());
+        }
+
+        return new CatalogSearchResult(result, query.isIncludeFacets() ? facets(filter) : null);
+    }
+
+    /**
+     * Facet counts kiểu disjunctive: số lượng của mỗi giá trị trong một facet được tính với tất cả
+     * bộ lọc khác trừ chính facet đó, để frontend hiển thị "M (23)" cho cả các lựa chọn chưa chọn.
+     */
+    private Map<String, List<FacetCount>> facets(Filter filter) {
+        Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+
+        facets.put(FACET_CATEGORY, counts(filter.apply(FACET_CATEGORY), byCategory, null));
+        facets.put(FACET_TYPE, counts(filter.apply(FACET_TYPE), byType, null));
+
+        // size và color phụ thuộc nhau (cùng variant) nên facet này dùng bitmap cặp khi facet kia đang được chọn
+        BitSet withoutSize = filter.apply(FACET_SIZE);
+        facets.put(FACET_SIZE, filter.color == null
+                ? counts(withoutSize, bySize, sizeLabels)
+                : counts(withoutSize, pairBitmaps(bySize.keySet(), filter.color, true), sizeLabels));
+        BitSet withoutColor = filter.apply(FACET_COLOR);
+        facets.put(FACET_COLOR, filter.size == null
+                ? counts(withoutColor, byColor, colorLabels)
+                : counts(withoutColor, pairBitmaps(byColor.keySet(), filter.size, false), colorLabels));
+
+        BitSet withoutPrice = filter.apply(FACET_PRICE);
+        List<FacetCount> priceCounts = new ArrayList<>();
+        for (int bucket = 0; bucket < byPriceBucket.length; bucket++) {
+            BitSet bits = (BitSet) withoutPrice.clone();
+            bits.and(byPriceBucket[bucket]);
+            if (!bits.isEmpty()) {
+                priceCounts.add(FacetCount.builder().value(priceBucketLabel(bucket)).count(bits.cardinality()).build());
+            }
+        }
+        facets.put(FACET_PRICE, priceCounts);
+        return facets;
+    }
+
+    private Map<String, BitSet> pairBitmaps(Collection<String> values, String fixed, boolean valuesAreSizes) {
+        Map<String, BitSet> pairs = new HashMap<>();
+        for (String value : values) {
+            String key = valuesAreSizes ? sizeColorKey(value, fixed) : sizeColorKey(fixed, value);
+            BitSet bits = bySizeColor.get(key);
+            if (bits != null) {
+                pairs.put(value, bits);
+            }
+        }
+        return pairs;
+    }
+
+    private static List<FacetCount> counts(BitSet base, Map<String, BitSet> bitmaps, Map<String, String> labels) {
+        List<FacetCount> counts = new ArrayList<>();
+        for (Map.Entry<String, BitSet> entry : bitmaps.entrySet()) {
+            BitSet bits = (BitSet) base.clone();
+            bits.and(entry.getValue());
+            if (!bits.isEmpty()) {
+                String value = labels != null ? labels.get(entry.getKey()) : entry.getKey();
+                counts.add(FacetCount.builder().value(value).count(bits.cardinality()).build());
+            }
+        }
+        counts.sort(Comparator.comparingLong(FacetCount::getCount).reversed().thenComparing(FacetCount::getValue));
+        return counts;
+    }
+
+    /**
+     * Bộ lọc đã chuẩn hóa của một query. apply(excludedFacet) trả về bitmap ordinal khớp mọi điều kiện,
+     * bỏ qua facet được chỉ định (null = áp dụng tất cả).
+     */
+    private final class Filter {
+        private final boolean activeOnly;
+        private final String categoryId;
+        private final String typeId;
+        private final String size;
+        private final String color;
+        private final Double minPrice;
+        private final Double maxPrice;
+        private final BitSet keywordBits;
+
+        Filter(CatalogQuery query, Map<String, Double> keywordScores) {
+            this.activeOnly = query.isActiveOnly();
+            this.categoryId = StringUtils.hasText(query.getCategoryId()) ? query.getCategoryId() : null;
+            this.typeId = StringUtils.hasText(query.getTypeId()) ? query.getTypeId() : null;
+            this.size = StringUtils.hasText(query.getSize()) ? query.getSize().toLowerCase() : null;
+            this.color = StringUtils.hasText(query.getColor()) ? query.getColor().toLowerCase() : null;
+            this.minPrice = query.getMinPrice();
+            this.maxPrice = query.getMaxPrice();
+            if (keywordScores != null) {
+                keywordBits = new BitSet(products.length);
+                keywordScores.keySet().forEach(pk -> {
+                    Integer ordinal = ordinalByPk.get(pk);
+                    if (ordinal != null) {
+                        keywordBits.set(ordinal);
+                    }
+                });
+            } else {
+                keywordBits = null;
+            }
+        }
+
+        BitSet apply(String excludedFacet) {
+            BitSet bits = new BitSet(products.length);
+            if (activeOnly) {
+                bits.or(active);
+            } else {
+                bits.set(0, products.length);
+            }
+            if (keywordBits != null) {
+                bits.and(keywordBits);
+            }
+            if (categoryId != null && !FACET_CATEGORY.equals(excludedFacet)) {
+                bits.and(bitmap(byCategory, categoryId));
+            }
+            if (typeId != null && !FACET_TYPE.equals(excludedFacet)) {
+                bits.and(bitmap(byType, typeId));
+            }
+
+            String sizeFilter = FACET_SIZE.equals(excludedFacet) ? null : size;
+            String colorFilter = FACET_COLOR.equals(excludedFacet) ? null : color;
+            if (sizeFilter != null && colorFilter != null) {
+                bits.and(bitmap(bySizeColor, sizeColorKey(sizeFilter, colorFilter)));
+            } else if (sizeFilter != null) {
+                bits.and(bitmap(bySize, sizeFilter));
+            } else if (colorFilter != null) {
+                bits.and(bitmap(byColor, colorFilter));
+            }
+
+            // So sánh với NaN luôn false nên sản phẩm không có giá bị loại khi lọc theo giá
+            if ((minPrice != null || maxPrice != null) && !FACET_PRICE.equals(excludedFacet)) {
+                for (int ordinal = bits.nextSetBit(0); ordinal >= 0; ordinal = bits.nextSetBit(ordinal + 1)) {
+                    if ((minPrice != null && !(prices[ordinal] >= minPrice))
+                            || (maxPrice != null && !(prices[ordinal] <= maxPrice))) {
+                        bits.clear(ordinal);
+                    }
+                }
+            }
+            return bits;
+        }
+
+        private BitSet bitmap(Map<String, BitSet> bitmaps, String key) {
+            BitSet bits = bitmaps.get(key);
+            return bits != null ? bits : new BitSet();
+        }
+    }
+}
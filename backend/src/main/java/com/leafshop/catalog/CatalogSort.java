@@ -0,0 +1,56 @@
+package com.leafshop.catalog;
+
+import com.leafshop.model.dynamodb.ProductTable;
+
+import java.util.Comparator;
+
+/**
+ * Các thứ tự sắp xếp được tính sẵn trong CatalogSnapshot.
+ */
+public enum CatalogSort {
+
+    // updatedAt giảm dần - sản phẩm mới cập nhật hiển thị trước
+    NEWEST(Comparator.comparing(ProductTable::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder()))),
+    // createdAt tăng dần - sản phẩm cũ nhất trước
+    OLDEST(Comparator.comparing(ProductTable::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))),
+    PRICE_ASC(Comparator.comparing(ProductTable::getPrice, Comparator.nullsLast(Comparator.naturalOrder()))),
+    PRICE_DESC(Comparator.comparing(ProductTable::getPrice, Comparator.nullsLast(Comparator.reverseOrder()))),
+    // createdAt giảm dần - dùng cho best_selling (chưa có soldCount) và related products
+    CREATED_DESC(Comparator.comparing(ProductTable::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder()))),
+    // Điểm BM25 của keyword giảm dần; khi điểm bằng nhau (hoặc không có keyword) thì như NEWEST
+    RELEVANCE(NEWEST.comparator);
+
+    private final Comparator<ProductTable> comparator;
+
+    CatalogSort(Comparator<ProductTable> comparator) {
+        this.comparator = comparator;
+    }
+
+    Comparator<ProductTable> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Map tham số sortBy của API (newest, oldest, price_asc, price_desc, best_selling, relevance).
+     * Giá trị rỗng hoặc không hợp lệ dùng NEWEST.
+     */
+    public static CatalogSort fromParam(String sortBy) {
+        if (sortBy == null) {
+            return NEWEST;
+        }
+        switch (sortBy.toLowerCase()) {
+            case "oldest":
+                return OLDEST;
+            case "price_asc":
+                return PRICE_ASC;
+            case "price_desc":
+                return PRICE_DESC;
+            case "best_selling":
+                return CREATED_DESC;
+            case "relevance":
+                return RELEVANCE;
+            default:
+                return NEWEST;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.leafshop.catalog;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheNames;
+import com.leafshop.model.dynamodb.ProductTable;
+import com.leafshop.repository.ProductHydrator;
+import com.leafshop.repository.ProductTableRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Catalog sản phẩm trong bộ nhớ của mỗi node (META + VARIANT# + MEDIA#).
+ *
+ * - Nạp lười bằng một lần scan ProductTable ở request đầu tiên.
+ * - ProductService / ProductVariantService / ProductMediaService gọi {@link #refreshProduct(String)}
+ *   sau mỗi lần ghi để nạp lại đúng partition đó (một query).
+ * - Node khác nhận thay đổi qua thông báo invalidation của cache products ({@link #onProductInvalidated}),
+ *   lần reload định kỳ (catalog.index.refresh-interval-ms) sửa lại các thông báo bị mất. Việc nạp lại chạy
+ *   trên thread riêng, không giữ thread nhận pub/sub của Redis (các kênh invalidation khác dùng chung).
+ * - Hai lần nạp cùng pk chạy song song (ghi trên node này + thông báo từ node khác) có thể về không theo
+ *   thứ tự: bản có {@link CatalogProduct#version()} nhỏ hơn bản đang có bị bỏ qua.
+ *
+ * Full-text index ({@link ProductSearchIndex}) được cập nhật cùng lúc với snapshot.
+ *
+ * Đọc không cần lock: snapshot là bất biến và được thay thế nguyên khối (copy-on-write).
+ * Mọi lần đọc DynamoDB chạy ngoài lock; lock chỉ giữ lúc thay snapshot. Pk không tồn tại được nhớ
+ * trong catalog.index.negative-ttl-ms để request lặp lại không chạm DynamoDB, và các request cùng
+ * tìm một pk chưa có dùng chung một lần nạp.
+ */
+@Slf4j
+@Component
+public class ProductCatalogIndex {
+
+    private static final int MAX_NEGATIVE_ENTRIES = 10_000;
+
+    private final ProductTableRepository productTableRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductHydrator productHydrator;
+    private final long negativeTtlMs;
+    private final int maxMissLoadsPerRequest;
+    private final double missLoadsPerSecond;
+
+    private final Object publishLock = new Object();
+    private final Object reloadLock = new Object();
+    private final Map<String, CompletableFuture<Optional<CatalogProduct>>> loading = new ConcurrentHashMap<>();
+    private final Map<String, Long> notFoundUntil = new ConcurrentHashMap<>();
+    private final ExecutorService invalidationExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-invalidation");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile CatalogSnapshot snapshot;
+    // Sản phẩm được cập nhật trong lúc reload đang scan; áp lại lên snapshot mới trước khi thay
+    private Map<String, Optional<CatalogProduct>> changedDuringReload;
+    // Token bucket cho số pk nạp từ DynamoDB qua findProducts
+    private double missLoadTokens;
+    private long missLoadRefilledAt = System.nanoTime();
+
+    public ProductCatalogIndex(ProductTableRepository productTableRepository,
+                               ProductSearchIndex productSearchIndex,
+                               ProductHydrator productHydrator,
+                               @Value("${catalog.index.negative-ttl-ms:30000}") long negativeTtlMs,
+                               @Value("${catalog.index.max-miss-loads-per-request:10}") int maxMissLoadsPerRequest,
+                               @Value("${catalog.index.miss-loads-per-second:50}") double missLoadsPerSecond) {
+        this.productTableRepository = productTableRepository;
+        this.productSearchIndex = productSearchIndex;
+        this.productHydrator = productHydrator;
+        this.negativeTtlMs = negativeTtlMs;
+        this.maxMissLoadsPerRequest = Math.max(0, maxMissLoadsPerRequest);
+        this.missLoadsPerSecond = missLoadsPerSecond;
+        this.missLoadTokens = missLoadsPerSecond;
+    }
+
+    public CatalogSnapshot snapshot() {
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (reloadLock) {
+                if (snapshot == null) {
+                    reload();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+    public CatalogSearchResult search(CatalogQuery query) {
+        CatalogSnapshot current = snapshot();
+        Map<String, Double> keywordScores = StringUtils.hasText(query.getKeyword())
+                ? productSearchIndex.search(query.getKeyword(), true)
+                : null;
+        return current.search(query, keywordScores);
+    }
+
+    /**
+     * Chấm điểm full-text trên toàn bộ catalog (kể cả sản phẩm inactive).
+     *
+     * @see ProductSearchIndex#search(String, boolean)
+     */
+    public Map<String, Double> searchText(String text, boolean requireAll) {
+        snapshot();
+        return productSearchIndex.search(text, requireAll);
+    }
+
+    /**
+     * Tìm sản phẩm trong index; nếu chưa có (vừa tạo ở node khác) thì nạp partition từ DynamoDB.
+     */
+    public Optional<CatalogProduct> findProduct(String pk) {
+        Optional<CatalogProduct> cached = snapshot().find(pk);
+        if (cached.isPresent() || isKnownMissing(pk)) {
+            return cached;
+        }
+        return loadMissing(pk);
+    }
+
+    /**
+     * Tìm nhiều sản phẩm, giữ thứ tự đầu vào. Các pk chưa có trong index được nạp cùng lúc
+     * qua {@link ProductHydrator} (không phải một lần refresh cho mỗi sản phẩm).
+     *
+     * Endpoint public gọi hàm này với id tuỳ ý, nên số pk được nạp từ DynamoDB bị giới hạn theo request
+     * (catalog.index.max-miss-loads-per-request) và theo node (catalog.index.miss-loads-per-second);
+     * pk vượt giới hạn chỉ được tra trong snapshot.
+     */
+    public List<CatalogProduct> findProducts(Collection<String> pks) {
+        CatalogSnapshot current = snapshot();
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String pk : pks) {
+            if (current.find(pk).isEmpty() && !isKnownMissing(pk) && !loading.containsKey(pk)) {
+                candidates.add(pk);
+            }
+        }
+        int allowed = acquireMissLoads(Math.min(candidates.size(), maxMissLoadsPerRequest));
+        List<String> missing = new ArrayList<>(candidates).subList(0, allowed);
+        if (candidates.size() > allowed) {
+            log.debug("Skipped loading {} unknown products (miss-load limit)", candidates.size() - allowed);
+        }
+        if (!missing.isEmpty()) {
+            loadMissing(missing);
+            current = snapshot;
+        }
+
+        List<CatalogProduct> result = new ArrayList<>();
+        for (String pk : pks) {
+            current.find(pk).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Scan lại toàn bộ sản phẩm và thay snapshot. Scan chạy ngoài publishLock nên refresh/đọc không phải chờ.
+     */
+    public void reload() {
+        synchronized (reloadLock) {
+            long start = System.currentTimeMillis();
+            synchronized (publishLock) {
+                changedDuringReload = new LinkedHashMap<>();
+            }
+            Map<String, CatalogProduct> productsByPk = new LinkedHashMap<>();
+            try {
+                Map<String, List<ProductTable>> itemsByPk = new LinkedHashMap<>();
+                for (ProductTable item : productTableRepository.findAllProductItems()) {
+                    itemsByPk.computeIfAbsent(item.getPk(), k -> new ArrayList<>()).add(item);
+                }
+                itemsByPk.forEach((pk, items) -> {
+                    CatalogProduct product = CatalogProduct.fromItems(pk, items);
+                    if (product != null) {
+                        productsByPk.put(pk, product);
+                    }
+                });
+            } catch (RuntimeException e) {
+                synchronized (publishLock) {
+                    changedDuringReload = null;
+                }
+                throw e;
+            }
+
+            synchronized (publishLock) {
+                // Thay đổi đến trong lúc scan mới hơn dữ liệu scan
+                changedDuringReload.forEach((pk, product) -> {
+                    if (product.isPresent()) {
+                        CatalogProduct scanned = productsByPk.get(pk);
+                        if (scanned == null || scanned.version() <= product.get().version()) {
+                            productsByPk.put(pk, product.get());
+                        }
+                    } else {
+                        productsByPk.remove(pk);
+                    }
+                });
+                changedDuringReload = null;
+                productSearchIndex.rebuild(productsByPk.values());
+                snapshot = CatalogSnapshot.of(productsByPk.values());
+            }
+            notFoundUntil.clear();
+            log.info("Product catalog index loaded: {} products in {} ms", productsByPk.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Nạp lại một partition PRODUCT#<id> sau khi sản phẩm, variant hoặc media thay đổi.
+     * Lỗi không được ném ra để không làm hỏng thao tác ghi; lần reload định kỳ sẽ sửa lại.
+     */
+    public Optional<CatalogProduct> refreshProduct(String pk) {
+        try {
+            CatalogProduct product = CatalogProduct.fromItems(pk, productTableRepository.findByPk(pk));
+            return Optional.ofNullable(publish(pk, product));
+        } catch (Exception e) {
+            log.warn("Failed to refresh catalog index for {}: {}", pk, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Sản phẩm được sửa trên node khác; chạy trên thread thông báo của Redis nên chỉ giao việc rồi trả về
+    @EventListener
+    public void onProductInvalidated(CacheInvalidatedEvent event) {
+        if (!CacheNames.PRODUCTS.equals(event.getCacheName())) {
+            return;
+        }
+        try {
+            invalidationExecutor.execute(() -> {
+                if (event.getKey() != null) {
+                    refreshProduct(event.getKey());
+                } else if (snapshot != null) {
+                    scheduledReload();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Catalog index is shutting down, ignoring invalidation of {}", event.getKey());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        invalidationExecutor.shutdownNow();
+    }
+
+    // Một pk chưa có: request đồng thời cùng pk chờ chung một lần nạp
+    private Optional<CatalogProduct> loadMissing(String pk) {
+        CompletableFuture<Optional<CatalogProduct>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<CatalogProduct>> existing = loading.putIfAbsent(pk, mine);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            Optional<CatalogProduct> product = Optional.empty();
+            try {
+                product = Optional.ofNullable(CatalogProduct.fromItems(pk, productTableRepository.findByPk(pk)));
+                publish(pk, product.orElse(null));
+            } catch (Exception e) {
+                log.warn("Failed to load {} into catalog index: {}", pk, e.getMessage());
+            }
+            mine.complete(product);
+            return product;
+        } finally {
+            loading.remove(pk, mine);
+        }
+    }
+
+    private void loadMissing(List<String> pks) {
+        try {
+            Map<String, CatalogProduct> loaded = new LinkedHashMap<>();
+            productHydrator.loadPartitions(pks).forEach((pk, items) -> {
+                CatalogProduct product = CatalogProduct.fromItems(pk, items);
+                if (product != null) {
+                    loaded.put(pk, product);
+                }
+            });
+            synchronized (publishLock) {
+                loaded.values().forEach(productSearchIndex::index);
+                snapshot = snapshot.withAll(loaded.values());
+                if (changedDuringReload != null) {
+                    loaded.forEach((pk, product) -> changedDuringReload.put(pk, Optional.of(product)));
+                }
+            }
+            pks.stream().filter(pk -> !loaded.containsKey(pk)).forEach(this::rememberMissing);
+        } catch (Exception e) {
+            log.warn("Failed to load {} products into catalog index: {}", pks.size(), e.getMessage());
+        }
+    }
+
+    // Thay snapshot bằng bản có/không có sản phẩm (product null = đã bị xoá hoặc không tồn tại);
+    // trả về bản đang dùng sau khi thay (bản đã có nếu product cũ hơn)
+    private CatalogProduct publish(String pk, CatalogProduct product) {
+        synchronized (publishLock) {
+            CatalogProduct existing = snapshot != null ? snapshot.find(pk).orElse(null) : null;
+            if (product != null && existing != null && existing.version() > product.version()) {
+                log.debug("Ignoring stale read of {} (version {} < {})", pk, product.version(), existing.version());
+                return existing;
+            }
+            // Chưa nạp lần nào thì không cần cập nhật, lần nạp đầu sẽ đọc dữ liệu mới
+            if (snapshot != null) {
+                if (product != null) {
+                    productSearchIndex.index(product);
+                    snapshot = snapshot.with(product);
+                } else {
+                    productSearchIndex.remove(pk);
+                    snapshot = snapshot.without(pk);
+                }
+            }
+            if (changedDuringReload != null) {
+                changedDuringReload.put(pk, Optional.ofNullable(product));
+            }
+        }
+        if (product != null) {
+            notFoundUntil.remove(pk);
+        } else {
+            rememberMissing(pk);
+        }
+        return product;
+    }
+
+    // Số lượt nạp được cấp (<= requested); không chờ, hết token thì cấp ít hơn
+    private synchronized int acquireMissLoads(int requested) {
+        if (requested <= 0 || missLoadsPerSecond <= 0) {
+            return Math.max(0, requested);
+        }
+        long now = System.nanoTime();
+        missLoadTokens = Math.min(missLoadsPerSecond,
+                missLoadTokens + (now - missLoadRefilledAt) / 1_000_000_000.0 * missLoadsPerSecond);
+        missLoadRefilledAt = now;
+        int granted = (int) Math.min(requested, Math.floor(missLoadTokens));
+        missLoadTokens -= granted;
+        return granted;
+    }
+
+    private boolean isKnownMissing(String pk) {
+        Long until = notFoundUntil.get(pk);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            notFoundUntil.remove(pk, until);
+            return false;
+        }
+        return true;
+    }
+
+    private void rememberMissing(String pk) {
+        if (notFoundUntil.size() >= MAX_NEGATIVE_ENTRIES) {
+            notFoundUntil.clear();
+        }
+        notFoundUntil.put(pk, System.currentTimeMillis() + negativeTtlMs);
+    }
+
+    @Scheduled(initialDelayString = "${catalog.index.refresh-interval-ms:300000}",
+            fixedDelayString = "${catalog.index.refresh-interval-ms:300000}")
+    public void scheduledReload() {
+        if (snapshot == null) {
+            return; // chưa có request nào dùng index, để nạp lười
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("Scheduled catalog index reload failed, keeping previous snapshot: {}", e.getMessage());
+        }
+    }
+}
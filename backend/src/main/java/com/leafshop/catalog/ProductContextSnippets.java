@@ -0,0 +1,124 @@
+package com.leafshop.catalog;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheNames;
+import com.leafshop.model.dynamodb.ProductTable;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Đoạn mô tả ngắn của từng sản phẩm dùng làm ngữ cảnh cho chatbot, tính sẵn một lần cho mỗi phiên bản sản phẩm.
+ *
+ * Phiên bản = updatedAt lớn nhất và số item của partition (META + VARIANT# + MEDIA#): khi catalog index nạp lại
+ * sản phẩm đã sửa, phiên bản đổi và đoạn mô tả được dựng lại ở lần dùng kế tiếp.
+ * Thông báo invalidation của cache products (từ node khác) xoá entry ngay.
+ */
+@Component
+public class ProductContextSnippets {
+
+    static final int MAX_DESCRIPTION_LENGTH = 160;
+
+    private final Map<String, Snippet> snippets = new ConcurrentHashMap<>();
+
+    public String snippet(CatalogProduct product) {
+        long version = version(product);
+        Snippet cached = snippets.get(product.getPk());
+        if (cached != null && cached.version == version) {
+            return cached.text;
+        }
+        String text = build(product);
+        snippets.put(product.getPk(), new Snippet(version, text));
+        return text;
+    }
+
+    @EventListener
+    public void onProductInvalidated(CacheInvalidatedEvent event) {
+        if (!CacheNames.PRODUCTS.equals(event.getCacheName())) {
+            return;
+        }
+        if (event.getKey() != null) {
+            snippets.remove(event.getKey());
+        } else {
+            snippets.clear();
+        }
+    }
+
+    public int size() {
+        return snippets.size();
+    }
+
+    private static long version(CatalogProduct product) {
+        long latest = updatedAt(product.getMeta());
+        for (ProductTable variant : product.getVariants()) {
+            latest = Math.max(latest, updatedAt(variant));
+        }
+        for (ProductTable media : product.getMedia()) {
+            latest = Math.max(latest, updatedAt(media));
+        }
+        return latest * 31 + product.getVariants().size() * 7L + product.getMedia().size();
+    }
+
+    private static long updatedAt(ProductTable item) {
+        return item.getUpdatedAt() != null ? item.getUpdatedAt() : 0L;
+    }
+
+    private static String build(CatalogProduct product) {
+        ProductTable meta = product.getMeta();
+        StringBuilder text = new StringBuilder();
+        text.append("\n🛍️ ").append(meta.getName());
+        String description = meta.getDescription();
+        if (description != null && !description.isBlank()) {
+            description = description.strip();
+            if (description.length() > MAX_DESCRIPTION_LENGTH) {
+                description = description.substring(0, MAX_DESCRIPTION_LENGTH) + "…";
+            }
+            text.append("\n  📝 ").append(description);
+        }
+        text.append(String.format("\n  💰 Giá: %,.0f đ", meta.getPrice() != null ? meta.getPrice() : 0.0));
+
+        Set<String> colors = new LinkedHashSet<>();
+        Set<String> sizes = new LinkedHashSet<>();
+        for (ProductTable variant : product.getVariants()) {
+            if (variant.getColors() != null) {
+                colors.addAll(variant.getColors());
+            }
+            if (variant.getSize() != null && !variant.getSize().isEmpty()) {
+                sizes.add(variant.getSize());
+            }
+        }
+        if (!colors.isEmpty()) {
+            text.append("\n  🎨 Màu: ").append(String.join(", ", colors));
+        }
+        if (!sizes.isEmpty()) {
+            text.append("\n  📏 Size: ").append(String.join(", ", sizes));
+        }
+
+        if (meta.getQuantity() != null && meta.getQuantity() > 0) {
+            text.append("\n  ✅ Còn hàng: ").append(meta.getQuantity());
+        } else {
+            text.append("\n  ❌ Hết hàng");
+        }
+        if (Boolean.TRUE.equals(meta.getIsPreorder())) {
+            text.append("\n  ⏰ Preorder: ").append(meta.getPreorderDays()).append(" ngày");
+        }
+        if (meta.getTags() != null && !meta.getTags().isEmpty()) {
+            text.append("\n  🏷️ Tags: ").append(String.join(", ", meta.getTags()));
+        }
+        return text.append("\n").toString();
+    }
+
+    private static final class Snippet {
+        private final long version;
+        private final String text;
+
+        private Snippet(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.leafshop.catalog;
+
+import com.leafshop.model.dynamodb.ProductTable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index full-text cho product META (name, tags, description), chấm điểm kiểu BM25F.
+ *
+ * Term được sinh bởi {@link VietnameseTextAnalyzer} (bỏ dấu + bigram). Mỗi posting lưu tần suất
+ * của term theo từng field; field name có trọng số cao nhất. Âm tiết cuối của câu truy vấn được
+ * mở rộng theo prefix để hỗ trợ gõ dở ("kho" -> "khoac").
+ *
+ * Index được ProductCatalogIndex cập nhật: rebuild khi reload toàn bộ, index/remove từng sản phẩm
+ * khi có thay đổi. Đọc dùng read lock nên nhiều request tìm kiếm chạy song song.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final int NAME = 0;
+    private static final int TAGS = 1;
+    private static final int DESCRIPTION = 2;
+    private static final double[] FIELD_WEIGHTS = {3.0, 2.0, 1.0};
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+    private static final double PREFIX_WEIGHT = 0.5;
+
+    // term -> (pk -> tf theo field)
+    private final TreeMap<String, Map<String, int[]>> postings = new TreeMap<>();
+    // pk -> độ dài (số term) theo field
+    private final Map<String, int[]> docLengths = new HashMap<>();
+    // pk -> các term của document, dùng khi xóa
+    private final Map<String, Set<String>> docTerms = new HashMap<>();
+    private final long[] totalLengths = new long[FIELD_WEIGHTS.length];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void rebuild(Collection<CatalogProduct> products) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            docLengths.clear();
+            docTerms.clear();
+            Arrays.fill(totalLengths, 0);
+            for (CatalogProduct product : products) {
+                addDocument(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void index(CatalogProduct product) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(product.getPk());
+            addDocument(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String pk) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(pk);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docLengths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm kiếm và chấm điểm.
+     *
+     * @param text       câu truy vấn (có dấu hoặc không dấu)
+     * @param requireAll true: mọi âm tiết trong truy vấn phải xuất hiện (dùng cho bộ lọc keyword);
+     *                   false: chỉ cần khớp một âm tiết (dùng cho gợi ý chatbot)
+     * @return pk -> điểm BM25F, rỗng nếu không có kết quả
+     */
+    public Map<String, Double> search(String text, boolean requireAll) {
+        List<String> tokens = VietnameseTextAnalyzer.tokenize(text);
+        if (tokens.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        lock.readLock().lock();
+        try {
+            String last = tokens.get(tokens.size() - 1);
+            List<String> prefixTerms = expandPrefix(last);
+
+            Set<String> candidates = null;
+            for (int i = 0; i < tokens.size(); i++) {
+                Set<String> matching = new HashSet<>(postingsOf(tokens.get(i)).keySet());
+                if (i == tokens.size() - 1) {
+                    for (String term : prefixTerms) {
+                        matching.addAll(postingsOf(term).keySet());
+                    }
+                }
+                if (candidates == null) {
+                    candidates = matching;
+                } else if (requireAll) {
+                    candidates.retainAll(matching);
+                } else {
+                    candidates.addAll(matching);
+                }
+                if (requireAll && candidates.isEmpty()) {
+                    return Collections.emptyMap();
+                }
+            }
+
+            Map<String, Double> scores = new HashMap<>(candidates.size() * 2);
+            for (String term : VietnameseTextAnalyzer.withBigrams(tokens)) {
+                accumulate(scores, candidates, term, 1.0);
+            }
+            for (String term : prefixTerms) {
+                accumulate(scores, candidates, term, PREFIX_WEIGHT);
+            }
+            return scores;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sắp xếp kết quả của {@link #search(String, boolean)} theo điểm giảm dần.
+     */
+    public static List<String> rank(Map<String, Double> scores, int limit) {
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<String> ranked = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            ranked.add(entries.get(i).getKey());
+        }
+        return ranked;
+    }
+
+    private void accumulate(Map<String, Double> scores, Set<String> candidates, String term, double queryWeight) {
+        Map<String, int[]> termPostings = postingsOf(term);
+        if (termPostings.isEmpty()) {
+            return;
+        }
+        double idf = idf(termPostings.size());
+        for (Map.Entry<String, int[]> posting : termPostings.entrySet()) {
+            String pk = posting.getKey();
+            if (!candidates.contains(pk)) {
+                continue;
+            }
+            double tf = weightedTf(posting.getValue(), docLengths.get(pk));
+            double score = queryWeight * idf * (tf * (K1 + 1)) / (tf + K1);
+            scores.merge(pk, score, Double::sum);
+        }
+    }
+
+    // BM25F: chuẩn hóa tf theo độ dài từng field rồi cộng có trọng số
+    private double weightedTf(int[] tf, int[] lengths) {
+        double sum = 0;
+        int docs = docLengths.size();
+        for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+            if (tf[field] == 0) {
+                continue;
+            }
+            double avgLength = docs == 0 ? 1 : Math.max(1.0, (double) totalLengths[field] / docs);
+            double norm = 1 - B + B * (lengths[field] / avgLength);
+            sum += FIELD_WEIGHTS[field] * tf[field] / norm;
+        }
+        return sum;
+    }
+
+    private double idf(int documentFrequency) {
+        int docs = docLengths.size();
+        return Math.log(1 + (docs - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private Map<String, int[]> postingsOf(String term) {
+        Map<String, int[]> termPostings = postings.get(term);
+        return termPostings != null ? termPostings : Collections.emptyMap();
+    }
+
+    // Các âm tiết (không tính bigram) bắt đầu bằng prefix, trừ chính prefix
+    private List<String> expandPrefix(String prefix) {
+        if (prefix.length() < MIN_PREFIX_LENGTH) {
+            return Collections.emptyList();
+        }
+        List<String> expanded = new ArrayList<>();
+        for (String term : postings.tailMap(prefix, false).keySet()) {
+            if (!term.startsWith(prefix) || expanded.size() >= MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            if (term.indexOf('_') < 0) {
+                expanded.add(term);
+            }
+        }
+        return expanded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addDocument(CatalogProduct product) {
+        ProductTable meta = product.getMeta();
+        String pk = product.getPk();
+
+        List<String> tagTerms = new ArrayList<>();
+        if (meta.getTags() != null) {
+            meta.getTags().forEach(tag -> tagTerms.addAll(VietnameseTextAnalyzer.terms(tag)));
+        }
+        List<List<String>> fieldTerms = Arrays.asList(new List[FIELD_WEIGHTS.length]);
+        fieldTerms.set(NAME, VietnameseTextAnalyzer.terms(meta.getName()));
+        fieldTerms.set(TAGS, tagTerms);
+        fieldTerms.set(DESCRIPTION, VietnameseTextAnalyzer.terms(meta.getDescription()));
+
+        int[] lengths = new int[FIELD_WEIGHTS.length];
+        Set<String> terms = new HashSet<>();
+        for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+            List<String> termsOfField = fieldTerms.get(field);
+            lengths[field] = termsOfField.size();
+            totalLengths[field] += termsOfField.size();
+            for (String term : termsOfField) {
+                postings.computeIfAbsent(term, t -> new HashMap<>())
+                        .computeIfAbsent(pk, k -> new int[FIELD_WEIGHTS.length])[field]++;
+                terms.add(term);
+            }
+        }
+        docLengths.put(pk, lengths);
+        docTerms.put(pk, terms);
+    }
+
+    private void removeDocument(String pk) {
+        Set<String> terms = docTerms.remove(pk);
+        int[] lengths = docLengths.remove(pk);
+        if (terms == null || lengths == null) {
+            return;
+        }
+        for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+            totalLengths[field] -= lengths[field];
+        }
+        for (String term : terms) {
+            Map<String, int[]> termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.remove(pk);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+}
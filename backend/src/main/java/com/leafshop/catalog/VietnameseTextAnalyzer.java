@@ -0,0 +1,74 @@
+package com.leafshop.catalog;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa và tách từ cho tiếng Việt phục vụ full-text search.
+ *
+ * - Bỏ dấu (diacritic folding): "Áo Khoác Đỏ" -> "ao khoac do", nên người dùng gõ không dấu vẫn tìm được.
+ * - Tách theo âm tiết (khoảng trắng / ký tự không phải chữ-số).
+ * - Sinh thêm bigram "ao_khoac" vì từ tiếng Việt thường gồm nhiều âm tiết; bigram giúp cụm từ
+ *   khớp liền nhau được điểm cao hơn các âm tiết rời rạc.
+ */
+public final class VietnameseTextAnalyzer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private VietnameseTextAnalyzer() {
+    }
+
+    /**
+     * Lowercase, đ -> d và bỏ toàn bộ dấu thanh/dấu mũ.
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("");
+    }
+
+    /**
+     * Danh sách âm tiết đã chuẩn hóa, giữ nguyên thứ tự.
+     */
+    public static List<String> tokenize(String text) {
+        String folded = fold(text);
+        if (folded.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Các term dùng để index/tìm kiếm: âm tiết và bigram của các âm tiết liền kề.
+     */
+    public static List<String> terms(String text) {
+        return withBigrams(tokenize(text));
+    }
+
+    public static List<String> withBigrams(List<String> tokens) {
+        List<String> terms = new ArrayList<>(tokens.size() * 2);
+        terms.addAll(tokens);
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            terms.add(bigram(tokens.get(i), tokens.get(i + 1)));
+        }
+        return terms;
+    }
+
+    public static String bigram(String first, String second) {
+        return first + "_" + second;
+    }
+}
@@ -33,14 +33,18 @@ public class DynamoDBInitializer implements CommandLineRunner {
         "BlogTable",
         "ChatTable",
         "CouponTable",
+        "IdempotencyTable",
+        "MetricsTable",
         "OrderTable",
         "PaymentTable",
         "ProductTable",
         "ReviewTable",
         "RevokedToken",
         "Roles",
+        "TranslationMemoryTable",
         "UserTable",
         "WarehouseTable",
+        "WebhookEventTable",
         "WishlistTable"
     };
 
@@ -1,19 +1,64 @@
 package com.leafshop.config;
 
-
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.core.exception.SdkClientException;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 public class DynamoDBTableInitializer {
 
+    // Khoảng chờ giữa các lần kiểm tra trạng thái index đang backfill
+    private static final long INDEX_POLL_INTERVAL_MS = 10_000;
+
     private final DynamoDbClient dynamoDbClient;
 
+    // Các GSI còn thiếu trên bảng đã tồn tại, được tạo lần lượt bởi indexBuilder sau khi init xong
+    private final List<PendingIndex> pendingIndexes = new ArrayList<>();
+    private final ExecutorService indexBuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "dynamodb-index-builder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * GSI theo bảng, khớp với các annotation DynamoDbSecondaryPartitionKey/SortKey trên model.
+     * Bảng mới được tạo kèm index; bảng đã có thì bổ sung index còn thiếu qua UpdateTable.
+     */
+    private static final Map<String, List<IndexSpec>> GLOBAL_INDEXES = new LinkedHashMap<>();
+
+    static {
+        GLOBAL_INDEXES.put("UserTable", List.of(
+                new IndexSpec("email-index", "email", ScalarAttributeType.S, null, null),
+                new IndexSpec("username-index", "username", ScalarAttributeType.S, null, null),
+                new IndexSpec("role-createdAt-index", "role", ScalarAttributeType.S, "createdAt", ScalarAttributeType.N)));
+        GLOBAL_INDEXES.put("OrderTable", List.of(
+                new IndexSpec("userId-createdAt-index", "userId", ScalarAttributeType.S, "createdAt", ScalarAttributeType.N),
+                new IndexSpec("orderStatus-createdAt-index", "orderStatus", ScalarAttributeType.S, "createdAt", ScalarAttributeType.N),
+                new IndexSpec("orderId-index", "orderId", ScalarAttributeType.S, null, null),
+                new IndexSpec("cartId-index", "cartId", ScalarAttributeType.S, null, null),
+                new IndexSpec("idempotencyKey-index", "idempotencyKey", ScalarAttributeType.S, null, null)));
+        GLOBAL_INDEXES.put("CouponTable", List.of(
+                new IndexSpec("couponCode-index", "couponCode", ScalarAttributeType.S, null, null)));
+        GLOBAL_INDEXES.put("PaymentTable", List.of(
+                new IndexSpec("orderId-index", "orderId", ScalarAttributeType.S, null, null)));
+        GLOBAL_INDEXES.put("WebhookEventTable", List.of(
+                new IndexSpec("pending-receivedAt-index", "pending", ScalarAttributeType.S, "receivedAt", ScalarAttributeType.N)));
+    }
+
     public DynamoDBTableInitializer(DynamoDbClient dynamoDbClient) {
         this.dynamoDbClient = dynamoDbClient;
     }
@@ -27,19 +72,50 @@ public class DynamoDBTableInitializer {
         createTableIfNotExist("ReviewTable", "PK", "SK");
         createTableIfNotExist("BlogTable", "PK", "SK");
         createTableIfNotExist("CouponTable", "PK", "SK");
+        createTableIfNotExist("PaymentTable", "PK", "SK");
+        createTableIfNotExist("MetricsTable", "PK", "SK");
+        createTableIfNotExist("TranslationMemoryTable", "PK", "SK");
+        createTableIfNotExist("IdempotencyTable", "PK", "SK");
+        enableTimeToLive("IdempotencyTable", "expiresAt");
+        createTableIfNotExist("WebhookEventTable", "PK", "SK");
+        enableTimeToLive("WebhookEventTable", "expiresAt");
         createSizeTableIfNotExist();
+        if (!pendingIndexes.isEmpty()) {
+            List<PendingIndex> indexes = List.copyOf(pendingIndexes);
+            indexBuilder.submit(() -> createIndexesSequentially(indexes));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexBuilder.shutdownNow();
     }
 
     private void createTableIfNotExist(String tableName, String pkName, String skName) {
+        List<IndexSpec> indexes = GLOBAL_INDEXES.getOrDefault(tableName, List.of());
         try {
-            dynamoDbClient.describeTable(b -> b.tableName(tableName));
+            DescribeTableResponse existing = dynamoDbClient.describeTable(b -> b.tableName(tableName));
             System.out.println("Table " + tableName + " already exists");
+            createMissingIndexes(existing.table(), indexes);
         } catch (ResourceNotFoundException e) {
             System.out.println("Creating table " + tableName);
 
             try {
-                dynamoDbClient.createTable(b -> b
-                    .tableName(tableName)
+                List<AttributeDefinition> attributes = new ArrayList<>(List.of(
+                        AttributeDefinition.builder()
+                                .attributeName(pkName)
+                                .attributeType(ScalarAttributeType.S)
+                                .build(),
+                        AttributeDefinition.builder()
+                                .attributeName(skName)
+                                .attributeType(ScalarAttributeType.S)
+                                .build()));
+                for (IndexSpec index : indexes) {
+                    addAttributeDefinitions(attributes, index);
+                }
+
+                dynamoDbClient.createTable(b -> {
+                    b.tableName(tableName)
                     .keySchema(
                             KeySchemaElement.builder()
                                     .attributeName(pkName)
@@ -50,18 +126,12 @@ public class DynamoDBTableInitializer {
                                     .keyType(KeyType.RANGE)
                                     .build()
                     )
-                    .attributeDefinitions(
-                            AttributeDefinition.builder()
-                                    .attributeName(pkName)
-                                    .attributeType(ScalarAttributeType.S)
-                                    .build(),
-                            AttributeDefinition.builder()
-                                    .attributeName(skName)
-                                    .attributeType(ScalarAttributeType.S)
-                                    .build()
-                    )
-                    .billingMode(BillingMode.PAY_PER_REQUEST) // tự động scale
-            );
+                    .attributeDefinitions(attributes)
+                    .billingMode(BillingMode.PAY_PER_REQUEST); // tự động scale
+                    if (!indexes.isEmpty()) {
+                        b.globalSecondaryIndexes(indexes.stream().map(IndexSpec::toIndex).collect(Collectors.toList()));
+                    }
+                });
 
                 waitForTableActive(tableName);
             } catch (SdkClientException sce) {
@@ -74,6 +144,168 @@ public class DynamoDBTableInitializer {
         }
     }
 
+    /**
+     * Ghi nhận các GSI chưa có trên bảng đã tồn tại. Việc tạo chạy nền (không chặn startup) vì
+     * DynamoDB chỉ cho tạo một index mỗi lần UpdateTable và từ chối khi index khác đang backfill;
+     * trong lúc đó repository dùng scan fallback.
+     */
+    private void createMissingIndexes(TableDescription table, List<IndexSpec> indexes) {
+        Set<String> existing = table.globalSecondaryIndexes().stream()
+                .map(GlobalSecondaryIndexDescription::indexName)
+                .collect(Collectors.toSet());
+        for (IndexSpec index : indexes) {
+            if (!existing.contains(index.name)) {
+                pendingIndexes.add(new PendingIndex(table.tableName(), index));
+            }
+        }
+    }
+
+    /**
+     * Tạo từng GSI một: chờ bảng và mọi index hiện có ACTIVE, gửi UpdateTable, rồi chờ index mới
+     * backfill xong mới chuyển sang index kế tiếp. Index nào lỗi sẽ được thử lại ở lần khởi động sau.
+     */
+    private void createIndexesSequentially(List<PendingIndex> indexes) {
+        try {
+            for (PendingIndex pending : indexes) {
+                awaitIndexesActive(pending.tableName);
+                if (!createIndex(pending.tableName, pending.index)) {
+                    continue;
+                }
+                awaitIndexesActive(pending.tableName);
+                log.info("GSI {} on {} is ACTIVE", pending.index.name, pending.tableName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SdkClientException | DynamoDbException ex) {
+            log.warn("Stopped creating GSIs, remaining ones will be retried on next startup", ex);
+        }
+    }
+
+    private boolean createIndex(String tableName, IndexSpec index) throws InterruptedException {
+        List<AttributeDefinition> attributes = new ArrayList<>();
+        addAttributeDefinitions(attributes, index);
+        while (true) {
+            try {
+                dynamoDbClient.updateTable(b -> b
+                        .tableName(tableName)
+                        .attributeDefinitions(attributes)
+                        .globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+                                .create(CreateGlobalSecondaryIndexAction.builder()
+                                        .indexName(index.name)
+                                        .keySchema(index.keySchema())
+                                        .projection(Projection.builder().projectionType(ProjectionType.ALL).build())
+                                        .build())
+                                .build()));
+                log.info("Creating GSI {} on {} (backfill runs in background)", index.name, tableName);
+                return true;
+            } catch (ResourceInUseException | LimitExceededException ex) {
+                // Bảng đang cập nhật do tiến trình khác (instance khác cũng đang khởi động): chờ rồi thử lại
+                log.debug("Table {} busy, retrying GSI {}: {}", tableName, index.name, ex.getMessage());
+                Thread.sleep(INDEX_POLL_INTERVAL_MS);
+                awaitIndexesActive(tableName);
+            } catch (DynamoDbException ex) {
+                log.warn("Could not create GSI {} on {}, will retry on next startup", index.name, tableName, ex);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Chờ đến khi bảng ACTIVE và không còn GSI nào đang CREATING/UPDATING/DELETING.
+     */
+    private void awaitIndexesActive(String tableName) throws InterruptedException {
+        while (true) {
+            TableDescription table = dynamoDbClient.describeTable(b -> b.tableName(tableName)).table();
+            boolean indexesActive = table.globalSecondaryIndexes().stream()
+                    .allMatch(gsi -> gsi.indexStatus() == IndexStatus.ACTIVE);
+            if (table.tableStatus() == TableStatus.ACTIVE && indexesActive) {
+                return;
+            }
+            Thread.sleep(INDEX_POLL_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Bật TTL cho bảng nếu chưa bật (DynamoDB tự xoá item khi thuộc tính epoch giây đã qua).
+     */
+    private void enableTimeToLive(String tableName, String attributeName) {
+        try {
+            TimeToLiveStatus status = dynamoDbClient.describeTimeToLive(b -> b.tableName(tableName))
+                    .timeToLiveDescription()
+                    .timeToLiveStatus();
+            if (status == TimeToLiveStatus.ENABLED || status == TimeToLiveStatus.ENABLING) {
+                return;
+            }
+            dynamoDbClient.updateTimeToLive(b -> b
+                    .tableName(tableName)
+                    .timeToLiveSpecification(TimeToLiveSpecification.builder()
+                            .attributeName(attributeName)
+                            .enabled(true)
+                            .build()));
+            log.info("Enabled TTL on {}.{}", tableName, attributeName);
+        } catch (SdkClientException | DynamoDbException ex) {
+            log.warn("Could not enable TTL on {}, will retry on next startup: {}", tableName, ex.getMessage());
+        }
+    }
+
+    private static void addAttributeDefinitions(List<AttributeDefinition> attributes, IndexSpec index) {
+        addAttributeDefinition(attributes, index.hashKey, index.hashType);
+        if (index.rangeKey != null) {
+            addAttributeDefinition(attributes, index.rangeKey, index.rangeType);
+        }
+    }
+
+    private static void addAttributeDefinition(List<AttributeDefinition> attributes, String name, ScalarAttributeType type) {
+        boolean defined = attributes.stream().anyMatch(a -> a.attributeName().equals(name));
+        if (!defined) {
+            attributes.add(AttributeDefinition.builder().attributeName(name).attributeType(type).build());
+        }
+    }
+
+    private static final class PendingIndex {
+        private final String tableName;
+        private final IndexSpec index;
+
+        private PendingIndex(String tableName, IndexSpec index) {
+            this.tableName = tableName;
+            this.index = index;
+        }
+    }
+
+    private static final class IndexSpec {
+        private final String name;
+        private final String hashKey;
+        private final ScalarAttributeType hashType;
+        private final String rangeKey;
+        private final ScalarAttributeType rangeType;
+
+        private IndexSpec(String name, String hashKey, ScalarAttributeType hashType,
+                          String rangeKey, ScalarAttributeType rangeType) {
+            this.name = name;
+            this.hashKey = hashKey;
+            this.hashType = hashType;
+            this.rangeKey = rangeKey;
+            this.rangeType = rangeType;
+        }
+
+        private List<KeySchemaElement> keySchema() {
+            List<KeySchemaElement> keySchema = new ArrayList<>();
+            keySchema.add(KeySchemaElement.builder().attributeName(hashKey).keyType(KeyType.HASH).build());
+            if (rangeKey != null) {
+                keySchema.add(KeySchemaElement.builder().attributeName(rangeKey).keyType(KeyType.RANGE).build());
+            }
+            return keySchema;
+        }
+
+        private GlobalSecondaryIndex toIndex() {
+            return GlobalSecondaryIndex.builder()
+                    .indexName(name)
+                    .keySchema(keySchema())
+                    .projection(Projection.builder().projectionType(ProjectionType.ALL).build())
+                    .build();
+        }
+    }
+
     private void waitForTableActive(String tableName) {
         System.out.println("Waiting for table " + tableName + " to become ACTIVE...");
         boolean active = false;
@@ -1,15 +1,27 @@
 package com.leafshop.config;
 
+import com.leafshop.cache.CacheNames;
+import com.leafshop.cache.CacheInvalidationBus;
+import com.leafshop.cache.TwoLevelCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
 @Configuration
 public class RedisConfig {
 
@@ -43,7 +55,54 @@ public class RedisConfig {
     }
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
-        return RedisCacheManager.builder(connectionFactory).build();
+    public CacheInvalidationBus cacheInvalidationBus(RedisTemplate<String, Object> redisTemplate,
+                                                     ApplicationEventPublisher eventPublisher) {
+        return new CacheInvalidationBus(redisTemplate, eventPublisher);
+    }
+
+    // Nhận thông báo invalidation từ các node khác (Redis pub/sub)
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                           CacheInvalidationBus cacheInvalidationBus) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheInvalidationBus, new ChannelTopic(CacheInvalidationBus.CHANNEL));
+        return container;
+    }
+
+    /**
+     * Cache cho các endpoint đọc nhiều (xem {@link CacheNames}): L1 trong process + L2 Redis (JSON),
+     * TTL theo cache.ttl-seconds.<tên cache>, L1 theo cache.l1.*.
+     */
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                             CacheInvalidationBus cacheInvalidationBus,
+                                             org.springframework.core.env.Environment env) {
+        Duration defaultTtl = Duration.ofSeconds(env.getProperty("cache.ttl-seconds.default", Long.class, 600L));
+        RedisCacheConfiguration defaults = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(defaultTtl)
+                .disableCachingNullValues()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        new GenericJackson2JsonRedisSerializer()));
+
+        Map<String, Duration> ttls = new HashMap<>();
+        Map<String, RedisCacheConfiguration> configs = new HashMap<>();
+        for (String name : CacheNames.ALL) {
+            Long seconds = env.getProperty("cache.ttl-seconds." + name, Long.class);
+            Duration ttl = seconds != null ? Duration.ofSeconds(seconds) : defaultTtl;
+            ttls.put(name, ttl);
+            configs.put(name, defaults.entryTtl(ttl));
+        }
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(defaults)
+                .withInitialCacheConfigurations(configs)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        Duration l1Ttl = Duration.ofSeconds(env.getProperty("cache.l1.ttl-seconds", Long.class, 60L));
+        int l1MaxEntries = env.getProperty("cache.l1.max-entries", Integer.class, 1000);
+        long l1MaxWeight = env.getProperty("cache.l1.max-weight", Long.class, 20000L);
+        return new TwoLevelCacheManager(redisCacheManager, ttls, defaultTtl, l1Ttl, l1MaxEntries, l1MaxWeight,
+                cacheInvalidationBus);
     }
 }
@@ -27,7 +27,7 @@ public class WebConfig implements WebMvcConfigurer {
                         "http://leaf-shop-frontend-prod.s3-website-ap-southeast-1.amazonaws.com"
                 )
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH")
-                .allowedHeaders("Authorization", "Content-Type", "Accept", "Origin", "X-Requested-With")
+                .allowedHeaders("Authorization", "Content-Type", "Accept", "Origin", "X-Requested-With", "Idempotency-Key")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
@@ -17,8 +17,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/admin/reviews")
 @Validated
@@ -28,11 +26,17 @@ public class AdminReviewController {
 
 	private final ReviewService reviewService;
 
+	// Có cursor/limit (và không lọc theo productId) thì trả về một trang theo cursor
 	@GetMapping
-	public ResponseEntity<List<ReviewResponse>> listReviews(
+	public ResponseEntity<?> listReviews(
 		@RequestParam(required = false) Boolean isApproved,
-		@RequestParam(required = false) String productId
+		@RequestParam(required = false) String productId,
+		@RequestParam(required = false) String cursor,
+		@RequestParam(required = false) Integer limit
 	) {
+		if ((cursor != null || limit != null) && productId == null) {
+			return ResponseEntity.ok(reviewService.listReviewsPage(isApproved, cursor, limit));
+		}
 		return ResponseEntity.ok(reviewService.listReviews(isApproved, productId));
 	}
 
@@ -16,11 +16,13 @@ import com.leafshop.auth.JwtUtil;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import com.leafshop.dto.auth.RequestOtpRequest;
@@ -233,7 +235,7 @@ public class AuthController {
         userTableRepository.save(token);
 
         // Generate access token and refresh token here
-        String accessToken = jwtUtil.generateToken(account.getUsername());
+        String accessToken = jwtUtil.generateToken(account.getUsername(), account.getRole());
 
         String refreshValue = java.util.UUID.randomUUID().toString();
         String tokenId = java.util.UUID.randomUUID().toString();
@@ -303,7 +305,8 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<?> logout(@RequestBody String refreshToken) {
+    public ResponseEntity<?> logout(@RequestBody String refreshToken,
+                                    @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
         if (refreshToken == null || refreshToken.isBlank()) {
             return ResponseEntity.badRequest().build();
         }
@@ -312,6 +315,14 @@ public class AuthController {
         if (tokenOpt.isPresent()) {
             refreshTokenService.revokeToken(tokenOpt.get());
         }
+        // Access token đang dùng cũng hết hiệu lực ngay, không chờ hết hạn
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            jwtUtil.verify(authorization.substring(7)).ifPresent(claims -> {
+                if (claims.getId() != null && claims.getExpiration() != null) {
+                    refreshTokenService.revokeAccessToken(claims.getId(), claims.getExpiration().getTime());
+                }
+            });
+        }
         return ResponseEntity.ok().build();
     }
 }
@@ -56,8 +56,9 @@ public class CartController {
     }
 
     @PostMapping("/checkout")
-    public ResponseEntity<CreateOrderResponse> checkout(@RequestBody CheckoutRequest req) {
-        return ResponseEntity.ok(cartService.checkout(req));
+    public ResponseEntity<CreateOrderResponse> checkout(@RequestBody CheckoutRequest req,
+                                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return ResponseEntity.ok(cartService.checkout(req, idempotencyKey));
     }
 
     @PostMapping("/check")
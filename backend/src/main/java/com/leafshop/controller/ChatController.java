@@ -2,13 +2,20 @@ package com.leafshop.controller;
 
 import com.leafshop.service.ChatService;
 import com.leafshop.service.OutfitSuggestionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+@Slf4j
 @RestController
 @RequestMapping(value = "/api/chat", produces = "application/json; charset=UTF-8")
 public class ChatController {
@@ -16,6 +23,9 @@ public class ChatController {
     private final ChatService chatService;
     private final OutfitSuggestionService outfitSuggestionService;
 
+    @Value("${chat.stream.timeout-ms:120000}")
+    private long streamTimeoutMs;
+
     public ChatController(ChatService chatService, OutfitSuggestionService outfitSuggestionService) {
         this.chatService = chatService;
         this.outfitSuggestionService = outfitSuggestionService;
@@ -52,4 +62,60 @@ public class ChatController {
             return ResponseEntity.status(500).body(Map.of("error", "Xin lỗi, tôi đang gặp sự cố. Vui lòng thử lại sau!"));
         }
     }
+
+    /**
+     * Chat dạng Server-Sent Events: event "delta" cho từng đoạn text, "done" khi kết thúc, "error" nếu lỗi.
+     * Thread của request được trả ngay; câu trả lời được gửi từ thread I/O của Bedrock.
+     */
+    @PostMapping(value = "/stream", consumes = "application/json; charset=UTF-8", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(
+            @AuthenticationPrincipal UserDetails user,
+            @RequestBody Map<String, String> body) {
+
+        String message = body.getOrDefault("message", "");
+        String conversationHistory = body.getOrDefault("history", "");
+        String intent = body.getOrDefault("intent", "");
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+
+        if (message.isBlank() && intent.isBlank()) {
+            send(emitter, "error", Map.of("error", "message or intent is required"));
+            emitter.complete();
+            return emitter;
+        }
+        if ("suggest_outfit".equalsIgnoreCase(intent)) {
+            send(emitter, "suggestions", outfitSuggestionService.getMockSuggestions(body));
+            emitter.complete();
+            return emitter;
+        }
+
+        String userId = user != null ? user.getUsername() : null;
+        CompletableFuture<Void> reply = chatService.streamChat(message, userId, conversationHistory,
+                text -> send(emitter, "delta", Map.of("text", text)));
+        // Client ngắt kết nối hoặc hết thời gian: dừng stream Bedrock thay vì sinh tiếp câu trả lời không ai nhận
+        emitter.onCompletion(() -> reply.cancel(true));
+        emitter.onTimeout(() -> reply.cancel(true));
+        emitter.onError(error -> reply.cancel(true));
+        reply.whenComplete((ignored, error) -> {
+            if (reply.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                log.warn("Chat stream failed: {}", error.getMessage());
+                send(emitter, "error", Map.of("error", "Xin lỗi, tôi đang gặp sự cố. Vui lòng thử lại sau!"));
+            } else {
+                send(emitter, "done", Map.of());
+            }
+            emitter.complete();
+        });
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // Client đã ngắt kết nối, phần còn lại của câu trả lời bị bỏ
+            log.debug("Dropping chat stream event {}: {}", event, e.getMessage());
+        }
+    }
 }
@@ -38,6 +38,11 @@ public class CustomerProductController {
 		));
 	}
 
+	@GetMapping("/batch")
+	public ResponseEntity<List<CustomerProductResponse>> getProductsByIds(@RequestParam List<String> ids) {
+		return ResponseEntity.ok(customerProductService.getProductsByIds(ids));
+	}
+
 	@GetMapping("/{productId}")
 	public ResponseEntity<CustomerProductResponse> getProductDetail(@PathVariable String productId) {
 		return ResponseEntity.ok(customerProductService.getProductDetail(productId));
@@ -16,4 +16,11 @@ public class DashboardController {
     public DashboardStatsDTO getStats(@RequestParam(defaultValue = "today") String period) {
         return dashboardService.getDashboardStats(period);
     }
+
+    // Tính lại bộ đếm KPI từ dữ liệu gốc (đối soát sau sự cố hoặc sau khi import dữ liệu)
+    @PostMapping("/metrics/rebuild")
+    public DashboardStatsDTO rebuildMetrics() {
+        dashboardService.rebuildMetrics();
+        return dashboardService.getDashboardStats("today");
+    }
 }
@@ -1,6 +1,10 @@
 package com.leafshop.controller;
 
+import com.leafshop.cache.CacheStats;
+import com.leafshop.cache.ResponseCache;
+import com.leafshop.cache.TwoLevelCacheManager;
 import com.leafshop.model.dynamodb.ProductTable;
+import com.leafshop.repository.IndexQueryExecutor;
 import com.leafshop.repository.ProductTableRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -21,6 +25,9 @@ import java.util.Map;
 public class DebugController {
 
 	private final ProductTableRepository productTableRepository;
+	private final IndexQueryExecutor indexQueryExecutor;
+	private final TwoLevelCacheManager cacheManager;
+	private final ResponseCache responseCache;
 
 	@GetMapping("/products/all")
 	public ResponseEntity<Map<String, Object>> getAllProducts() {
@@ -43,4 +50,22 @@ public class DebugController {
 		
 		return ResponseEntity.ok(result);
 	}
+
+	// Số lần repository phải scan vì GSI chưa sẵn sàng, theo "Table/index"
+	@GetMapping("/index-fallbacks")
+	public ResponseEntity<Map<String, Long>> getIndexFallbacks() {
+		return ResponseEntity.ok(indexQueryExecutor.fallbackCounts());
+	}
+
+	// Hit/miss/eviction của L1 và L2 theo từng cache
+	@GetMapping("/cache-stats")
+	public ResponseEntity<Map<String, CacheStats>> getCacheStats() {
+		return ResponseEntity.ok(cacheManager.stats());
+	}
+
+	// Hit rate của cache câu trả lời chatbot/bản dịch
+	@GetMapping("/response-cache-stats")
+	public ResponseEntity<Map<String, Map<String, Object>>> getResponseCacheStats() {
+		return ResponseEntity.ok(responseCache.stats());
+	}
 }
@@ -13,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/invoice")
@@ -54,6 +55,9 @@ public class InvoiceController {
                     .contentType(MediaType.APPLICATION_PDF)
                     .body(resource);
 
+        } catch (RejectedExecutionException e) {
+            // Hàng đợi render đầy
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -79,16 +83,13 @@ public class InvoiceController {
                 return ResponseEntity.notFound().build();
             }
 
-            // Send email with invoice
-            boolean sent = invoiceService.sendInvoiceEmail(order, email);
-
-            if (sent) {
-                return ResponseEntity.ok(Map.of("message", "Invoice sent successfully"));
-            } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(Map.of("error", "Failed to send invoice"));
-            }
+            // Render và gửi mail ở nền (có thử lại), không giữ request
+            invoiceService.sendInvoiceEmailAsync(order, email);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("message", "Invoice is being sent"));
 
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "Invoice service is busy, please try again"));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -6,8 +6,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/orders")
 @RequiredArgsConstructor
@@ -25,11 +23,32 @@ public class OrderController {
     // (Removed) Use POST /api/orders to create orders from cart
 
     @GetMapping
-    public ResponseEntity<List<OrderResponse>> getOrders(@RequestParam(required = false) String userId) {
+    public ResponseEntity<?> getOrders(@RequestParam(required = false) String userId,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) Integer limit,
+                                       @RequestParam(required = false) String status,
+                                       @RequestParam(required = false) String assignedTo,
+                                       @RequestParam(required = false) Long from,
+                                       @RequestParam(required = false) Long to) {
         if (userId == null || userId.isEmpty()) {
-            // Return all orders for admin/staff
+            // Admin/staff: có cursor/limit/bộ lọc thì trả về từng trang, không có thì trả toàn bộ như cũ
+            if (cursor != null || limit != null || status != null || assignedTo != null || from != null || to != null) {
+                try {
+                    return ResponseEntity.ok(orderService.getOrdersPage(status, assignedTo, from, to, cursor, limit));
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(e.getMessage());
+                }
+            }
             return ResponseEntity.ok(orderService.getAllOrders());
         }
+        // Lịch sử đơn của user: có cursor/limit thì trả về từng trang rút gọn (GSI), không có thì đầy đủ như cũ
+        if (cursor != null || limit != null) {
+            try {
+                return ResponseEntity.ok(orderService.getOrderHistoryPage(userId, cursor, limit));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+        }
         return ResponseEntity.ok(orderService.getOrdersForUser(userId));
     }
 
@@ -77,4 +96,3 @@ public class OrderController {
         return ResponseEntity.ok(resp);
     }
 }
-
@@ -20,14 +20,19 @@ public class PaymentController {
     private final PaymentService paymentService;
 
     @PostMapping("/initiate")
-    public ResponseEntity<PaymentResponse> initiate(@RequestBody InitiatePaymentRequest req) {
-        return ResponseEntity.ok(paymentService.initiatePayment(req));
+    public ResponseEntity<PaymentResponse> initiate(@RequestBody InitiatePaymentRequest req,
+                                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return ResponseEntity.ok(paymentService.initiatePayment(req, idempotencyKey));
     }
 
     @PostMapping("/webhook")
     public ResponseEntity<PaymentResponse> webhook(@RequestBody WebhookRequest req) {
-        // Providers will POST callbacks here. Signature verification should be done inside service.
-        return ResponseEntity.ok(paymentService.handleWebhook(req));
+        // Providers will POST callbacks here. Chữ ký được xác thực trong service, xử lý chạy nền
+        PaymentResponse resp = paymentService.handleWebhook(req);
+        if ("INVALID_SIGNATURE".equals(resp.getStatus()) || "INVALID".equals(resp.getStatus())) {
+            return ResponseEntity.badRequest().body(resp);
+        }
+        return ResponseEntity.accepted().body(resp);
     }
 
     @PostMapping("/webhook/stripe")
@@ -63,9 +68,7 @@ public class PaymentController {
     @GetMapping("/vnpay/return")
     public ResponseEntity<String> vnpayReturn(@RequestParam Map<String, String> params) {
         // This is called when user returns from VNPay
-        // Update payment status before redirecting to frontend
-        
-        // Create webhook request to update payment status
+        // Xếp callback vào hàng đợi (trùng với IPN sẽ được bỏ qua), kết quả hiển thị theo vnp_ResponseCode
         WebhookRequest webhookReq = new WebhookRequest();
         webhookReq.setProvider("VNPAY");
         webhookReq.setPayload(params);
@@ -76,6 +79,9 @@ public class PaymentController {
         String responseCode = params.get("vnp_ResponseCode");
         String txnRef = params.get("vnp_TxnRef");
         
+        if ("INVALID_SIGNATURE".equals(resp.getStatus())) {
+            return ResponseEntity.badRequest().body("Payment verification failed. Transaction: " + txnRef);
+        }
         if ("00".equals(responseCode)) {
             return ResponseEntity.ok("Payment successful. Transaction: " + txnRef + ", Status: " + resp.getStatus());
         } else {
@@ -92,10 +98,15 @@ public class PaymentController {
         webhookReq.setPayload(params);
         
         PaymentResponse resp = paymentService.handleWebhook(webhookReq);
-        
+
         Map<String, Object> response = new HashMap<>();
-        response.put("RspCode", "00");
-        response.put("Message", "Confirm Success");
+        if ("INVALID_SIGNATURE".equals(resp.getStatus())) {
+            response.put("RspCode", "97");
+            response.put("Message", "Invalid Checksum");
+        } else {
+            response.put("RspCode", "00");
+            response.put("Message", "Confirm Success");
+        }
         return ResponseEntity.ok(response);
     }
 }
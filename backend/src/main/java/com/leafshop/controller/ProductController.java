@@ -19,8 +19,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/products")
 @Validated
@@ -47,12 +45,18 @@ public class ProductController {
 		return ResponseEntity.ok(productService.getProduct(productId));
 	}
 
+	// Có cursor/limit thì trả về một trang (CursorPageResponse), không có thì giữ danh sách đầy đủ như cũ
 	@GetMapping
-	public ResponseEntity<List<ProductResponse>> listProducts(
+	public ResponseEntity<?> listProducts(
 		@RequestParam(required = false) String categoryId,
 		@RequestParam(required = false) String typeId,
-		@RequestParam(required = false) Boolean isActive
+		@RequestParam(required = false) Boolean isActive,
+		@RequestParam(required = false) String cursor,
+		@RequestParam(required = false) Integer limit
 	) {
+		if (cursor != null || limit != null) {
+			return ResponseEntity.ok(productService.listProductsPage(categoryId, typeId, isActive, cursor, limit));
+		}
 		return ResponseEntity.ok(productService.listProducts(categoryId, typeId, isActive));
 	}
 
@@ -1,5 +1,7 @@
 package com.leafshop.controller;
 
+import com.leafshop.dto.TranslationBatchRequest;
+import com.leafshop.dto.TranslationBatchResponse;
 import com.leafshop.dto.TranslationRequest;
 import com.leafshop.dto.TranslationResponse;
 import com.leafshop.service.TranslationService;
@@ -23,7 +25,7 @@ public class TranslationController {
     @Operation(summary = "Translate text", description = "Translate text from source language to target language")
     public ResponseEntity<TranslationResponse> translateText(@RequestBody TranslationRequest request) {
         try {
-            log.info("Translation request: {} -> {}, text length: {}",
+            log.debug("Translation request: {} -> {}, text length: {}",
                     request.getSourceLanguage(),
                     request.getTargetLanguage(),
                     request.getText().length());
@@ -48,6 +50,20 @@ public class TranslationController {
         }
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Translate many texts",
+            description = "Translate a list of texts and/or the fields of a whole page; results keep the input order")
+    public ResponseEntity<TranslationBatchResponse> translateBatch(@RequestBody TranslationBatchRequest request) {
+        try {
+            return ResponseEntity.ok(translationService.translateBatch(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Batch translation error: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     @PostMapping("/vi-to-en")
     @Operation(summary = "Translate Vietnamese to English")
     public ResponseEntity<TranslationResponse> translateViToEn(@RequestBody String text) {
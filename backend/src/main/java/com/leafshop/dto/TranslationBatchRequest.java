@@ -0,0 +1,18 @@
+package com.leafshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TranslationBatchRequest {
+    private List<String> texts;
+    private Map<String, String> fields; // cả trang sản phẩm: tên field -> nội dung
+    private String sourceLanguage; // "vi", "en", "auto"
+    private String targetLanguage; // "vi", "en"
+}
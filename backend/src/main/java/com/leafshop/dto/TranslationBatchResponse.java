@@ -0,0 +1,25 @@
+package com.leafshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TranslationBatchResponse {
+    private List<String> translations; // cùng thứ tự với texts
+    private Map<String, String> fields;
+    private String sourceLanguage;
+    private String targetLanguage;
+    private int segments;
+    private int uniqueSegments;
+    private int cacheHits;
+    private int memoryHits;
+    private int translated;
+}
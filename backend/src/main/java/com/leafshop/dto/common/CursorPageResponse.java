@@ -0,0 +1,18 @@
+package com.leafshop.dto.common;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Trang kết quả theo cursor. Gửi lại nextCursor ở request sau để lấy trang tiếp theo.
+ */
+@Value
+@Builder
+public class CursorPageResponse<T> {
+	List<T> content;
+	int size;
+	String nextCursor;
+	boolean hasNext;
+}
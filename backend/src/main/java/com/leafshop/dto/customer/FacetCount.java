@@ -0,0 +1,11 @@
+package com.leafshop.dto.customer;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class FacetCount {
+	String value; // Giá trị facet, ví dụ "M", "Đen", "100000-200000"
+	long count; // Số sản phẩm khớp các bộ lọc còn lại nếu chọn giá trị này
+}
@@ -1,9 +1,11 @@
 package com.leafshop.dto.customer;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Value;
 
 import java.util.List;
+import java.util.Map;
 
 @Value
 @Builder
@@ -15,6 +17,9 @@ public class PaginatedResponse<T> {
 	int totalPages;
 	boolean hasNext;
 	boolean hasPrevious;
+	// Facet counts theo tên bộ lọc (categoryId, typeId, size, color, price) - chỉ có ở product search
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	Map<String, List<FacetCount>> facets;
 }
 
 
@@ -9,6 +9,7 @@ public class DashboardStatsDTO {
     private KPIData kpiData;
     private Map<String, Object> revenueData;
     private Map<String, Object> ordersData;
+    private Boolean warming; // true khi bộ đếm đang được backfill lần đầu, KPI tạm thời bằng 0
 
     @Data
     public static class KPIData {
@@ -1,10 +1,14 @@
 package com.leafshop.dto.order;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class CreateOrderResponse {
     private String orderId;
     private String orderPk;
@@ -0,0 +1,11 @@
+package com.leafshop.exception;
+
+/**
+ * Idempotency-Key đang được một request khác xử lý, hoặc đã dùng cho một request có nội dung khác.
+ */
+public class IdempotencyConflictException extends IllegalStateException {
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.leafshop.exception;
+
+/**
+ * Cursor phân trang do client gửi không giải mã được hoặc không khớp khoá của bảng/index.
+ */
+public class InvalidCursorException extends IllegalArgumentException {
+
+    public InvalidCursorException() {
+        super("Invalid page cursor");
+    }
+}
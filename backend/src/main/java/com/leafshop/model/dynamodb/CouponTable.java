@@ -68,4 +68,10 @@ public class CouponTable {
     public String getSk() {
         return sk;
     }
+
+    @DynamoDbAttribute("couponCode")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "couponCode-index")
+    public String getCouponCode() {
+        return couponCode;
+    }
 }
@@ -0,0 +1,59 @@
+package com.leafshop.model.dynamodb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * IdempotencyTable - kết quả của request có Idempotency-Key (checkout, khởi tạo thanh toán)
+ * PK: IDEMPOTENCY#<scope>#<key>
+ * SK: META
+ * status: IN_PROGRESS (đang xử lý, giữ khoá tới lockedUntil) | COMPLETED (responseBody để trả lại)
+ * expiresAt: epoch giây, thuộc tính TTL của bảng
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class IdempotencyRecord {
+
+    private String pk;
+
+    private String sk;
+
+    private String scope;
+
+    private String requestHash;
+
+    private String status;
+
+    private String lockToken;
+
+    private Long lockedUntil;
+
+    private String responseBody;
+
+    private Long createdAt;
+
+    private Long updatedAt;
+
+    private Long expiresAt;
+
+    @DynamoDbAttribute("PK")
+    @DynamoDbPartitionKey
+    public String getPk() {
+        return pk;
+    }
+
+    @DynamoDbAttribute("SK")
+    @DynamoDbSortKey
+    public String getSk() {
+        return sk;
+    }
+}
@@ -47,6 +47,7 @@ public class OrderTable {
     private String size;
     private String productName;
     private Integer quantity;
+    private Integer returnedQuantity; // Số lượng đã trả lại (không tính vào unitsSold của dashboard)
     private Double unitPrice;
     private Double itemTotal;
 
@@ -66,11 +67,15 @@ public class OrderTable {
     // CART fields
     private String sessionId; // For guest cart
     private List<Map<String, String>> cartItems;
+    private Long version; // Cart document: tăng mỗi lần lưu, dùng cho ghi có điều kiện
     private String cartId;
 
     // ASSIGNMENT
     private String assignedTo;
 
+    // Idempotent checkout
+    private String idempotencyKey;
+
     // Common fields
     private Long createdAt;
     private Long updatedAt;
@@ -94,6 +99,30 @@ public class OrderTable {
         return userId;
     }
 
+    @DynamoDbAttribute("orderId")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "orderId-index")
+    public String getOrderId() {
+        return orderId;
+    }
+
+    @DynamoDbAttribute("orderStatus")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "orderStatus-createdAt-index")
+    public String getOrderStatus() {
+        return orderStatus;
+    }
+
+    @DynamoDbAttribute("cartId")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "cartId-index")
+    public String getCartId() {
+        return cartId;
+    }
+
+    @DynamoDbAttribute("idempotencyKey")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "idempotencyKey-index")
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
     @DynamoDbAttribute("createdAt")
     @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey(indexNames = {"userId-createdAt-index", "orderStatus-createdAt-index"})
     public Long getCreatedAt() {
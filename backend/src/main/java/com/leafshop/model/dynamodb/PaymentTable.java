@@ -48,4 +48,10 @@ public class PaymentTable {
     public String getSk() {
         return sk;
     }
+
+    @DynamoDbAttribute("orderId")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "orderId-index")
+    public String getOrderId() {
+        return orderId;
+    }
 }
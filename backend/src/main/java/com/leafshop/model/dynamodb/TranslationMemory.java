@@ -0,0 +1,49 @@
+package com.leafshop.model.dynamodb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * TranslationMemoryTable - bản dịch đã có, dùng lại thay vì gọi AWS Translate
+ * PK: TM#<sha256(sourceLanguage|sourceText)>
+ * SK: <sourceLanguage>><targetLanguage>
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class TranslationMemory {
+
+    private String pk;
+
+    private String sk;
+
+    private String sourceLanguage;
+
+    private String targetLanguage;
+
+    private String sourceText;
+
+    private String translatedText;
+
+    private Long createdAt;
+
+    @DynamoDbAttribute("PK")
+    @DynamoDbPartitionKey
+    public String getPk() {
+        return pk;
+    }
+
+    @DynamoDbAttribute("SK")
+    @DynamoDbSortKey
+    public String getSk() {
+        return sk;
+    }
+}
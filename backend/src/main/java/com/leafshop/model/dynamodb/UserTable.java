@@ -62,6 +62,12 @@ public class UserTable {
 
     private String roleId; // e.g., CUSTOMER, ADMIN
 
+    @DynamoDbAttribute("username")
+    @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "username-index")
+    public String getUsername() {
+        return username;
+    }
+
     @DynamoDbAttribute("email")
     @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey(indexNames = "email-index")
     public String getEmail() {
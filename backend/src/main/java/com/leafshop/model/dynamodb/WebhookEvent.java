@@ -0,0 +1,97 @@
+package com.leafshop.model.dynamodb;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+import java.util.Map;
+
+/**
+ * WebhookEventTable - callback thanh toán đã xác thực chữ ký, chờ worker xử lý (outbox)
+ * PK: WEBHOOK#<provider>#<transactionId>#<paymentStatus>  (một item cho mỗi kết quả của một giao dịch)
+ * SK: META
+ * status: RECEIVED | PROCESSING | PROCESSED | FAILED
+ * pending: "PENDING" khi chưa xong, bỏ đi khi PROCESSED/FAILED (GSI thưa pending-receivedAt-index)
+ * expiresAt: epoch giây, thuộc tính TTL của bảng
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class WebhookEvent {
+
+    private String pk;
+
+    private String sk;
+
+    private String provider;
+
+    // Mã giao dịch của provider dùng để khử trùng lặp
+    private String transactionId;
+
+    // Mã giao dịch ghi lại vào PaymentTable (null nếu provider không gửi)
+    private String providerTransactionId;
+
+    private String paymentId;
+
+    private String orderId;
+
+    // Trạng thái thanh toán nội bộ đã map từ mã của provider: PAID | CANCELLED | FAILED
+    private String paymentStatus;
+
+    private String providerStatus;
+
+    private Map<String, String> payload;
+
+    private String status;
+
+    private String pending;
+
+    private Integer attempts;
+
+    private Long nextAttemptAt;
+
+    private String claimToken;
+
+    private Long claimedUntil;
+
+    private String lastError;
+
+    private Long receivedAt;
+
+    private Long processedAt;
+
+    private Long expiresAt;
+
+    @DynamoDbAttribute("PK")
+    @DynamoDbPartitionKey
+    public String getPk() {
+        return pk;
+    }
+
+    @DynamoDbAttribute("SK")
+    @DynamoDbSortKey
+    public String getSk() {
+        return sk;
+    }
+
+    @DynamoDbAttribute("pending")
+    @DynamoDbSecondaryPartitionKey(indexNames = "pending-receivedAt-index")
+    public String getPending() {
+        return pending;
+    }
+
+    @DynamoDbAttribute("receivedAt")
+    @DynamoDbSecondarySortKey(indexNames = "pending-receivedAt-index")
+    public Long getReceivedAt() {
+        return receivedAt;
+    }
+}
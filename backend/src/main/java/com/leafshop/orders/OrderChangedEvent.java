@@ -0,0 +1,20 @@
+package com.leafshop.orders;
+
+import com.leafshop.model.dynamodb.OrderTable;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Order META vừa được ghi (checkout, đổi trạng thái, thanh toán, phân công, trả hàng).
+ * items chỉ có khi dòng hàng thay đổi (checkout); null nghĩa là giữ nguyên dòng hàng đã có.
+ */
+@Value
+public class OrderChangedEvent {
+    OrderTable meta;
+    List<OrderTable> items;
+
+    public static OrderChangedEvent metaChanged(OrderTable meta) {
+        return new OrderChangedEvent(meta, null);
+    }
+}
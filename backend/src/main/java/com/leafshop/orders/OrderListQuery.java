@@ -0,0 +1,19 @@
+package com.leafshop.orders;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Bộ lọc danh sách đơn admin; mọi điều kiện đều tuỳ chọn. Kết quả luôn theo createdAt giảm dần.
+ */
+@Value
+@Builder
+public class OrderListQuery {
+    String status;
+    String assignedTo;
+    // createdAt trong [from, to] (epoch millis)
+    Long from;
+    Long to;
+    String cursor;
+    int limit;
+}
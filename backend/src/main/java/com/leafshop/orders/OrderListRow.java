@@ -0,0 +1,32 @@
+package com.leafshop.orders;
+
+import com.leafshop.dto.order.OrderItemResponse;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Một dòng của danh sách đơn cho admin/staff: các thuộc tính META cần để lọc/sắp xếp/hiển thị
+ * cùng dòng hàng rút gọn, đủ để dựng OrderResponse mà không đọc DynamoDB.
+ */
+@Value
+@Builder
+public class OrderListRow {
+    String orderPk;
+    String orderId;
+    String userId;
+    String orderStatus;
+    String paymentStatus;
+    String paymentMethod;
+    String assignedTo;
+    Double subtotal;
+    Double shippingAmount;
+    Double discountAmount;
+    Double totalAmount;
+    Map<String, String> shippingAddress;
+    List<OrderItemResponse> items;
+    long createdAt;
+    Long updatedAt;
+}
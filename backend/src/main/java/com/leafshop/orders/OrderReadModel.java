@@ -0,0 +1,375 @@
+package com.leafshop.orders;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheInvalidationBus;
+import com.leafshop.dto.order.OrderItemResponse;
+import com.leafshop.exception.InvalidCursorException;
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.repository.OrderTableRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * Read model danh sách đơn cho admin/staff (CQRS): dòng rút gọn trong bộ nhớ, index theo createdAt,
+ * trạng thái và người được phân công, để danh sách là một lần đọc theo khoảng, không scan/query DynamoDB.
+ *
+ * - Nạp lười ở lần đọc đầu bằng hai parallel scan (order META + ITEM#), không query từng đơn.
+ * - CartService / OrderService / PaymentServiceImpl phát {@link OrderChangedEvent} sau mỗi lần ghi order META;
+ *   projector cập nhật dòng tương ứng rồi báo các node khác qua {@link CacheInvalidationBus} (kênh "orders"),
+ *   node nhận nạp lại partition đó (một query).
+ * - Lần nạp lại định kỳ (order.read-model.refresh-interval-ms) sửa các thay đổi bị lỡ. Store mới được dựng
+ *   ngoài lock rồi đổi qua tham chiếu volatile, nên đọc và projector không phải chờ scan; thay đổi đến trong
+ *   lúc scan vừa áp vào store cũ vừa được ghi lại để phát lại lên store mới trước khi đổi.
+ *
+ * Lỗi projector chỉ được log, không làm hỏng thao tác ghi.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderReadModel {
+
+    public static final String INVALIDATION_CHANNEL = "orders";
+
+    private static final Comparator<RowKey> NEWEST_FIRST = Comparator
+            .comparingLong(RowKey::getCreatedAt).reversed()
+            .thenComparing(RowKey::getOrderPk);
+
+    private final OrderTableRepository orderTableRepository;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final Object reloadLock = new Object();
+    private volatile Store store;
+    // Khác null khi đang nạp lại: thay đổi cần phát lại lên store mới; chỉ đọc/ghi dưới lock của OrderReadModel
+    private List<Consumer<Store>> pendingChanges;
+
+    /**
+     * Toàn bộ đơn, mới nhất trước.
+     */
+    public List<OrderListRow> all() {
+        Store current = store();
+        List<OrderListRow> rows = new ArrayList<>(current.rows.size());
+        current.byCreatedAt.forEach(key -> {
+            OrderListRow row = current.rows.get(key.orderPk);
+            if (row != null) {
+                rows.add(row);
+            }
+        });
+        return rows;
+    }
+
+    /**
+     * Một trang đơn theo bộ lọc, đọc theo thứ tự createdAt giảm dần từ index hẹp nhất.
+     */
+    public OrderListPage query(OrderListQuery query) {
+        Store current = store();
+        NavigableSet<RowKey> index;
+        if (query.getStatus() != null) {
+            index = current.byStatus.getOrDefault(query.getStatus(), Collections.emptyNavigableSet());
+        } else if (query.getAssignedTo() != null) {
+            index = current.byAssignee.getOrDefault(query.getAssignedTo(), Collections.emptyNavigableSet());
+        } else {
+            index = current.byCreatedAt;
+        }
+
+        RowKey after = decodeCursor(query.getCursor());
+        if (after != null) {
+            index = index.tailSet(after, false);
+        } else if (query.getTo() != null) {
+            // createdAt <= to: bắt đầu từ đơn mới nhất không vượt quá to
+            index = index.tailSet(new RowKey(query.getTo(), ""), true);
+        }
+
+        List<OrderListRow> content = new ArrayList<>(query.getLimit());
+        boolean hasNext = false;
+        for (RowKey key : index) {
+            if (query.getFrom() != null && key.createdAt < query.getFrom()) {
+                break;
+            }
+            if (query.getTo() != null && key.createdAt > query.getTo()) {
+                continue;
+            }
+            OrderListRow row = current.rows.get(key.orderPk);
+            if (row == null || !matches(row, query)) {
+                continue;
+            }
+            if (content.size() == query.getLimit()) {
+                hasNext = true;
+                break;
+            }
+            content.add(row);
+        }
+
+        String nextCursor = hasNext ? encodeCursor(content.get(content.size() - 1)) : null;
+        return new OrderListPage(content, nextCursor);
+    }
+
+    @EventListener
+    public void onOrderChanged(OrderChangedEvent event) {
+        OrderTable meta = event.getMeta();
+        if (meta == null || meta.getPk() == null) {
+            return;
+        }
+        try {
+            apply(target -> {
+                List<OrderItemResponse> items = event.getItems() != null
+                        ? toItems(event.getItems())
+                        : existingItems(target, meta.getPk());
+                target.put(toRow(meta, items));
+            });
+        } catch (Exception e) {
+            log.warn("Failed to project order {}: {}", meta.getPk(), e.getMessage());
+        }
+        cacheInvalidationBus.publish(INVALIDATION_CHANNEL, meta.getPk());
+    }
+
+    // Đơn được ghi trên node khác
+    @EventListener
+    public void onOrderInvalidated(CacheInvalidatedEvent event) {
+        if (!INVALIDATION_CHANNEL.equals(event.getCacheName()) || !loadedOrLoading()) {
+            return;
+        }
+        if (event.getKey() == null) {
+            scheduledReload();
+            return;
+        }
+        try {
+            List<OrderTable> partition = orderTableRepository.findByPk(event.getKey());
+            OrderTable meta = partition.stream().filter(row -> "META".equals(row.getSk())).findFirst().orElse(null);
+            if (meta == null || !isOrder(meta)) {
+                apply(target -> target.remove(event.getKey()));
+            } else {
+                OrderListRow row = toRow(meta, toItems(partition));
+                apply(target -> target.put(row));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to refresh order read model for {}: {}", event.getKey(), e.getMessage());
+        }
+    }
+
+    /**
+     * Scan lại toàn bộ đơn và thay store. Mỗi lúc chỉ một lần nạp; scan chạy ngoài lock của store.
+     */
+    public void reload() {
+        synchronized (reloadLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                pendingChanges = new ArrayList<>();
+            }
+            try {
+                Map<String, List<OrderTable>> itemsByPk = new HashMap<>();
+                for (OrderTable item : orderTableRepository.scanAllOrderItems()) {
+                    itemsByPk.computeIfAbsent(item.getPk(), k -> new ArrayList<>()).add(item);
+                }
+                Store loaded = new Store();
+                for (OrderTable meta : orderTableRepository.scanAllOrdersMeta()) {
+                    if (isOrder(meta)) {
+                        loaded.put(toRow(meta, toItems(itemsByPk.getOrDefault(meta.getPk(), List.of()))));
+                    }
+                }
+                int replayed;
+                synchronized (this) {
+                    replayed = pendingChanges.size();
+                    pendingChanges.forEach(change -> change.accept(loaded));
+                    store = loaded;
+                }
+                log.info("Order read model loaded: {} orders in {} ms ({} changes replayed)", loaded.rows.size(),
+                        System.currentTimeMillis() - start, replayed);
+            } finally {
+                synchronized (this) {
+                    pendingChanges = null;
+                }
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${order.read-model.refresh-interval-ms:300000}",
+            fixedDelayString = "${order.read-model.refresh-interval-ms:300000}")
+    public void scheduledReload() {
+        if (store == null) {
+            return; // chưa có request nào dùng read model, để nạp lười
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("Scheduled order read model reload failed, keeping previous rows: {}", e.getMessage());
+        }
+    }
+
+    private Store store() {
+        Store current = store;
+        if (current == null) {
+            synchronized (reloadLock) {
+                if (store == null) {
+                    reload();
+                }
+                current = store;
+            }
+        }
+        return current;
+    }
+
+    private synchronized boolean loadedOrLoading() {
+        return store != null || pendingChanges != null;
+    }
+
+    // Áp thay đổi lên store hiện tại (nếu đã nạp) và giữ lại để phát lại nếu đang nạp lại
+    private synchronized void apply(Consumer<Store> change) {
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+        Store current = store;
+        if (current != null) {
+            change.accept(current);
+        }
+    }
+
+    private static boolean isOrder(OrderTable meta) {
+        return meta.getPk() != null && !meta.getPk().startsWith("CART#") && meta.getOrderId() != null;
+    }
+
+    private static boolean matches(OrderListRow row, OrderListQuery query) {
+        return (query.getStatus() == null || query.getStatus().equals(row.getOrderStatus()))
+                && (query.getAssignedTo() == null || query.getAssignedTo().equals(row.getAssignedTo()));
+    }
+
+    private static List<OrderItemResponse> existingItems(Store current, String pk) {
+        OrderListRow existing = current.rows.get(pk);
+        return existing != null ? existing.getItems() : List.of();
+    }
+
+    private static List<OrderItemResponse> toItems(List<OrderTable> rows) {
+        List<OrderItemResponse> items = new ArrayList<>();
+        for (OrderTable row : rows) {
+            if (row.getSk() != null && row.getSk().startsWith("ITEM#")) {
+                items.add(OrderItemResponse.builder()
+                        .itemId(row.getSk().replaceFirst("ITEM#", ""))
+                        .productId(row.getProductId())
+                        .variantId(row.getVariantId())
+                        .productName(row.getProductName())
+                        .quantity(row.getQuantity())
+                        .unitPrice(row.getUnitPrice())
+                        .itemTotal(row.getItemTotal())
+                        .build());
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    private static OrderListRow toRow(OrderTable meta, List<OrderItemResponse> items) {
+        return OrderListRow.builder()
+                .orderPk(meta.getPk())
+                .orderId(meta.getOrderId())
+                .userId(meta.getUserId())
+                .orderStatus(meta.getOrderStatus())
+                .paymentStatus(meta.getPaymentStatus())
+                .paymentMethod(meta.getPaymentMethod())
+                .assignedTo(meta.getAssignedTo())
+                .subtotal(meta.getSubtotal())
+                .shippingAmount(meta.getShippingAmount())
+                .discountAmount(meta.getDiscountAmount())
+                .totalAmount(meta.getTotalAmount())
+                .shippingAddress(meta.getShippingAddress())
+                .items(items)
+                .createdAt(meta.getCreatedAt() != null ? meta.getCreatedAt() : 0L)
+                .updatedAt(meta.getUpdatedAt())
+                .build();
+    }
+
+    // Cursor = "<createdAt>|<orderPk>" của dòng cuối trang, Base64 URL-safe
+    private static String encodeCursor(OrderListRow row) {
+        String raw = row.getCreatedAt() + "|" + row.getOrderPk();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static RowKey decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new RowKey(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (Exception e) {
+            throw new InvalidCursorException();
+        }
+    }
+
+    /**
+     * Dòng của trang và cursor tới trang sau (null = hết).
+     */
+    @lombok.Value
+    public static class OrderListPage {
+        List<OrderListRow> content;
+        String nextCursor;
+    }
+
+    @lombok.Value
+    static class RowKey {
+        long createdAt;
+        String orderPk;
+    }
+
+    // Dòng theo pk + các index sắp theo createdAt giảm dần; store đang dùng chỉ ghi dưới lock của OrderReadModel
+    private static final class Store {
+        private final Map<String, OrderListRow> rows = new ConcurrentHashMap<>();
+        private final NavigableSet<RowKey> byCreatedAt = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+        private final Map<String, NavigableSet<RowKey>> byStatus = new ConcurrentHashMap<>();
+        private final Map<String, NavigableSet<RowKey>> byAssignee = new ConcurrentHashMap<>();
+
+        private void put(OrderListRow row) {
+            OrderListRow existing = rows.get(row.getOrderPk());
+            // Thay đổi phát lại có thể cũ hơn dòng scan vừa đọc: giữ bản có updatedAt mới hơn
+            if (existing != null && existing.getUpdatedAt() != null && row.getUpdatedAt() != null
+                    && existing.getUpdatedAt() > row.getUpdatedAt()) {
+                return;
+            }
+            remove(row.getOrderPk());
+            RowKey key = new RowKey(row.getCreatedAt(), row.getOrderPk());
+            rows.put(row.getOrderPk(), row);
+            byCreatedAt.add(key);
+            if (row.getOrderStatus() != null) {
+                byStatus.computeIfAbsent(row.getOrderStatus(), k -> new ConcurrentSkipListSet<>(NEWEST_FIRST)).add(key);
+            }
+            if (row.getAssignedTo() != null) {
+                byAssignee.computeIfAbsent(row.getAssignedTo(), k -> new ConcurrentSkipListSet<>(NEWEST_FIRST)).add(key);
+            }
+        }
+
+        private void remove(String orderPk) {
+            OrderListRow previous = rows.remove(orderPk);
+            if (previous == null) {
+                return;
+            }
+            RowKey key = new RowKey(previous.getCreatedAt(), orderPk);
+            byCreatedAt.remove(key);
+            if (previous.getOrderStatus() != null) {
+                NavigableSet<RowKey> keys = byStatus.get(previous.getOrderStatus());
+                if (keys != null) {
+                    keys.remove(key);
+                }
+            }
+            if (previous.getAssignedTo() != null) {
+                NavigableSet<RowKey> keys = byAssignee.get(previous.getAssignedTo());
+                if (keys != null) {
+                    keys.remove(key);
+                }
+            }
+        }
+    }
+}
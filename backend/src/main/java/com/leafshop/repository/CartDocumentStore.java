@@ -0,0 +1,406 @@
+package com.leafshop.repository;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.model.dynamodb.OrderTable;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Giỏ hàng dạng một document: item CART#.../META với toàn bộ dòng hàng trong thuộc tính cartItems.
+ *
+ * - Đọc: bản chưa flush của node / Redis (chia sẻ giữa các node) / cache trong process -> DynamoDB;
+ *   giữa các bản trong cache, bản có version lớn hơn thắng. Nạp vào Redis chỉ ghi khi Redis chưa có bản mới hơn.
+ *   Khi Redis lỗi, dùng cache LRU trong process và tạm bỏ qua Redis cart.document.redis-retry-interval-ms.
+ *   Giỏ được ghi/xoá trong lúc Redis lỗi được ghi lại (hoặc xoá) trên Redis khi Redis hoạt động trở lại,
+ *   để bản cũ trên Redis không che mất thay đổi.
+ * - Ghi: {@link #save(OrderTable)} là compare-and-set theo version (script Lua trên Redis, giữa các node),
+ *   ném OptimisticLockingFailureException nếu giỏ đã đổi từ lúc đọc; {@link #modify(String, Supplier)} chạy
+ *   read-modify-write dưới lock theo pk và thử lại khi xung đột. Khi Redis lỗi chỉ so được với bản trong process.
+ *   DynamoDB được ghi sau (write-behind) bởi {@link #flushPending()}, có điều kiện version cũ hơn;
+ *   nhiều thay đổi liên tiếp của một giỏ chỉ tốn một PutItem.
+ * - Không xoá giỏ: checkout lưu lại giỏ không còn dòng đã đặt (giỏ rỗng là tombstone với version mới),
+ *   nên request đọc giỏ trước checkout không ghi đè/hồi sinh được giỏ cũ.
+ * - Giỏ cũ lưu mỗi dòng một item ITEM# được chuyển sang document ở lần đọc đầu tiên.
+ */
+@Slf4j
+@Component
+public class CartDocumentStore {
+
+    public static final String LINE_ITEM_ID = "itemId";
+    public static final String LINE_PRODUCT_ID = "productId";
+    public static final String LINE_VARIANT_ID = "variantId";
+    public static final String LINE_PRODUCT_NAME = "productName";
+    public static final String LINE_SIZE = "size";
+    public static final String LINE_QUANTITY = "quantity";
+    public static final String LINE_UNIT_PRICE = "unitPrice";
+    public static final String LINE_CREATED_AT = "createdAt";
+
+    private static final String CACHE_PREFIX = "cart:";
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_MODIFY_ATTEMPTS = 5;
+
+    // Ghi KEYS[1] = ARGV[1] nếu version của bản đang lưu bằng ARGV[2] (hoặc chưa có), TTL ARGV[3] giây
+    static final RedisScript<Long> COMPARE_AND_SET = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) "
+                    + "if current and (tonumber(cjson.decode(current)['version']) or 0) ~= tonumber(ARGV[2]) then return 0 end "
+                    + "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3]) return 1", Long.class);
+    // Ghi KEYS[1] = ARGV[1] nếu chưa có hoặc bản đang lưu có version nhỏ hơn ARGV[2]
+    static final RedisScript<Long> SET_IF_NEWER = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1]) "
+                    + "if current and (tonumber(cjson.decode(current)['version']) or 0) >= tonumber(ARGV[2]) then return 0 end "
+                    + "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3]) return 1", Long.class);
+
+    private final OrderTableRepository orderTableRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long cacheTtlMinutes;
+    private final long redisRetryIntervalMs;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Map<String, OrderTable> pending = new ConcurrentHashMap<>();
+    private final Map<String, OrderTable> local;
+    // Giỏ mà bản trên Redis đã cũ (ghi/xoá thất bại khi Redis lỗi), chờ ghi lại
+    private final Set<String> staleInRedis = ConcurrentHashMap.newKeySet();
+    private final Object[] flushLocks = new Object[LOCK_STRIPES];
+    private volatile long redisUnavailableUntil;
+
+    public CartDocumentStore(OrderTableRepository orderTableRepository,
+                             RedisTemplate<String, Object> redisTemplate,
+                             @Value("${cart.document.cache-ttl-minutes:1440}") long cacheTtlMinutes,
+                             @Value("${cart.document.local-max-entries:10000}") int localMaxEntries,
+                             @Value("${cart.document.redis-retry-interval-ms:30000}") long redisRetryIntervalMs) {
+        this.orderTableRepository = orderTableRepository;
+        this.redisTemplate = redisTemplate;
+        this.cacheTtlMinutes = cacheTtlMinutes;
+        this.redisRetryIntervalMs = redisRetryIntervalMs;
+        this.local = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OrderTable> eldest) {
+                return size() > localMaxEntries;
+            }
+        });
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            flushLocks[i] = new Object();
+        }
+    }
+
+    public Optional<OrderTable> find(String pk) {
+        OrderTable unflushed = pending.get(pk);
+        OrderTable cached = readCache(pk);
+        if (unflushed != null && (cached == null || isNewer(unflushed, cached))) {
+            refreshCache(unflushed);
+            return Optional.of(copy(unflushed));
+        }
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<OrderTable> stored = orderTableRepository.findCartByPk(pk);
+        if (stored.isEmpty()) {
+            return Optional.empty();
+        }
+        OrderTable cart = stored.get();
+        if (cart.getCartItems() == null) {
+            migrateLegacyItems(cart);
+        }
+        refreshCache(cart);
+        return Optional.of(cart);
+    }
+
+    /**
+     * Lưu giỏ vào cache ngay và xếp hàng ghi DynamoDB, chỉ khi giỏ chưa bị ghi từ lúc đọc
+     * (version của cart là version đã đọc; null = giỏ mới). Thành công thì cart mang version mới.
+     *
+     * @throws OptimisticLockingFailureException giỏ đã được ghi bởi request khác sau lần đọc
+     */
+    public void save(OrderTable cart) {
+        synchronized (lockFor(cart.getPk())) {
+            long expected = version(cart);
+            // Lưu bản sao: caller có thể tiếp tục sửa object trong lúc flush đang ghi
+            OrderTable snapshot = copy(cart);
+            snapshot.setVersion(expected + 1);
+            snapshot.setUpdatedAt(System.currentTimeMillis());
+            if (!compareAndSetCache(snapshot, expected)) {
+                throw new OptimisticLockingFailureException("Cart " + cart.getPk() + " was modified concurrently");
+            }
+            pending.put(snapshot.getPk(), snapshot);
+            cart.setVersion(snapshot.getVersion());
+            cart.setUpdatedAt(snapshot.getUpdatedAt());
+        }
+    }
+
+    /**
+     * Chạy read-modify-write của một giỏ (đọc bằng {@link #find(String)}, ghi bằng {@link #save(OrderTable)})
+     * tuần tự với các thay đổi khác của giỏ trên node này; chạy lại từ đầu khi node khác ghi chen vào.
+     */
+    public <T> T modify(String pk, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            synchronized (lockFor(pk)) {
+                try {
+                    return action.get();
+                } catch (OptimisticLockingFailureException e) {
+                    if (attempt >= MAX_MODIFY_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.debug("Retrying update of cart {} after concurrent write (attempt {})", pk, attempt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ghi ngay bản chưa flush của một giỏ (dùng trước khi checkout đọc trực tiếp DynamoDB).
+     */
+    public void flush(String pk) {
+        synchronized (lockFor(pk)) {
+            OrderTable cart = pending.remove(pk);
+            if (cart != null && !orderTableRepository.saveCartIfNewer(cart)) {
+                log.debug("Skipped flushing cart {} version {}: a newer version is already stored", pk, cart.getVersion());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.document.flush-interval-ms:2000}")
+    public void flushPending() {
+        repairRedis();
+        if (pending.isEmpty()) {
+            return;
+        }
+        int flushed = 0;
+        for (String pk : new ArrayList<>(pending.keySet())) {
+            try {
+                flush(pk);
+                flushed++;
+            } catch (Exception e) {
+                log.warn("Failed to flush cart {}: {}", pk, e.getMessage());
+                // Giữ bản mới nhất (nếu có thay đổi mới trong lúc ghi thì bản đó thắng)
+                OrderTable latest = readLocal(pk);
+                if (latest != null) {
+                    pending.putIfAbsent(pk, latest);
+                }
+            }
+        }
+        log.debug("Flushed {} cart documents", flushed);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushPending();
+    }
+
+    /**
+     * Các dòng của giỏ dưới dạng item ITEM# (để tính tổng và chuyển thành order item khi checkout).
+     */
+    public static List<OrderTable> toItems(OrderTable cart) {
+        List<OrderTable> items = new ArrayList<>();
+        if (cart.getCartItems() == null) {
+            return items;
+        }
+        for (Map<String, String> line : cart.getCartItems()) {
+            int quantity = parseInt(line.get(LINE_QUANTITY));
+            double unitPrice = parseDouble(line.get(LINE_UNIT_PRICE));
+            items.add(OrderTable.builder()
+                    .pk(cart.getPk())
+                    .sk("ITEM#" + line.get(LINE_ITEM_ID))
+                    .itemType("CartItem")
+                    .productId(line.get(LINE_PRODUCT_ID))
+                    .variantId(line.get(LINE_VARIANT_ID))
+                    .productName(line.get(LINE_PRODUCT_NAME))
+                    .size(line.get(LINE_SIZE))
+                    .quantity(quantity)
+                    .unitPrice(unitPrice)
+                    .itemTotal(unitPrice * quantity)
+                    .createdAt(line.get(LINE_CREATED_AT) != null ? Long.valueOf(line.get(LINE_CREATED_AT)) : null)
+                    .build());
+        }
+        return items;
+    }
+
+    public static Map<String, String> toLine(OrderTable item) {
+        Map<String, String> line = new HashMap<>();
+        line.put(LINE_ITEM_ID, item.getSk().replaceFirst("ITEM#", ""));
+        putIfNotNull(line, LINE_PRODUCT_ID, item.getProductId());
+        putIfNotNull(line, LINE_VARIANT_ID, item.getVariantId());
+        putIfNotNull(line, LINE_PRODUCT_NAME, item.getProductName());
+        putIfNotNull(line, LINE_SIZE, item.getSize());
+        putIfNotNull(line, LINE_QUANTITY, item.getQuantity());
+        putIfNotNull(line, LINE_UNIT_PRICE, item.getUnitPrice());
+        putIfNotNull(line, LINE_CREATED_AT, item.getCreatedAt());
+        return line;
+    }
+
+    // Chuyển giỏ kiểu cũ (META + nhiều ITEM#) sang document rồi xoá các ITEM#
+    private void migrateLegacyItems(OrderTable cart) {
+        List<OrderTable> legacyItems = orderTableRepository.findOrderItemsByPk(cart.getPk());
+        List<Map<String, String>> lines = new ArrayList<>();
+        legacyItems.forEach(item -> lines.add(toLine(item)));
+        cart.setCartItems(lines);
+        orderTableRepository.save(cart);
+        legacyItems.forEach(item -> orderTableRepository.deleteByPkAndSk(item.getPk(), item.getSk()));
+        log.info("Migrated cart {} with {} items to a single document", cart.getPk(), lines.size());
+    }
+
+    /**
+     * Ghi lại lên Redis các giỏ đã thay đổi trong lúc Redis lỗi (trừ khi node khác đã ghi bản mới hơn);
+     * giỏ không còn trong cache process thì xoá key Redis để lần đọc sau lấy từ DynamoDB.
+     */
+    void repairRedis() {
+        if (staleInRedis.isEmpty() || !redisAvailable()) {
+            return;
+        }
+        int repaired = 0;
+        for (String pk : new ArrayList<>(staleInRedis)) {
+            synchronized (lockFor(pk)) {
+                OrderTable cart = local.get(pk);
+                try {
+                    if (cart != null) {
+                        setIfNewer(cart);
+                    } else {
+                        redisTemplate.delete(CACHE_PREFIX + pk);
+                    }
+                    staleInRedis.remove(pk);
+                    repaired++;
+                } catch (Exception e) {
+                    markRedisUnavailable(e);
+                    return;
+                }
+            }
+        }
+        log.info("Rewrote {} cart documents changed while Redis was unavailable", repaired);
+    }
+
+    private OrderTable readCache(String pk) {
+        OrderTable cached = null;
+        if (redisAvailable() && !staleInRedis.contains(pk)) {
+            try {
+                Object json = redisTemplate.opsForValue().get(CACHE_PREFIX + pk);
+                cached = json != null ? objectMapper.readValue(json.toString(), OrderTable.class) : null;
+            } catch (Exception e) {
+                markRedisUnavailable(e);
+            }
+        }
+        // Bản trong process mới hơn Redis khi node này sửa giỏ lúc Redis lỗi
+        OrderTable inProcess = readLocal(pk);
+        if (inProcess != null && (cached == null || isNewer(inProcess, cached))) {
+            return inProcess;
+        }
+        return cached;
+    }
+
+    private static boolean isNewer(OrderTable candidate, OrderTable current) {
+        return version(candidate) > version(current);
+    }
+
+    private static long version(OrderTable cart) {
+        return cart.getVersion() != null ? cart.getVersion() : 0;
+    }
+
+    private OrderTable readLocal(String pk) {
+        OrderTable cart = local.get(pk);
+        return cart != null ? copy(cart) : null;
+    }
+
+    private OrderTable copy(OrderTable cart) {
+        return objectMapper.convertValue(cart, OrderTable.class);
+    }
+
+    // Compare-and-set trên Redis; Redis lỗi (hoặc bản trên Redis đang cũ) thì so với bản trong process
+    private boolean compareAndSetCache(OrderTable cart, long expected) {
+        String pk = cart.getPk();
+        if (redisAvailable() && !staleInRedis.contains(pk)) {
+            try {
+                Long written = redisTemplate.execute(COMPARE_AND_SET, List.of(CACHE_PREFIX + pk),
+                        objectMapper.writeValueAsString(cart), String.valueOf(expected), String.valueOf(ttlSeconds()));
+                if (written == null || written == 0) {
+                    return false;
+                }
+                local.put(pk, cart);
+                return true;
+            } catch (Exception e) {
+                markRedisUnavailable(e);
+            }
+        }
+        OrderTable current = pending.get(pk);
+        OrderTable inProcess = local.get(pk);
+        if (current == null || (inProcess != null && isNewer(inProcess, current))) {
+            current = inProcess;
+        }
+        if (current != null && version(current) != expected) {
+            return false;
+        }
+        local.put(pk, cart);
+        staleInRedis.add(pk);
+        return true;
+    }
+
+    // Nạp bản đọc được vào cache mà không đè bản mới hơn
+    private void refreshCache(OrderTable cart) {
+        String pk = cart.getPk();
+        OrderTable inProcess = local.get(pk);
+        if (inProcess == null || isNewer(cart, inProcess)) {
+            local.put(pk, cart);
+        }
+        if (redisAvailable() && !staleInRedis.contains(pk)) {
+            try {
+                setIfNewer(cart);
+            } catch (Exception e) {
+                markRedisUnavailable(e);
+            }
+        }
+    }
+
+    private void setIfNewer(OrderTable cart) throws Exception {
+        redisTemplate.execute(SET_IF_NEWER, List.of(CACHE_PREFIX + cart.getPk()),
+                objectMapper.writeValueAsString(cart), String.valueOf(version(cart)), String.valueOf(ttlSeconds()));
+    }
+
+    private long ttlSeconds() {
+        return TimeUnit.MINUTES.toSeconds(cacheTtlMinutes);
+    }
+
+    private boolean redisAvailable() {
+        return System.currentTimeMillis() >= redisUnavailableUntil;
+    }
+
+    private void markRedisUnavailable(Exception e) {
+        redisUnavailableUntil = System.currentTimeMillis() + redisRetryIntervalMs;
+        log.warn("Redis unavailable for cart cache, using in-process cache: {}", e.getMessage());
+    }
+
+    private Object lockFor(String pk) {
+        return flushLocks[Math.floorMod(pk.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static void putIfNotNull(Map<String, String> line, String key, Object value) {
+        if (value != null) {
+            line.put(key, value.toString());
+        }
+    }
+
+    private static int parseInt(String value) {
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+
+    private static double parseDouble(String value) {
+        return value != null ? Double.parseDouble(value) : 0.0;
+    }
+}
@@ -1,7 +1,10 @@
 package com.leafshop.repository;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.model.dynamodb.CouponTable;
+import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
@@ -23,6 +26,7 @@ import java.util.stream.Collectors;
 public class CouponTableRepository {
 
 	private final DynamoDbEnhancedClient enhancedClient;
+	private final IndexQueryExecutor indexQueryExecutor;
 
 	private DynamoDbTable<CouponTable> couponTable() {
 		return enhancedClient.table("CouponTable", TableSchema.fromBean(CouponTable.class));
@@ -43,6 +47,7 @@ public class CouponTableRepository {
 	}
 
 	// Find coupon meta by PK and SK = "META"
+	@Cacheable(cacheNames = CacheNames.COUPONS, key = "#pk", condition = "#sk == 'META'", unless = "#result == null")
 	public Optional<CouponTable> findCouponMetaByPkAndSk(String pk, String sk) {
 		Key key = Key.builder().partitionValue(pk).sortValue(sk).build();
 		return Optional.ofNullable(couponTable().getItem(key));
@@ -102,17 +107,28 @@ public class CouponTableRepository {
 	}
 
 	// Find coupon by code (scan by attribute to avoid assuming PK convention)
+	// PK đã chứa mã coupon nên đọc thẳng COUPON#<code>/META; GSI couponCode-index (scan fallback)
+	// chỉ dùng cho item cũ có PK không khớp mã
 	public Optional<CouponTable> findByCouponCode(String couponCode) {
-		Map<String, AttributeValue> eav = new HashMap<>();
-		eav.put(":code", AttributeValue.builder().s(couponCode).build());
-		Expression filterExpression = Expression.builder()
-			.expression("couponCode = :code")
-			.expressionValues(eav)
-			.build();
-
-		return couponTable()
-			.scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-			.items()
+		Optional<CouponTable> meta = findCouponMetaByPkAndSk(DynamoDBKeyUtil.couponPk(couponCode), DynamoDBKeyUtil.couponMetaSk());
+		if (meta.isPresent()) {
+			return meta;
+		}
+
+		return indexQueryExecutor.query(couponTable(), "couponCode-index", couponCode, () -> {
+				Map<String, AttributeValue> eav = new HashMap<>();
+				eav.put(":code", AttributeValue.builder().s(couponCode).build());
+				Expression filterExpression = Expression.builder()
+					.expression("couponCode = :code")
+					.expressionValues(eav)
+					.build();
+
+				return couponTable()
+					.scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
+					.items()
+					.stream()
+					.collect(Collectors.toList());
+			})
 			.stream()
 			.findFirst();
 	}
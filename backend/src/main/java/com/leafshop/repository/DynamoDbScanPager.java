@@ -0,0 +1,65 @@
+package com.leafshop.repository;
+
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scan từng trang có filter, dừng ngay khi đủ {@code limit} item.
+ *
+ * Limit của DynamoDB áp dụng trước filter nên một lần gọi có thể trả về ít item hơn;
+ * pager gọi tiếp tối đa {@link #MAX_SCAN_CALLS} lần rồi trả về trang thiếu kèm LastEvaluatedKey
+ * để mỗi request luôn có chi phí giới hạn.
+ */
+final class DynamoDbScanPager {
+
+    static final int MAX_SCAN_CALLS = 10;
+
+    private DynamoDbScanPager() {
+    }
+
+    static <T> ScanPage<T> scan(DynamoDbTable<T> table, Expression filter, int limit,
+                                Map<String, AttributeValue> exclusiveStartKey) {
+        ScanEnhancedRequest.Builder request = ScanEnhancedRequest.builder()
+                .filterExpression(filter)
+                .limit(limit);
+        if (exclusiveStartKey != null && !exclusiveStartKey.isEmpty()) {
+            request.exclusiveStartKey(exclusiveStartKey);
+        }
+
+        Collection<String> keyAttributes = table.tableSchema().tableMetadata().primaryKeys();
+        List<T> items = new ArrayList<>(limit);
+        Iterator<Page<T>> pages = table.scan(request.build()).iterator();
+        int calls = 0;
+        while (pages.hasNext()) {
+            Page<T> page = pages.next();
+            calls++;
+            List<T> pageItems = page.items();
+            for (int i = 0; i < pageItems.size(); i++) {
+                items.add(pageItems.get(i));
+                if (items.size() == limit) {
+                    // Dừng giữa trang: trang sau bắt đầu ngay sau item cuối đã trả về
+                    Map<String, AttributeValue> next = i == pageItems.size() - 1
+                            ? page.lastEvaluatedKey()
+                            : table.tableSchema().itemToMap(pageItems.get(i), keyAttributes);
+                    return new ScanPage<>(items, next);
+                }
+            }
+            if (page.lastEvaluatedKey() == null || page.lastEvaluatedKey().isEmpty()) {
+                return new ScanPage<>(items, null);
+            }
+            if (calls >= MAX_SCAN_CALLS) {
+                return new ScanPage<>(items, page.lastEvaluatedKey());
+            }
+        }
+        return new ScanPage<>(items, null);
+    }
+}
@@ -0,0 +1,108 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.IdempotencyRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bản ghi Idempotency-Key; mọi lần ghi đều có điều kiện để chỉ một request giữ được khoá của một key.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyRepository {
+
+    public static final String TABLE_NAME = "IdempotencyTable";
+    public static final String TTL_ATTRIBUTE = "expiresAt";
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    private static final String SK = "META";
+
+    private final DynamoDbEnhancedClient enhancedClient;
+
+    private DynamoDbTable<IdempotencyRecord> table() {
+        return enhancedClient.table(TABLE_NAME, TableSchema.fromBean(IdempotencyRecord.class));
+    }
+
+    public static String pk(String scope, String key) {
+        return "IDEMPOTENCY#" + scope + "#" + key;
+    }
+
+    public static String sk() {
+        return SK;
+    }
+
+    public Optional<IdempotencyRecord> find(String pk) {
+        Key key = Key.builder().partitionValue(pk).sortValue(SK).build();
+        return Optional.ofNullable(table().getItem(r -> r.key(key).consistentRead(true)));
+    }
+
+    /**
+     * Giữ khoá cho key: chỉ ghi được khi key chưa có, khoá IN_PROGRESS cũ đã quá hạn, hoặc bản ghi đã hết TTL
+     * (DynamoDB xoá item hết TTL không ngay lập tức).
+     */
+    public boolean tryLock(IdempotencyRecord record, long now) {
+        Expression condition = Expression.builder()
+                .expression("attribute_not_exists(PK)"
+                        + " OR (#status = :inProgress AND lockedUntil < :now)"
+                        + " OR expiresAt < :nowSeconds")
+                .expressionNames(Map.of("#status", "status"))
+                .expressionValues(Map.of(
+                        ":inProgress", AttributeValue.builder().s(STATUS_IN_PROGRESS).build(),
+                        ":now", AttributeValue.builder().n(Long.toString(now)).build(),
+                        ":nowSeconds", AttributeValue.builder().n(Long.toString(now / 1000)).build()))
+                .build();
+        return conditionalPut(record, condition);
+    }
+
+    /**
+     * Ghi kết quả; chỉ thành công khi request này vẫn đang giữ khoá.
+     */
+    public boolean complete(IdempotencyRecord record, String lockToken) {
+        return conditionalPut(record, ownedBy(lockToken));
+    }
+
+    /**
+     * Bỏ khoá khi xử lý lỗi để client gửi lại cùng key được xử lý lại.
+     */
+    public void release(String pk, String lockToken) {
+        try {
+            table().deleteItem(DeleteItemEnhancedRequest.builder()
+                    .key(Key.builder().partitionValue(pk).sortValue(SK).build())
+                    .conditionExpression(ownedBy(lockToken))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Khoá đã hết hạn và thuộc về request khác
+        }
+    }
+
+    private boolean conditionalPut(IdempotencyRecord record, Expression condition) {
+        try {
+            table().putItem(PutItemEnhancedRequest.builder(IdempotencyRecord.class)
+                    .item(record)
+                    .conditionExpression(condition)
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private static Expression ownedBy(String lockToken) {
+        return Expression.builder()
+                .expression("lockToken = :token")
+                .expressionValues(Map.of(":token", AttributeValue.builder().s(lockToken).build()))
+                .build();
+    }
+}
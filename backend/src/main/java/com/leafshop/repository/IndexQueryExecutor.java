@@ -0,0 +1,150 @@
+package com.leafshop.repository;
+
+import com.leafshop.exception.InvalidCursorException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Query theo GSI, tự chuyển sang scan khi index chưa tồn tại hoặc đang backfill.
+ *
+ * Mỗi lần fallback được đếm theo "Table/index" và ghi log WARN kèm thời gian scan để thấy được
+ * bảng nào còn thiếu index. Sau một lỗi index, các lần gọi trong {@link #INDEX_RETRY_INTERVAL_MS}
+ * đi thẳng vào scan thay vì tốn thêm một round trip thất bại.
+ *
+ * Chỉ lỗi "index không có / chưa ACTIVE" mới chuyển sang scan. Cursor sai (ValidationException khi có
+ * exclusiveStartKey) thành {@link InvalidCursorException} (400); throttling và lỗi khác được ném lại nguyên vẹn
+ * (SDK đã tự retry throttling), để một đợt quá tải không biến mọi query thành scan toàn bảng.
+ */
+@Slf4j
+@Component
+public class IndexQueryExecutor {
+
+    static final long INDEX_RETRY_INTERVAL_MS = 60_000;
+
+    private final Map<String, LongAdder> fallbackCounts = new ConcurrentHashMap<>();
+    private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+
+    public <T> List<T> query(DynamoDbTable<T> table, String indexName, String partitionValue,
+                             Supplier<List<T>> scanFallback) {
+        String indexKey = table.tableName() + "/" + indexName;
+        if (indexAvailable(indexKey)) {
+            try {
+                List<T> items = table.index(indexName)
+                        .query(QueryConditional.keyEqualTo(Key.builder().partitionValue(partitionValue).build()))
+                        .stream()
+                        .flatMap(page -> page.items().stream())
+                        .collect(Collectors.toList());
+                markAvailable(indexKey);
+                return items;
+            } catch (DynamoDbException e) {
+                if (!isIndexUnavailable(indexName, e)) {
+                    throw e;
+                }
+                markUnavailable(indexKey, e);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        List<T> items = scanFallback.get();
+        logFallback(indexKey, items.size(), start);
+        return items;
+    }
+
+    /**
+     * Một trang query theo GSI (limit, exclusiveStartKey, projection... nằm trong {@code request}).
+     * Fallback phải tự trả về trang phù hợp, thường là toàn bộ kết quả trong một trang không có cursor.
+     */
+    public <T> ScanPage<T> queryPage(DynamoDbTable<T> table, String indexName, QueryEnhancedRequest request,
+                                     Supplier<ScanPage<T>> scanFallback) {
+        String indexKey = table.tableName() + "/" + indexName;
+        if (indexAvailable(indexKey)) {
+            try {
+                Iterator<Page<T>> pages = table.index(indexName).query(request).iterator();
+                ScanPage<T> page = pages.hasNext()
+                        ? toScanPage(pages.next())
+                        : new ScanPage<>(List.of(), null);
+                markAvailable(indexKey);
+                return page;
+            } catch (DynamoDbException e) {
+                if (!isIndexUnavailable(indexName, e)) {
+                    if (request.exclusiveStartKey() != null && isValidationError(e)) {
+                        throw new InvalidCursorException();
+                    }
+                    throw e;
+                }
+                markUnavailable(indexKey, e);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        ScanPage<T> page = scanFallback.get();
+        logFallback(indexKey, page.getItems().size(), start);
+        return page;
+    }
+
+    private static <T> ScanPage<T> toScanPage(Page<T> page) {
+        return new ScanPage<>(page.items(), page.lastEvaluatedKey());
+    }
+
+    private boolean indexAvailable(String indexKey) {
+        Long retryAt = unavailableUntil.get(indexKey);
+        return retryAt == null || retryAt <= System.currentTimeMillis();
+    }
+
+    private void markAvailable(String indexKey) {
+        if (unavailableUntil.remove(indexKey) != null) {
+            log.info("GSI {} is available again", indexKey);
+        }
+    }
+
+    // ResourceNotFoundException, hoặc ValidationException nêu tên index ("does not have the specified index",
+    // "Cannot read from backfilling global secondary index"): index chưa được tạo hoặc chưa ACTIVE
+    static boolean isIndexUnavailable(String indexName, DynamoDbException e) {
+        if (e instanceof ResourceNotFoundException) {
+            return true;
+        }
+        String message = e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage();
+        return isValidationError(e) && message != null && message.contains(indexName);
+    }
+
+    private static boolean isValidationError(DynamoDbException e) {
+        return e.awsErrorDetails() != null && "ValidationException".equals(e.awsErrorDetails().errorCode());
+    }
+
+    private void markUnavailable(String indexKey, DynamoDbException e) {
+        unavailableUntil.put(indexKey, System.currentTimeMillis() + INDEX_RETRY_INTERVAL_MS);
+        log.warn("GSI {} cannot be queried, using scan fallback: {}", indexKey, e.getMessage());
+    }
+
+    private void logFallback(String indexKey, int itemCount, long start) {
+        LongAdder counter = fallbackCounts.computeIfAbsent(indexKey, k -> new LongAdder());
+        counter.increment();
+        log.warn("Scan fallback #{} for {} returned {} items in {} ms",
+                counter.sum(), indexKey, itemCount, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Số lần fallback sang scan theo "Table/index" kể từ khi khởi động.
+     */
+    public Map<String, Long> fallbackCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        fallbackCounts.forEach((index, counter) -> counts.put(index, counter.sum()));
+        return counts;
+    }
+}
@@ -0,0 +1,212 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.WarehouseTable;
+import com.leafshop.util.DynamoDBKeyUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ảnh tồn kho trong bộ nhớ để kiểm tra nhanh số lượng còn bán được của một sản phẩm/variant
+ * trên mọi kho active, không phải đọc từng dòng WarehouseTable cho mỗi item x kho.
+ *
+ * - Nạp bằng một lần scan WarehouseTable (META + PRODUCT#...), hết hạn sau inventory.availability.ttl-ms
+ *   để nhận thay đổi từ node khác. Khi hết hạn, ảnh cũ vẫn được dùng trong lúc một luồng nền scan lại;
+ *   chỉ lần nạp đầu (hoặc sau invalidate) mới scan đồng bộ.
+ * - WarehouseTableRepository báo mọi lần ghi/xoá dòng tồn kho; thay đổi META kho (active/inactive) làm mất ảnh.
+ * - InventoryReservationEngine trừ lượng đã giữ sau khi transaction thành công.
+ *
+ * Chỉ dùng để kiểm tra sớm; số lượng thật vẫn do điều kiện trong transaction giữ hàng quyết định.
+ */
+@Slf4j
+@Component
+public class InventoryAvailabilityCache {
+
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final long ttlMs;
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // Tăng mỗi lần invalidate để bản scan nền bắt đầu trước đó không ghi đè ảnh mới hơn
+    private volatile long generation;
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "inventory-availability-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public InventoryAvailabilityCache(DynamoDbEnhancedClient enhancedClient,
+                                      @Value("${inventory.availability.ttl-ms:30000}") long ttlMs) {
+        this.enhancedClient = enhancedClient;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Kho active theo thứ tự đọc được từ bảng (thứ tự dùng để phân bổ).
+     */
+    public List<String> activeWarehousePks() {
+        return current().activeWarehousePks;
+    }
+
+    /**
+     * Tổng availableQuantity trên các kho active, cùng quy tắc với lúc phân bổ:
+     * ở mỗi kho dùng dòng VARIANT nếu có, không thì dùng dòng PRODUCT.
+     */
+    public int available(String productId, String variantId) {
+        Snapshot current = current();
+        String productSk = DynamoDBKeyUtil.warehouseProductSk(productId);
+        String variantSk = variantId != null && !variantId.isEmpty()
+                ? DynamoDBKeyUtil.warehouseVariantSk(productId, variantId)
+                : null;
+        int total = 0;
+        for (String warehousePk : current.activeWarehousePks) {
+            Integer quantity = variantSk != null ? current.available.get(rowKey(warehousePk, variantSk)) : null;
+            if (quantity == null) {
+                quantity = current.available.get(rowKey(warehousePk, productSk));
+            }
+            total += quantity != null ? Math.max(0, quantity) : 0;
+        }
+        return total;
+    }
+
+    public void onRowSaved(WarehouseTable row) {
+        Snapshot current = snapshot;
+        if (current == null || row == null || row.getSk() == null) {
+            return;
+        }
+        if (DynamoDBKeyUtil.warehouseMetaSk().equals(row.getSk())) {
+            invalidate();
+        } else if (row.getSk().startsWith("PRODUCT#")) {
+            current.available.put(rowKey(row.getPk(), row.getSk()),
+                    row.getAvailableQuantity() != null ? row.getAvailableQuantity() : 0);
+        }
+    }
+
+    public void onRowDeleted(String pk, String sk) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        if (DynamoDBKeyUtil.warehouseMetaSk().equals(sk)) {
+            invalidate();
+        } else {
+            current.available.remove(rowKey(pk, sk));
+        }
+    }
+
+    /**
+     * Trừ lượng vừa giữ hàng; key theo dạng "PK|SK" của dòng tồn kho.
+     */
+    public void onReserved(Map<String, Integer> reservedByRow) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        reservedByRow.forEach((key, quantity) -> current.available.computeIfPresent(key, (k, available) -> available - quantity));
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    static String rowKey(String pk, String sk) {
+        return pk + "|" + sk;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            if (System.currentTimeMillis() - current.loadedAt >= ttlMs) {
+                refreshInBackground();
+            }
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null) {
+                current = load();
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.submit(() -> {
+                try {
+                    long startGeneration = generation;
+                    Snapshot loaded = load();
+                    synchronized (this) {
+                        if (generation == startGeneration && snapshot != null) {
+                            snapshot = loaded;
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to refresh inventory availability, keeping stale snapshot: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private Snapshot load() {
+        long start = System.currentTimeMillis();
+        List<String> activeWarehousePks = new ArrayList<>();
+        Map<String, Integer> available = new ConcurrentHashMap<>();
+        enhancedClient.table("WarehouseTable", TableSchema.fromBean(WarehouseTable.class))
+                .scan()
+                .items()
+                .forEach(row -> {
+                    if (row.getSk() == null || row.getPk() == null) {
+                        return;
+                    }
+                    if (DynamoDBKeyUtil.warehouseMetaSk().equals(row.getSk())) {
+                        if (Boolean.TRUE.equals(row.getIsActive())) {
+                            activeWarehousePks.add(row.getPk());
+                        }
+                    } else if (row.getSk().startsWith("PRODUCT#")) {
+                        available.put(rowKey(row.getPk(), row.getSk()),
+                                row.getAvailableQuantity() != null ? row.getAvailableQuantity() : 0);
+                    }
+                });
+        log.debug("Loaded inventory availability: {} active warehouses, {} rows in {} ms",
+                activeWarehousePks.size(), available.size(), System.currentTimeMillis() - start);
+        return new Snapshot(Collections.unmodifiableList(activeWarehousePks), available, start);
+    }
+
+    private static final class Snapshot {
+        private final List<String> activeWarehousePks;
+        private final Map<String, Integer> available;
+        private final long loadedAt;
+
+        private Snapshot(List<String> activeWarehousePks, Map<String, Integer> available, long loadedAt) {
+            this.activeWarehousePks = activeWarehousePks;
+            this.available = available;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.model.dynamodb.WarehouseTable;
+import com.leafshop.util.DynamoDBKeyUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tạo đơn hàng và giữ tồn kho trong một TransactWriteItems duy nhất.
+ *
+ * - Order META + ITEM# được Put (META có điều kiện attribute_not_exists(PK)).
+ * - Mỗi dòng tồn kho được trừ bằng UpdateItem ADD có điều kiện availableQuantity >= :qty,
+ *   nên hai checkout đồng thời không thể bán vượt số lượng và không cần khoá toàn cục.
+ * - Khi transaction bị huỷ do điều kiện tồn kho hoặc TransactionConflict, đọc lại tồn kho (strongly
+ *   consistent), lập lại phương án phân bổ và thử lại có backoff, tối đa inventory.reservation.max-attempts lần.
+ *   Thất bại ở bất kỳ bước nào không để lại đơn hoặc lượng giữ hàng dở dang.
+ */
+@Slf4j
+@Component
+public class InventoryReservationEngine {
+
+    // Giới hạn số thao tác của một TransactWriteItems
+    static final int MAX_TRANSACT_ITEMS = 100;
+    private static final String ORDER_TABLE = "OrderTable";
+    private static final String WAREHOUSE_TABLE = "WarehouseTable";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final DashboardMetricsRepository dashboardMetricsRepository;
+    private final InventoryAvailabilityCache inventoryAvailabilityCache;
+    private final UserOrderHistoryCache userOrderHistoryCache;
+    private final int maxAttempts;
+    private final long backoffMs;
+
+    public InventoryReservationEngine(DynamoDbClient dynamoDbClient,
+                                      DynamoDbEnhancedClient enhancedClient,
+                                      DashboardMetricsRepository dashboardMetricsRepository,
+                                      InventoryAvailabilityCache inventoryAvailabilityCache,
+                                      UserOrderHistoryCache userOrderHistoryCache,
+                                      @Value("${inventory.reservation.max-attempts:5}") int maxAttempts,
+                                      @Value("${inventory.reservation.backoff-ms:20}") long backoffMs) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.enhancedClient = enhancedClient;
+        this.dashboardMetricsRepository = dashboardMetricsRepository;
+        this.inventoryAvailabilityCache = inventoryAvailabilityCache;
+        this.userOrderHistoryCache = userOrderHistoryCache;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = Math.max(0, backoffMs);
+    }
+
+    private DynamoDbTable<WarehouseTable> warehouseTable() {
+        return enhancedClient.table(WAREHOUSE_TABLE, TableSchema.fromBean(WarehouseTable.class));
+    }
+
+    /**
+     * Ghi order META + ITEM# và giữ tồn kho cho từng ITEM# trong một transaction.
+     *
+     * @param warehousePks kho dùng để phân bổ theo thứ tự ưu tiên; rỗng = không giữ tồn kho
+     * @throws IllegalStateException khi không đủ hàng hoặc vẫn tranh chấp sau số lần thử tối đa
+     */
+    public void placeOrder(OrderTable meta, List<OrderTable> items, List<String> warehousePks) {
+        for (int attempt = 1; ; attempt++) {
+            Map<String, WarehouseTable> inventory = loadInventory(items, warehousePks);
+            Map<String, Integer> reservations = allocate(items, warehousePks, inventory);
+
+            List<TransactWriteItem> writes = new ArrayList<>();
+            writes.add(putOrderItem(meta, "attribute_not_exists(PK)"));
+            items.forEach(item -> writes.add(putOrderItem(item, null)));
+            int firstInventoryIndex = writes.size();
+            List<String> reservedKeys = new ArrayList<>(reservations.keySet());
+            long now = System.currentTimeMillis();
+            reservedKeys.forEach(key -> writes.add(reserve(inventory.get(key), reservations.get(key), now)));
+            if (writes.size() > MAX_TRANSACT_ITEMS) {
+                throw new IllegalArgumentException("Order has too many items to place in one checkout");
+            }
+
+            try {
+                dynamoDbClient.transactWriteItems(b -> b.transactItems(writes));
+            } catch (TransactionCanceledException e) {
+                if (!isContention(e, firstInventoryIndex)) {
+                    if (isConditionFailed(e, 0)) {
+                        throw new IllegalStateException("Order already exists: " + meta.getOrderId());
+                    }
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    log.warn("Inventory reservation for order {} gave up after {} attempts", meta.getOrderId(), attempt);
+                    throw new IllegalStateException("Stock is changing too fast, please retry checkout");
+                }
+                log.debug("Inventory contention for order {} (attempt {}), retrying", meta.getOrderId(), attempt);
+                sleep(attempt);
+                continue;
+            }
+
+            if (attempt > 1) {
+                log.info("Order {} placed after {} reservation attempts", meta.getOrderId(), attempt);
+            }
+            inventoryAvailabilityCache.onReserved(reservations);
+            recordMetrics(meta, items, inventory, reservations);
+            userOrderHistoryCache.evict(meta.getUserId());
+            return;
+        }
+    }
+
+    /**
+     * Đọc (strongly consistent) mọi dòng tồn kho có thể dùng: VARIANT và PRODUCT của từng item ở từng kho.
+     */
+    private Map<String, WarehouseTable> loadInventory(List<OrderTable> items, List<String> warehousePks) {
+        Map<String, WarehouseTable> result = new HashMap<>();
+        if (warehousePks.isEmpty()) {
+            return result;
+        }
+        Map<String, Key> keys = new LinkedHashMap<>();
+        for (String warehousePk : warehousePks) {
+            for (OrderTable item : items) {
+                List<String> sks = new ArrayList<>();
+                if (hasVariant(item)) {
+                    sks.add(DynamoDBKeyUtil.warehouseVariantSk(item.getProductId(), item.getVariantId()));
+                }
+                sks.add(DynamoDBKeyUtil.warehouseProductSk(item.getProductId()));
+                sks.forEach(sk -> keys.putIfAbsent(rowKey(warehousePk, sk),
+                        Key.builder().partitionValue(warehousePk).sortValue(sk).build()));
+            }
+        }
+
+        DynamoDbTable<WarehouseTable> table = warehouseTable();
+        List<Key> distinct = new ArrayList<>(keys.values());
+        for (int from = 0; from < distinct.size(); from += ProductHydrator.BATCH_GET_MAX_KEYS) {
+            ReadBatch.Builder<WarehouseTable> batch = ReadBatch.builder(WarehouseTable.class).mappedTableResource(table);
+            distinct.subList(from, Math.min(from + ProductHydrator.BATCH_GET_MAX_KEYS, distinct.size()))
+                    .forEach(key -> batch.addGetItem(GetItemEnhancedRequest.builder().key(key).consistentRead(true).build()));
+            for (BatchGetResultPage page : enhancedClient.batchGetItem(
+                    BatchGetItemEnhancedRequest.builder().readBatches(batch.build()).build())) {
+                page.resultsForTable(table).forEach(row -> {
+                    result.put(rowKey(row.getPk(), row.getSk()), row);
+                    // Bản đọc strongly consistent: làm mới luôn ảnh tồn kho trong bộ nhớ
+                    inventoryAvailabilityCache.onRowSaved(row);
+                });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Phân bổ số lượng theo thứ tự kho như trước: mỗi kho ưu tiên dòng VARIANT, không có thì dùng dòng PRODUCT.
+     * Nhiều item cùng trỏ vào một dòng được gộp lại (một transaction không được chạm một item hai lần).
+     */
+    private Map<String, Integer> allocate(List<OrderTable> items, List<String> warehousePks,
+                                          Map<String, WarehouseTable> inventory) {
+        Map<String, Integer> reservations = new LinkedHashMap<>();
+        if (warehousePks.isEmpty()) {
+            return reservations;
+        }
+        for (OrderTable item : items) {
+            int needed = item.getQuantity() != null ? item.getQuantity() : 0;
+            int remaining = needed;
+            for (String warehousePk : warehousePks) {
+                if (remaining <= 0) {
+                    break;
+                }
+                String key = null;
+                if (hasVariant(item)) {
+                    String variantKey = rowKey(warehousePk, DynamoDBKeyUtil.warehouseVariantSk(item.getProductId(), item.getVariantId()));
+                    if (inventory.containsKey(variantKey)) {
+                        key = variantKey;
+                    }
+                }
+                if (key == null) {
+                    key = rowKey(warehousePk, DynamoDBKeyUtil.warehouseProductSk(item.getProductId()));
+                }
+                int free = available(inventory.get(key)) - reservations.getOrDefault(key, 0);
+                if (free > 0) {
+                    int reserve = Math.min(free, remaining);
+                    reservations.merge(key, reserve, Integer::sum);
+                    remaining -= reserve;
+                }
+            }
+            if (remaining > 0) {
+                throw new IllegalStateException("Insufficient stock for product " + item.getProductId()
+                        + ". Required: " + needed + ", Available: " + (needed - remaining));
+            }
+        }
+        return reservations;
+    }
+
+    private TransactWriteItem putOrderItem(OrderTable item, String condition) {
+        Put.Builder put = Put.builder()
+                .tableName(ORDER_TABLE)
+                .item(TableSchema.fromBean(OrderTable.class).itemToMap(item, true));
+        if (condition != null) {
+            put.conditionExpression(condition);
+        }
+        return TransactWriteItem.builder().put(put.build()).build();
+    }
+
+    private TransactWriteItem reserve(WarehouseTable row, int quantity, long now) {
+        Map<String, AttributeValue> key = Map.of(
+                "PK", AttributeValue.builder().s(row.getPk()).build(),
+                "SK", AttributeValue.builder().s(row.getSk()).build());
+        Map<String, AttributeValue> values = Map.of(
+                ":qty", AttributeValue.builder().n(Integer.toString(quantity)).build(),
+                ":minusQty", AttributeValue.builder().n(Integer.toString(-quantity)).build(),
+                ":now", AttributeValue.builder().n(Long.toString(now)).build());
+        return TransactWriteItem.builder().update(Update.builder()
+                .tableName(WAREHOUSE_TABLE)
+                .key(key)
+                .updateExpression("ADD availableQuantity :minusQty, reservedQuantity :qty SET updatedAt = :now")
+                .conditionExpression("availableQuantity >= :qty")
+                .expressionAttributeValues(values)
+                .build()).build();
+    }
+
+    // Huỷ do tranh chấp tồn kho: điều kiện của một dòng tồn kho sai hoặc xung đột với transaction khác
+    private static boolean isContention(TransactionCanceledException e, int firstInventoryIndex) {
+        if (!e.hasCancellationReasons()) {
+            return false;
+        }
+        List<CancellationReason> reasons = e.cancellationReasons();
+        for (int i = 0; i < reasons.size(); i++) {
+            String code = reasons.get(i).code();
+            if ("TransactionConflict".equals(code)
+                    || (i >= firstInventoryIndex && "ConditionalCheckFailed".equals(code))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConditionFailed(TransactionCanceledException e, int index) {
+        return e.hasCancellationReasons() && e.cancellationReasons().size() > index
+                && "ConditionalCheckFailed".equals(e.cancellationReasons().get(index).code());
+    }
+
+    // Exponential backoff có jitter để các checkout đang tranh chấp không thử lại cùng lúc
+    private void sleep(int attempt) {
+        long bound = backoffMs << Math.min(attempt - 1, 5);
+        if (bound <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound / 2, bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Checkout interrupted", e);
+        }
+    }
+
+    private void recordMetrics(OrderTable meta, List<OrderTable> items, Map<String, WarehouseTable> inventory,
+                               Map<String, Integer> reservations) {
+        long units = items.stream().mapToLong(item -> item.getQuantity() != null ? item.getQuantity() : 0).sum();
+        dashboardMetricsRepository.recordOrderChange(null, meta, () -> units, () -> meta);
+        // Ước lượng trạng thái sau theo bản đọc trước transaction; sai lệch khi có ghi đồng thời được sửa bằng rebuild
+        reservations.forEach((key, quantity) -> {
+            WarehouseTable before = inventory.get(key);
+            WarehouseTable after = WarehouseTable.builder()
+                    .pk(before.getPk())
+                    .sk(before.getSk())
+                    .availableQuantity(available(before) - quantity)
+                    .reorderPoint(before.getReorderPoint())
+                    .build();
+            dashboardMetricsRepository.recordInventoryChange(before, after);
+        });
+    }
+
+    private static boolean hasVariant(OrderTable item) {
+        return item.getVariantId() != null && !item.getVariantId().isEmpty();
+    }
+
+    private static int available(WarehouseTable row) {
+        return row != null && row.getAvailableQuantity() != null ? row.getAvailableQuantity() : 0;
+    }
+
+    private static String rowKey(String pk, String sk) {
+        return InventoryAvailabilityCache.rowKey(pk, sk);
+    }
+}
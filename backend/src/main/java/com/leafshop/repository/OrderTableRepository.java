@@ -1,5 +1,6 @@
 package com.leafshop.repository;
 
+import com.leafshop.exception.InvalidCursorException;
 import com.leafshop.model.dynamodb.OrderTable;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
@@ -7,12 +8,19 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -22,14 +30,41 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OrderTableRepository {
 
+    public static final String USER_ORDERS_INDEX = "userId-createdAt-index";
+    // Thuộc tính đủ cho danh sách đơn (không gồm địa chỉ, dòng hàng); PK/SK/userId/createdAt cần cho cursor
+    private static final List<String> ORDER_LIST_ATTRIBUTES = List.of(
+            "PK", "SK", "userId", "createdAt", "orderId", "orderStatus", "subtotal", "shippingAmount",
+            "discountAmount", "totalAmount", "paymentMethod", "paymentStatus", "assignedTo", "updatedAt");
+
     private final DynamoDbEnhancedClient enhancedClient;
+    private final IndexQueryExecutor indexQueryExecutor;
+    private final ParallelScanExecutor parallelScanExecutor;
+    private final DashboardMetricsRepository dashboardMetricsRepository;
+    private final UserOrderHistoryCache userOrderHistoryCache;
 
     private DynamoDbTable<OrderTable> orderTable() {
         return enhancedClient.table("OrderTable", TableSchema.fromBean(OrderTable.class));
     }
 
     public void save(OrderTable order) {
-        orderTable().putItem(order);
+        if (!isOrderRow(order.getPk(), order.getSk())) {
+            orderTable().putItem(order);
+            return;
+        }
+        // Lấy bản ghi cũ trong cùng lệnh ghi để cập nhật bộ đếm dashboard theo chênh lệch
+        OrderTable before = orderTable().putItemWithResponse(PutItemEnhancedRequest.builder(OrderTable.class)
+                        .item(order)
+                        .returnValues(ReturnValue.ALL_OLD)
+                        .build())
+                .attributes();
+        dashboardMetricsRepository.recordOrderChange(before, order, () -> unitsOf(order.getPk()),
+                () -> orderMeta(order.getPk()));
+        if ("META".equals(order.getSk())) {
+            userOrderHistoryCache.evict(order.getUserId());
+            if (before != null && before.getUserId() != null && !before.getUserId().equals(order.getUserId())) {
+                userOrderHistoryCache.evict(before.getUserId());
+            }
+        }
     }
 
     public List<OrderTable> scanAllOrdersMeta() {
@@ -41,11 +76,8 @@ public class OrderTableRepository {
                 .expressionValues(eav)
                 .build();
 
-        return orderTable()
-                .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-                .items()
-                .stream()
-                .collect(Collectors.toList());
+        // Báo cáo admin: scan song song theo segment
+        return parallelScanExecutor.scanAll(orderTable(), filterExpression);
     }
 
     // Find order by PK (USER#<user_id>#ORDER#<order_id> or ORDER#<order_id>)
@@ -80,20 +112,88 @@ public class OrderTableRepository {
         return Optional.ofNullable(orderTable().getItem(key));
     }
 
-    // Find all orders by userId using GSI userId-createdAt-index
+    // Find all orders by userId using GSI userId-createdAt-index (scan fallback)
     public List<OrderTable> findOrdersByUserId(String userId) {
-        var index = orderTable().index("userId-createdAt-index");
+        return indexQueryExecutor.query(orderTable(), USER_ORDERS_INDEX, userId,
+                        () -> scanByAttribute("userId", userId))
+                .stream()
+                .filter(order -> "META".equals(order.getSk())) // Only get META records
+                .collect(Collectors.toList());
+    }
 
-        Key key = Key.builder()
-                .partitionValue(userId)
+    // Một trang đơn của user, mới nhất trước, chỉ gồm thuộc tính cho danh sách (GSI userId-createdAt-index).
+    // Giỏ hàng CART#<userId> cũng có userId + createdAt nên nằm trong index: lọc bằng filter expression,
+    // và vì Limit áp dụng trước filter nên query tiếp từ LastEvaluatedKey cho đến khi đủ limit đơn
+    public ScanPage<OrderTable> queryUserOrdersPage(String userId, int limit, Map<String, AttributeValue> exclusiveStartKey) {
+        Expression notCart = Expression.builder()
+                .expression("NOT begins_with(PK, :cartPrefix)")
+                .expressionValues(Map.of(":cartPrefix", AttributeValue.builder().s("CART#").build()))
                 .build();
+        List<OrderTable> orders = new ArrayList<>();
+        Map<String, AttributeValue> startKey = exclusiveStartKey;
+        do {
+            int remaining = limit - orders.size();
+            Map<String, AttributeValue> pageStart = startKey;
+            QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                    .queryConditional(QueryConditional.keyEqualTo(Key.builder().partitionValue(userId).build()))
+                    .scanIndexForward(false)
+                    .limit(remaining)
+                    .exclusiveStartKey(pageStart)
+                    .filterExpression(notCart)
+                    .attributesToProject(ORDER_LIST_ATTRIBUTES)
+                    .build();
+            ScanPage<OrderTable> page = indexQueryExecutor.queryPage(orderTable(), USER_ORDERS_INDEX, request,
+                    () -> scanUserOrdersPage(userId, remaining, pageStart));
+            orders.addAll(page.getItems());
+            startKey = page.hasMore() ? page.getLastEvaluatedKey() : null;
+        } while (startKey != null && orders.size() < limit);
+        // Đủ limit thì mọi dòng query vừa đọc đều qua filter, LastEvaluatedKey là đơn cuối của trang
+        return new ScanPage<>(orders, startKey);
+    }
 
-        return index
-                .query(QueryConditional.keyEqualTo(key))
-                .stream()
-                .flatMap(page -> page.items().stream())
-                .filter(order -> "META".equals(order.getSk())) // Only get META records
+    // Fallback khi GSI chưa dùng được: scan đơn của user, sắp như GSI (mới nhất trước) rồi cắt trang sau cursor
+    private ScanPage<OrderTable> scanUserOrdersPage(String userId, int limit, Map<String, AttributeValue> exclusiveStartKey) {
+        Comparator<OrderTable> newestFirst = Comparator
+                .comparing(OrderTable::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(OrderTable::getPk, Comparator.nullsLast(Comparator.reverseOrder()));
+        List<OrderTable> orders = scanByAttribute("userId", userId).stream()
+                .filter(order -> "META".equals(order.getSk()) && order.getPk() != null && !order.getPk().startsWith("CART#"))
+                .sorted(newestFirst)
                 .collect(Collectors.toList());
+        int from = 0;
+        if (exclusiveStartKey != null) {
+            OrderTable cursor = cursorPosition(exclusiveStartKey);
+            while (from < orders.size() && newestFirst.compare(orders.get(from), cursor) <= 0) {
+                from++;
+            }
+        }
+        int to = Math.min(orders.size(), from + limit);
+        List<OrderTable> page = new ArrayList<>(orders.subList(from, to));
+        return new ScanPage<>(page, to < orders.size() && !page.isEmpty() ? userOrdersCursorKey(page.get(page.size() - 1)) : null);
+    }
+
+    // Vị trí của cursor (PK + createdAt) trong thứ tự của GSI
+    private static OrderTable cursorPosition(Map<String, AttributeValue> key) {
+        AttributeValue pk = key.get("PK");
+        AttributeValue createdAt = key.get("createdAt");
+        if (pk == null || pk.s() == null || createdAt == null || createdAt.n() == null) {
+            throw new InvalidCursorException();
+        }
+        try {
+            return OrderTable.builder().pk(pk.s()).createdAt(Long.parseLong(createdAt.n())).build();
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException();
+        }
+    }
+
+    // LastEvaluatedKey của GSI userId-createdAt-index tại một META (khoá bảng + khoá index)
+    public static Map<String, AttributeValue> userOrdersCursorKey(OrderTable meta) {
+        Map<String, AttributeValue> key = new LinkedHashMap<>();
+        key.put("PK", AttributeValue.builder().s(meta.getPk()).build());
+        key.put("SK", AttributeValue.builder().s(meta.getSk()).build());
+        key.put("userId", AttributeValue.builder().s(meta.getUserId()).build());
+        key.put("createdAt", AttributeValue.builder().n(String.valueOf(meta.getCreatedAt())).build());
+        return key;
     }
 
     // Find discount info by PK and SK = "DISCOUNT"
@@ -111,7 +211,42 @@ public class OrderTableRepository {
     // Delete an item or entry by PK and SK
     public void deleteByPkAndSk(String pk, String sk) {
         Key key = Key.builder().partitionValue(pk).sortValue(sk).build();
-        orderTable().deleteItem(key);
+        OrderTable before = orderTable().deleteItem(key);
+        if (before != null && isOrderRow(pk, sk)) {
+            dashboardMetricsRepository.recordOrderChange(before, null, () -> unitsOf(pk), () -> orderMeta(pk));
+            if ("META".equals(sk)) {
+                userOrderHistoryCache.evict(before.getUserId());
+            }
+        }
+    }
+
+    // Order thật (không phải giỏ hàng): META hoặc ITEM#
+    private static boolean isOrderRow(String pk, String sk) {
+        return pk != null && !pk.startsWith("CART#") && sk != null && (sk.equals("META") || sk.startsWith("ITEM#"));
+    }
+
+    private OrderTable orderMeta(String orderPk) {
+        return findOrderMetaByPkAndSk(orderPk, "META").orElse(null);
+    }
+
+    private long unitsOf(String orderPk) {
+        return findOrderItemsByPk(orderPk).stream()
+                .mapToLong(DashboardMetricsRepository::soldUnits)
+                .sum();
+    }
+
+    // Toàn bộ ITEM# của các đơn hàng (không gồm giỏ hàng) - dùng để tính lại bộ đếm dashboard
+    public List<OrderTable> scanAllOrderItems() {
+        Map<String, AttributeValue> eav = new HashMap<>();
+        eav.put(":item", AttributeValue.builder().s("ITEM#").build());
+        eav.put(":cartPrefix", AttributeValue.builder().s("CART#").build());
+
+        Expression filterExpression = Expression.builder()
+                .expression("begins_with(SK, :item) AND NOT begins_with(PK, :cartPrefix)")
+                .expressionValues(eav)
+                .build();
+
+        return parallelScanExecutor.scanAll(orderTable(), filterExpression);
     }
 
     // Find all orders for a user (PK starts with USER#<user_id>#ORDER#) - scan filter
@@ -136,70 +271,63 @@ public class OrderTableRepository {
         return Optional.ofNullable(orderTable().getItem(key));
     }
 
-    // Find orders by status (requires GSI) - fallback to scan by attribute
-    public List<OrderTable> findByOrderStatus(String orderStatus) {
-        Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":status", AttributeValue.builder().s(orderStatus).build());
-        Expression filterExpression = Expression.builder()
-                .expression("orderStatus = :status")
-                .expressionValues(eav)
+    // Ghi cart document chỉ khi bản trong bảng cũ hơn: flush chậm từ node khác không đè bản mới (hay giỏ đã checkout)
+    public boolean saveCartIfNewer(OrderTable cart) {
+        Expression condition = Expression.builder()
+                .expression("attribute_not_exists(PK) OR attribute_not_exists(version) OR version < :version")
+                .expressionValues(Map.of(":version", AttributeValue.builder().n(String.valueOf(cart.getVersion())).build()))
                 .build();
+        try {
+            orderTable().putItem(PutItemEnhancedRequest.builder(OrderTable.class)
+                    .item(cart)
+                    .conditionExpression(condition)
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
 
-        return orderTable()
-                .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-                .items()
-                .stream()
-                .collect(Collectors.toList());
+    // Find orders by status (GSI orderStatus-createdAt-index, scan fallback)
+    public List<OrderTable> findByOrderStatus(String orderStatus) {
+        return indexQueryExecutor.query(orderTable(), "orderStatus-createdAt-index", orderStatus,
+                () -> scanByAttribute("orderStatus", orderStatus));
     }
 
-    // Find orders by cartId (scan) - used to prevent duplicate checkouts
+    // Find orders by cartId (GSI cartId-index, scan fallback) - used to prevent duplicate checkouts
     public List<OrderTable> findByCartId(String cartId) {
-        Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":cart", AttributeValue.builder().s(cartId).build());
-        Expression filterExpression = Expression.builder()
-                .expression("cartId = :cart")
-                .expressionValues(eav)
-                .build();
-
-        return orderTable()
-                .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-                .items()
-                .stream()
-                .collect(Collectors.toList());
+        return indexQueryExecutor.query(orderTable(), "cartId-index", cartId,
+                () -> scanByAttribute("cartId", cartId));
     }
 
-    // Find orders by idempotencyKey (scan) - idempotent checkout support
+    // Find orders by idempotencyKey (GSI idempotencyKey-index, scan fallback) - idempotent checkout support
     public List<OrderTable> findByIdempotencyKey(String idempotencyKey) {
-        Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":key", AttributeValue.builder().s(idempotencyKey).build());
-        Expression filterExpression = Expression.builder()
-                .expression("idempotencyKey = :key")
-                .expressionValues(eav)
-                .build();
+        return indexQueryExecutor.query(orderTable(), "idempotencyKey-index", idempotencyKey,
+                () -> scanByAttribute("idempotencyKey", idempotencyKey));
+    }
 
-        return orderTable()
-                .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-                .items()
+    // Find order META by orderId (GSI orderId-index, scan fallback) - used for payment webhook
+    public Optional<OrderTable> findByOrderId(String orderId) {
+        return indexQueryExecutor.query(orderTable(), "orderId-index", orderId,
+                        () -> scanByAttribute("orderId", orderId))
                 .stream()
-                .collect(Collectors.toList());
+                .filter(order -> "META".equals(order.getSk()))
+                .findFirst();
     }
 
-    // Find order by orderId attribute (scan) - used for payment webhook
-    public Optional<OrderTable> findByOrderId(String orderId) {
+    private List<OrderTable> scanByAttribute(String attribute, String value) {
         Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":orderId", AttributeValue.builder().s(orderId).build());
-        eav.put(":meta", AttributeValue.builder().s("META").build());
+        eav.put(":value", AttributeValue.builder().s(value).build());
         Expression filterExpression = Expression.builder()
-                .expression("orderId = :orderId AND SK = :meta")
+                .expression("#attr = :value")
+                .expressionNames(Map.of("#attr", attribute))
                 .expressionValues(eav)
                 .build();
 
-        List<OrderTable> results = orderTable()
+        return orderTable()
                 .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
                 .items()
                 .stream()
                 .collect(Collectors.toList());
-
-        return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
     }
 }
@@ -0,0 +1,170 @@
+package com.leafshop.repository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+
+/**
+ * Scan song song theo Segment/TotalSegments cho các truy vấn báo cáo của admin.
+ *
+ * - Mỗi segment chạy trên pool giới hạn (dynamodb.parallel-scan.max-threads).
+ * - Các trang được đẩy vào hàng đợi có giới hạn (dynamodb.parallel-scan.queue-pages) và giao cho caller
+ *   ngay khi tới; caller xử lý chậm thì worker bị chặn ở put, không đọc thêm trang (backpressure).
+ * - readCapacityBudget: khi tổng RCU đã tiêu vượt ngân sách, các segment dừng sau trang hiện tại
+ *   và kết quả được đánh dấu budgetExceeded.
+ */
+@Slf4j
+@Component
+public class ParallelScanExecutor {
+
+    private static final Object SEGMENT_DONE = new Object();
+    private static final long POLL_MS = 200;
+
+    private final int defaultSegments;
+    private final int queuePages;
+    private final ExecutorService executor;
+
+    public ParallelScanExecutor(@Value("${dynamodb.parallel-scan.segments:4}") int defaultSegments,
+                                @Value("${dynamodb.parallel-scan.max-threads:8}") int maxThreads,
+                                @Value("${dynamodb.parallel-scan.queue-pages:16}") int queuePages) {
+        this.defaultSegments = Math.max(1, defaultSegments);
+        this.queuePages = Math.max(1, queuePages);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxThreads), r -> {
+            Thread t = new Thread(r, "parallel-scan");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Scan toàn bộ bảng với số segment mặc định, không giới hạn RCU, gom kết quả thành list.
+     */
+    public <T> List<T> scanAll(DynamoDbTable<T> table, Expression filter) {
+        List<T> items = new ArrayList<>();
+        scan(table, filter, defaultSegments, null, items::addAll);
+        return items;
+    }
+
+    public <T> ParallelScanResult scan(DynamoDbTable<T> table, Expression filter, Consumer<List<T>> onPage) {
+        return scan(table, filter, defaultSegments, null, onPage);
+    }
+
+    /**
+     * Scan song song; {@code onPage} được gọi tuần tự trên thread của caller cho từng trang
+     * theo thứ tự trang về (không theo thứ tự khoá).
+     *
+     * @param readCapacityBudget tổng RCU tối đa cho lần scan, null = không giới hạn
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ParallelScanResult scan(DynamoDbTable<T> table, Expression filter, int segments,
+                                       Double readCapacityBudget, Consumer<List<T>> onPage) {
+        int totalSegments = Math.max(1, segments);
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queuePages);
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        AtomicBoolean budgetExceeded = new AtomicBoolean(false);
+        DoubleAdder consumed = new DoubleAdder();
+        long start = System.currentTimeMillis();
+
+        List<Future<?>> workers = new ArrayList<>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            ScanEnhancedRequest.Builder request = ScanEnhancedRequest.builder()
+                    .segment(segment)
+                    .totalSegments(totalSegments)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            if (filter != null) {
+                request.filterExpression(filter);
+            }
+            ScanEnhancedRequest built = request.build();
+            workers.add(executor.submit(() -> {
+                try {
+                    Iterator<Page<T>> pages = table.scan(built).iterator();
+                    while (!stopped.get() && pages.hasNext()) {
+                        Page<T> page = pages.next();
+                        if (page.consumedCapacity() != null && page.consumedCapacity().capacityUnits() != null) {
+                            consumed.add(page.consumedCapacity().capacityUnits());
+                        }
+                        if (!page.items().isEmpty()) {
+                            offer(queue, page.items(), stopped);
+                        }
+                        if (readCapacityBudget != null && consumed.sum() >= readCapacityBudget) {
+                            budgetExceeded.set(true);
+                            break;
+                        }
+                    }
+                    offer(queue, SEGMENT_DONE, stopped);
+                } catch (Throwable e) {
+                    offer(queue, e instanceof RuntimeException ? e : new IllegalStateException(e), stopped);
+                }
+                return null;
+            }));
+        }
+
+        long itemCount = 0;
+        int finished = 0;
+        try {
+            while (finished < totalSegments) {
+                Object next = queue.take();
+                if (next == SEGMENT_DONE) {
+                    finished++;
+                } else if (next instanceof RuntimeException) {
+                    throw (RuntimeException) next;
+                } else {
+                    List<T> items = (List<T>) next;
+                    itemCount += items.size();
+                    onPage.accept(items);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel scan of " + table.tableName() + " interrupted", e);
+        } finally {
+            // Lỗi hoặc caller dừng giữa chừng: báo cho các worker còn lại thoát
+            stopped.set(true);
+            if (finished < totalSegments) {
+                workers.forEach(worker -> worker.cancel(true));
+            }
+        }
+
+        ParallelScanResult result = new ParallelScanResult(itemCount, consumed.sum(), budgetExceeded.get());
+        log.debug("Parallel scan of {} ({} segments): {} items, {} RCU in {} ms{}", table.tableName(), totalSegments,
+                itemCount, result.getConsumedCapacity(), System.currentTimeMillis() - start,
+                result.isBudgetExceeded() ? " (read capacity budget exceeded)" : "");
+        return result;
+    }
+
+    private static void offer(BlockingQueue<Object> queue, Object value, AtomicBoolean stopped) {
+        try {
+            while (!stopped.get()) {
+                if (queue.offer(value, POLL_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,13 @@
+package com.leafshop.repository;
+
+import lombok.Value;
+
+/**
+ * Thống kê một lần parallel scan. budgetExceeded = true nghĩa là kết quả chưa đầy đủ.
+ */
+@Value
+public class ParallelScanResult {
+    long itemCount;
+    double consumedCapacity;
+    boolean budgetExceeded;
+}
@@ -9,12 +9,14 @@ import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Repository
 @RequiredArgsConstructor
 public class PaymentTableRepository {
 
     private final DynamoDbEnhancedClient enhancedClient;
+    private final IndexQueryExecutor indexQueryExecutor;
 
     private DynamoDbTable<PaymentTable> paymentTable() {
         return enhancedClient.table("PaymentTable", TableSchema.fromBean(PaymentTable.class));
@@ -35,12 +37,14 @@ public class PaymentTableRepository {
         return Optional.empty();
     }
 
+    // Find payment by orderId (GSI orderId-index, scan fallback)
     public Optional<PaymentTable> findByOrderId(String orderId) {
-        // Scan for payment with matching orderId
-        // This is inefficient but works without GSI
         try {
-            return paymentTable().scan().items().stream()
-                .filter(p -> orderId.equals(p.getOrderId()))
+            return indexQueryExecutor.query(paymentTable(), "orderId-index", orderId,
+                    () -> paymentTable().scan().items().stream()
+                            .filter(p -> orderId.equals(p.getOrderId()))
+                            .collect(Collectors.toList()))
+                .stream()
                 .findFirst();
         } catch (Exception e) {
             return Optional.empty();
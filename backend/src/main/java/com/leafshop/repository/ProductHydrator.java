@@ -0,0 +1,108 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.ProductTable;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Nạp nhiều sản phẩm với số round trip cố định thay vì 1-2 query cho mỗi sản phẩm.
+ *
+ * - {@link #loadPartitions(Collection)}: một query cho mỗi partition PRODUCT#<id> (META + VARIANT# + MEDIA#),
+ *   các query chạy song song trên pool giới hạn nên độ trễ ~ một round trip.
+ * - {@link #batchGetMeta(Collection)}: chỉ lấy META qua BatchGetItem, tối đa 100 key mỗi lần gọi.
+ */
+@Slf4j
+@Component
+public class ProductHydrator {
+
+    static final int BATCH_GET_MAX_KEYS = 100;
+    private static final int MAX_PARALLEL_QUERIES = 8;
+
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_QUERIES, r -> {
+        Thread t = new Thread(r, "product-hydrator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ProductHydrator(DynamoDbEnhancedClient enhancedClient) {
+        this.enhancedClient = enhancedClient;
+    }
+
+    private DynamoDbTable<ProductTable> productTable() {
+        return enhancedClient.table("ProductTable", TableSchema.fromBean(ProductTable.class));
+    }
+
+    /**
+     * Toàn bộ item của từng partition, giữ thứ tự pk đầu vào. Partition rỗng không có trong kết quả.
+     */
+    public Map<String, List<ProductTable>> loadPartitions(Collection<String> pks) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(pks));
+        if (distinct.isEmpty()) {
+            return Map.of();
+        }
+        DynamoDbTable<ProductTable> table = productTable();
+        List<CompletableFuture<List<ProductTable>>> futures = distinct.stream()
+                .map(pk -> CompletableFuture.supplyAsync(() -> table
+                        .query(QueryConditional.keyEqualTo(Key.builder().partitionValue(pk).build()))
+                        .items()
+                        .stream()
+                        .collect(Collectors.toList()), executor))
+                .collect(Collectors.toList());
+
+        Map<String, List<ProductTable>> result = new LinkedHashMap<>();
+        for (int i = 0; i < distinct.size(); i++) {
+            List<ProductTable> items = futures.get(i).join();
+            if (!items.isEmpty()) {
+                result.put(distinct.get(i), items);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * META của các sản phẩm theo pk. Iterable của BatchGetItem tự gọi lại với UnprocessedKeys.
+     */
+    public Map<String, ProductTable> batchGetMeta(Collection<String> pks) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(pks));
+        Map<String, ProductTable> result = new LinkedHashMap<>();
+        DynamoDbTable<ProductTable> table = productTable();
+        for (int from = 0; from < distinct.size(); from += BATCH_GET_MAX_KEYS) {
+            List<String> chunk = distinct.subList(from, Math.min(from + BATCH_GET_MAX_KEYS, distinct.size()));
+            ReadBatch.Builder<ProductTable> batch = ReadBatch.builder(ProductTable.class).mappedTableResource(table);
+            chunk.forEach(pk -> batch.addGetItem(Key.builder().partitionValue(pk).sortValue("META").build()));
+
+            for (BatchGetResultPage page : enhancedClient.batchGetItem(
+                    BatchGetItemEnhancedRequest.builder().readBatches(batch.build()).build())) {
+                page.resultsForTable(table).forEach(item -> result.put(item.getPk(), item));
+            }
+        }
+        log.debug("Batch loaded {} of {} product META items", result.size(), distinct.size());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
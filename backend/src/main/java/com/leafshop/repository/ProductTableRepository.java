@@ -1,7 +1,9 @@
 package com.leafshop.repository;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.model.dynamodb.ProductTable;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
@@ -49,6 +51,7 @@ public class ProductTableRepository {
 	}
 
 	// Find product by PK (PRODUCT#<product_id>) with SK = "META"
+	@Cacheable(cacheNames = CacheNames.PRODUCTS, key = "#pk", unless = "#result == null")
 	public Optional<ProductTable> findProductByPk(String pk) {
 		Key key = Key.builder().partitionValue(pk).sortValue("META").build();
 		return Optional.ofNullable(productTable().getItem(key));
@@ -92,12 +95,14 @@ public class ProductTableRepository {
 	}
 
 	// Find category by PK (CATEGORY#<category_id>)
+	@Cacheable(cacheNames = CacheNames.CATEGORIES, key = "#pk", unless = "#result == null")
 	public Optional<ProductTable> findCategoryByPk(String pk) {
 		Key key = Key.builder().partitionValue(pk).sortValue("META").build();
 		return Optional.ofNullable(productTable().getItem(key));
 	}
 
 	// Find type by PK (TYPE#<type_id>)
+	@Cacheable(cacheNames = CacheNames.PRODUCT_TYPES, key = "#pk", unless = "#result == null")
 	public Optional<ProductTable> findTypeByPk(String pk) {
 		Key key = Key.builder().partitionValue(pk).sortValue("META").build();
 		return Optional.ofNullable(productTable().getItem(key));
@@ -120,6 +125,7 @@ public class ProductTableRepository {
 			.collect(Collectors.toList());
 	}
 
+	@Cacheable(cacheNames = CacheNames.CATEGORIES, key = "'all'")
 	public List<ProductTable> findAllCategories() {
 		Map<String, AttributeValue> eav = new HashMap<>();
 		eav.put(":catPrefix", AttributeValue.builder().s("CATEGORY#").build());
@@ -136,6 +142,7 @@ public class ProductTableRepository {
 			.collect(Collectors.toList());
 	}
 
+	@Cacheable(cacheNames = CacheNames.PRODUCT_TYPES, key = "'all'")
 	public List<ProductTable> findAllTypes() {
 		Map<String, AttributeValue> eav = new HashMap<>();
 		eav.put(":typePrefix", AttributeValue.builder().s("TYPE#").build());
@@ -169,6 +176,22 @@ public class ProductTableRepository {
 			.collect(Collectors.toList());
 	}
 
+	// Scan toàn bộ item của sản phẩm (META, VARIANT#, MEDIA#) - dùng để nạp ProductCatalogIndex
+	public List<ProductTable> findAllProductItems() {
+		Map<String, AttributeValue> eav = new HashMap<>();
+		eav.put(":productPrefix", AttributeValue.builder().s("PRODUCT#").build());
+		Expression filterExpression = Expression.builder()
+			.expression("begins_with(PK, :productPrefix)")
+			.expressionValues(eav)
+			.build();
+
+		return productTable()
+			.scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
+			.items()
+			.stream()
+			.collect(Collectors.toList());
+	}
+
 	// Find all products
 	public List<ProductTable> findAllProducts() {
 		Map<String, AttributeValue> eav = new HashMap<>();
@@ -185,4 +208,33 @@ public class ProductTableRepository {
 			.stream()
 			.collect(Collectors.toList());
 	}
+
+	// Một trang sản phẩm (META) theo cursor; bộ lọc được đẩy xuống filter expression của scan
+	public ScanPage<ProductTable> scanProductsPage(String categoryId, String typeId, Boolean isActive,
+		int limit, Map<String, AttributeValue> exclusiveStartKey) {
+		Map<String, AttributeValue> eav = new HashMap<>();
+		eav.put(":productPrefix", AttributeValue.builder().s("PRODUCT#").build());
+		eav.put(":meta", AttributeValue.builder().s("META").build());
+		StringBuilder expression = new StringBuilder("begins_with(PK, :productPrefix) AND SK = :meta");
+		if (categoryId != null && !categoryId.isEmpty()) {
+			eav.put(":categoryId", AttributeValue.builder().s(categoryId).build());
+			expression.append(" AND categoryId = :categoryId");
+		}
+		if (typeId != null && !typeId.isEmpty()) {
+			eav.put(":typeId", AttributeValue.builder().s(typeId).build());
+			expression.append(" AND typeId = :typeId");
+		}
+		if (isActive != null) {
+			eav.put(":active", AttributeValue.builder().bool(true).build());
+			expression.append(isActive
+				? " AND isActive = :active"
+				: " AND (attribute_not_exists(isActive) OR isActive <> :active)");
+		}
+		Expression filterExpression = Expression.builder()
+			.expression(expression.toString())
+			.expressionValues(eav)
+			.build();
+
+		return DynamoDbScanPager.scan(productTable(), filterExpression, limit, exclusiveStartKey);
+	}
 }
@@ -1,12 +1,15 @@
 package com.leafshop.repository;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.model.dynamodb.ReviewTable;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
@@ -23,6 +26,7 @@ import java.util.stream.Collectors;
 public class ReviewTableRepository {
 
 	private final DynamoDbEnhancedClient enhancedClient;
+	private final ParallelScanExecutor parallelScanExecutor;
 
 	private DynamoDbTable<ReviewTable> reviewTable() {
 		return enhancedClient.table("ReviewTable", TableSchema.fromBean(ReviewTable.class));
@@ -58,18 +62,21 @@ public class ReviewTableRepository {
 		return findByPk(userPk);
 	}
 
-	// Find approved reviews for a product
+	// Find approved reviews for a product (query partition, lọc isApproved)
+	@Cacheable(cacheNames = CacheNames.APPROVED_REVIEWS, key = "#productPk")
 	public List<ReviewTable> findApprovedReviewsByPk(String productPk) {
 		Map<String, AttributeValue> eav = new HashMap<>();
-		eav.put(":pk", AttributeValue.builder().s(productPk).build());
 		eav.put(":true", AttributeValue.builder().bool(true).build());
 		Expression filterExpression = Expression.builder()
-			.expression("pk = :pk AND isApproved = :true")
+			.expression("isApproved = :true")
 			.expressionValues(eav)
 			.build();
 
 		return reviewTable()
-			.scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
+			.query(QueryEnhancedRequest.builder()
+				.queryConditional(QueryConditional.keyEqualTo(Key.builder().partitionValue(productPk).build()))
+				.filterExpression(filterExpression)
+				.build())
 			.items()
 			.stream()
 			.collect(Collectors.toList());
@@ -96,15 +103,29 @@ public class ReviewTableRepository {
 		Map<String, AttributeValue> eav = new HashMap<>();
 		eav.put(":productPrefix", AttributeValue.builder().s("PRODUCT#").build());
 		Expression filterExpression = Expression.builder()
-			.expression("begins_with(pk, :productPrefix)")
+			.expression("begins_with(PK, :productPrefix)")
 			.expressionValues(eav)
 			.build();
 
-		return reviewTable()
-			.scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-			.items()
-			.stream()
-			.collect(Collectors.toList());
+		return parallelScanExecutor.scanAll(reviewTable(), filterExpression);
+	}
+
+	// Một trang đánh giá sản phẩm theo cursor, lọc isApproved ngay trên DynamoDB nếu có
+	public ScanPage<ReviewTable> findReviewsPage(Boolean isApproved, int limit,
+		Map<String, AttributeValue> exclusiveStartKey) {
+		Map<String, AttributeValue> eav = new HashMap<>();
+		eav.put(":productPrefix", AttributeValue.builder().s("PRODUCT#").build());
+		String expression = "begins_with(PK, :productPrefix)";
+		if (isApproved != null) {
+			eav.put(":approved", AttributeValue.builder().bool(isApproved).build());
+			expression += " AND isApproved = :approved";
+		}
+		Expression filterExpression = Expression.builder()
+			.expression(expression)
+			.expressionValues(eav)
+			.build();
+
+		return DynamoDbScanPager.scan(reviewTable(), filterExpression, limit, exclusiveStartKey);
 	}
 
 	public void deleteByPkAndSk(String pk, String sk) {
@@ -5,15 +5,23 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Repository
 @RequiredArgsConstructor
 public class RevokedTokenRepository {
 
+    public static final String PK_PREFIX = "TOKEN#";
+
     private final DynamoDbEnhancedClient enhancedClient;
 
     private DynamoDbTable<RevokedToken> table() {
@@ -21,14 +29,26 @@ public class RevokedTokenRepository {
     }
 
     public void save(String tokenValue, Long expiresAt) {
-        String pk = "TOKEN#" + tokenValue;
+        String pk = PK_PREFIX + tokenValue;
         RevokedToken t = RevokedToken.builder().pk(pk).expiresAt(expiresAt).build();
         table().putItem(t);
     }
 
     public Optional<RevokedToken> findByTokenValue(String tokenValue) {
-        String pk = "TOKEN#" + tokenValue;
+        String pk = PK_PREFIX + tokenValue;
         Key key = Key.builder().partitionValue(pk).build();
         return Optional.ofNullable(table().getItem(key));
     }
+
+    // Token thu hồi chưa hết hạn (không có ExpiresAt coi như còn hiệu lực)
+    public List<RevokedToken> findAllUnexpired(long now) {
+        Expression filter = Expression.builder()
+                .expression("attribute_not_exists(ExpiresAt) OR ExpiresAt > :now")
+                .expressionValues(Map.of(":now", AttributeValue.builder().n(Long.toString(now)).build()))
+                .build();
+        return table().scan(ScanEnhancedRequest.builder().filterExpression(filter).build())
+                .items()
+                .stream()
+                .collect(Collectors.toList());
+    }
 }
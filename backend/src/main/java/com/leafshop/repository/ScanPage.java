@@ -0,0 +1,20 @@
+package com.leafshop.repository;
+
+import lombok.Value;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Một trang kết quả scan. lastEvaluatedKey = null nghĩa là đã hết dữ liệu.
+ */
+@Value
+public class ScanPage<T> {
+    List<T> items;
+    Map<String, AttributeValue> lastEvaluatedKey;
+
+    public boolean hasMore() {
+        return lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty();
+    }
+}
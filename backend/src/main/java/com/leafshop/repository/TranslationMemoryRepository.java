@@ -0,0 +1,120 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.TranslationMemory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class TranslationMemoryRepository {
+
+    public static final String TABLE_NAME = "TranslationMemoryTable";
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final DynamoDbEnhancedClient enhancedClient;
+
+    private DynamoDbTable<TranslationMemory> table() {
+        return enhancedClient.table(TABLE_NAME, TableSchema.fromBean(TranslationMemory.class));
+    }
+
+    public static String pk(String sourceLanguage, String sourceText) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((sourceLanguage + "|" + sourceText).getBytes(StandardCharsets.UTF_8));
+            StringBuilder pk = new StringBuilder("TM#");
+            for (byte b : digest) {
+                pk.append(String.format("%02x", b));
+            }
+            return pk.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static String sk(String sourceLanguage, String targetLanguage) {
+        return sourceLanguage + ">" + targetLanguage;
+    }
+
+    /**
+     * Bản dịch đã lưu của nhiều câu nguồn (BatchGetItem, tối đa 100 key mỗi lần gọi), key theo câu nguồn.
+     */
+    public Map<String, String> findTranslations(Collection<String> sourceTexts, String sourceLanguage, String targetLanguage) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(sourceTexts));
+        Map<String, String> textByPk = new HashMap<>();
+        distinct.forEach(text -> textByPk.put(pk(sourceLanguage, text), text));
+
+        Map<String, String> result = new HashMap<>();
+        DynamoDbTable<TranslationMemory> table = table();
+        String sk = sk(sourceLanguage, targetLanguage);
+        List<String> pks = new ArrayList<>(textByPk.keySet());
+        for (int from = 0; from < pks.size(); from += 100) {
+            ReadBatch.Builder<TranslationMemory> batch = ReadBatch.builder(TranslationMemory.class).mappedTableResource(table);
+            pks.subList(from, Math.min(from + 100, pks.size()))
+                    .forEach(pk -> batch.addGetItem(Key.builder().partitionValue(pk).sortValue(sk).build()));
+            for (BatchGetResultPage page : enhancedClient.batchGetItem(
+                    BatchGetItemEnhancedRequest.builder().readBatches(batch.build()).build())) {
+                page.resultsForTable(table).forEach(item -> {
+                    // So cả câu nguồn để chắc chắn không nhầm khi trùng hash
+                    String text = textByPk.get(item.getPk());
+                    if (text != null && text.equals(item.getSourceText()) && item.getTranslatedText() != null) {
+                        result.put(text, item.getTranslatedText());
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lưu nhiều bản dịch (BatchWriteItem, 25 item mỗi lần gọi, gửi lại item chưa xử lý).
+     */
+    public void saveAll(Map<String, String> translations, String sourceLanguage, String targetLanguage) {
+        DynamoDbTable<TranslationMemory> table = table();
+        long now = System.currentTimeMillis();
+        List<TranslationMemory> items = new ArrayList<>(translations.size());
+        translations.forEach((source, translated) -> items.add(TranslationMemory.builder()
+                .pk(pk(sourceLanguage, source))
+                .sk(sk(sourceLanguage, targetLanguage))
+                .sourceLanguage(sourceLanguage)
+                .targetLanguage(targetLanguage)
+                .sourceText(source)
+                .translatedText(translated)
+                .createdAt(now)
+                .build()));
+
+        for (int from = 0; from < items.size(); from += 25) {
+            List<TranslationMemory> pending = items.subList(from, Math.min(from + 25, items.size()));
+            for (int attempt = 1; !pending.isEmpty() && attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+                WriteBatch.Builder<TranslationMemory> batch = WriteBatch.builder(TranslationMemory.class).mappedTableResource(table);
+                pending.forEach(batch::addPutItem);
+                BatchWriteResult result = enhancedClient.batchWriteItem(
+                        BatchWriteItemEnhancedRequest.builder().writeBatches(batch.build()).build());
+                pending = result.unprocessedPutItemsForTable(table);
+            }
+            if (!pending.isEmpty()) {
+                log.warn("{} translations were not saved to translation memory", pending.size());
+            }
+        }
+    }
+}
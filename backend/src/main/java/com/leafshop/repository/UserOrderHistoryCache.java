@@ -0,0 +1,120 @@
+package com.leafshop.repository;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheNames;
+import com.leafshop.model.dynamodb.OrderTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Trang đầu lịch sử đơn hàng của từng user (cache {@link CacheNames#USER_ORDERS}: L1 + Redis).
+ *
+ * OrderTableRepository / InventoryReservationEngine gọi {@link #evict(String)} mỗi khi ghi/xoá order META
+ * có userId (checkout, đổi trạng thái, thanh toán, phân công...), nên trang đầu không cần TTL ngắn.
+ * Lỗi cache chỉ được log, không làm hỏng thao tác ghi.
+ *
+ * Trang đọc từ DynamoDB trước một lần evict có thể về sau lần evict đó. Để không cache lại bản cũ:
+ * - Không put nếu user bị evict (trên node này hoặc node khác, qua bus) sau lúc bắt đầu đọc, hoặc lần đọc
+ *   lâu hơn {@link #GUARD_WINDOW_MS}.
+ * - Node khác evict ngay sau khi node này vừa put (trong {@link #GUARD_WINDOW_MS}): bản vừa put có thể đã cũ,
+ *   evict lại cả Redis.
+ */
+@Slf4j
+@Component
+public class UserOrderHistoryCache {
+
+    static final long GUARD_WINDOW_MS = 30_000;
+
+    private final CacheManager cacheManager;
+    // userId -> lúc evict gần nhất / lúc bắt đầu đọc của trang node này vừa put, chỉ giữ trong GUARD_WINDOW_MS
+    private final Map<String, Long> evictedAt = new ConcurrentHashMap<>();
+    private final Map<String, Long> loadedAt = new ConcurrentHashMap<>();
+    private volatile long clearedAt;
+
+    public UserOrderHistoryCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<OrderTable> firstPage(String userId, Supplier<List<OrderTable>> loader) {
+        Cache cache = cacheManager.getCache(CacheNames.USER_ORDERS);
+        if (cache == null) {
+            return loader.get();
+        }
+        Cache.ValueWrapper cached = cache.get(userId);
+        if (cached != null && cached.get() != null) {
+            return (List<OrderTable>) cached.get();
+        }
+        long started = System.currentTimeMillis();
+        List<OrderTable> page = loader.get();
+        if (evictedSince(userId, started) || System.currentTimeMillis() - started >= GUARD_WINDOW_MS) {
+            return page;
+        }
+        loadedAt.put(userId, started);
+        prune(System.currentTimeMillis());
+        cache.put(userId, page);
+        // Evict chen vào giữa lần kiểm tra và put ở trên
+        if (evictedSince(userId, started)) {
+            cache.evict(userId);
+        }
+        return page;
+    }
+
+    public void evict(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return;
+        }
+        markEvicted(userId);
+        try {
+            Cache cache = cacheManager.getCache(CacheNames.USER_ORDERS);
+            if (cache != null) {
+                cache.evict(userId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to evict order history of {}: {}", userId, e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onRemoteEviction(CacheInvalidatedEvent event) {
+        if (!CacheNames.USER_ORDERS.equals(event.getCacheName())) {
+            return;
+        }
+        if (event.getKey() == null) {
+            clearedAt = System.currentTimeMillis();
+            loadedAt.clear();
+            return;
+        }
+        Long loaded = loadedAt.get(event.getKey());
+        if (loaded != null && System.currentTimeMillis() - loaded < GUARD_WINDOW_MS) {
+            evict(event.getKey());
+        } else {
+            markEvicted(event.getKey());
+        }
+    }
+
+    private boolean evictedSince(String userId, long since) {
+        Long evicted = evictedAt.get(userId);
+        return clearedAt >= since || (evicted != null && evicted >= since);
+    }
+
+    private void markEvicted(String userId) {
+        long now = System.currentTimeMillis();
+        evictedAt.put(userId, now);
+        loadedAt.remove(userId);
+        prune(now);
+    }
+
+    private void prune(long now) {
+        evictedAt.values().removeIf(at -> at < now - GUARD_WINDOW_MS);
+        loadedAt.values().removeIf(at -> at < now - GUARD_WINDOW_MS);
+    }
+}
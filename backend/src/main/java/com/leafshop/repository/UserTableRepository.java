@@ -7,10 +7,17 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.Map;
 import java.util.HashMap;
@@ -23,6 +30,8 @@ import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 public class UserTableRepository {
 
     private final DynamoDbEnhancedClient enhancedClient;
+    private final IndexQueryExecutor indexQueryExecutor;
+    private final ParallelScanExecutor parallelScanExecutor;
 
     private DynamoDbTable<UserTable> userTable() {
         return enhancedClient.table("UserTable", TableSchema.fromBean(UserTable.class));
@@ -119,19 +128,39 @@ public class UserTableRepository {
 
     // Scan for all user META records (PK starts with USER# and SK = META)
     public List<UserTable> scanAllUsersMeta() {
+        return parallelScanExecutor.scanAll(userTable(), usersMetaFilter());
+    }
+
+    // Scan song song các user META, giao từng trang cho caller ngay khi về (không giữ toàn bộ bảng)
+    public ParallelScanResult scanUsersMeta(Consumer<List<UserTable>> onPage) {
+        return parallelScanExecutor.scan(userTable(), usersMetaFilter(), onPage);
+    }
+
+    private Expression usersMetaFilter() {
         Map<String, AttributeValue> eav = new HashMap<>();
         eav.put(":prefix", AttributeValue.builder().s("USER#").build());
         eav.put(":meta", AttributeValue.builder().s("META").build());
-        Expression filterExpression = Expression.builder()
+        return Expression.builder()
                 .expression("begins_with(PK, :prefix) AND SK = :meta")
                 .expressionValues(eav)
                 .build();
+    }
 
-        return userTable()
-                .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
-                .items()
-                .stream()
-                .collect(Collectors.toList());
+    // ACCOUNT của nhiều user bằng BatchGetItem (tối đa 100 key mỗi lần gọi), key theo PK
+    public Map<String, UserTable> batchGetAccounts(Collection<String> userPks) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(userPks));
+        Map<String, UserTable> result = new HashMap<>();
+        DynamoDbTable<UserTable> table = userTable();
+        for (int from = 0; from < distinct.size(); from += 100) {
+            ReadBatch.Builder<UserTable> batch = ReadBatch.builder(UserTable.class).mappedTableResource(table);
+            distinct.subList(from, Math.min(from + 100, distinct.size()))
+                    .forEach(pk -> batch.addGetItem(Key.builder().partitionValue(pk).sortValue("ACCOUNT").build()));
+            for (BatchGetResultPage page : enhancedClient.batchGetItem(
+                    BatchGetItemEnhancedRequest.builder().readBatches(batch.build()).build())) {
+                page.resultsForTable(table).forEach(item -> result.put(item.getPk(), item));
+            }
+        }
+        return result;
     }
 
     // Scan for all EMPLOYEE items
@@ -152,20 +181,26 @@ public class UserTableRepository {
     }
 
     // Find account by username (scan)
+    // Find account by username (GSI username-index, scan fallback)
     public Optional<UserTable> findAccountByUsername(String username) {
-        Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":username", AttributeValue.builder().s(username).build());
-        eav.put(":account", AttributeValue.builder().s("ACCOUNT").build());
-
-        Expression filterExpression = Expression.builder()
-                .expression("SK = :account AND username = :username")
-                .expressionValues(eav)
-                .build();
-
-        return userTable()
-                .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).limit(1).build())
-                .items()
+        return indexQueryExecutor.query(userTable(), "username-index", username, () -> {
+                    Map<String, AttributeValue> eav = new HashMap<>();
+                    eav.put(":username", AttributeValue.builder().s(username).build());
+                    eav.put(":account", AttributeValue.builder().s("ACCOUNT").build());
+
+                    Expression filterExpression = Expression.builder()
+                            .expression("SK = :account AND username = :username")
+                            .expressionValues(eav)
+                            .build();
+
+                    return userTable()
+                            .scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
+                            .items()
+                            .stream()
+                            .collect(Collectors.toList());
+                })
                 .stream()
+                .filter(user -> "ACCOUNT".equals(user.getSk()))
                 .findFirst();
     }
 
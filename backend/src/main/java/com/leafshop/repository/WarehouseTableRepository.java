@@ -7,10 +7,12 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 
 import java.util.HashMap;
 import java.util.List;
@@ -23,13 +25,22 @@ import java.util.stream.Collectors;
 public class WarehouseTableRepository {
 
 	private final DynamoDbEnhancedClient enhancedClient;
+	private final DashboardMetricsRepository dashboardMetricsRepository;
+	private final InventoryAvailabilityCache inventoryAvailabilityCache;
 
 	private DynamoDbTable<WarehouseTable> warehouseTable() {
 		return enhancedClient.table("WarehouseTable", TableSchema.fromBean(WarehouseTable.class));
 	}
 
+	// Trả về bản ghi cũ để cập nhật bộ đếm low-stock của dashboard theo chênh lệch
 	public void save(WarehouseTable warehouse) {
-		warehouseTable().putItem(warehouse);
+		WarehouseTable before = warehouseTable().putItemWithResponse(PutItemEnhancedRequest.builder(WarehouseTable.class)
+				.item(warehouse)
+				.returnValues(ReturnValue.ALL_OLD)
+				.build())
+			.attributes();
+		dashboardMetricsRepository.recordInventoryChange(before, warehouse);
+		inventoryAvailabilityCache.onRowSaved(warehouse);
 	}
 
 	// Find warehouse by PK (WAREHOUSE#<warehouse_id>)
@@ -86,6 +97,22 @@ public class WarehouseTableRepository {
 			.collect(Collectors.toList());
 	}
 
+	// Toàn bộ item tồn kho (SK begins_with PRODUCT#) của mọi kho trong một lần scan
+	public List<WarehouseTable> scanAllInventory() {
+		Map<String, AttributeValue> eav = new HashMap<>();
+		eav.put(":product", AttributeValue.builder().s("PRODUCT#").build());
+		Expression filterExpression = Expression.builder()
+			.expression("begins_with(SK, :product)")
+			.expressionValues(eav)
+			.build();
+
+		return warehouseTable()
+			.scan(ScanEnhancedRequest.builder().filterExpression(filterExpression).build())
+			.items()
+			.stream()
+			.collect(Collectors.toList());
+	}
+
 	// Find active warehouses
 	public List<WarehouseTable> findByIsActiveTrue() {
     Map<String, AttributeValue> eav = new HashMap<>();
@@ -114,7 +141,9 @@ public class WarehouseTableRepository {
 
 	public void deleteByPkAndSk(String pk, String sk) {
 		Key key = Key.builder().partitionValue(pk).sortValue(sk).build();
-		warehouseTable().deleteItem(key);
+		WarehouseTable before = warehouseTable().deleteItem(key);
+		dashboardMetricsRepository.recordInventoryChange(before, null);
+		inventoryAvailabilityCache.onRowDeleted(pk, sk);
 	}
 }
 
@@ -0,0 +1,139 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.WebhookEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Outbox webhook thanh toán. Ghi mới chỉ thành công một lần cho mỗi PK (khử trùng lặp callback),
+ * worker nhận việc bằng conditional put để mỗi sự kiện chỉ một worker xử lý tại một thời điểm.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WebhookEventRepository {
+
+    public static final String TABLE_NAME = "WebhookEventTable";
+    public static final String PENDING_INDEX = "pending-receivedAt-index";
+    public static final String PENDING = "PENDING";
+    public static final String STATUS_RECEIVED = "RECEIVED";
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    public static final String STATUS_PROCESSED = "PROCESSED";
+    public static final String STATUS_FAILED = "FAILED";
+    private static final String SK = "META";
+
+    private final DynamoDbEnhancedClient enhancedClient;
+    private final IndexQueryExecutor indexQueryExecutor;
+
+    private DynamoDbTable<WebhookEvent> table() {
+        return enhancedClient.table(TABLE_NAME, TableSchema.fromBean(WebhookEvent.class));
+    }
+
+    public static String pk(String provider, String transactionId, String paymentStatus) {
+        return "WEBHOOK#" + provider + "#" + transactionId + "#" + paymentStatus;
+    }
+
+    public static String sk() {
+        return SK;
+    }
+
+    public Optional<WebhookEvent> find(String pk) {
+        Key key = Key.builder().partitionValue(pk).sortValue(SK).build();
+        return Optional.ofNullable(table().getItem(r -> r.key(key).consistentRead(true)));
+    }
+
+    /**
+     * Lưu sự kiện mới; false nếu cùng giao dịch/kết quả đã được nhận trước đó.
+     */
+    public boolean insertIfAbsent(WebhookEvent event) {
+        return conditionalPut(event, Expression.builder().expression("attribute_not_exists(PK)").build());
+    }
+
+    /**
+     * Nhận việc: RECEIVED đã tới hạn thử lại, hoặc PROCESSING mà worker cũ đã quá hạn (node dừng giữa chừng).
+     */
+    public Optional<WebhookEvent> claim(String pk, String claimToken, long now, long claimTimeoutMs) {
+        Optional<WebhookEvent> current = find(pk);
+        if (current.isEmpty() || current.get().getPending() == null) {
+            return Optional.empty();
+        }
+        WebhookEvent event = current.get();
+        event.setStatus(STATUS_PROCESSING);
+        event.setClaimToken(claimToken);
+        event.setClaimedUntil(now + claimTimeoutMs);
+
+        Expression condition = Expression.builder()
+                .expression("(#status = :received AND (attribute_not_exists(nextAttemptAt) OR nextAttemptAt <= :now))"
+                        + " OR (#status = :processing AND claimedUntil < :now)")
+                .expressionNames(Map.of("#status", "status"))
+                .expressionValues(Map.of(
+                        ":received", AttributeValue.builder().s(STATUS_RECEIVED).build(),
+                        ":processing", AttributeValue.builder().s(STATUS_PROCESSING).build(),
+                        ":now", AttributeValue.builder().n(Long.toString(now)).build()))
+                .build();
+        return conditionalPut(event, condition) ? Optional.of(event) : Optional.empty();
+    }
+
+    /**
+     * Ghi kết quả xử lý; chỉ thành công khi worker này vẫn giữ sự kiện.
+     */
+    public boolean release(WebhookEvent event, String claimToken) {
+        return conditionalPut(event, Expression.builder()
+                .expression("claimToken = :token")
+                .expressionValues(Map.of(":token", AttributeValue.builder().s(claimToken).build()))
+                .build());
+    }
+
+    /**
+     * Sự kiện chưa xong, cũ nhất trước (GSI thưa, scan fallback khi index chưa sẵn sàng).
+     */
+    public List<WebhookEvent> findPending(int limit) {
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                .queryConditional(QueryConditional.keyEqualTo(Key.builder().partitionValue(PENDING).build()))
+                .scanIndexForward(true)
+                .limit(limit)
+                .build();
+        return indexQueryExecutor.queryPage(table(), PENDING_INDEX, request,
+                () -> new ScanPage<>(scanPending(limit), null)).getItems();
+    }
+
+    private List<WebhookEvent> scanPending(int limit) {
+        Expression filter = Expression.builder()
+                .expression("attribute_exists(pending)")
+                .build();
+        return table().scan(ScanEnhancedRequest.builder().filterExpression(filter).build())
+                .items()
+                .stream()
+                .sorted(Comparator.comparing(WebhookEvent::getReceivedAt, Comparator.nullsLast(Comparator.naturalOrder())))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private boolean conditionalPut(WebhookEvent event, Expression condition) {
+        try {
+            table().putItem(PutItemEnhancedRequest.builder(WebhookEvent.class)
+                    .item(event)
+                    .conditionExpression(condition)
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+}
@@ -66,7 +66,7 @@ public class AuthService {
         userTableRepository.save(meta);
         userTableRepository.save(account);
 
-        String token = jwtUtil.generateToken(account.getUsername());
+        String token = jwtUtil.generateToken(account.getUsername(), account.getRole());
 
         // create refresh token
         String refreshValue = UUID.randomUUID().toString();
@@ -95,7 +95,7 @@ public class AuthService {
             throw new RuntimeException("Invalid credentials");
         }
 
-        String token = jwtUtil.generateToken(account.getUsername());
+        String token = jwtUtil.generateToken(account.getUsername(), account.getRole());
 
         String refreshValue = UUID.randomUUID().toString();
         String tokenId = UUID.randomUUID().toString();
@@ -132,7 +132,7 @@ public class AuthService {
             throw new RuntimeException("Not authorized");
         }
 
-        String token = jwtUtil.generateToken(account.getUsername());
+        String token = jwtUtil.generateToken(account.getUsername(), account.getRole());
 
         String refreshValue = UUID.randomUUID().toString();
         String tokenId = UUID.randomUUID().toString();
@@ -224,7 +224,7 @@ public class AuthService {
         }
 
         // 5. Generate JWT token
-        String token = jwtUtil.generateToken(account.getUsername());
+        String token = jwtUtil.generateToken(account.getUsername(), account.getRole());
 
         // 6. Create refresh token
         String refreshValue = UUID.randomUUID().toString();
@@ -1,19 +1,24 @@
 package com.leafshop.service;
 
+import com.leafshop.catalog.CatalogProduct;
+import com.leafshop.catalog.ProductCatalogIndex;
 import com.leafshop.dto.cart.*;
 import com.leafshop.dto.coupon.ApplyCouponRequest;
 import com.leafshop.dto.coupon.ApplyCouponResponse;
 import com.leafshop.dto.order.CreateOrderResponse;
 import com.leafshop.model.dynamodb.OrderTable;
 import com.leafshop.model.dynamodb.ProductTable;
+import com.leafshop.orders.OrderChangedEvent;
+import com.leafshop.repository.CartDocumentStore;
+import com.leafshop.repository.InventoryAvailabilityCache;
+import com.leafshop.repository.InventoryReservationEngine;
 import com.leafshop.repository.OrderTableRepository;
-import com.leafshop.repository.ProductTableRepository;
-import com.leafshop.repository.WarehouseTableRepository;
-import com.leafshop.model.dynamodb.WarehouseTable;
+import com.leafshop.repository.ProductHydrator;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -65,9 +70,14 @@ public class CartService {
         return map;
     }
 
+    private final ProductHydrator productHydrator;
+    private final InventoryReservationEngine inventoryReservationEngine;
+    private final InventoryAvailabilityCache inventoryAvailabilityCache;
+    private final CartDocumentStore cartDocumentStore;
+    private final ProductCatalogIndex productCatalogIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IdempotencyService idempotencyService;
     private final OrderTableRepository orderTableRepository;
-    private final ProductTableRepository productTableRepository;
-    private final WarehouseTableRepository warehouseTableRepository;
 
     private String cartPk(String userId, String sessionId) {
         if (userId != null && !userId.isEmpty()) {
@@ -76,133 +86,178 @@ public class CartService {
         return "CART#GUEST#" + sessionId;
     }
 
+    // Giỏ hàng là một document (CART#.../META + cartItems) trong CartDocumentStore
+    private Optional<OrderTable> findCart(String pk) {
+        return cartDocumentStore.find(pk);
+    }
+
+    private OrderTable newCart(String pk, String userId, String sessionId) {
+        return OrderTable.builder()
+                .pk(pk)
+                .sk("META")
+                .itemType("Cart")
+                .userId(userId)
+                .sessionId(sessionId)
+                .cartItems(new ArrayList<>())
+                .subtotal(0.0)
+                .shippingAmount(0.0)
+                .discountAmount(0.0)
+                .totalAmount(0.0)
+                .createdAt(System.currentTimeMillis())
+                .build();
+    }
+
     public CartResponse getOrCreateCart(String userId, String sessionId) {
         String pk = cartPk(userId, sessionId);
+        return cartDocumentStore.modify(pk, () -> {
+            Optional<OrderTable> cartOpt = findCart(pk);
+            if (!cartOpt.isPresent()) {
+                OrderTable cart = newCart(pk, userId, sessionId);
+                cartDocumentStore.save(cart);
+                return buildCartResponse(cart, null, false);
+            }
 
-        Optional<OrderTable> metaOpt = orderTableRepository.findCartByPk(pk);
-        if (!metaOpt.isPresent()) {
-            OrderTable meta = OrderTable.builder()
-                    .pk(pk)
-                    .sk("META")
-                    .itemType("Cart")
-                    .userId(userId)
-                    .sessionId(sessionId)
-                    .subtotal(0.0)
-                    .shippingAmount(0.0)
-                    .discountAmount(0.0)
-                    .totalAmount(0.0)
-                    .createdAt(System.currentTimeMillis())
-                    .build();
-            orderTableRepository.save(meta);
-        }
-
-        return buildCartResponse(pk, userId, sessionId, null);
+            return buildCartResponse(cartOpt.get(), null, false);
+        });
     }
 
     public CartResponse getCart(String userId, String sessionId) {
         String pk = cartPk(userId, sessionId);
-        return buildCartResponse(pk, userId, sessionId, null);
+        OrderTable cart = findCart(pk).orElseGet(() -> newCart(pk, userId, sessionId));
+        return buildCartResponse(cart, null, false);
     }
 
     public CartResponse addItem(CartItemRequest req) {
         String pk = cartPk(req.getUserId(), req.getSessionId());
-
-        // Ensure cart meta exists
-        getOrCreateCart(req.getUserId(), req.getSessionId());
-
-        // Load product price
-        String productPk = "PRODUCT#" + req.getProductId();
-        Optional<ProductTable> pMetaOpt = productTableRepository.findProductMetaByPkAndSk(productPk, "META");
-        double unitPrice = 0.0;
-        if (pMetaOpt.isPresent()) {
-            ProductTable p = pMetaOpt.get();
-            unitPrice = p.getPrice() != null ? p.getPrice() : 0.0;
-            // check variant override
-            if (req.getVariantId() != null) {
-                Optional<ProductTable> varOpt = productTableRepository.findVariantByPkAndSk(productPk, "VARIANT#" + req.getVariantId());
-                if (varOpt.isPresent()) {
-                    ProductTable v = varOpt.get();
-                    if (v.getVariantPrice() != null) {
-                        unitPrice = v.getVariantPrice();
+        return cartDocumentStore.modify(pk, () -> {
+            // Ensure cart exists
+            OrderTable cart = findCart(pk).orElseGet(() -> newCart(pk, req.getUserId(), req.getSessionId()));
+
+            // Load product price (META + VARIANT# từ catalog index trong bộ nhớ)
+            String productPk = "PRODUCT#" + req.getProductId();
+            Optional<CatalogProduct> productOpt = productCatalogIndex.findProduct(productPk);
+            double unitPrice = 0.0;
+            if (productOpt.isPresent()) {
+                ProductTable p = productOpt.get().getMeta();
+                unitPrice = p.getPrice() != null ? p.getPrice() : 0.0;
+                // check variant override
+                if (req.getVariantId() != null) {
+                    String variantSk = "VARIANT#" + req.getVariantId();
+                    Optional<ProductTable> varOpt = productOpt.get().getVariants().stream()
+                            .filter(v -> variantSk.equals(v.getSk()))
+                            .findFirst();
+                    if (varOpt.isPresent()) {
+                        ProductTable v = varOpt.get();
+                        if (v.getVariantPrice() != null) {
+                            unitPrice = v.getVariantPrice();
+                        }
                     }
                 }
             }
-        }
 
-        int quantity = req.getQuantity() != null ? req.getQuantity() : 1;
-
-        // Check if same product+variant exists in cart; if so, increase quantity
-        List<OrderTable> items = orderTableRepository.findOrderItemsByPk(pk);
-        Optional<OrderTable> existing = items.stream()
-                .filter(i -> req.getProductId().equals(i.getProductId())
-                && Objects.equals(req.getVariantId(), i.getVariantId())
-                && Objects.equals(req.getSize(), i.getSize()))
-                .findFirst();
-
-        String itemSk;
-        if (existing.isPresent()) {
-            OrderTable ex = existing.get();
-            ex.setQuantity((ex.getQuantity() != null ? ex.getQuantity() : 0) + quantity);
-            ex.setUnitPrice(unitPrice);
-            ex.setItemTotal(ex.getUnitPrice() * ex.getQuantity());
-            orderTableRepository.save(ex);
-            itemSk = ex.getSk();
-        } else {
-            String itemId = UUID.randomUUID().toString();
-            itemSk = "ITEM#" + itemId;
-
-            // Fetch productName from ProductTable
-            String productName = null;
-            if (pMetaOpt.isPresent()) {
-                productName = pMetaOpt.get().getName();
-            }
+            int quantity = req.getQuantity() != null ? req.getQuantity() : 1;
+
+            // Check if same product+variant exists in cart; if so, increase quantity
+            List<OrderTable> items = CartDocumentStore.toItems(cart);
+            Optional<OrderTable> existing = items.stream()
+                    .filter(i -> req.getProductId().equals(i.getProductId())
+                    && Objects.equals(req.getVariantId(), i.getVariantId())
+                    && Objects.equals(req.getSize(), i.getSize()))
+                    .findFirst();
+
+            if (existing.isPresent()) {
+                OrderTable ex = existing.get();
+                ex.setQuantity((ex.getQuantity() != null ? ex.getQuantity() : 0) + quantity);
+                ex.setUnitPrice(unitPrice);
+                ex.setItemTotal(ex.getUnitPrice() * ex.getQuantity());
+            } else {
+                String itemId = UUID.randomUUID().toString();
 
-            OrderTable item = OrderTable.builder()
-                    .pk(pk)
-                    .sk(itemSk)
-                    .itemType("CartItem")
-                    .productId(req.getProductId())
-                    .variantId(req.getVariantId())
-                    .productName(productName)
-                    .size(req.getSize())
-                    .quantity(quantity)
-                    .unitPrice(unitPrice)
-                    .itemTotal(unitPrice * quantity)
-                    .createdAt(System.currentTimeMillis())
-                    .build();
-            orderTableRepository.save(item);
-        }
+                // Fetch productName from ProductTable
+                String productName = null;
+                if (productOpt.isPresent()) {
+                    productName = productOpt.get().getMeta().getName();
+                }
+
+                items.add(OrderTable.builder()
+                        .pk(pk)
+                        .sk("ITEM#" + itemId)
+                        .itemType("CartItem")
+                        .productId(req.getProductId())
+                        .variantId(req.getVariantId())
+                        .productName(productName)
+                        .size(req.getSize())
+                        .quantity(quantity)
+                        .unitPrice(unitPrice)
+                        .itemTotal(unitPrice * quantity)
+                        .createdAt(System.currentTimeMillis())
+                        .build());
+            }
 
-        // Recompute totals
-        return buildCartResponse(pk, req.getUserId(), req.getSessionId(), null);
+            // Recompute totals
+            return saveItems(cart, items);
+        });
     }
 
     public CartResponse updateItem(String userId, String sessionId, String itemId, Integer quantity) {
         String pk = cartPk(userId, sessionId);
-        String sk = "ITEM#" + itemId;
-        Optional<OrderTable> itemOpt = orderTableRepository.findItemByPkAndSk(pk, sk);
-        if (itemOpt.isPresent()) {
-            OrderTable item = itemOpt.get();
-            item.setQuantity(quantity);
-            item.setItemTotal((item.getUnitPrice() != null ? item.getUnitPrice() : 0.0) * quantity);
-            orderTableRepository.save(item);
-        }
-        return buildCartResponse(pk, userId, sessionId, null);
+        return cartDocumentStore.modify(pk, () -> {
+            String sk = "ITEM#" + itemId;
+            Optional<OrderTable> cartOpt = findCart(pk);
+            if (!cartOpt.isPresent()) {
+                return buildCartResponse(newCart(pk, userId, sessionId), null, false);
+            }
+            List<OrderTable> items = CartDocumentStore.toItems(cartOpt.get());
+            Optional<OrderTable> itemOpt = items.stream().filter(i -> sk.equals(i.getSk())).findFirst();
+            if (itemOpt.isPresent()) {
+                OrderTable item = itemOpt.get();
+                item.setQuantity(quantity);
+                item.setItemTotal((item.getUnitPrice() != null ? item.getUnitPrice() : 0.0) * quantity);
+                return saveItems(cartOpt.get(), items);
+            }
+            return buildCartResponse(cartOpt.get(), null, false);
+        });
     }
 
     public CartResponse deleteItem(String userId, String sessionId, String itemId) {
         String pk = cartPk(userId, sessionId);
-        String sk = "ITEM#" + itemId;
-        orderTableRepository.deleteByPkAndSk(pk, sk);
-        return buildCartResponse(pk, userId, sessionId, null);
+        return cartDocumentStore.modify(pk, () -> {
+            String sk = "ITEM#" + itemId;
+            Optional<OrderTable> cartOpt = findCart(pk);
+            if (!cartOpt.isPresent()) {
+                return buildCartResponse(newCart(pk, userId, sessionId), null, false);
+            }
+            List<OrderTable> items = CartDocumentStore.toItems(cartOpt.get());
+            if (items.removeIf(i -> sk.equals(i.getSk()))) {
+                return saveItems(cartOpt.get(), items);
+            }
+            return buildCartResponse(cartOpt.get(), null, false);
+        });
     }
 
     public CartResponse computeTotals(String userId, String sessionId, String couponCode) {
         String pk = cartPk(userId, sessionId);
-        return buildCartResponse(pk, userId, sessionId, couponCode);
+        return cartDocumentStore.modify(pk, () -> {
+            OrderTable cart = findCart(pk).orElseGet(() -> newCart(pk, userId, sessionId));
+            return buildCartResponse(cart, couponCode, StringUtils.hasText(couponCode));
+        });
+    }
+
+    // Ghi lại danh sách dòng hàng vào document, tính tổng và lưu (một lần cập nhật cache + write-behind)
+    private CartResponse saveItems(OrderTable cart, List<OrderTable> items) {
+        cart.setCartItems(items.stream().map(CartDocumentStore::toLine).collect(Collectors.toList()));
+        return buildCartResponse(cart, null, true);
     }
 
     public CreateOrderResponse checkout(CheckoutRequest req) {
+        return checkout(req, null);
+    }
+
+    /**
+     * Checkout với Idempotency-Key (tuỳ chọn): gửi lại cùng key trả về đúng đơn đã tạo,
+     * không giữ tồn kho lần hai.
+     */
+    public CreateOrderResponse checkout(CheckoutRequest req, String idempotencyKey) {
         // 1. Validate request parameters
         // Require userId for checkout - guests cannot complete orders
         if (req.getUserId() == null || req.getUserId().isEmpty()) {
@@ -211,9 +266,34 @@ public class CartService {
         if (req.getShippingAddress() == null) {
             throw new IllegalArgumentException("Shipping address is required");
         }
+        if (!StringUtils.hasText(idempotencyKey)) {
+            return placeOrder(req, null);
+        }
+
+        String scope = "CHECKOUT#" + req.getUserId();
+        String orderKey = IdempotencyService.scopedKey(scope, idempotencyKey);
+        return idempotencyService.execute(scope, idempotencyKey, req, CreateOrderResponse.class,
+                () -> findPlacedOrder(orderKey).orElseGet(() -> placeOrder(req, orderKey)));
+    }
+
+    // Đơn đã ghi với key này nhưng chưa kịp lưu kết quả (node dừng giữa chừng, khoá đã hết hạn)
+    private Optional<CreateOrderResponse> findPlacedOrder(String orderKey) {
+        return orderTableRepository.findByIdempotencyKey(orderKey).stream()
+                .filter(item -> "META".equals(item.getSk()))
+                .findFirst()
+                .map(meta -> CreateOrderResponse.builder()
+                        .orderId(meta.getOrderId())
+                        .orderPk(meta.getPk())
+                        .totalAmount(meta.getTotalAmount())
+                        .orderStatus(meta.getOrderStatus())
+                        .build());
+    }
+
+    private CreateOrderResponse placeOrder(CheckoutRequest req, String idempotencyKey) {
 
         String cartPk = cartPk(req.getUserId(), req.getSessionId());
-        List<OrderTable> cartItems = orderTableRepository.findOrderItemsByPk(cartPk);
+        Optional<OrderTable> cartOpt = findCart(cartPk);
+        List<OrderTable> cartItems = cartOpt.map(CartDocumentStore::toItems).orElseGet(ArrayList::new);
 
         // 2. Validate cart is not empty
         if (cartItems.isEmpty()) {
@@ -226,87 +306,68 @@ public class CartService {
         // - Each cart should be allowed to checkout once
         // - The previous logic was preventing new checkouts after cart was repopulated
         // 3. Validate all products & variants exist (from ProductTable)
+        // Nạp partition của mọi sản phẩm trong giỏ một lượt (META + VARIANT#), không query từng item
         for (OrderTable cartItem : cartItems) {
             if (cartItem.getProductId() == null) {
                 throw new IllegalArgumentException("Cart item missing productId");
             }
+        }
+        Map<String, List<ProductTable>> productPartitions = productHydrator.loadPartitions(cartItems.stream()
+                .map(item -> DynamoDBKeyUtil.productPk(item.getProductId()))
+                .collect(Collectors.toList()));
+        Map<String, ProductTable> productsByPk = new HashMap<>();
+        for (OrderTable cartItem : cartItems) {
             String productPk = DynamoDBKeyUtil.productPk(cartItem.getProductId());
-            ProductTable product = productTableRepository.findProductByPk(productPk)
+            List<ProductTable> partition = productPartitions.getOrDefault(productPk, List.of());
+            ProductTable product = partition.stream()
+                    .filter(item -> DynamoDBKeyUtil.productMetaSk().equals(item.getSk()))
+                    .findFirst()
                     .orElseThrow(() -> new IllegalArgumentException("Product not found: " + cartItem.getProductId()));
 
             if (product.getIsActive() != null && !product.getIsActive()) {
                 throw new IllegalArgumentException("Product is inactive: " + cartItem.getProductId());
             }
+            productsByPk.put(productPk, product);
 
             // Validate variant if specified
             if (cartItem.getVariantId() != null && !cartItem.getVariantId().isEmpty()) {
                 String variantSk = DynamoDBKeyUtil.productVariantSk(cartItem.getVariantId());
-                productTableRepository.findVariantByPkAndSk(productPk, variantSk)
+                partition.stream()
+                        .filter(item -> variantSk.equals(item.getSk()))
+                        .findFirst()
                         .orElseThrow(() -> new IllegalArgumentException("Variant not found: " + cartItem.getVariantId()
                         + " for product " + cartItem.getProductId()));
             }
         }
 
-        // 4. Validate warehouses exist
-        List<WarehouseTable> warehouses = warehouseTableRepository.findByIsActiveTrue();
-        boolean warehousesAvailable = warehouses != null && !warehouses.isEmpty();
+        // 4. Validate warehouses exist (danh sách kho active lấy từ ảnh tồn kho trong bộ nhớ)
+        List<String> warehousePks = inventoryAvailabilityCache.activeWarehousePks();
+        boolean warehousesAvailable = !warehousePks.isEmpty();
         if (!warehousesAvailable) {
             logger.warn("No active warehouses available — skipping inventory checks and allocation");
         }
 
-        // 5. Pre-check: Verify sufficient stock across all warehouses for each product
-        // If warehouses are not available, skip pre-check and allocation (will create order but not reserve stock)
+        // 5. Pre-check: đủ hàng trên mọi kho active theo ảnh tồn kho, không đọc DynamoDB.
+        // Số lượng thật vẫn do InventoryReservationEngine kiểm tra trong transaction.
+        Map<String, Integer> neededBySku = new LinkedHashMap<>();
+        for (OrderTable cartItem : cartItems) {
+            if (cartItem.getQuantity() == null || cartItem.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Invalid quantity for product: " + cartItem.getProductId());
+            }
+            neededBySku.merge(cartItem.getProductId() + "#" + (cartItem.getVariantId() != null ? cartItem.getVariantId() : ""),
+                    cartItem.getQuantity(), Integer::sum);
+        }
         if (warehousesAvailable) {
-            Map<String, Integer> inventoryMap = new HashMap<>();
             for (OrderTable cartItem : cartItems) {
-                int qtyNeeded = cartItem.getQuantity() != null && cartItem.getQuantity() > 0 ? cartItem.getQuantity() : 0;
-                if (qtyNeeded <= 0) {
-                    throw new IllegalArgumentException("Invalid quantity for product: " + cartItem.getProductId());
-                }
-
-                String inventoryKey = cartItem.getProductId() + "#" + (cartItem.getVariantId() != null ? cartItem.getVariantId() : "");
-                int totalAvailable = 0;
-
-                for (WarehouseTable warehouse : warehouses) {
-                    if (warehouse.getPk() == null) {
-                        continue;
-                    }
-
-                    // Check variant inventory first
-                    if (cartItem.getVariantId() != null && !cartItem.getVariantId().isEmpty()) {
-                        String variantSk = DynamoDBKeyUtil.warehouseVariantSk(cartItem.getProductId(), cartItem.getVariantId());
-                        Optional<WarehouseTable> variantInv = warehouseTableRepository.findVariantInventoryByPkAndSk(
-                                warehouse.getPk(), variantSk);
-                        if (variantInv.isPresent()) {
-                            int available = variantInv.get().getAvailableQuantity() != null
-                                    ? variantInv.get().getAvailableQuantity()
-                                    : 0;
-                            totalAvailable += available;
-                            continue;
-                        }
-                    }
-
-                    // Check product inventory
-                    String productSk = DynamoDBKeyUtil.warehouseProductSk(cartItem.getProductId());
-                    Optional<WarehouseTable> productInv = warehouseTableRepository.findProductInventoryByPkAndSk(
-                            warehouse.getPk(), productSk);
-                    if (productInv.isPresent()) {
-                        int available = productInv.get().getAvailableQuantity() != null
-                                ? productInv.get().getAvailableQuantity()
-                                : 0;
-                        totalAvailable += available;
-                    }
-                }
-
+                int qtyNeeded = neededBySku.get(cartItem.getProductId() + "#" + (cartItem.getVariantId() != null ? cartItem.getVariantId() : ""));
+                int totalAvailable = inventoryAvailabilityCache.available(cartItem.getProductId(), cartItem.getVariantId());
                 if (totalAvailable < qtyNeeded) {
                     throw new IllegalStateException("Insufficient stock for product " + cartItem.getProductId()
                             + ". Required: " + qtyNeeded + ", Available: " + totalAvailable);
                 }
-                inventoryMap.put(inventoryKey, qtyNeeded);
             }
-        } else {
-            // warehouses not available -> do not perform inventory checks
         }
+
         // 6. Generate order ID and PK
         String orderId = UUID.randomUUID().toString();
         String orderPk = (req.getUserId() != null && !req.getUserId().isEmpty())
@@ -314,9 +375,9 @@ public class CartService {
                 : DynamoDBKeyUtil.orderPk(orderId);
 
         // 7. Calculate totals
-        CartResponse totals = buildCartResponse(cartPk, req.getUserId(), req.getSessionId(), req.getCouponCode());
+        CartResponse totals = buildCartResponse(cartOpt.get(), req.getCouponCode(), false);
 
-        // 8. Save Order META (OrderTable with SK=META)
+        // 8. Build Order META (OrderTable with SK=META)
         OrderTable orderMeta = OrderTable.builder()
                 .pk(orderPk)
                 .sk("META")
@@ -333,25 +394,25 @@ public class CartService {
                 .shippingAddress(shippingAddressToMap(req.getShippingAddress()))
                 .paymentMethod(req.getPaymentMethod())
                 .paymentStatus("PENDING")
+                .idempotencyKey(idempotencyKey)
                 .createdAt(System.currentTimeMillis())
                 .build();
-        orderTableRepository.save(orderMeta);
 
-        // 9. Move cart items to order (OrderTable with SK=ITEM#...)
+        // 9. Build order items from cart items (OrderTable with SK=ITEM#...)
+        List<OrderTable> orderItems = new ArrayList<>();
         for (OrderTable cartItem : cartItems) {
             String itemId = cartItem.getSk().substring(5); // Remove "ITEM#" prefix
 
-            // Fetch productName from ProductTable if not available in cart
+            // Lấy productName từ META đã nạp ở bước 3 nếu giỏ hàng chưa lưu
             String productName = cartItem.getProductName();
             if (productName == null || productName.isEmpty()) {
-                String productPk = DynamoDBKeyUtil.productPk(cartItem.getProductId());
-                Optional<ProductTable> productOpt = productTableRepository.findProductByPk(productPk);
-                if (productOpt.isPresent()) {
-                    productName = productOpt.get().getName();
+                ProductTable product = productsByPk.get(DynamoDBKeyUtil.productPk(cartItem.getProductId()));
+                if (product != null) {
+                    productName = product.getName();
                 }
             }
 
-            OrderTable orderItem = OrderTable.builder()
+            orderItems.add(OrderTable.builder()
                     .pk(orderPk)
                     .sk("ITEM#" + itemId)
                     .itemType("OrderItem")
@@ -362,73 +423,15 @@ public class CartService {
                     .unitPrice(cartItem.getUnitPrice())
                     .itemTotal(cartItem.getItemTotal())
                     .createdAt(System.currentTimeMillis())
-                    .build();
-            orderTableRepository.save(orderItem);
-
-            // 10. Allocate/reserve inventory from WarehouseTable (if warehouses available)
-            if (warehousesAvailable) {
-                int remaining = cartItem.getQuantity() != null ? cartItem.getQuantity() : 0;
-                for (WarehouseTable warehouse : warehouses) {
-                    if (remaining <= 0) {
-                        break;
-                    }
-                    if (warehouse.getPk() == null) {
-                        continue;
-                    }
-
-                    // Try to reserve from variant inventory first
-                    if (cartItem.getVariantId() != null && !cartItem.getVariantId().isEmpty()) {
-                        String variantSk = DynamoDBKeyUtil.warehouseVariantSk(cartItem.getProductId(), cartItem.getVariantId());
-                        Optional<WarehouseTable> variantInv = warehouseTableRepository.findVariantInventoryByPkAndSk(
-                                warehouse.getPk(), variantSk);
-                        if (variantInv.isPresent()) {
-                            WarehouseTable inv = variantInv.get();
-                            int available = inv.getAvailableQuantity() != null ? inv.getAvailableQuantity() : 0;
-                            if (available > 0) {
-                                int reserve = Math.min(available, remaining);
-                                inv.setAvailableQuantity(available - reserve);
-                                inv.setReservedQuantity((inv.getReservedQuantity() != null ? inv.getReservedQuantity() : 0) + reserve);
-                                inv.setUpdatedAt(System.currentTimeMillis());
-                                warehouseTableRepository.save(inv);
-                                remaining -= reserve;
-                                continue;
-                            }
-                        }
-                    }
-
-                    // Try to reserve from product inventory
-                    String productSk = DynamoDBKeyUtil.warehouseProductSk(cartItem.getProductId());
-                    Optional<WarehouseTable> productInv = warehouseTableRepository.findProductInventoryByPkAndSk(
-                            warehouse.getPk(), productSk);
-                    if (productInv.isPresent()) {
-                        WarehouseTable inv = productInv.get();
-                        int available = inv.getAvailableQuantity() != null ? inv.getAvailableQuantity() : 0;
-                        if (available > 0) {
-                            int reserve = Math.min(available, remaining);
-                            inv.setAvailableQuantity(available - reserve);
-                            inv.setReservedQuantity((inv.getReservedQuantity() != null ? inv.getReservedQuantity() : 0) + reserve);
-                            inv.setUpdatedAt(System.currentTimeMillis());
-                            warehouseTableRepository.save(inv);
-                            remaining -= reserve;
-                        }
-                    }
-                }
-
-                // Allocation failed
-                if (remaining > 0) {
-                    throw new IllegalStateException("Failed to allocate stock for product " + cartItem.getProductId()
-                            + ". Could not reserve: " + remaining + " units");
-                }
-            } else {
-                logger.warn("Skipping inventory allocation for product {} because no active warehouses", cartItem.getProductId());
-            }
-
-            // 11. Delete cart item
-            orderTableRepository.deleteByPkAndSk(cartPk, cartItem.getSk());
+                    .build());
         }
 
-        // 12. Delete cart META
-        orderTableRepository.deleteByPkAndSk(cartPk, "META");
+        // 10. Ghi order + giữ tồn kho trong một transaction (không có kho active thì chỉ ghi order)
+        inventoryReservationEngine.placeOrder(orderMeta, orderItems, warehousePks);
+        eventPublisher.publishEvent(new OrderChangedEvent(orderMeta, orderItems));
+
+        // 11. Bỏ các dòng đã đặt khỏi giỏ
+        removeOrderedLines(cartPk, cartItems);
 
         return CreateOrderResponse.builder()
                 .orderId(orderId)
@@ -438,11 +441,42 @@ public class CartService {
                 .build();
     }
 
+    // Lưu lại giỏ không còn số lượng đã đặt (giỏ rỗng giữ lại như tombstone có version mới, không xoá):
+    // request đã đọc giỏ trước checkout ghi thất bại theo version rồi áp thay đổi lên giỏ hiện tại,
+    // dòng được thêm trong lúc checkout vẫn còn trong giỏ
+    private void removeOrderedLines(String cartPk, List<OrderTable> ordered) {
+        Map<String, Integer> orderedQuantities = new HashMap<>();
+        ordered.forEach(item -> orderedQuantities.merge(item.getSk(), quantityOf(item), Integer::sum));
+        cartDocumentStore.modify(cartPk, () -> {
+            Optional<OrderTable> cartOpt = findCart(cartPk);
+            if (cartOpt.isEmpty()) {
+                return null;
+            }
+            List<OrderTable> remaining = new ArrayList<>();
+            for (OrderTable item : CartDocumentStore.toItems(cartOpt.get())) {
+                int left = quantityOf(item) - orderedQuantities.getOrDefault(item.getSk(), 0);
+                if (left > 0) {
+                    item.setQuantity(left);
+                    item.setItemTotal((item.getUnitPrice() != null ? item.getUnitPrice() : 0.0) * left);
+                    remaining.add(item);
+                }
+            }
+            return saveItems(cartOpt.get(), remaining);
+        });
+    }
+
+    private static int quantityOf(OrderTable item) {
+        return item.getQuantity() != null ? item.getQuantity() : 0;
+    }
+
     // Helper to build CartResponse and persist meta totals
     private final CouponService couponService; // thêm inject service
 
-    private CartResponse buildCartResponse(String pk, String userId, String sessionId, String couponCode) {
-        List<OrderTable> items = orderTableRepository.findOrderItemsByPk(pk);
+    private CartResponse buildCartResponse(OrderTable cart, String couponCode, boolean persist) {
+        String pk = cart.getPk();
+        String userId = cart.getUserId();
+        String sessionId = cart.getSessionId();
+        List<OrderTable> items = CartDocumentStore.toItems(cart);
         List<CartItemResponse> itemResponses = items.stream().map(i -> CartItemResponse.builder()
                 .itemId(i.getSk().replaceFirst("ITEM#", ""))
                 .productId(i.getProductId())
@@ -477,20 +511,14 @@ public class CartService {
 
         double total = subtotal + shipping - discount;
 
-        // Lưu/update cart META
-        OrderTable meta = OrderTable.builder()
-                .pk(pk)
-                .sk("META")
-                .itemType("Cart")
-                .userId(userId)
-                .sessionId(sessionId)
-                .subtotal(subtotal)
-                .shippingAmount(shipping)
-                .discountAmount(discount)
-                .totalAmount(total)
-                .updatedAt(System.currentTimeMillis())
-                .build();
-        orderTableRepository.save(meta);
+        // Lưu/update totals trong cart document (chỉ khi giỏ thay đổi)
+        if (persist) {
+            cart.setSubtotal(subtotal);
+            cart.setShippingAmount(shipping);
+            cart.setDiscountAmount(discount);
+            cart.setTotalAmount(total);
+            cartDocumentStore.save(cart);
+        }
 
         return CartResponse.builder()
                 .cartId(pk)
@@ -1,11 +1,13 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.dto.category.CategoryRequest;
 import com.leafshop.dto.category.CategoryResponse;
 import com.leafshop.model.dynamodb.ProductTable;
 import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -20,6 +22,7 @@ public class CategoryService {
 
 	private final ProductTableRepository productTableRepository;
 
+	@CacheEvict(cacheNames = CacheNames.CATEGORIES, allEntries = true)
 	public CategoryResponse createCategory(CategoryRequest request) {
 		String pk = DynamoDBKeyUtil.categoryPk(request.getCategoryId());
 		Optional<ProductTable> existing = productTableRepository.findCategoryByPk(pk);
@@ -33,6 +36,7 @@ public class CategoryService {
 		return toResponse(category);
 	}
 
+	@CacheEvict(cacheNames = CacheNames.CATEGORIES, allEntries = true)
 	public CategoryResponse updateCategory(String categoryId, CategoryRequest request) {
 		String pk = DynamoDBKeyUtil.categoryPk(categoryId);
 		ProductTable existing = productTableRepository.findCategoryByPk(pk)
@@ -60,6 +64,7 @@ public class CategoryService {
 			.collect(Collectors.toList());
 	}
 
+	@CacheEvict(cacheNames = CacheNames.CATEGORIES, allEntries = true)
 	public void deleteCategory(String categoryId) {
 		String pk = DynamoDBKeyUtil.categoryPk(categoryId);
 		ProductTable category = productTableRepository.findCategoryByPk(pk)
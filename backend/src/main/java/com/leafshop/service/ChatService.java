@@ -1,44 +1,68 @@
 package com.leafshop.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.aws.BedrockChatClient;
+import com.leafshop.cache.ResponseCache;
+import com.leafshop.catalog.CatalogProduct;
+import com.leafshop.catalog.CatalogQuery;
+import com.leafshop.catalog.CatalogSnapshot;
+import com.leafshop.catalog.ProductCatalogIndex;
+import com.leafshop.catalog.ProductContextSnippets;
+import com.leafshop.catalog.ProductSearchIndex;
 import com.leafshop.dto.order.OrderResponse;
-import com.leafshop.dto.product.ProductResponse;
-import com.leafshop.model.dynamodb.ProductTable;
-import com.leafshop.repository.ProductTableRepository;
-import com.leafshop.util.DynamoDBKeyUtil;
+import com.leafshop.util.PageCursor;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ChatService {
 
     private final OrderService orderService;
-    private final ProductService productService;
-    private final ProductTableRepository productTableRepository;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
-    @Value("${bedrock.modelId:anthropic.claude-3-sonnet-20240229-v1:0}")
-    private String modelId;
-
-    @Value("${bedrock.region:us-east-1}")
-    private String bedrockRegion;
+    private final ProductCatalogIndex productCatalogIndex;
+    private final ProductContextSnippets productContextSnippets;
+    private final ResponseCache responseCache;
+    private final BedrockChatClient bedrockChatClient;
+    // Chuẩn bị prompt (đọc đơn hàng/sản phẩm) cho chat stream, ngoài thread của request
+    private final ExecutorService promptExecutor = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r, "chat-prompt");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Value("${bedrock.mock:false}")
     private boolean mockMode;
 
+    @Value("${bedrock.timeout-seconds:60}")
+    private long bedrockTimeoutSeconds;
+
+    // Số sản phẩm liên quan nhất đưa vào prompt
+    @Value("${chat.context.top-k:8}")
+    private int contextTopK;
+
+    private static final CompletableFuture<String> CANCELLED_STREAM = CompletableFuture.completedFuture(null);
+
+    private static final String MOCK_REPLY = "🤖 [Mock Mode] Xin chào! Tôi là trợ lý AI của Leaf Shop. Bạn cần tôi hỗ trợ gì về thời trang không? 👗";
+    private static final String ERROR_REPLY = "Xin lỗi, tôi đang gặp sự cố. Vui lòng liên hệ hotline: 0123 456 789 📞";
+    private static final String NO_ANSWER_REPLY = "Xin lỗi, tôi không thể trả lời câu hỏi này. Vui lòng thử lại! 🙏";
+
     private static final String SYSTEM_PROMPT = """
             Bạn là trợ lý ảo thông minh của Leaf Shop - cửa hàng thời trang trực tuyến.
             
@@ -65,18 +89,20 @@ public class ChatService {
 
     public String chat(String userMessage, String userId, String conversationHistory) {
         try {
-            // Check if user is asking about order tracking
-            if (isOrderTrackingQuery(userMessage)) {
-                return handleOrderTracking(userMessage, userId);
+            PreparedReply prepared = prepare(userMessage, userId);
+            if (prepared.text != null) {
+                return prepared.text;
             }
-
-            // Check if user is asking about products
-            if (isProductQuery(userMessage)) {
-                return handleProductQuery(userMessage, conversationHistory);
+            String scope = prepared.cacheScope();
+            Optional<String> cached = responseCache.get(ResponseCache.Namespace.CHAT, scope, userMessage);
+            if (cached.isPresent()) {
+                return cached.get();
             }
-
-            // Call Claude 3 for general chat
-            return invokeClaude3(userMessage, conversationHistory, null);
+            String reply = invokeClaude3(userMessage, conversationHistory, prepared.productContext);
+            if (isCacheable(reply)) {
+                responseCache.put(ResponseCache.Namespace.CHAT, scope, userMessage, reply);
+            }
+            return reply;
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -84,6 +110,82 @@ public class ChatService {
         }
     }
 
+    /**
+     * Như {@link #chat} nhưng trả lời được đẩy từng đoạn qua {@code onText} ngay khi model sinh ra.
+     * Không chặn thread gọi; future hoàn tất khi đã gửi hết câu trả lời.
+     * Huỷ future (client ngắt kết nối, hết thời gian) sẽ huỷ luôn stream Bedrock đang chạy.
+     */
+    public CompletableFuture<Void> streamChat(String userMessage, String userId, String conversationHistory,
+                                              Consumer<String> onText) {
+        AtomicReference<CompletableFuture<String>> upstream = new AtomicReference<>();
+        CompletableFuture<Void> result = CompletableFuture.supplyAsync(() -> prepare(userMessage, userId), promptExecutor)
+                .thenCompose(prepared -> {
+                    if (prepared.text != null) {
+                        onText.accept(prepared.text);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (mockMode) {
+                        onText.accept(MOCK_REPLY);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    String scope = prepared.cacheScope();
+                    Optional<String> cached = responseCache.get(ResponseCache.Namespace.CHAT, scope, userMessage);
+                    if (cached.isPresent()) {
+                        onText.accept(cached.get());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    StringBuffer reply = new StringBuffer();
+                    CompletableFuture<String> stream = bedrockChatClient.stream(systemPrompt(prepared.productContext),
+                            buildClaudeMessages(userMessage, conversationHistory), text -> {
+                                reply.append(text);
+                                onText.accept(text);
+                            });
+                    if (!upstream.compareAndSet(null, stream)) {
+                        // Đã bị huỷ trong lúc chuẩn bị prompt
+                        stream.cancel(true);
+                    }
+                    // Chỉ cache câu trả lời model kết thúc tự nhiên; stream lỗi/bị huỷ không tới đây
+                    return stream.thenAccept(stopReason -> {
+                        if (isCompleteStop(stopReason) && isCacheable(reply.toString())) {
+                            responseCache.put(ResponseCache.Namespace.CHAT, scope, userMessage, reply.toString());
+                        }
+                    });
+                });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                CompletableFuture<String> stream = upstream.getAndSet(CANCELLED_STREAM);
+                if (stream != null) {
+                    stream.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    // Câu trả lời không cần model (tra cứu đơn hàng, shop chưa có sản phẩm) hoặc ngữ cảnh sản phẩm cho model
+    private PreparedReply prepare(String userMessage, String userId) {
+        // Check if user is asking about order tracking
+        if (isOrderTrackingQuery(userMessage)) {
+            return PreparedReply.text(handleOrderTracking(userMessage, userId));
+        }
+
+        // Check if user is asking about products
+        if (isProductQuery(userMessage)) {
+            try {
+                List<CatalogProduct> products = retrieveProducts(userMessage);
+                if (products.isEmpty()) {
+                    return PreparedReply.text("Hiện tại shop chưa có sản phẩm nào. Vui lòng quay lại sau nhé! 🙏");
+                }
+                return PreparedReply.context(buildProductContext(products));
+            } catch (Exception e) {
+                log.warn("Failed to retrieve products for chat", e);
+                return PreparedReply.text("Xin lỗi, tôi không thể tìm sản phẩm lúc này. Vui lòng thử lại sau! 🙏");
+            }
+        }
+
+        return PreparedReply.context(null);
+    }
+
     private boolean isOrderTrackingQuery(String message) {
         String lower = message.toLowerCase();
         return lower.contains("đơn hàng") || lower.contains("don hang")
@@ -110,7 +212,8 @@ public class ChatService {
         }
 
         try {
-            List<OrderResponse> orders = orderService.getOrdersForUser(userId);
+            // Trang đầu lịch sử đơn (GSI, cache theo user) - chỉ cần trạng thái và tổng tiền
+            List<OrderResponse> orders = orderService.getOrderHistoryPage(userId, null, PageCursor.MAX_LIMIT).getContent();
 
             if (orders.isEmpty()) {
                 return "Hiện tại bạn chưa có đơn hàng nào. Hãy khám phá các sản phẩm của chúng tôi nhé! 🛍️";
@@ -158,156 +261,126 @@ public class ChatService {
         };
     }
 
-    private String handleProductQuery(String userMessage, String conversationHistory) {
-        try {
-            // Get all active products from database
-            List<ProductResponse> products = productService.listProducts(null, null, true);
-
-            if (products.isEmpty()) {
-                return "Hiện tại shop chưa có sản phẩm nào. Vui lòng quay lại sau nhé! 🙏";
+    /**
+     * Top-k sản phẩm active liên quan nhất tới câu hỏi (BM25 trên catalog index, không đọc DynamoDB).
+     * Câu hỏi chung chung không khớp sản phẩm nào thì lấy k sản phẩm mới nhất.
+     */
+    private List<CatalogProduct> retrieveProducts(String userMessage) {
+        CatalogSnapshot snapshot = productCatalogIndex.snapshot();
+        Map<String, Double> scores = productCatalogIndex.searchText(userMessage, false);
+
+        List<CatalogProduct> products = new ArrayList<>(contextTopK);
+        for (String pk : ProductSearchIndex.rank(scores, scores.size())) {
+            Optional<CatalogProduct> product = snapshot.find(pk);
+            if (product.isPresent() && product.get().isActive()) {
+                products.add(product.get());
+                if (products.size() >= contextTopK) {
+                    break;
+                }
             }
-
-            // Build product context for Claude
-            String productContext = buildProductContext(products);
-
-            // Call Claude with product context
-            return invokeClaude3(userMessage, conversationHistory, productContext);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Xin lỗi, tôi không thể tìm sản phẩm lúc này. Vui lòng thử lại sau! 🙏";
         }
+        if (products.isEmpty()) {
+            List<CatalogProduct> newest = productCatalogIndex.search(CatalogQuery.builder().build()).getProducts();
+            products.addAll(newest.subList(0, Math.min(contextTopK, newest.size())));
+        }
+        return products;
     }
 
-    private String buildProductContext(List<ProductResponse> products) {
-        StringBuilder context = new StringBuilder("\n\nDANH SÁCH SẢN PHẨM HIỆN CÓ:\n");
-
-        for (ProductResponse product : products) {
-            context.append(String.format("\n🛍️ %s", product.getName()));
-            if (product.getDescription() != null && !product.getDescription().isEmpty()) {
-                context.append(String.format("\n  📝 Mô tả: %s", product.getDescription()));
-            }
-            context.append(String.format("\n  💰 Giá: %,.0f đ", product.getPrice()));
-
-            // Lấy thông tin variants (size, màu sắc)
-            try {
-                String pk = DynamoDBKeyUtil.productPk(product.getProductId());
-                List<ProductTable> variants = productTableRepository.findVariantsByPk(pk);
-
-                if (!variants.isEmpty()) {
-                    // Lấy danh sách màu sắc
-                    java.util.Set<String> colors = new java.util.HashSet<>();
-                    // Lấy danh sách size
-                    java.util.Set<String> sizes = new java.util.HashSet<>();
-
-                    for (ProductTable variant : variants) {
-                        if (variant.getColors() != null && !variant.getColors().isEmpty()) {
-                            colors.addAll(variant.getColors());
-                        }
-                        if (variant.getSize() != null && !variant.getSize().isEmpty()) {
-                            sizes.add(variant.getSize());
-                        }
-                    }
-
-                    if (!colors.isEmpty()) {
-                        context.append(String.format("\n  🎨 Màu sắc: %s", String.join(", ", colors)));
-                    }
-                    if (!sizes.isEmpty()) {
-                        context.append(String.format("\n  📏 Size: %s", String.join(", ", sizes)));
-                    }
-                }
-            } catch (Exception e) {
-                // Bỏ qua lỗi khi lấy variants
-            }
-
-            if (product.getQuantity() != null && product.getQuantity() > 0) {
-                context.append(String.format("\n  ✅ Còn hàng: %d sản phẩm", product.getQuantity()));
-            } else {
-                context.append("\n  ❌ Tình trạng: Hết hàng");
-            }
-            if (product.getIsPreorder() != null && product.getIsPreorder()) {
-                context.append(String.format("\n  ⏰ Preorder: %d ngày", product.getPreorderDays()));
-            }
-            if (product.getTags() != null && !product.getTags().isEmpty()) {
-                context.append(String.format("\n  🏷️ Tags: %s", String.join(", ", product.getTags())));
-            }
-            context.append("\n");
+    private String buildProductContext(List<CatalogProduct> products) {
+        StringBuilder context = new StringBuilder("\n\nSẢN PHẨM LIÊN QUAN:\n");
+        for (CatalogProduct product : products) {
+            context.append(productContextSnippets.snippet(product));
         }
-
         context.append("\n💡 HÃY SỬ DỤNG THÔNG TIN TRÊN ĐỂ TƯ VẤN CHO KHÁCH HÀNG VỀ SẢN PHẨM, SIZE, MÀU SẮC.");
         return context.toString();
     }
 
     private String invokeClaude3(String userMessage, String conversationHistory, String additionalContext) {
         if (mockMode) {
-            return "🤖 [Mock Mode] Xin chào! Tôi là trợ lý AI của Leaf Shop. Bạn cần tôi hỗ trợ gì về thời trang không? 👗";
+            return MOCK_REPLY;
         }
 
-        BedrockRuntimeClient client = null;
         try {
-            client = BedrockRuntimeClient.builder()
-                    .region(Region.of(bedrockRegion))
-                    .credentialsProvider(DefaultCredentialsProvider.create())
-                    .build();
-
-            // Build system prompt with additional context if provided
-            String systemPrompt = SYSTEM_PROMPT;
-            if (additionalContext != null && !additionalContext.isEmpty()) {
-                systemPrompt = SYSTEM_PROMPT + additionalContext;
+            String reply = bedrockChatClient.complete(systemPrompt(additionalContext),
+                            buildClaudeMessages(userMessage, conversationHistory))
+                    .get(bedrockTimeoutSeconds, TimeUnit.SECONDS);
+            if (reply != null && !reply.isEmpty()) {
+                return reply;
             }
+            return NO_ANSWER_REPLY;
 
-            // Build messages for Claude 3
-            String messages = buildClaudeMessages(userMessage, conversationHistory);
+        } catch (Exception e) {
+            log.warn("Bedrock invocation failed: {}", e.getMessage());
+            return ERROR_REPLY;
+        }
+    }
 
-            // Create request payload for Claude 3
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("anthropic_version", "bedrock-2023-05-31");
-            payload.put("max_tokens", 1000);
-            payload.put("temperature", 0.7);
-            payload.put("system", systemPrompt);
-            payload.put("messages", objectMapper.readValue(messages, List.class));
+    // Câu báo lỗi, câu trả lời rỗng và câu trả lời mock không được cache
+    private static boolean isCacheable(String reply) {
+        return reply != null && !reply.isBlank()
+                && !reply.equals(ERROR_REPLY) && !reply.equals(NO_ANSWER_REPLY) && !reply.equals(MOCK_REPLY);
+    }
 
-            String payloadJson = objectMapper.writeValueAsString(payload);
+    // Stream kết thúc vì hết câu trả lời, không phải bị cắt do max_tokens
+    private static boolean isCompleteStop(String stopReason) {
+        return "end_turn".equals(stopReason) || "stop_sequence".equals(stopReason);
+    }
 
-            InvokeModelRequest request = InvokeModelRequest.builder()
-                    .modelId(modelId)
-                    .body(SdkBytes.fromUtf8String(payloadJson))
-                    .build();
+    private String systemPrompt(String additionalContext) {
+        if (additionalContext != null && !additionalContext.isEmpty()) {
+            return SYSTEM_PROMPT + additionalContext;
+        }
+        return SYSTEM_PROMPT;
+    }
 
-            InvokeModelResponse response = client.invokeModel(request);
-            String responseBody = response.body().asUtf8String();
+    private List<Map<String, String>> buildClaudeMessages(String userMessage, String conversationHistory) {
+        // Simple format: just the current user message
+        // You can extend this to include conversation history
+        Map<String, String> message = new HashMap<>();
+        message.put("role", "user");
+        message.put("content", userMessage);
+        return List.of(message);
+    }
 
-            // Parse Claude 3 response
-            JsonNode jsonResponse = objectMapper.readTree(responseBody);
-            JsonNode content = jsonResponse.get("content");
+    @PreDestroy
+    public void shutdown() {
+        promptExecutor.shutdownNow();
+    }
 
-            if (content != null && content.isArray() && content.size() > 0) {
-                return content.get(0).get("text").asText();
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
             }
-
-            return "Xin lỗi, tôi không thể trả lời câu hỏi này. Vui lòng thử lại! 🙏";
-
+            return hex.toString();
         } catch (Exception e) {
-            e.printStackTrace();
-            return "Xin lỗi, tôi đang gặp sự cố. Vui lòng liên hệ hotline: 0123 456 789 📞";
-        } finally {
-            if (client != null) {
-                client.close();
-            }
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
-    private String buildClaudeMessages(String userMessage, String conversationHistory) {
-        try {
-            // Simple format: just the current user message
-            // You can extend this to include conversation history
-            Map<String, String> message = new HashMap<>();
-            message.put("role", "user");
-            message.put("content", userMessage);
+    private static final class PreparedReply {
+        private final String text;
+        private final String productContext;
 
-            return objectMapper.writeValueAsString(List.of(message));
-        } catch (Exception e) {
-            return "[{\"role\":\"user\",\"content\":\"" + userMessage.replace("\"", "\\\"") + "\"}]";
+        private PreparedReply(String text, String productContext) {
+            this.text = text;
+            this.productContext = productContext;
+        }
+
+        private static PreparedReply text(String text) {
+            return new PreparedReply(text, null);
+        }
+
+        private static PreparedReply context(String productContext) {
+            return new PreparedReply(null, productContext);
+        }
+
+        // Câu trả lời có ngữ cảnh sản phẩm được cache theo hash của ngữ cảnh (tập sản phẩm, giá, màu, size trong prompt),
+        // nên đổi catalog là đổi scope; câu trả lời chung cache riêng
+        private String cacheScope() {
+            return productContext != null ? "products:" + sha256(productContext) : "general";
         }
     }
 }
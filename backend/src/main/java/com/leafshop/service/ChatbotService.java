@@ -1,9 +1,11 @@
 package com.leafshop.service;
 
+import com.leafshop.catalog.CatalogProduct;
+import com.leafshop.catalog.CatalogSnapshot;
+import com.leafshop.catalog.ProductCatalogIndex;
+import com.leafshop.catalog.ProductSearchIndex;
 import com.leafshop.dto.chatbot.ProductSuggestionResponse;
 import com.leafshop.model.dynamodb.ProductTable;
-import com.leafshop.repository.ProductTableRepository;
-import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -15,11 +17,13 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ChatbotService {
 
-	private final ProductTableRepository productTableRepository;
+	private static final double STYLE_KEYWORD_WEIGHT = 0.5;
+
+	private final ProductCatalogIndex productCatalogIndex;
 
 	/**
 	 * Gợi ý sản phẩm dựa trên text query
-	 * - Tìm kiếm trong name, description, tags của sản phẩm
+	 * - Tìm kiếm full-text (BM25, không phân biệt dấu) trong name, description, tags của sản phẩm
 	 * - Hỗ trợ tìm theo phong cách: trẻ trung, thanh lịch, thể thao, v.v.
 	 * - Trả về danh sách sản phẩm phù hợp nhất
 	 */
@@ -40,20 +44,20 @@ public class ChatbotService {
 		// Expand query với style keywords
 		List<String> expandedKeywords = expandQueryWithStyleKeywords(normalizedQuery, keywords);
 
-		// Lấy tất cả products (không filter isActive để debug)
-		List<ProductTable> allProducts = productTableRepository.findAllProducts();
+		// Chấm điểm BM25 trên inverted index (không filter isActive để debug)
+		Map<String, Double> scores = new HashMap<>(productCatalogIndex.searchText(normalizedQuery, false));
 
-		// Score-based matching
-		List<ScoredProduct> scoredProducts = allProducts.stream()
-			.map(product -> new ScoredProduct(product, calculateRelevanceScore(product, normalizedQuery, keywords, expandedKeywords)))
-			.filter(sp -> sp.score > 0) // Chỉ lấy products có score > 0
-			.sorted(Comparator.comparingInt(ScoredProduct::getScore).reversed())
-			.limit(limit)
-			.collect(Collectors.toList());
+		// Style keyword mở rộng được cộng điểm với trọng số thấp hơn keyword gốc
+		for (String styleKeyword : expandedKeywords.subList(keywords.length, expandedKeywords.size())) {
+			productCatalogIndex.searchText(styleKeyword, true)
+				.forEach((pk, score) -> scores.merge(pk, score * STYLE_KEYWORD_WEIGHT, Double::sum));
+		}
 
-		// Convert to response
-		return scoredProducts.stream()
-			.map(sp -> buildProductSuggestion(sp.product))
+		CatalogSnapshot snapshot = productCatalogIndex.snapshot();
+		return ProductSearchIndex.rank(scores, limit).stream()
+			.map(snapshot::find)
+			.filter(Optional::isPresent)
+			.map(product -> buildProductSuggestion(product.get()))
 			.collect(Collectors.toList());
 	}
 
@@ -108,93 +112,11 @@ public class ChatbotService {
 	}
 
 	/**
-	 * Tính điểm relevance của sản phẩm với query
-	 * - Exact match trong name: +100
-	 * - Partial match trong name: +50
-	 * - Match trong description: +30
-	 * - Match trong tags: +20
-	 * - Bonus cho mỗi keyword match: +10
-	 * - Style match bonus: +15
-	 */
-	private int calculateRelevanceScore(ProductTable product, String query, String[] keywords, List<String> expandedKeywords) {
-		int score = 0;
-
-		String name = product.getName() != null ? product.getName().toLowerCase() : "";
-		String description = product.getDescription() != null ? product.getDescription().toLowerCase() : "";
-		List<String> tags = product.getTags() != null ? 
-			product.getTags().stream().map(String::toLowerCase).collect(Collectors.toList()) : 
-			Collections.emptyList();
-
-		// Exact match trong name
-		if (name.equals(query)) {
-			score += 100;
-		}
-
-		// Partial match trong name
-		if (name.contains(query)) {
-			score += 50;
-		}
-
-		// Check từng keyword gốc
-		for (String keyword : keywords) {
-			if (keyword.length() < 2) continue; // Bỏ qua keyword quá ngắn
-
-			// Name contains keyword
-			if (name.contains(keyword)) {
-				score += 10;
-			}
-
-			// Description contains keyword
-			if (description.contains(keyword)) {
-				score += 5;
-			}
-
-			// Tags contain keyword
-			for (String tag : tags) {
-				if (tag.contains(keyword)) {
-					score += 8;
-				}
-			}
-		}
-
-		// Check expanded keywords (style matching)
-		for (String expKeyword : expandedKeywords) {
-			if (expKeyword.length() < 2) continue;
-
-			// Name contains expanded keyword
-			if (name.contains(expKeyword)) {
-				score += 15;
-			}
-
-			// Description contains expanded keyword
-			if (description.contains(expKeyword)) {
-				score += 10;
-			}
-
-			// Tags contain expanded keyword
-			for (String tag : tags) {
-				if (tag.contains(expKeyword)) {
-					score += 12;
-				}
-			}
-		}
-
-		// Bonus cho products có description dài (thông tin chi tiết hơn)
-		if (description.length() > 50) {
-			score += 2;
-		}
-
-		return score;
-	}
-
-	/**
-	 * Build ProductSuggestionResponse từ ProductTable
+	 * Build ProductSuggestionResponse từ catalog index (variants và media đã có sẵn trong bộ nhớ)
 	 */
-	private ProductSuggestionResponse buildProductSuggestion(ProductTable product) {
-		String productId = extractProductId(product.getPk());
-
-		// Lấy variants để collect colors và sizes
-		List<ProductTable> variants = productTableRepository.findVariantsByPk(product.getPk());
+	private ProductSuggestionResponse buildProductSuggestion(CatalogProduct catalogProduct) {
+		ProductTable product = catalogProduct.getMeta();
+		List<ProductTable> variants = catalogProduct.getVariants();
 		
 		Set<String> allColors = new HashSet<>();
 		Set<String> allSizes = new HashSet<>();
@@ -209,7 +131,7 @@ public class ChatbotService {
 		}
 
 		// Lấy primary image
-		List<ProductTable> mediaList = productTableRepository.findMediaByPk(product.getPk());
+		List<ProductTable> mediaList = catalogProduct.getMedia();
 		String primaryImageUrl = mediaList.stream()
 			.filter(m -> Boolean.TRUE.equals(m.getIsPrimary()))
 			.map(ProductTable::getMediaUrl)
@@ -217,7 +139,7 @@ public class ChatbotService {
 			.orElse(mediaList.isEmpty() ? null : mediaList.get(0).getMediaUrl());
 
 		return ProductSuggestionResponse.builder()
-			.productId(productId)
+			.productId(catalogProduct.getProductId())
 			.name(product.getName())
 			.description(product.getDescription())
 			.price(product.getPrice())
@@ -230,30 +152,4 @@ public class ChatbotService {
 			.preorderDays(product.getPreorderDays())
 			.build();
 	}
-
-	/**
-	 * Helper class để lưu product với score
-	 */
-	private static class ScoredProduct {
-		ProductTable product;
-		int score;
-
-		ScoredProduct(ProductTable product, int score) {
-			this.product = product;
-			this.score = score;
-		}
-
-		public int getScore() {
-			return score;
-		}
-	}
-
-	/**
-	 * Extract productId từ PK
-	 */
-	private String extractProductId(String pk) {
-		return pk != null && pk.startsWith("PRODUCT#")
-			? pk.substring(8)
-			: null;
-	}
 }
@@ -1,5 +1,6 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.dto.coupon.ApplyCouponRequest;
 import com.leafshop.dto.coupon.ApplyCouponResponse;
 import com.leafshop.dto.coupon.CouponRequest;
@@ -9,6 +10,7 @@ import com.leafshop.model.dynamodb.CouponTable;
 import com.leafshop.repository.CouponTableRepository;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -63,6 +65,7 @@ public class CouponService {
         return toResponse(item);
     }
 
+    @CacheEvict(cacheNames = CacheNames.COUPONS, key = "T(com.leafshop.util.DynamoDBKeyUtil).couponPk(#couponCode.trim().toUpperCase())")
     public CouponResponse updateCoupon(String couponCode, CouponRequest request) {
         String normalizedCode = couponCode.trim().toUpperCase();
         String pk = DynamoDBKeyUtil.couponPk(normalizedCode);
@@ -100,6 +103,7 @@ public class CouponService {
         return coupons.stream().map(this::toResponse).collect(Collectors.toList());
     }
 
+    @CacheEvict(cacheNames = CacheNames.COUPONS, key = "T(com.leafshop.util.DynamoDBKeyUtil).couponPk(#couponCode.trim().toUpperCase())")
     public void deleteCoupon(String couponCode) {
         String normalizedCode = couponCode.trim().toUpperCase();
         String pk = DynamoDBKeyUtil.couponPk(normalizedCode);
@@ -123,6 +127,8 @@ public class CouponService {
             .collect(Collectors.toList());
     }
 
+    // usedCount của META thay đổi sau mỗi lần áp dụng
+    @CacheEvict(cacheNames = CacheNames.COUPONS, key = "T(com.leafshop.util.DynamoDBKeyUtil).couponPk(#request.couponCode.trim().toUpperCase())")
     public ApplyCouponResponse applyCoupon(ApplyCouponRequest request) {
         String normalizedCode = request.getCouponCode().trim().toUpperCase();
         CouponTable meta = couponTableRepository.findByCouponCode(normalizedCode)
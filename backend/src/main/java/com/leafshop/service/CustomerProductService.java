@@ -1,26 +1,30 @@
 package com.leafshop.service;
 
+import com.leafshop.catalog.CatalogProduct;
+import com.leafshop.catalog.CatalogQuery;
+import com.leafshop.catalog.CatalogSearchResult;
+import com.leafshop.catalog.CatalogSort;
+import com.leafshop.catalog.ProductCatalogIndex;
 import com.leafshop.dto.customer.CustomerProductResponse;
 import com.leafshop.dto.customer.PaginatedResponse;
 import com.leafshop.dto.productmedia.ProductMediaResponse;
 import com.leafshop.dto.productvariant.ProductVariantResponse;
 import com.leafshop.model.dynamodb.ProductTable;
-import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class CustomerProductService {
 
-	private final ProductTableRepository productTableRepository;
+	private static final int MAX_BATCH_IDS = 100;
+
+	private final ProductCatalogIndex productCatalogIndex;
 
 	public PaginatedResponse<CustomerProductResponse> searchProducts(
 		String keyword,
@@ -30,92 +34,23 @@ public class CustomerProductService {
 		Double maxPrice,
 		String size,
 		String color,
-		String sortBy, // newest, price_asc, price_desc, best_selling
+		String sortBy, // newest, oldest, price_asc, price_desc, best_selling, relevance
 		int page,
 		int pageSize
 	) {
-		// Lấy tất cả products active
-		Stream<ProductTable> products = productTableRepository.findByIsActiveTrue().stream();
-
-		// Filter theo keyword (tìm trong name, description, tags)
-		if (StringUtils.hasText(keyword)) {
-			String lowerKeyword = keyword.toLowerCase();
-			products = products.filter(p -> 
-				(p.getName() != null && p.getName().toLowerCase().contains(lowerKeyword)) ||
-				(p.getDescription() != null && p.getDescription().toLowerCase().contains(lowerKeyword)) ||
-				(p.getTags() != null && p.getTags().stream().anyMatch(tag -> tag.toLowerCase().contains(lowerKeyword)))
-			);
-		}
-
-		// Filter theo categoryId
-		if (StringUtils.hasText(categoryId)) {
-			products = products.filter(p -> categoryId.equals(p.getCategoryId()));
-		}
-
-		// Filter theo typeId
-		if (StringUtils.hasText(typeId)) {
-			products = products.filter(p -> typeId.equals(p.getTypeId()));
-		}
-
-		// Filter theo giá
-		if (minPrice != null) {
-			products = products.filter(p -> p.getPrice() != null && p.getPrice() >= minPrice);
-		}
-		if (maxPrice != null) {
-			products = products.filter(p -> p.getPrice() != null && p.getPrice() <= maxPrice);
-		}
-
-		// Filter theo size và color (cần check trong variants)
-		if (StringUtils.hasText(size) || StringUtils.hasText(color)) {
-			products = products.filter(p -> {
-				String pk = p.getPk();
-				List<ProductTable> variants = productTableRepository.findVariantsByPk(pk);
-				if (variants.isEmpty()) {
-					return false; // Nếu không có variant thì không match
-				}
-				return variants.stream().anyMatch(v -> {
-					boolean sizeMatch = !StringUtils.hasText(size) || 
-						(StringUtils.hasText(v.getSize()) && size.equalsIgnoreCase(v.getSize()));
-					boolean colorMatch = !StringUtils.hasText(color) || 
-						(v.getColors() != null && v.getColors().stream().anyMatch(c -> color.equalsIgnoreCase(c)));
-					return sizeMatch && colorMatch;
-				});
-			});
-		}
-
-		// Sort
-		List<ProductTable> productList = products.collect(Collectors.toList());
-		if (StringUtils.hasText(sortBy)) {
-			switch (sortBy.toLowerCase()) {
-				case "newest":
-					// Sort theo updatedAt (thời gian cập nhật gần nhất) - sản phẩm mới cập nhật sẽ hiển thị trước
-					productList.sort(Comparator.comparing(ProductTable::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
-					break;
-				case "oldest":
-					// Sort theo createdAt (sản phẩm cũ nhất trước)
-					productList.sort(Comparator.comparing(ProductTable::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder())));
-					break;
-				case "price_asc":
-					// Sort theo giá tăng dần (rẻ nhất trước)
-					productList.sort(Comparator.comparing(ProductTable::getPrice, Comparator.nullsLast(Comparator.naturalOrder())));
-					break;
-				case "price_desc":
-					// Sort theo giá giảm dần (đắt nhất trước)
-					productList.sort(Comparator.comparing(ProductTable::getPrice, Comparator.nullsLast(Comparator.reverseOrder())));
-					break;
-				case "best_selling":
-					// Cần thêm field soldCount hoặc query từ OrderTable để tính số lượng bán :))))
-					// Tạm thời sort theo createdAt (sản phẩm mới tạo trước)
-					productList.sort(Comparator.comparing(ProductTable::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
-					break;
-				default:
-					// Default sort by newest (theo updatedAt)
-					productList.sort(Comparator.comparing(ProductTable::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
-			}
-		} else {
-			// Default sort by newest (theo updatedAt)
-			productList.sort(Comparator.comparing(ProductTable::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
-		}
+		// Lọc (giao các facet bitmap) + sort trên catalog index trong bộ nhớ, không gọi DynamoDB
+		CatalogSearchResult result = productCatalogIndex.search(CatalogQuery.builder()
+			.keyword(keyword)
+			.categoryId(categoryId)
+			.typeId(typeId)
+			.minPrice(minPrice)
+			.maxPrice(maxPrice)
+			.size(size)
+			.color(color)
+			.sort(CatalogSort.fromParam(sortBy))
+			.includeFacets(true)
+			.build());
+		List<CatalogProduct> productList = result.getProducts();
 
 		// Pagination
 		int totalElements = productList.size();
@@ -136,15 +71,16 @@ public class CustomerProductService {
 			.totalPages(totalPages)
 			.hasNext(page < totalPages - 1)
 			.hasPrevious(page > 0)
+			.facets(result.getFacets())
 			.build();
 	}
 
 	public CustomerProductResponse getProductDetail(String productId) {
 		String pk = DynamoDBKeyUtil.productPk(productId);
-		ProductTable product = productTableRepository.findProductByPk(pk)
+		CatalogProduct product = productCatalogIndex.findProduct(pk)
 			.orElseThrow(() -> new IllegalArgumentException("Product not found with id " + productId));
 
-		if (!Boolean.TRUE.equals(product.getIsActive())) {
+		if (!product.isActive()) {
 			throw new IllegalArgumentException("Product is not active");
 		}
 
@@ -153,33 +89,45 @@ public class CustomerProductService {
 
 	public List<CustomerProductResponse> getRelatedProducts(String productId, int limit) {
 		String pk = DynamoDBKeyUtil.productPk(productId);
-		ProductTable product = productTableRepository.findProductByPk(pk)
-			.orElseThrow(() -> new IllegalArgumentException("Product not found with id " + productId));
+		ProductTable product = productCatalogIndex.findProduct(pk)
+			.orElseThrow(() -> new IllegalArgumentException("Product not found with id " + productId))
+			.getMeta();
 
 		// Lấy sản phẩm cùng category và type, loại trừ sản phẩm hiện tại
-		return productTableRepository.findByIsActiveTrue().stream()
+		return productCatalogIndex.search(CatalogQuery.builder().sort(CatalogSort.CREATED_DESC).build()).getProducts().stream()
 			.filter(p -> !p.getPk().equals(pk)) // Loại trừ sản phẩm hiện tại
 			.filter(p -> {
 				// Cùng category hoặc cùng type
 				boolean sameCategory = StringUtils.hasText(product.getCategoryId()) && 
-					product.getCategoryId().equals(p.getCategoryId());
+					product.getCategoryId().equals(p.getMeta().getCategoryId());
 				boolean sameType = StringUtils.hasText(product.getTypeId()) && 
-					product.getTypeId().equals(p.getTypeId());
+					product.getTypeId().equals(p.getMeta().getTypeId());
 				return sameCategory || sameType;
 			})
-			.sorted(Comparator.comparing(ProductTable::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())))
 			.limit(limit)
 			.map(this::toCustomerResponse)
 			.collect(Collectors.toList());
 	}
 
-	private CustomerProductResponse toCustomerResponse(ProductTable item) {
-		String productId = extractProductId(item.getPk());
-		String pk = item.getPk();
+	// Nhiều sản phẩm theo id (wishlist, giỏ hàng...) - bỏ qua id không tồn tại hoặc inactive
+	public List<CustomerProductResponse> getProductsByIds(List<String> productIds) {
+		if (productIds.size() > MAX_BATCH_IDS) {
+			throw new IllegalArgumentException("Too many product ids, maximum is " + MAX_BATCH_IDS);
+		}
+		List<String> pks = productIds.stream()
+			.filter(StringUtils::hasText)
+			.map(DynamoDBKeyUtil::productPk)
+			.collect(Collectors.toList());
+
+		return productCatalogIndex.findProducts(pks).stream()
+			.filter(CatalogProduct::isActive)
+			.map(this::toCustomerResponse)
+			.collect(Collectors.toList());
+	}
 
-		// Lấy variants và media
-		List<ProductTable> variants = productTableRepository.findVariantsByPk(pk);
-		List<ProductTable> media = productTableRepository.findMediaByPk(pk);
+	private CustomerProductResponse toCustomerResponse(CatalogProduct product) {
+		String productId = product.getProductId();
+		ProductTable item = product.getMeta();
 
 		return CustomerProductResponse.builder()
 			.productId(productId)
@@ -192,15 +140,15 @@ public class CustomerProductService {
 			.preorderDays(item.getPreorderDays())
 			.isActive(item.getIsActive())
 			.tags(item.getTags())
-			.variants(variants.stream().map(v -> toVariantResponse(productId, v)).collect(Collectors.toList()))
-			.media(media.stream().map(m -> toMediaResponse(productId, m)).collect(Collectors.toList()))
+			.variants(product.getVariants().stream().map(v -> toVariantResponse(productId, v)).collect(Collectors.toList()))
+			.media(product.getMedia().stream().map(m -> toMediaResponse(productId, m)).collect(Collectors.toList()))
 			.createdAt(item.getCreatedAt())
 			.updatedAt(item.getUpdatedAt())
 			.build();
 	}
 
-	private CustomerProductResponse toCustomerResponseWithDetails(ProductTable item) {
-		return toCustomerResponse(item);
+	private CustomerProductResponse toCustomerResponseWithDetails(CatalogProduct product) {
+		return toCustomerResponse(product);
 	}
 
 	private ProductVariantResponse toVariantResponse(String productId, ProductTable item) {
@@ -238,11 +186,4 @@ public class CustomerProductService {
 			.updatedAt(item.getUpdatedAt())
 			.build();
 	}
-
-	private String extractProductId(String pk) {
-		return pk != null && pk.startsWith("PRODUCT#")
-			? pk.substring(8)
-			: null;
-	}
 }
-
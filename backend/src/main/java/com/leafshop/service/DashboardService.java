@@ -3,91 +3,244 @@ package com.leafshop.service;
 import com.leafshop.dto.dashboard.DashboardStatsDTO;
 import com.leafshop.model.dynamodb.OrderTable;
 import com.leafshop.model.dynamodb.WarehouseTable;
+import com.leafshop.repository.DashboardMetricsRepository;
 import com.leafshop.repository.OrderTableRepository;
-import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.repository.WarehouseTableRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.time.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.leafshop.repository.DashboardMetricsRepository.*;
+
+/**
+ * KPI dashboard đọc từ các item bộ đếm trong MetricsTable (một BatchGetItem ~10 key),
+ * thay vì scan OrderTable/WarehouseTable và query ITEM# cho từng đơn ở mỗi request.
+ * Bộ đếm được tính lại toàn bộ bằng {@link #rebuildMetrics()} (lần đầu hoặc khi cần đối soát) vào một thế hệ mới,
+ * rồi chuyển con trỏ generation trên STATE; GET luôn đọc thế hệ đang trỏ tới.
+ * Lần đầu (chưa có STATE.rebuiltAt) backfill chạy nền dưới lease trên item STATE; GET trả về 0 kèm warming=true.
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class DashboardService {
 
+    private static final int WEEK_DAYS = 7;
+    private static final long REBUILD_LEASE_MS = 15 * 60 * 1000L;
+    // Số vòng đọc lại dòng dirty tối đa trước khi bỏ lần rebuild (ghi liên tục không dừng)
+    private static final int MAX_DIRTY_ROUNDS = 20;
+
     private final OrderTableRepository orderTableRepository;
-    private final ProductTableRepository productTableRepository;
     private final WarehouseTableRepository warehouseTableRepository;
+    private final DashboardMetricsRepository dashboardMetricsRepository;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "dashboard-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
 
     public DashboardStatsDTO getDashboardStats(String period) {
-        long now = Instant.now().toEpochMilli();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Map<String, AttributeValue> state = dashboardMetricsRepository.getState();
+        long generation = generation(state);
 
-        // compute start of day/week/month in epoch millis (UTC)
-        ZonedDateTime znow = ZonedDateTime.now(ZoneOffset.UTC);
-        long startOfDay = znow.toLocalDate().atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
-        long startOfWeek = znow.minusDays(7).toInstant().toEpochMilli();
-        long startOfMonth = znow.withDayOfMonth(1).toLocalDate().atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        // Bucket ngày: hôm nay và 6 ngày trước (tuần = 7 bucket ngày UTC gần nhất)
+        List<String> dayPks = new ArrayList<>();
+        for (int i = 0; i < WEEK_DAYS; i++) {
+            dayPks.add(dayPk(generation, today.minusDays(i)));
+        }
+        String monthPk = monthPk(generation, YearMonth.from(today));
+        String inventoryPk = inventoryPk(generation);
+
+        boolean warming = !isRebuilt(state);
+        Map<String, Map<String, AttributeValue>> counters;
+        if (warming) {
+            // Chưa từng tính bộ đếm (bảng mới tạo): backfill chạy nền, bộ đếm dở dang chưa được hiển thị
+            rebuildInBackground();
+            counters = Map.of();
+        } else {
+            List<String> pks = new ArrayList<>(dayPks);
+            pks.add(monthPk);
+            pks.add(inventoryPk);
+            counters = dashboardMetricsRepository.getCounters(pks);
+        }
+
+        Map<String, AttributeValue> todayBucket = counters.get(dayPks.get(0));
+        Map<String, AttributeValue> monthBucket = counters.get(monthPk);
+        long weekCount = 0;
+        for (String pk : dayPks) {
+            weekCount += (long) value(counters.get(pk), ORDER_COUNT);
+        }
 
         DashboardStatsDTO stats = new DashboardStatsDTO();
         DashboardStatsDTO.KPIData kpi = new DashboardStatsDTO.KPIData();
 
-        List<OrderTable> ordersMeta = orderTableRepository.scanAllOrdersMeta();
-
-        // Orders counts
         DashboardStatsDTO.KPIData.OrderStats orderStats = new DashboardStatsDTO.KPIData.OrderStats();
-        long todayCount = ordersMeta.stream().filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfDay && o.getCreatedAt() <= now).count();
-        long weekCount = ordersMeta.stream().filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfWeek && o.getCreatedAt() <= now).count();
-        long monthCount = ordersMeta.stream().filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfMonth && o.getCreatedAt() <= now).count();
-        orderStats.setToday(todayCount);
+        orderStats.setToday((long) value(todayBucket, ORDER_COUNT));
         orderStats.setWeek(weekCount);
-        orderStats.setMonth(monthCount);
+        orderStats.setMonth((long) value(monthBucket, ORDER_COUNT));
         kpi.setTotalOrders(orderStats);
 
-        // Revenue
         DashboardStatsDTO.KPIData.RevenueStats revenueStats = new DashboardStatsDTO.KPIData.RevenueStats();
-        double todayRevenue = ordersMeta.stream()
-                .filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfDay && o.getCreatedAt() <= now)
-                .mapToDouble(o -> o.getTotalAmount() != null ? o.getTotalAmount() : 0.0)
-                .sum();
-        double monthRevenue = ordersMeta.stream()
-                .filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfMonth && o.getCreatedAt() <= now)
-                .mapToDouble(o -> o.getTotalAmount() != null ? o.getTotalAmount() : 0.0)
-                .sum();
-        revenueStats.setToday(todayRevenue);
-        revenueStats.setMonth(monthRevenue);
+        revenueStats.setToday(value(todayBucket, REVENUE));
+        revenueStats.setMonth(value(monthBucket, REVENUE));
         kpi.setRevenue(revenueStats);
 
-        // Products sold (approx) - sum quantities from order items per order
         DashboardStatsDTO.KPIData.ProductStats productStats = new DashboardStatsDTO.KPIData.ProductStats();
-        long productsSoldToday = ordersMeta.stream().filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfDay && o.getCreatedAt() <= now)
-                .mapToLong(o -> orderTableRepository.findOrderItemsByPk(o.getPk()).stream()
-                        .mapToLong(it -> it.getQuantity() != null ? it.getQuantity() : 0).sum())
-                .sum();
-        long productsSoldMonth = ordersMeta.stream().filter(o -> o.getCreatedAt() != null && o.getCreatedAt() >= startOfMonth && o.getCreatedAt() <= now)
-                .mapToLong(o -> orderTableRepository.findOrderItemsByPk(o.getPk()).stream()
-                        .mapToLong(it -> it.getQuantity() != null ? it.getQuantity() : 0).sum())
-                .sum();
-        productStats.setToday(productsSoldToday);
-        productStats.setMonth(productsSoldMonth);
+        productStats.setToday((long) value(todayBucket, UNITS_SOLD));
+        productStats.setMonth((long) value(monthBucket, UNITS_SOLD));
         kpi.setProductsSold(productStats);
 
-        // Low stock across warehouses
-        int lowStockCount = 0;
-        List<com.leafshop.model.dynamodb.WarehouseTable> warehouses = warehouseTableRepository.findAll();
-        for (WarehouseTable wh : warehouses) {
-            List<WarehouseTable> inv = warehouseTableRepository.findInventoryByPk(wh.getPk());
-            for (WarehouseTable item : inv) {
-                Integer avail = item.getAvailableQuantity();
-                Integer reorder = item.getReorderPoint();
-                if (avail != null && reorder != null && avail <= reorder) {
-                    lowStockCount++;
+        kpi.setLowStock((int) value(counters.get(inventoryPk), LOW_STOCK_COUNT));
+
+        stats.setKpiData(kpi);
+        stats.setWarming(warming);
+        return stats;
+    }
+
+    private void rebuildInBackground() {
+        if (!rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        rebuildExecutor.submit(() -> {
+            try {
+                rebuildMetrics();
+            } catch (Exception e) {
+                log.warn("Dashboard metrics backfill failed, will retry on next request", e);
+            } finally {
+                rebuildScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * Tính lại toàn bộ bộ đếm từ OrderTable và WarehouseTable (scan song song) vào thế hệ mới, đọc lại các dòng
+     * được ghi trong lúc scan (dirty*) rồi chuyển con trỏ đọc sang thế hệ đó.
+     * Chỉ chạy khi giành được lease rebuild; trả về false nếu instance khác đang rebuild.
+     */
+    public boolean rebuildMetrics() {
+        if (!dashboardMetricsRepository.tryAcquireRebuildLease(instanceId, REBUILD_LEASE_MS)) {
+            log.info("Dashboard metrics rebuild already in progress on another instance");
+            return false;
+        }
+        try {
+            rebuildCounters();
+            return true;
+        } catch (RuntimeException e) {
+            dashboardMetricsRepository.releaseRebuildLease(instanceId);
+            throw e;
+        }
+    }
+
+    private void rebuildCounters() {
+        long start = System.currentTimeMillis();
+        long generation = dashboardMetricsRepository.beginRebuild(instanceId);
+
+        Map<String, Long> unitsByOrder = new HashMap<>();
+        for (OrderTable item : orderTableRepository.scanAllOrderItems()) {
+            unitsByOrder.merge(item.getPk(), soldUnits(item), Long::sum);
+        }
+
+        Map<String, Map<String, Double>> counters = new HashMap<>();
+        // Phần đóng góp đã cộng của từng đơn / dòng tồn kho, để trừ ra khi đọc lại dòng dirty
+        Map<String, OrderTable> countedOrders = new HashMap<>();
+        for (OrderTable order : orderTableRepository.scanAllOrdersMeta()) {
+            if (isCountedOrder(order)) {
+                countedOrders.put(order.getPk(), order);
+                addOrder(counters, generation, order, unitsByOrder.getOrDefault(order.getPk(), 0L), 1);
+            }
+        }
+
+        Set<String> lowStock = new HashSet<>();
+        for (WarehouseTable item : warehouseTableRepository.scanAllInventory()) {
+            if (isLowStock(item)) {
+                lowStock.add(inventoryKey(item.getPk(), item.getSk()));
+            }
+        }
+        String inventoryPk = inventoryPk(generation);
+        counters.put(inventoryPk, Map.of(LOW_STOCK_COUNT, (double) lowStock.size()));
+        dashboardMetricsRepository.putCounters(counters);
+
+        int rounds = 0;
+        while (!dashboardMetricsRepository.switchGeneration(instanceId, generation)) {
+            if (++rounds > MAX_DIRTY_ROUNDS) {
+                throw new IllegalStateException("Dashboard metrics rebuild could not catch up with concurrent writes");
+            }
+            Map<String, Map<String, Double>> changed = new HashMap<>();
+            for (String pk : dashboardMetricsRepository.takeDirty(instanceId, DIRTY_ORDERS)) {
+                OrderTable previous = countedOrders.remove(pk);
+                if (previous != null) {
+                    addOrder(changed, generation, previous, unitsByOrder.getOrDefault(pk, 0L), -1);
+                }
+                OrderTable order = orderTableRepository.findOrderMetaByPkAndSk(pk, "META").orElse(null);
+                unitsByOrder.put(pk, orderTableRepository.findOrderItemsByPk(pk).stream()
+                        .mapToLong(DashboardMetricsRepository::soldUnits)
+                        .sum());
+                if (isCountedOrder(order)) {
+                    countedOrders.put(pk, order);
+                    addOrder(changed, generation, order, unitsByOrder.get(pk), 1);
                 }
             }
+            boolean inventoryChanged = false;
+            for (String key : dashboardMetricsRepository.takeDirty(instanceId, DIRTY_INVENTORY)) {
+                String[] parts = key.split("\\|", 2);
+                boolean low = isLowStock(warehouseTableRepository.findProductInventoryByPkAndSk(parts[0], parts[1]).orElse(null));
+                inventoryChanged |= low ? lowStock.add(key) : lowStock.remove(key);
+            }
+            if (inventoryChanged) {
+                changed.put(inventoryPk, Map.of(LOW_STOCK_COUNT, (double) lowStock.size()));
+            }
+
+            // Cộng chênh lệch vào bộ đếm đầy đủ rồi ghi lại giá trị tuyệt đối của các bucket bị ảnh hưởng
+            Map<String, Map<String, Double>> rewrite = new HashMap<>();
+            changed.forEach((pk, deltas) -> {
+                if (pk.equals(inventoryPk)) {
+                    counters.put(pk, deltas);
+                } else {
+                    Map<String, Double> bucket = counters.computeIfAbsent(pk, k -> new HashMap<>());
+                    deltas.forEach((name, delta) -> bucket.merge(name, delta, Double::sum));
+                }
+                rewrite.put(pk, counters.get(pk));
+            });
+            dashboardMetricsRepository.putCounters(rewrite);
         }
-        kpi.setLowStock(lowStockCount);
 
-        stats.setKpiData(kpi);
-        return stats;
+        dashboardMetricsRepository.deleteOtherGenerations(generation);
+        log.info("Rebuilt dashboard metrics generation {}: {} counter items in {} ms ({} catch-up rounds)",
+                generation, counters.size(), System.currentTimeMillis() - start, rounds);
+    }
+
+    // Cộng (sign = 1) hoặc trừ (sign = -1) đóng góp của một đơn vào bucket theo createdAt của META
+    private static void addOrder(Map<String, Map<String, Double>> counters, long generation, OrderTable order,
+                                 long units, int sign) {
+        LocalDate day = Instant.ofEpochMilli(order.getCreatedAt()).atZone(ZoneOffset.UTC).toLocalDate();
+        double amount = order.getTotalAmount() != null ? order.getTotalAmount() : 0.0;
+        for (String pk : List.of(dayPk(generation, day), monthPk(generation, YearMonth.from(day)))) {
+            Map<String, Double> bucket = counters.computeIfAbsent(pk, k -> new HashMap<>());
+            bucket.merge(ORDER_COUNT, (double) sign, Double::sum);
+            bucket.merge(REVENUE, sign * amount, Double::sum);
+            bucket.merge(UNITS_SOLD, (double) sign * units, Double::sum);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
     }
 }
@@ -1,5 +1,6 @@
 package com.leafshop.service;
 
+import com.leafshop.auth.AuthenticatedPrincipalCache;
 import com.leafshop.dto.employee.CreateEmployeeRequest;
 import com.leafshop.dto.employee.EmployeeResponse;
 import com.leafshop.dto.employee.UpdateEmployeeRequest;
@@ -19,6 +20,7 @@ public class EmployeeService {
 
     private final UserTableRepository userTableRepository;
     private final PasswordEncoder passwordEncoder;
+    private final AuthenticatedPrincipalCache principalCache;
     // role repository removed
 
     public EmployeeResponse createEmployee(CreateEmployeeRequest req) {
@@ -166,6 +168,10 @@ public class EmployeeService {
         userTableRepository.save(meta);
         userTableRepository.save(account);
         userTableRepository.save(emp);
+        if (req.getRole() != null) {
+            // Token đang dùng mang role cũ
+            principalCache.invalidateUser(account.getUsername());
+        }
 
         return getEmployee(userId);
     }
@@ -174,6 +180,10 @@ public class EmployeeService {
         String pk = userId.startsWith("USER#") ? userId : "USER#" + userId;
         // mark account as inactive
         var accountOpt = userTableRepository.findAccountByPk(pk);
-        accountOpt.ifPresent(a -> { a.setIsActive(false); userTableRepository.save(a); });
+        accountOpt.ifPresent(a -> {
+            a.setIsActive(false);
+            userTableRepository.save(a);
+            principalCache.invalidateUser(a.getUsername());
+        });
     }
 }
@@ -0,0 +1,178 @@
+package com.leafshop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.exception.IdempotencyConflictException;
+import com.leafshop.model.dynamodb.IdempotencyRecord;
+import com.leafshop.repository.IdempotencyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Xử lý request có Idempotency-Key đúng một lần và trả lại kết quả đã lưu cho các lần gửi lại.
+ *
+ * - Gửi lại sau khi đã xong: một GetItem, trả responseBody đã lưu, không chạy lại action.
+ * - Hai request cùng key chạy song song: chỉ request ghi được khoá (conditional put) chạy action,
+ *   request còn lại nhận {@link IdempotencyConflictException}.
+ * - Action lỗi: khoá được bỏ để client gửi lại cùng key; node chết giữa chừng thì khoá hết hạn sau
+ *   idempotency.lock-timeout-ms.
+ * - Cùng key nhưng nội dung request khác (so bằng SHA-256 của JSON) bị từ chối.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9._:-]{1,128}");
+
+    private final IdempotencyRepository idempotencyRepository;
+    private final long ttlSeconds;
+    private final long lockTimeoutMs;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public IdempotencyService(IdempotencyRepository idempotencyRepository,
+                              @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${idempotency.lock-timeout-ms:30000}") long lockTimeoutMs) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.ttlSeconds = ttlHours * 3600;
+        this.lockTimeoutMs = lockTimeoutMs;
+    }
+
+    /**
+     * Key đầy đủ theo phạm vi, dùng để gắn lên dữ liệu do request tạo ra (vd. OrderTable.idempotencyKey).
+     */
+    public static String scopedKey(String scope, String key) {
+        return scope + "#" + key;
+    }
+
+    public <T> T execute(String scope, String key, Object request, Class<T> responseType, Supplier<T> action) {
+        return execute(scope, key, request, responseType, action, response -> true);
+    }
+
+    /**
+     * @param replayable kết quả nào được lưu để trả lại; kết quả khác thì bỏ khoá như khi lỗi
+     */
+    public <T> T execute(String scope, String key, Object request, Class<T> responseType, Supplier<T> action,
+                         Predicate<T> replayable) {
+        if (!StringUtils.hasText(key)) {
+            return action.get();
+        }
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1-128 characters of letters, digits, '.', '_', ':' or '-'");
+        }
+        String pk = IdempotencyRepository.pk(scope, key);
+        String requestHash = sha256(toJson(request));
+        long now = System.currentTimeMillis();
+
+        IdempotencyRecord existing = idempotencyRepository.find(pk).orElse(null);
+        if (existing != null && !isExpired(existing, now)) {
+            T replay = replayOrReject(existing, requestHash, now, responseType);
+            if (replay != null) {
+                return replay;
+            }
+        }
+
+        String lockToken = UUID.randomUUID().toString();
+        IdempotencyRecord record = IdempotencyRecord.builder()
+                .pk(pk)
+                .sk(IdempotencyRepository.sk())
+                .scope(scope)
+                .requestHash(requestHash)
+                .status(IdempotencyRepository.STATUS_IN_PROGRESS)
+                .lockToken(lockToken)
+                .lockedUntil(now + lockTimeoutMs)
+                .createdAt(now)
+                .updatedAt(now)
+                .expiresAt(now / 1000 + ttlSeconds)
+                .build();
+        if (!idempotencyRepository.tryLock(record, now)) {
+            // Request khác cùng key vừa giữ khoá hoặc vừa xong
+            IdempotencyRecord winner = idempotencyRepository.find(pk)
+                    .orElseThrow(() -> new IdempotencyConflictException("Request with this Idempotency-Key is already in progress"));
+            T replay = replayOrReject(winner, requestHash, now, responseType);
+            if (replay != null) {
+                return replay;
+            }
+            throw new IdempotencyConflictException("Request with this Idempotency-Key is already in progress");
+        }
+
+        T response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            idempotencyRepository.release(pk, lockToken);
+            throw e;
+        }
+        if (response == null || !replayable.test(response)) {
+            idempotencyRepository.release(pk, lockToken);
+            return response;
+        }
+
+        record.setStatus(IdempotencyRepository.STATUS_COMPLETED);
+        record.setResponseBody(toJson(response));
+        record.setLockedUntil(null);
+        record.setUpdatedAt(System.currentTimeMillis());
+        try {
+            if (!idempotencyRepository.complete(record, lockToken)) {
+                log.warn("Idempotency lock for {} expired before completion; result was not stored", pk);
+            }
+        } catch (Exception e) {
+            // Kết quả đã có, chỉ mất khả năng trả lại; khoá sẽ tự hết hạn
+            log.warn("Failed to store idempotent response for {}: {}", pk, e.getMessage());
+        }
+        return response;
+    }
+
+    // Trả kết quả đã lưu; null nếu khoá cũ đã hết hạn và request này được phép chạy lại
+    private <T> T replayOrReject(IdempotencyRecord record, String requestHash, long now, Class<T> responseType) {
+        if (record.getRequestHash() != null && !record.getRequestHash().equals(requestHash)) {
+            throw new IdempotencyConflictException("Idempotency-Key was already used for a different request");
+        }
+        if (IdempotencyRepository.STATUS_COMPLETED.equals(record.getStatus()) && record.getResponseBody() != null) {
+            try {
+                return objectMapper.readValue(record.getResponseBody(), responseType);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Stored idempotent response for " + record.getPk() + " is unreadable", e);
+            }
+        }
+        if (record.getLockedUntil() != null && record.getLockedUntil() >= now) {
+            throw new IdempotencyConflictException("Request with this Idempotency-Key is already in progress");
+        }
+        return null;
+    }
+
+    private static boolean isExpired(IdempotencyRecord record, long now) {
+        return record.getExpiresAt() != null && record.getExpiresAt() < now / 1000;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Request cannot be serialized for idempotency check", e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
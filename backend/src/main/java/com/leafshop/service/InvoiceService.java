@@ -1,32 +1,60 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.LocalTtlCache;
 import com.leafshop.dto.order.OrderItemResponse;
 import com.leafshop.dto.order.OrderResponse;
 import com.leafshop.model.dynamodb.ProductTable;
-import com.leafshop.repository.ProductTableRepository;
+import com.leafshop.repository.ProductHydrator;
 import com.leafshop.util.DynamoDBKeyUtil;
 import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
 import com.itextpdf.text.pdf.draw.LineSeparator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
-
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Xuất hoá đơn PDF.
+ *
+ * - Font và các font phụ (header bảng, tổng cộng) nạp một lần khi load class.
+ * - Render chạy trên pool giới hạn (invoice.render.threads, hàng đợi invoice.render.queue-capacity);
+ *   hàng đợi đầy thì từ chối ngay thay vì giữ thread request.
+ * - PDF đã render được cache theo orderId + phiên bản đơn (updatedAt, trạng thái), nên tải lại / gửi mail
+ *   không render lại; đơn thay đổi thì key đổi theo. Nhiều request cùng lúc cho một hoá đơn dùng chung một lần render.
+ * - Gửi mail chạy nền, thử lại với backoff (invoice.email.max-attempts).
+ */
 @Service
 public class InvoiceService {
 
+    private static final Logger log = LoggerFactory.getLogger(InvoiceService.class);
+
     @Autowired
     private EmailService emailService;
 
     @Autowired
-    private ProductTableRepository productTableRepository;
+    private ProductHydrator productHydrator;
 
     private static BaseFont vietnameseFont;
     private static Font FONT_TITLE;
@@ -41,16 +69,16 @@ public class InvoiceService {
             // Option 1: Try STSong-Light (supports CJK and Vietnamese)
             try {
                 vietnameseFont = BaseFont.createFont("STSong-Light", "UniGB-UCS2-H", BaseFont.NOT_EMBEDDED);
-                System.out.println("Successfully loaded STSong-Light font for Vietnamese PDF");
+                log.info("Successfully loaded STSong-Light font for Vietnamese PDF");
             } catch (Exception e1) {
                 // Option 2: Use TIMES_ROMAN with CP1252 encoding (better Vietnamese support than Helvetica)
                 try {
                     vietnameseFont = BaseFont.createFont(BaseFont.TIMES_ROMAN, "Cp1252", BaseFont.EMBEDDED);
-                    System.out.println("Successfully loaded Times Roman font with Cp1252 encoding for Vietnamese PDF");
+                    log.info("Successfully loaded Times Roman font with Cp1252 encoding for Vietnamese PDF");
                 } catch (Exception e2) {
                     // Option 3: Last resort - HELVETICA with IDENTITY_H
                     vietnameseFont = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-                    System.out.println("Fallback to Helvetica font with Unicode support");
+                    log.info("Fallback to Helvetica font with Unicode support");
                 }
             }
 
@@ -60,8 +88,7 @@ public class InvoiceService {
             FONT_BOLD = new Font(vietnameseFont, 11, Font.BOLD, BaseColor.BLACK);
             FONT_SMALL = new Font(vietnameseFont, 9, Font.NORMAL, BaseColor.GRAY);
         } catch (Exception e) {
-            System.err.println("Failed to load Vietnamese font, using default: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Failed to load Vietnamese font, using default: {}", e.getMessage(), e);
             // Last fallback to default fonts
             FONT_TITLE = new Font(Font.FontFamily.TIMES_ROMAN, 24, Font.BOLD, BaseColor.BLACK);
             FONT_HEADER = new Font(Font.FontFamily.TIMES_ROMAN, 16, Font.BOLD, BaseColor.BLACK);
@@ -71,8 +98,63 @@ public class InvoiceService {
         }
     }
 
-    private static final NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
-    private static final SimpleDateFormat dateFormatter = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+    private static final Font FONT_TABLE_HEADER = new Font(Font.FontFamily.HELVETICA, 11, Font.BOLD, BaseColor.WHITE);
+    private static final Font FONT_GRAND_TOTAL = new Font(Font.FontFamily.HELVETICA, 13, Font.BOLD, BaseColor.BLACK);
+    private static final BaseColor TABLE_HEADER_COLOR = new BaseColor(45, 80, 22);
+
+    // NumberFormat không thread-safe: mỗi worker render một instance
+    private static final ThreadLocal<NumberFormat> currencyFormatter =
+            ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(new Locale("vi", "VN")));
+    private static final DateTimeFormatter dateFormatter =
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.systemDefault());
+
+    @Value("${invoice.render.threads:2}")
+    private int renderThreads;
+
+    @Value("${invoice.render.queue-capacity:50}")
+    private int renderQueueCapacity;
+
+    @Value("${invoice.render.timeout-seconds:30}")
+    private long renderTimeoutSeconds;
+
+    @Value("${invoice.cache.ttl-minutes:60}")
+    private long cacheTtlMinutes;
+
+    @Value("${invoice.cache.max-kb:32768}")
+    private long cacheMaxKb;
+
+    @Value("${invoice.email.max-attempts:3}")
+    private int emailMaxAttempts;
+
+    @Value("${invoice.email.retry-delay-ms:5000}")
+    private long emailRetryDelayMs;
+
+    private ThreadPoolExecutor renderExecutor;
+    private ScheduledExecutorService emailExecutor;
+    private LocalTtlCache pdfCache;
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        renderExecutor = new ThreadPoolExecutor(renderThreads, renderThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, renderQueueCapacity)), r -> {
+                    Thread t = new Thread(r, "invoice-render");
+                    t.setDaemon(true);
+                    return t;
+                });
+        emailExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "invoice-email");
+            t.setDaemon(true);
+            return t;
+        });
+        pdfCache = new LocalTtlCache(Integer.MAX_VALUE, cacheMaxKb, TimeUnit.MINUTES.toMillis(cacheTtlMinutes));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdownNow();
+        emailExecutor.shutdown();
+    }
 
     /**
      * Fix encoding issues - ensure text is in UTF-8
@@ -86,9 +168,47 @@ public class InvoiceService {
     }
 
     /**
-     * Generate invoice PDF
+     * Generate invoice PDF (lấy từ cache nếu đơn chưa đổi, không thì chờ worker render)
+     *
+     * @throws java.util.concurrent.RejectedExecutionException khi hàng đợi render đầy
      */
     public byte[] generateInvoicePDF(OrderResponse order) throws Exception {
+        try {
+            return renderAsync(order).get(renderTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    public CompletableFuture<byte[]> renderAsync(OrderResponse order) {
+        String key = cacheKey(order);
+        byte[] cached = (byte[]) pdfCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<byte[]> future = inFlight.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                byte[] pdf = render(order);
+                pdfCache.put(k, pdf);
+                log.debug("Rendered invoice {} ({} bytes) in {} ms", order.getOrderId(), pdf.length,
+                        System.currentTimeMillis() - start);
+                return pdf;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to render invoice " + order.getOrderId(), e);
+            }
+        }, renderExecutor));
+        // Đăng ký sau khi future đã nằm trong map: render xong quá nhanh vẫn được gỡ, và chỉ gỡ đúng future này
+        future.whenComplete((pdf, error) -> inFlight.remove(key, future));
+        return future;
+    }
+
+    // Phiên bản đơn: mọi thay đổi đơn đều cập nhật updatedAt; thêm trạng thái phòng khi bản ghi cũ thiếu updatedAt
+    private static String cacheKey(OrderResponse order) {
+        return order.getOrderId() + "#" + order.getUpdatedAt() + "#" + order.getOrderStatus() + "#" + order.getPaymentStatus();
+    }
+
+    private byte[] render(OrderResponse order) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Document document = new Document(PageSize.A4, 40, 40, 40, 40);
         PdfWriter.getInstance(document, baos);
@@ -146,7 +266,7 @@ public class InvoiceService {
         Paragraph invoiceInfo = new Paragraph();
         invoiceInfo.add(new Chunk("HOA DON\n", FONT_HEADER));
         invoiceInfo.add(new Chunk("So: " + order.getOrderId().substring(0, 8).toUpperCase() + "\n", FONT_NORMAL));
-        String dateStr = order.getCreatedAt() != null ? dateFormatter.format(new Date(order.getCreatedAt())) : "N/A";
+        String dateStr = order.getCreatedAt() != null ? dateFormatter.format(Instant.ofEpochMilli(order.getCreatedAt())) : "N/A";
         invoiceInfo.add(new Chunk("Ngay: " + dateStr + "\n", FONT_NORMAL));
         invoiceInfo.add(new Chunk("Trang thai: " + getStatusText(order.getOrderStatus()), FONT_NORMAL));
         invoiceCell.addElement(invoiceInfo);
@@ -211,12 +331,22 @@ public class InvoiceService {
         itemsTable.setWidths(new int[]{1, 4, 2, 3, 3});
 
         // Header
-        BaseColor headerColor = new BaseColor(45, 80, 22);
-        addTableHeader(itemsTable, "STT", headerColor);
-        addTableHeader(itemsTable, "San pham", headerColor);
-        addTableHeader(itemsTable, "So luong", headerColor);
-        addTableHeader(itemsTable, "Don gia", headerColor);
-        addTableHeader(itemsTable, "Thanh tien", headerColor);
+        addTableHeader(itemsTable, "STT", TABLE_HEADER_COLOR);
+        addTableHeader(itemsTable, "San pham", TABLE_HEADER_COLOR);
+        addTableHeader(itemsTable, "So luong", TABLE_HEADER_COLOR);
+        addTableHeader(itemsTable, "Don gia", TABLE_HEADER_COLOR);
+        addTableHeader(itemsTable, "Thanh tien", TABLE_HEADER_COLOR);
+
+        // Tên sản phẩm còn thiếu: lấy META của tất cả bằng BatchGetItem thay vì từng item
+        List<String> missingNamePks = new ArrayList<>();
+        for (OrderItemResponse item : order.getItems()) {
+            if ((item.getProductName() == null || item.getProductName().isEmpty()) && item.getProductId() != null) {
+                missingNamePks.add(DynamoDBKeyUtil.productPk(item.getProductId()));
+            }
+        }
+        Map<String, ProductTable> productsByPk = missingNamePks.isEmpty()
+                ? Map.of()
+                : productHydrator.batchGetMeta(missingNamePks);
 
         // Items
         int index = 1;
@@ -226,10 +356,9 @@ public class InvoiceService {
             // Fetch productName if not available
             String productName = item.getProductName();
             if (productName == null || productName.isEmpty()) {
-                String productPk = DynamoDBKeyUtil.productPk(item.getProductId());
-                Optional<ProductTable> productOpt = productTableRepository.findProductByPk(productPk);
-                if (productOpt.isPresent()) {
-                    productName = productOpt.get().getName();
+                ProductTable product = productsByPk.get(DynamoDBKeyUtil.productPk(item.getProductId()));
+                if (product != null) {
+                    productName = product.getName();
                 } else {
                     productName = item.getProductId(); // fallback to ID
                 }
@@ -240,15 +369,15 @@ public class InvoiceService {
 
             addTableCell(itemsTable, productName, Element.ALIGN_LEFT);
             addTableCell(itemsTable, String.valueOf(item.getQuantity()), Element.ALIGN_CENTER);
-            addTableCell(itemsTable, currencyFormatter.format(item.getUnitPrice()), Element.ALIGN_RIGHT);
-            addTableCell(itemsTable, currencyFormatter.format(item.getItemTotal()), Element.ALIGN_RIGHT);
+            addTableCell(itemsTable, currencyFormatter.get().format(item.getUnitPrice()), Element.ALIGN_RIGHT);
+            addTableCell(itemsTable, currencyFormatter.get().format(item.getItemTotal()), Element.ALIGN_RIGHT);
         }
 
         document.add(itemsTable);
     }
 
     private void addTableHeader(PdfPTable table, String text, BaseColor color) {
-        PdfPCell cell = new PdfPCell(new Phrase(text, new Font(Font.FontFamily.HELVETICA, 11, Font.BOLD, BaseColor.WHITE)));
+        PdfPCell cell = new PdfPCell(new Phrase(text, FONT_TABLE_HEADER));
         cell.setBackgroundColor(color);
         cell.setHorizontalAlignment(Element.ALIGN_CENTER);
         cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
@@ -270,18 +399,18 @@ public class InvoiceService {
         totalsTable.setHorizontalAlignment(Element.ALIGN_RIGHT);
         totalsTable.setWidths(new int[]{2, 2});
 
-        addTotalRow(totalsTable, "Tam tinh:", currencyFormatter.format(order.getSubtotal()), false);
-        addTotalRow(totalsTable, "Phi van chuyen:", currencyFormatter.format(order.getShippingAmount()), false);
+        addTotalRow(totalsTable, "Tam tinh:", currencyFormatter.get().format(order.getSubtotal()), false);
+        addTotalRow(totalsTable, "Phi van chuyen:", currencyFormatter.get().format(order.getShippingAmount()), false);
         if (order.getDiscountAmount() > 0) {
-            addTotalRow(totalsTable, "Giam gia:", "-" + currencyFormatter.format(order.getDiscountAmount()), false);
+            addTotalRow(totalsTable, "Giam gia:", "-" + currencyFormatter.get().format(order.getDiscountAmount()), false);
         }
-        addTotalRow(totalsTable, "TONG CONG:", currencyFormatter.format(order.getTotalAmount()), true);
+        addTotalRow(totalsTable, "TONG CONG:", currencyFormatter.get().format(order.getTotalAmount()), true);
 
         document.add(totalsTable);
     }
 
     private void addTotalRow(PdfPTable table, String label, String value, boolean isGrandTotal) {
-        Font font = isGrandTotal ? new Font(Font.FontFamily.HELVETICA, 13, Font.BOLD, BaseColor.BLACK) : FONT_NORMAL;
+        Font font = isGrandTotal ? FONT_GRAND_TOTAL : FONT_NORMAL;
 
         PdfPCell labelCell = new PdfPCell(new Phrase(label, font));
         labelCell.setBorder(isGrandTotal ? Rectangle.TOP : Rectangle.NO_BORDER);
@@ -365,21 +494,55 @@ public class InvoiceService {
      */
     public boolean sendInvoiceEmail(OrderResponse order, String email) {
         try {
-            // Generate PDF
-            byte[] pdfBytes = generateInvoicePDF(order);
-
-            // Send email with PDF attachment
-            String subject = "Hoa don don hang #" + order.getOrderId().substring(0, 8).toUpperCase();
-            String body = buildEmailBody(order);
+            return sendRenderedInvoice(order, email, generateInvoicePDF(order));
+        } catch (Exception e) {
+            log.error("Failed to send invoice {} to {}: {}", order.getOrderId(), email, e.getMessage(), e);
+            return false;
+        }
+    }
 
-            return emailService.sendEmailWithAttachment(email, subject, body, pdfBytes, "HoaDon_" + order.getOrderId() + ".pdf");
+    /**
+     * Render (hoặc lấy từ cache) rồi gửi mail ở nền; thử lại tối đa invoice.email.max-attempts lần,
+     * thời gian chờ nhân đôi sau mỗi lần lỗi. Future trả về false nếu mọi lần thử đều lỗi.
+     */
+    public CompletableFuture<Boolean> sendInvoiceEmailAsync(OrderResponse order, String email) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        renderAsync(order).whenComplete((pdf, error) -> {
+            if (error != null) {
+                log.error("Failed to render invoice {} for email: {}", order.getOrderId(), error.getMessage());
+                result.complete(false);
+            } else {
+                emailExecutor.execute(() -> attemptSend(order, email, pdf, 1, result));
+            }
+        });
+        return result;
+    }
 
+    private void attemptSend(OrderResponse order, String email, byte[] pdf, int attempt, CompletableFuture<Boolean> result) {
+        boolean sent;
+        try {
+            sent = sendRenderedInvoice(order, email, pdf);
         } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+            log.warn("Invoice email {} attempt {} failed: {}", order.getOrderId(), attempt, e.getMessage());
+            sent = false;
+        }
+        if (sent) {
+            result.complete(true);
+        } else if (attempt >= emailMaxAttempts) {
+            log.error("Giving up sending invoice {} to {} after {} attempts", order.getOrderId(), email, attempt);
+            result.complete(false);
+        } else {
+            long delay = emailRetryDelayMs << (attempt - 1);
+            emailExecutor.schedule(() -> attemptSend(order, email, pdf, attempt + 1, result), delay, TimeUnit.MILLISECONDS);
         }
     }
 
+    private boolean sendRenderedInvoice(OrderResponse order, String email, byte[] pdfBytes) {
+        String subject = "Hoa don don hang #" + order.getOrderId().substring(0, 8).toUpperCase();
+        String body = buildEmailBody(order);
+        return emailService.sendEmailWithAttachment(email, subject, body, pdfBytes, "HoaDon_" + order.getOrderId() + ".pdf");
+    }
+
     private String buildEmailBody(OrderResponse order) {
         StringBuilder body = new StringBuilder();
         body.append("<html><body style='font-family: Arial, sans-serif;'>");
@@ -387,7 +550,7 @@ public class InvoiceService {
         body.append("<h2 style='color: #2d5016;'>Cam on quy khach da dat hang!</h2>");
         body.append("<p>Xin chao <strong>").append(order.getShippingAddress() != null ? order.getShippingAddress().getFullName() : "").append("</strong>,</p>");
         body.append("<p>Chung toi da gui kem hoa don cho don hang #").append(order.getOrderId().substring(0, 8).toUpperCase()).append(".</p>");
-        body.append("<p><strong>Tong tien:</strong> ").append(currencyFormatter.format(order.getTotalAmount())).append("</p>");
+        body.append("<p><strong>Tong tien:</strong> ").append(currencyFormatter.get().format(order.getTotalAmount())).append("</p>");
         body.append("<p><strong>Trang thai:</strong> ").append(getStatusText(order.getOrderStatus())).append("</p>");
         body.append("<hr style='border: 1px solid #e0e0e0; margin: 20px 0;'>");
         body.append("<p style='color: #666; font-size: 14px;'>Neu co bat ky thac mac nao, vui long lien he:</p>");
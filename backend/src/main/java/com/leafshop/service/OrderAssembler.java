@@ -0,0 +1,247 @@
+package com.leafshop.service;
+
+import com.leafshop.dto.order.OrderItemResponse;
+import com.leafshop.dto.order.OrderResponse;
+import com.leafshop.dto.order.ShippingAddress;
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.orders.OrderListRow;
+import com.leafshop.repository.OrderTableRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Dựng OrderResponse từ partition đơn hàng (META + ITEM#) - dùng chung cho OrderService và StaffService.
+ *
+ * - Mỗi đơn tốn đúng một query findByPk cho cả partition thay vì getItem META + query ITEM#.
+ * - Nhiều đơn: các query chạy song song trên pool giới hạn (order.assembly.max-parallel), cả lô có
+ *   hạn chót order.assembly.timeout-ms. Hết hạn, lỗi ở một đơn hoặc thread gọi bị interrupt thì
+ *   huỷ mọi query còn lại và báo lỗi cho caller, không trả về danh sách thiếu đơn.
+ */
+@Slf4j
+@Component
+public class OrderAssembler {
+
+    private final OrderTableRepository orderTableRepository;
+    private final long timeoutMs;
+    private final ExecutorService executor;
+
+    public OrderAssembler(OrderTableRepository orderTableRepository,
+                          @Value("${order.assembly.max-parallel:16}") int maxParallel,
+                          @Value("${order.assembly.timeout-ms:10000}") long timeoutMs) {
+        this.orderTableRepository = orderTableRepository;
+        this.timeoutMs = timeoutMs;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxParallel), r -> {
+            Thread t = new Thread(r, "order-assembly");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Đơn hàng đầy đủ theo pk, một query cho cả partition.
+     */
+    public Optional<OrderResponse> load(String pk) {
+        return toResponse(orderTableRepository.findByPk(pk));
+    }
+
+    /**
+     * Dựng đơn cho danh sách META (bỏ qua giỏ hàng), nạp các partition song song, giữ thứ tự đầu vào.
+     */
+    public List<OrderResponse> assemble(Collection<OrderTable> metas) {
+        List<String> pks = metas.stream()
+                .filter(m -> m.getPk() != null && !m.getPk().startsWith("CART#") && m.getOrderId() != null)
+                .map(OrderTable::getPk)
+                .distinct()
+                .collect(Collectors.toList());
+        if (pks.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        long start = System.currentTimeMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        CompletionService<List<OrderTable>> completion = new ExecutorCompletionService<>(executor);
+        Map<String, Future<List<OrderTable>>> futures = new LinkedHashMap<>();
+        Map<Future<List<OrderTable>>, List<OrderTable>> loaded = new LinkedHashMap<>();
+        try {
+            for (String pk : pks) {
+                futures.put(pk, completion.submit(() -> orderTableRepository.findByPk(pk)));
+            }
+            for (int i = 0; i < pks.size(); i++) {
+                Future<List<OrderTable>> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    throw new IllegalStateException("Timed out after " + timeoutMs + " ms assembling "
+                            + pks.size() + " orders (" + i + " loaded)");
+                }
+                loaded.put(done, done.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Order assembly interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load order partition: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Lỗi/hết hạn: huỷ các query chưa xong (no-op với query đã xong)
+            futures.values().forEach(f -> f.cancel(true));
+        }
+
+        List<OrderResponse> result = new ArrayList<>(pks.size());
+        futures.values().forEach(f -> toResponse(loaded.get(f)).ifPresent(result::add));
+        log.debug("Assembled {} orders in {} ms", result.size(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Dựng đơn từ các item đã đọc sẵn (có thể gồm nhiều partition), không query thêm.
+     */
+    public List<OrderResponse> assembleLoaded(Collection<OrderTable> rows) {
+        Map<String, List<OrderTable>> byPk = rows.stream()
+                .filter(row -> row.getPk() != null)
+                .collect(Collectors.groupingBy(OrderTable::getPk, LinkedHashMap::new, Collectors.toList()));
+        List<OrderResponse> result = new ArrayList<>(byPk.size());
+        byPk.values().forEach(partition -> toResponse(partition).ifPresent(result::add));
+        return result;
+    }
+
+    /**
+     * Đơn đầy đủ từ dòng của read model admin (không đọc DynamoDB).
+     */
+    public OrderResponse fromRow(OrderListRow row) {
+        OrderResponse order = OrderResponse.builder()
+                .orderId(row.getOrderId())
+                .orderPk(row.getOrderPk())
+                .userId(row.getUserId())
+                .orderStatus(row.getOrderStatus())
+                .items(new ArrayList<>(row.getItems()))
+                .subtotal(row.getSubtotal())
+                .shippingAmount(row.getShippingAmount())
+                .discountAmount(row.getDiscountAmount())
+                .totalAmount(row.getTotalAmount())
+                .shippingAddress(toShippingAddress(row.getShippingAddress()))
+                .paymentMethod(row.getPaymentMethod())
+                .paymentStatus(row.getPaymentStatus())
+                .assignedTo(row.getAssignedTo())
+                .createdAt(row.getCreatedAt() != 0 ? row.getCreatedAt() : null)
+                .updatedAt(row.getUpdatedAt())
+                .build();
+        recalcOrderAmounts(order);
+        return order;
+    }
+
+    /**
+     * Đơn rút gọn cho danh sách từ META đã project (không có địa chỉ, dòng hàng), giữ nguyên tổng tiền đã lưu.
+     */
+    public OrderResponse summary(OrderTable meta) {
+        return OrderResponse.builder()
+                .orderId(meta.getOrderId())
+                .orderPk(meta.getPk())
+                .userId(meta.getUserId())
+                .orderStatus(meta.getOrderStatus())
+                .subtotal(meta.getSubtotal())
+                .shippingAmount(meta.getShippingAmount())
+                .discountAmount(meta.getDiscountAmount())
+                .totalAmount(meta.getTotalAmount())
+                .paymentMethod(meta.getPaymentMethod())
+                .paymentStatus(meta.getPaymentStatus())
+                .assignedTo(meta.getAssignedTo())
+                .createdAt(meta.getCreatedAt())
+                .updatedAt(meta.getUpdatedAt())
+                .build();
+    }
+
+    private Optional<OrderResponse> toResponse(List<OrderTable> partition) {
+        if (partition == null) {
+            return Optional.empty();
+        }
+        OrderTable meta = null;
+        List<OrderItemResponse> items = new ArrayList<>();
+        for (OrderTable row : partition) {
+            if ("META".equals(row.getSk())) {
+                meta = row;
+            } else if (row.getSk() != null && row.getSk().startsWith("ITEM#")) {
+                items.add(OrderItemResponse.builder()
+                        .itemId(row.getSk().replaceFirst("ITEM#", ""))
+                        .productId(row.getProductId())
+                        .variantId(row.getVariantId())
+                        .productName(row.getProductName())
+                        .quantity(row.getQuantity())
+                        .unitPrice(row.getUnitPrice())
+                        .itemTotal(row.getItemTotal())
+                        .build());
+            }
+        }
+        if (meta == null || meta.getOrderId() == null) {
+            return Optional.empty();
+        }
+
+        OrderResponse order = OrderResponse.builder()
+                .orderId(meta.getOrderId())
+                .orderPk(meta.getPk())
+                .userId(meta.getUserId())
+                .orderStatus(meta.getOrderStatus())
+                .items(items)
+                .subtotal(meta.getSubtotal())
+                .shippingAmount(meta.getShippingAmount())
+                .discountAmount(meta.getDiscountAmount())
+                .totalAmount(meta.getTotalAmount())
+                .shippingAddress(toShippingAddress(meta.getShippingAddress()))
+                .paymentMethod(meta.getPaymentMethod())
+                .paymentStatus(meta.getPaymentStatus())
+                .assignedTo(meta.getAssignedTo())
+                .createdAt(meta.getCreatedAt())
+                .updatedAt(meta.getUpdatedAt())
+                .build();
+        recalcOrderAmounts(order);
+        return Optional.of(order);
+    }
+
+    // Tổng tiền tính lại từ các dòng hàng
+    static void recalcOrderAmounts(OrderResponse order) {
+        if (order.getItems() != null) {
+            double subtotal = order.getItems().stream()
+                    .mapToDouble(i -> i.getItemTotal() != null ? i.getItemTotal() : 0.0)
+                    .sum();
+            order.setSubtotal(subtotal);
+            double shipping = order.getShippingAmount() != null ? order.getShippingAmount() : 0.0;
+            double discount = order.getDiscountAmount() != null ? order.getDiscountAmount() : 0.0;
+            order.setTotalAmount(subtotal + shipping - discount);
+        }
+    }
+
+    static ShippingAddress toShippingAddress(Map<String, String> map) {
+        if (map == null || map.isEmpty()) return null;
+        return ShippingAddress.builder()
+                .fullName(map.get("fullName"))
+                .phoneNumber(map.get("phoneNumber"))
+                .addressLine1(map.get("addressLine1"))
+                .addressLine2(map.get("addressLine2"))
+                .ward(map.get("ward"))
+                .district(map.get("district"))
+                .city(map.get("city"))
+                .postalCode(map.get("postalCode"))
+                .country(map.get("country"))
+                .notes(map.get("notes"))
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
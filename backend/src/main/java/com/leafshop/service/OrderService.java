@@ -1,12 +1,21 @@
 package com.leafshop.service;
 
+import com.leafshop.dto.common.CursorPageResponse;
 import com.leafshop.dto.order.*;
 import com.leafshop.model.dynamodb.OrderTable;
 import com.leafshop.model.dynamodb.WarehouseTable;
+import com.leafshop.orders.OrderChangedEvent;
+import com.leafshop.orders.OrderListQuery;
+import com.leafshop.orders.OrderReadModel;
 import com.leafshop.repository.OrderTableRepository;
+import com.leafshop.repository.ScanPage;
+import com.leafshop.repository.UserOrderHistoryCache;
 import com.leafshop.repository.WarehouseTableRepository;
+import com.leafshop.util.PageCursor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -18,6 +27,10 @@ public class OrderService {
     private final OrderTableRepository orderTableRepository;
     private final WarehouseTableRepository warehouseTableRepository;
     private final CartService cartService;
+    private final OrderAssembler orderAssembler;
+    private final UserOrderHistoryCache userOrderHistoryCache;
+    private final OrderReadModel orderReadModel;
+    private final ApplicationEventPublisher eventPublisher;
 
     // -----------------------------
     // Helper: Convert ShippingAddress to Map
@@ -38,25 +51,6 @@ public class OrderService {
         return map;
     }
 
-    // -----------------------------
-    // Helper: Convert Map to ShippingAddress
-    // -----------------------------
-    private ShippingAddress mapToShippingAddress(Map<String, String> map) {
-        if (map == null || map.isEmpty()) return null;
-        return ShippingAddress.builder()
-                .fullName(map.get("fullName"))
-                .phoneNumber(map.get("phoneNumber"))
-                .addressLine1(map.get("addressLine1"))
-                .addressLine2(map.get("addressLine2"))
-                .ward(map.get("ward"))
-                .district(map.get("district"))
-                .city(map.get("city"))
-                .postalCode(map.get("postalCode"))
-                .country(map.get("country"))
-                .notes(map.get("notes"))
-                .build();
-    }
-
     // -----------------------------
     // Create order from cart
     // -----------------------------
@@ -79,112 +73,77 @@ public class OrderService {
     // Get all orders (for admin/staff)
     // -----------------------------
     public List<OrderResponse> getAllOrders() {
-        // Get all order META records
-        List<OrderTable> allOrdersMeta = orderTableRepository.scanAllOrdersMeta();
-        List<OrderResponse> resp = new ArrayList<>();
+        // Read model trong bộ nhớ, đã sắp xếp mới nhất trước
+        return orderReadModel.all().stream()
+                .map(orderAssembler::fromRow)
+                .collect(Collectors.toList());
+    }
 
-        for (OrderTable m : allOrdersMeta) {
-            // Skip CART records - only process real orders
-            if (m.getPk() == null || m.getPk().startsWith("CART#") || m.getOrderId() == null) {
-                continue;
-            }
-            
-            // Get items for this order
-            String pk = m.getPk();
-            List<OrderTable> items = orderTableRepository.findOrderItemsByPk(pk);
-            
-            List<OrderItemResponse> itemResponses = items.stream()
-                    .map(i -> OrderItemResponse.builder()
-                            .itemId(i.getSk().replaceFirst("ITEM#", ""))
-                            .productId(i.getProductId())
-                            .variantId(i.getVariantId())
-                            .productName(i.getProductName())
-                            .quantity(i.getQuantity())
-                            .unitPrice(i.getUnitPrice())
-                            .itemTotal(i.getItemTotal())
-                            .build())
-                    .collect(Collectors.toList());
+    // -----------------------------
+    // Get one page of orders (for admin/staff) - lọc theo trạng thái/người phụ trách/khoảng ngày, mới nhất trước
+    // -----------------------------
+    public CursorPageResponse<OrderResponse> getOrdersPage(String status, String assignedTo, Long from, Long to,
+                                                           String cursor, Integer limit) {
+        int pageSize = PageCursor.limit(limit);
+        OrderReadModel.OrderListPage page = orderReadModel.query(OrderListQuery.builder()
+                .status(status)
+                .assignedTo(assignedTo)
+                .from(from)
+                .to(to)
+                .cursor(cursor)
+                .limit(pageSize)
+                .build());
 
-            OrderResponse order = OrderResponse.builder()
-                    .orderId(m.getOrderId())
-                    .orderPk(m.getPk())
-                    .userId(m.getUserId())
-                    .orderStatus(m.getOrderStatus())
-                    .items(itemResponses)
-                    .subtotal(m.getSubtotal())
-                    .shippingAmount(m.getShippingAmount())
-                    .discountAmount(m.getDiscountAmount())
-                    .totalAmount(m.getTotalAmount())
-                    .shippingAddress(mapToShippingAddress(m.getShippingAddress()))
-                    .paymentMethod(m.getPaymentMethod())
-                    .paymentStatus(m.getPaymentStatus())
-                    .assignedTo(m.getAssignedTo())
-                    .createdAt(m.getCreatedAt())
-                    .updatedAt(m.getUpdatedAt())
-                    .build();
+        return CursorPageResponse.<OrderResponse>builder()
+                .content(page.getContent().stream().map(orderAssembler::fromRow).collect(Collectors.toList()))
+                .size(pageSize)
+                .nextCursor(page.getNextCursor())
+                .hasNext(page.getNextCursor() != null)
+                .build();
+    }
 
-            recalcOrderAmounts(order);
-            resp.add(order);
-        }
-        
-        // Sort by createdAt descending (newest first)
+    // -----------------------------
+    // Get orders for a user
+    // -----------------------------
+    public List<OrderResponse> getOrdersForUser(String userId) {
+        // META qua GSI userId-createdAt-index, partition từng đơn nạp song song
+        List<OrderResponse> resp = orderAssembler.assemble(orderTableRepository.findOrdersByUserId(userId));
         resp.sort((a, b) -> {
             Long timeA = a.getCreatedAt() != null ? a.getCreatedAt() : 0L;
             Long timeB = b.getCreatedAt() != null ? b.getCreatedAt() : 0L;
             return timeB.compareTo(timeA);
         });
-        
         return resp;
     }
 
     // -----------------------------
-    // Get orders for a user
+    // Get one page of a user's order history (newest first, list fields only)
+    // Trang đầu (tối đa PageCursor.MAX_LIMIT đơn) được cache theo user và cắt theo limit
     // -----------------------------
-    public List<OrderResponse> getOrdersForUser(String userId) {
-        String prefix = "USER#" + userId + "#ORDER#";
-        List<OrderTable> orders = orderTableRepository.findByPkStartingWith(prefix);
-        Map<String, List<OrderTable>> grouped = orders.stream().collect(Collectors.groupingBy(OrderTable::getPk));
-        List<OrderResponse> resp = new ArrayList<>();
-
-        for (String pk : grouped.keySet()) {
-            Optional<OrderTable> meta = grouped.get(pk).stream().filter(o -> "META".equals(o.getSk())).findFirst();
-            List<OrderItemResponse> items = grouped.get(pk).stream().filter(o -> o.getSk().startsWith("ITEM#"))
-                    .map(i -> OrderItemResponse.builder()
-                            .itemId(i.getSk().replaceFirst("ITEM#", ""))
-                            .productId(i.getProductId())
-                            .variantId(i.getVariantId())
-                            .productName(i.getProductName())
-                            .quantity(i.getQuantity())
-                            .unitPrice(i.getUnitPrice())
-                            .itemTotal(i.getItemTotal())
-                            .build())
-                    .collect(Collectors.toList());
-
-            if (meta.isPresent()) {
-                OrderTable m = meta.get();
-                OrderResponse order = OrderResponse.builder()
-                        .orderId(m.getOrderId())
-                        .orderPk(m.getPk())
-                        .userId(m.getUserId())
-                        .orderStatus(m.getOrderStatus())
-                        .items(items)
-                        .subtotal(m.getSubtotal())
-                        .shippingAmount(m.getShippingAmount())
-                        .discountAmount(m.getDiscountAmount())
-                        .totalAmount(m.getTotalAmount())
-                        .shippingAddress(mapToShippingAddress(m.getShippingAddress()))
-                        .paymentMethod(m.getPaymentMethod())
-                        .paymentStatus(m.getPaymentStatus())
-                        .assignedTo(m.getAssignedTo())
-                        .createdAt(m.getCreatedAt())
-                        .updatedAt(m.getUpdatedAt())
-                        .build();
-
-                recalcOrderAmounts(order); // ensure totals are correct
-                resp.add(order);
-            }
+    public CursorPageResponse<OrderResponse> getOrderHistoryPage(String userId, String cursor, Integer limit) {
+        if (userId == null || userId.isEmpty()) {
+            throw new IllegalArgumentException("userId is required");
         }
-        return resp;
+        int pageSize = PageCursor.limit(limit);
+        List<OrderTable> metas;
+        Map<String, AttributeValue> lastKey;
+        if (cursor == null || cursor.isBlank()) {
+            List<OrderTable> firstPage = userOrderHistoryCache.firstPage(userId, () ->
+                    orderTableRepository.queryUserOrdersPage(userId, PageCursor.MAX_LIMIT + 1, null).getItems());
+            metas = firstPage.subList(0, Math.min(pageSize, firstPage.size()));
+            lastKey = firstPage.size() > pageSize ? OrderTableRepository.userOrdersCursorKey(metas.get(metas.size() - 1)) : null;
+        } else {
+            ScanPage<OrderTable> page = orderTableRepository.queryUserOrdersPage(userId, pageSize, PageCursor.decode(cursor));
+            metas = page.getItems();
+            lastKey = page.hasMore() ? page.getLastEvaluatedKey() : null;
+        }
+
+        return CursorPageResponse.<OrderResponse>builder()
+                .content(metas.stream().map(orderAssembler::summary).collect(Collectors.toList()))
+                .size(pageSize)
+                .nextCursor(PageCursor.encode(lastKey))
+                .hasNext(lastKey != null)
+                .build();
     }
 
     // -----------------------------
@@ -192,41 +151,8 @@ public class OrderService {
     // -----------------------------
     public OrderResponse getOrderDetails(String orderId, String userId) {
         String pk = (userId != null && !userId.isEmpty()) ? "USER#" + userId + "#ORDER#" + orderId : "ORDER#" + orderId;
-        Optional<OrderTable> metaOpt = orderTableRepository.findOrderMetaByPkAndSk(pk, "META");
-        if (!metaOpt.isPresent()) return null;
-        OrderTable meta = metaOpt.get();
-        List<OrderTable> items = orderTableRepository.findOrderItemsByPk(pk);
-
-        List<OrderItemResponse> itemResponses = items.stream()
-                .map(i -> OrderItemResponse.builder()
-                        .itemId(i.getSk().replaceFirst("ITEM#", ""))
-                        .productId(i.getProductId())
-                        .variantId(i.getVariantId())
-                        .productName(i.getProductName())
-                        .quantity(i.getQuantity())
-                        .unitPrice(i.getUnitPrice())
-                        .itemTotal(i.getItemTotal())
-                        .build())
-                .collect(Collectors.toList());
-
-        OrderResponse order = OrderResponse.builder()
-                .orderId(meta.getOrderId())
-                .orderPk(meta.getPk())
-                .userId(meta.getUserId())
-                .orderStatus(meta.getOrderStatus())
-                .items(itemResponses)
-                .subtotal(meta.getSubtotal())
-                .shippingAmount(meta.getShippingAmount())
-                .discountAmount(meta.getDiscountAmount())
-                .totalAmount(meta.getTotalAmount())
-                .shippingAddress(mapToShippingAddress(meta.getShippingAddress()))
-                .paymentMethod(meta.getPaymentMethod())
-                .paymentStatus(meta.getPaymentStatus())
-                .assignedTo(meta.getAssignedTo())
-                .build();
-
-        recalcOrderAmounts(order);
-        return order;
+        // META + ITEM# trong một query
+        return orderAssembler.load(pk).orElse(null);
     }
 
     // -----------------------------
@@ -241,6 +167,7 @@ public class OrderService {
         if (req.getNote() != null) meta.setNotes(req.getNote());
         meta.setUpdatedAt(System.currentTimeMillis());
         orderTableRepository.save(meta);
+        eventPublisher.publishEvent(OrderChangedEvent.metaChanged(meta));
         return getOrderDetails(orderId, userId);
     }
 
@@ -257,6 +184,7 @@ public class OrderService {
         meta.setPaymentAmount(req.getPaymentAmount());
         meta.setUpdatedAt(System.currentTimeMillis());
         orderTableRepository.save(meta);
+        eventPublisher.publishEvent(OrderChangedEvent.metaChanged(meta));
         return getOrderDetails(orderId, userId);
     }
 
@@ -277,6 +205,12 @@ public class OrderService {
         }
         meta.setUpdatedAt(System.currentTimeMillis());
         orderTableRepository.save(meta);
+        eventPublisher.publishEvent(OrderChangedEvent.metaChanged(meta));
+
+        // Ghi số lượng trả lại lên ITEM# để unitsSold của dashboard giảm tương ứng với doanh thu
+        if (req.getItems() != null) {
+            recordReturnedQuantities(pk, req.getItems());
+        }
 
         // Restock items if requested
         if (Boolean.TRUE.equals(req.getRestock()) && req.getItems() != null) {
@@ -313,6 +247,28 @@ public class OrderService {
         return getOrderDetails(orderId, userId);
     }
 
+    private void recordReturnedQuantities(String orderPk, List<ReturnItem> returns) {
+        List<OrderTable> items = orderTableRepository.findOrderItemsByPk(orderPk);
+        for (ReturnItem r : returns) {
+            int remaining = r.getQuantity() != null ? r.getQuantity() : 0;
+            for (OrderTable item : items) {
+                if (remaining <= 0) break;
+                if (!Objects.equals(item.getProductId(), r.getProductId())
+                        || (r.getVariantId() != null && !r.getVariantId().equals(item.getVariantId()))) {
+                    continue;
+                }
+                int quantity = item.getQuantity() != null ? item.getQuantity() : 0;
+                int returned = item.getReturnedQuantity() != null ? item.getReturnedQuantity() : 0;
+                int added = Math.min(remaining, quantity - returned);
+                if (added <= 0) continue;
+                item.setReturnedQuantity(returned + added);
+                item.setUpdatedAt(System.currentTimeMillis());
+                orderTableRepository.save(item);
+                remaining -= added;
+            }
+        }
+    }
+
     // -----------------------------
     // Assign order
     // -----------------------------
@@ -324,24 +280,10 @@ public class OrderService {
         meta.setAssignedTo(req.getStaffId());
         meta.setUpdatedAt(System.currentTimeMillis());
         orderTableRepository.save(meta);
+        eventPublisher.publishEvent(OrderChangedEvent.metaChanged(meta));
         return getOrderDetails(orderId, userId);
     }
 
-    // -----------------------------
-    // Recalculate order amounts for OrderResponse
-    // -----------------------------
-    private void recalcOrderAmounts(OrderResponse order) {
-        if (order.getItems() != null) {
-            double subtotal = order.getItems().stream()
-                    .mapToDouble(i -> i.getItemTotal() != null ? i.getItemTotal() : 0.0)
-                    .sum();
-            order.setSubtotal(subtotal);
-            double shipping = order.getShippingAmount() != null ? order.getShippingAmount() : 0.0;
-            double discount = order.getDiscountAmount() != null ? order.getDiscountAmount() : 0.0;
-            order.setTotalAmount(subtotal + shipping - discount);
-        }
-    }
-
     // -----------------------------
     // Recalculate order amounts for CreateOrderResponse
     // -----------------------------
@@ -8,6 +8,9 @@ import com.leafshop.dto.payment.WebhookRequest;
 public interface PaymentService {
     PaymentResponse initiatePayment(InitiatePaymentRequest req);
 
+    // Gửi lại cùng Idempotency-Key trả về giao dịch đã tạo thay vì tạo giao dịch mới
+    PaymentResponse initiatePayment(InitiatePaymentRequest req, String idempotencyKey);
+
     PaymentResponse getPaymentById(String paymentId);
 
     PaymentResponse handleWebhook(WebhookRequest webhookRequest);
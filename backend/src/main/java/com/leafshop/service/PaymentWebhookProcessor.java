@@ -0,0 +1,119 @@
+package com.leafshop.service;
+
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.model.dynamodb.PaymentTable;
+import com.leafshop.model.dynamodb.WebhookEvent;
+import com.leafshop.orders.OrderChangedEvent;
+import com.leafshop.repository.OrderTableRepository;
+import com.leafshop.repository.PaymentTableRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Áp một webhook thanh toán đã nhận vào PaymentTable và order tương ứng (chạy trên worker của
+ * {@link PaymentWebhookQueue}). Lỗi được ném ra để hàng đợi thử lại; áp lại cùng sự kiện không đổi kết quả.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PaymentWebhookProcessor {
+
+    // Trạng thái cuối: callback đến muộn (vd. FAILED sau PAID) không được ghi đè
+    private static final Set<String> FINAL_STATUSES = Set.of("PAID", "REFUNDED", "REFUND_FAILED");
+
+    private final PaymentTableRepository paymentRepo;
+    private final OrderTableRepository orderRepo;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public void apply(WebhookEvent event) {
+        PaymentTable p = findPayment(event)
+                .orElseThrow(() -> new IllegalStateException("Payment not found for webhook " + event.getPk()
+                        + " (paymentId=" + event.getPaymentId() + ", orderId=" + event.getOrderId() + ")"));
+
+        String newStatus = event.getPaymentStatus();
+        if (FINAL_STATUSES.contains(p.getStatus()) && !p.getStatus().equals(newStatus)) {
+            log.warn("Ignoring {} webhook for payment {}: payment is already {}", newStatus, p.getPaymentId(), p.getStatus());
+            return;
+        }
+
+        p.setStatus(newStatus);
+        if (event.getProviderTransactionId() != null) {
+            p.setProviderTransactionId(event.getProviderTransactionId());
+        }
+        p.setUpdatedAt(Instant.now().toEpochMilli());
+        paymentRepo.save(p);
+        log.info("Payment {} ({}) updated to {} from {} webhook", p.getPaymentId(), p.getOrderId(), newStatus, event.getProvider());
+
+        // Cập nhật order theo kết quả thanh toán
+        if ("PAID".equals(newStatus)) {
+            updateOrderPaymentStatus(p.getOrderId(), "PAID");
+        } else if ("FAILED".equals(newStatus) && "STRIPE".equals(event.getProvider())) {
+            // Stripe payment_failed chỉ là một lần trả lỗi, khách trả lại trên cùng PaymentIntent: đơn vẫn chờ thanh toán
+            updateOrderPaymentStatus(p.getOrderId(), "FAILED");
+        } else if ("CANCELLED".equals(newStatus) || "FAILED".equals(newStatus)) {
+            updateOrderStatus(p.getOrderId(), "CANCELLED");
+        }
+    }
+
+    private Optional<PaymentTable> findPayment(WebhookEvent event) {
+        Optional<PaymentTable> payment = Optional.empty();
+        if (event.getPaymentId() != null) {
+            payment = paymentRepo.findByPaymentId(event.getPaymentId());
+        }
+        if (payment.isEmpty() && event.getProviderTransactionId() != null) {
+            payment = paymentRepo.findByProviderTransactionId(event.getProviderTransactionId());
+        }
+        // VNPay chỉ gửi orderId (vnp_TxnRef)
+        if (payment.isEmpty() && event.getOrderId() != null) {
+            payment = paymentRepo.findByOrderId(event.getOrderId());
+        }
+        return payment;
+    }
+
+    private void updateOrderPaymentStatus(String orderId, String paymentStatus) {
+        if (orderId == null || orderId.isEmpty()) {
+            return;
+        }
+        Optional<OrderTable> orderMetaOpt = orderRepo.findByOrderId(orderId);
+        if (orderMetaOpt.isEmpty()) {
+            log.warn("Order {} not found while applying payment status {}", orderId, paymentStatus);
+            return;
+        }
+        OrderTable orderMeta = orderMetaOpt.get();
+        orderMeta.setPaymentStatus(paymentStatus);
+        // Đã thanh toán: PENDING_PAYMENT -> PENDING (sẵn sàng xử lý)
+        if ("PAID".equals(paymentStatus) && "PENDING_PAYMENT".equals(orderMeta.getOrderStatus())) {
+            orderMeta.setOrderStatus("PENDING");
+        }
+        orderMeta.setUpdatedAt(Instant.now().toEpochMilli());
+        orderRepo.save(orderMeta);
+        eventPublisher.publishEvent(OrderChangedEvent.metaChanged(orderMeta));
+        log.info("Order {} paymentStatus -> {}, orderStatus -> {}", orderId, paymentStatus, orderMeta.getOrderStatus());
+    }
+
+    // Thanh toán thất bại/huỷ: cập nhật cả orderStatus và paymentStatus
+    private void updateOrderStatus(String orderId, String newStatus) {
+        if (orderId == null || orderId.isEmpty()) {
+            return;
+        }
+        Optional<OrderTable> orderMetaOpt = orderRepo.findByOrderId(orderId);
+        if (orderMetaOpt.isEmpty()) {
+            log.warn("Order {} not found while applying order status {}", orderId, newStatus);
+            return;
+        }
+        OrderTable orderMeta = orderMetaOpt.get();
+        String paymentStatus = "CANCELLED".equals(newStatus) ? "FAILED" : newStatus;
+        orderMeta.setOrderStatus(newStatus);
+        orderMeta.setPaymentStatus(paymentStatus);
+        orderMeta.setUpdatedAt(Instant.now().toEpochMilli());
+        orderRepo.save(orderMeta);
+        eventPublisher.publishEvent(OrderChangedEvent.metaChanged(orderMeta));
+        log.info("Order {} orderStatus -> {}, paymentStatus -> {}", orderId, newStatus, paymentStatus);
+    }
+}
@@ -0,0 +1,184 @@
+package com.leafshop.service;
+
+import com.leafshop.model.dynamodb.WebhookEvent;
+import com.leafshop.repository.WebhookEventRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hàng đợi bền cho webhook thanh toán: controller chỉ xác thực chữ ký rồi ghi sự kiện vào
+ * WebhookEventTable và trả lời provider ngay; việc cập nhật payment/order chạy trên worker.
+ *
+ * - Khử trùng lặp: PK theo provider + mã giao dịch + kết quả, ghi có điều kiện nên callback gửi lại
+ *   (IPN + return URL, provider retry) chỉ được nhận một lần.
+ * - Thứ tự theo đơn: mỗi orderId luôn vào cùng một lane một thread, các sự kiện của một đơn chạy tuần tự.
+ * - Bền: lane đầy, lỗi, hoặc node dừng giữa chừng thì sự kiện vẫn nằm trong bảng (pending);
+ *   {@link #sweep()} đưa lại vào lane khi tới hạn thử lại (backoff luỹ thừa, tối đa payment.webhook.max-attempts).
+ */
+@Slf4j
+@Component
+public class PaymentWebhookQueue {
+
+    private static final int SWEEP_BATCH = 100;
+
+    private final WebhookEventRepository webhookEventRepository;
+    private final PaymentWebhookProcessor processor;
+    private final ThreadPoolExecutor[] lanes;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private final long claimTimeoutMs;
+    private final long retentionSeconds;
+
+    public PaymentWebhookQueue(WebhookEventRepository webhookEventRepository,
+                               PaymentWebhookProcessor processor,
+                               @Value("${payment.webhook.workers:4}") int workers,
+                               @Value("${payment.webhook.queue-capacity:1000}") int queueCapacity,
+                               @Value("${payment.webhook.max-attempts:5}") int maxAttempts,
+                               @Value("${payment.webhook.retry-delay-ms:5000}") long retryDelayMs,
+                               @Value("${payment.webhook.claim-timeout-ms:60000}") long claimTimeoutMs,
+                               @Value("${payment.webhook.retention-days:7}") long retentionDays) {
+        this.webhookEventRepository = webhookEventRepository;
+        this.processor = processor;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = retryDelayMs;
+        this.claimTimeoutMs = claimTimeoutMs;
+        this.retentionSeconds = retentionDays * 24 * 3600;
+        this.lanes = new ThreadPoolExecutor[Math.max(1, workers)];
+        int laneCapacity = Math.max(1, queueCapacity / lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "payment-webhook-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(laneCapacity), r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Ghi sự kiện đã xác thực và giao cho worker.
+     *
+     * @return false nếu cùng giao dịch/kết quả đã được nhận trước đó (callback trùng)
+     */
+    public boolean submit(WebhookEvent event) {
+        long now = System.currentTimeMillis();
+        event.setPk(WebhookEventRepository.pk(event.getProvider(), event.getTransactionId(), event.getPaymentStatus()));
+        event.setSk(WebhookEventRepository.sk());
+        event.setStatus(WebhookEventRepository.STATUS_RECEIVED);
+        event.setPending(WebhookEventRepository.PENDING);
+        event.setAttempts(0);
+        event.setReceivedAt(now);
+        event.setExpiresAt(now / 1000 + retentionSeconds);
+        if (!webhookEventRepository.insertIfAbsent(event)) {
+            log.info("Duplicate {} webhook ignored: {}", event.getProvider(), event.getPk());
+            return false;
+        }
+        dispatch(event.getPk(), event.getOrderId());
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.webhook.sweep-interval-ms:10000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        try {
+            for (WebhookEvent event : webhookEventRepository.findPending(SWEEP_BATCH)) {
+                boolean due = WebhookEventRepository.STATUS_RECEIVED.equals(event.getStatus())
+                        ? event.getNextAttemptAt() == null || event.getNextAttemptAt() <= now
+                        : event.getClaimedUntil() == null || event.getClaimedUntil() < now;
+                if (due) {
+                    dispatch(event.getPk(), event.getOrderId());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Payment webhook sweep failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Việc chưa chạy vẫn pending trong bảng, node khác hoặc lần khởi động sau sẽ xử lý
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    private void dispatch(String pk, String orderId) {
+        if (!queued.add(pk)) {
+            return;
+        }
+        String orderKey = orderId != null ? orderId : pk;
+        ThreadPoolExecutor lane = lanes[Math.floorMod(orderKey.hashCode(), lanes.length)];
+        try {
+            lane.execute(() -> {
+                try {
+                    process(pk);
+                } finally {
+                    queued.remove(pk);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(pk);
+            log.warn("Payment webhook lane full, {} left for the next sweep", pk);
+        }
+    }
+
+    private void process(String pk) {
+        String claimToken = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        WebhookEvent event;
+        try {
+            event = webhookEventRepository.claim(pk, claimToken, now, claimTimeoutMs).orElse(null);
+        } catch (Exception e) {
+            log.warn("Could not claim payment webhook {}: {}", pk, e.getMessage());
+            return;
+        }
+        if (event == null) {
+            // Đã xong, chưa tới hạn thử lại, hoặc worker khác đang xử lý
+            return;
+        }
+
+        int attempts = (event.getAttempts() != null ? event.getAttempts() : 0) + 1;
+        event.setAttempts(attempts);
+        try {
+            processor.apply(event);
+            event.setStatus(WebhookEventRepository.STATUS_PROCESSED);
+            event.setPending(null);
+            event.setNextAttemptAt(null);
+            event.setLastError(null);
+            event.setProcessedAt(System.currentTimeMillis());
+        } catch (Exception e) {
+            event.setLastError(e.getMessage());
+            if (attempts >= maxAttempts) {
+                event.setStatus(WebhookEventRepository.STATUS_FAILED);
+                event.setPending(null);
+                log.error("Payment webhook {} failed after {} attempts: {}", pk, attempts, e.getMessage());
+            } else {
+                event.setStatus(WebhookEventRepository.STATUS_RECEIVED);
+                event.setNextAttemptAt(System.currentTimeMillis() + (retryDelayMs << Math.min(attempts - 1, 10)));
+                log.warn("Payment webhook {} attempt {} failed, will retry: {}", pk, attempts, e.getMessage());
+            }
+        }
+        event.setClaimToken(null);
+        event.setClaimedUntil(null);
+        try {
+            if (!webhookEventRepository.release(event, claimToken)) {
+                log.warn("Claim on payment webhook {} expired before the result was stored", pk);
+            }
+        } catch (Exception e) {
+            // Claim hết hạn, sweep sẽ nhận lại; áp lại sự kiện không đổi kết quả
+            log.warn("Failed to store result of payment webhook {}: {}", pk, e.getMessage());
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
+import com.leafshop.catalog.ProductCatalogIndex;
 import com.leafshop.dto.productmedia.ProductMediaRequest;
 import com.leafshop.dto.productmedia.ProductMediaResponse;
 import com.leafshop.model.dynamodb.ProductTable;
 import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -19,7 +22,9 @@ import java.util.stream.Collectors;
 public class ProductMediaService {
 
 	private final ProductTableRepository productTableRepository;
+	private final ProductCatalogIndex productCatalogIndex;
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public ProductMediaResponse createProductMedia(String productId, ProductMediaRequest request) {
 		// Verify product exists
 		String productPk = DynamoDBKeyUtil.productPk(productId);
@@ -38,9 +43,11 @@ public class ProductMediaService {
 		long now = Instant.now().toEpochMilli();
 		ProductTable media = buildMediaItem(productId, request, now, now);
 		productTableRepository.save(media);
+		productCatalogIndex.refreshProduct(productPk);
 		return toResponse(productId, media);
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public ProductMediaResponse updateProductMedia(String productId, String mediaId, ProductMediaRequest request) {
 		String productPk = DynamoDBKeyUtil.productPk(productId);
 		String mediaSk = DynamoDBKeyUtil.productMediaSk(mediaId);
@@ -51,6 +58,7 @@ public class ProductMediaService {
 		long now = Instant.now().toEpochMilli();
 		ProductTable updated = mergeMedia(existing, request, now);
 		productTableRepository.save(updated);
+		productCatalogIndex.refreshProduct(productPk);
 		return toResponse(productId, updated);
 	}
 
@@ -78,6 +86,7 @@ public class ProductMediaService {
 			.collect(Collectors.toList());
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public List<ProductMediaResponse> createBatchProductMedia(String productId, List<ProductMediaRequest> mediaList) {
 		// Verify product exists
 		String productPk = DynamoDBKeyUtil.productPk(productId);
@@ -114,6 +123,7 @@ public class ProductMediaService {
 
 		// Save all media items
 		mediaItems.forEach(productTableRepository::save);
+		productCatalogIndex.refreshProduct(productPk);
 
 		// Return responses
 		return mediaItems.stream()
@@ -121,6 +131,7 @@ public class ProductMediaService {
 			.collect(Collectors.toList());
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public void deleteProductMedia(String productId, String mediaId) {
 		String productPk = DynamoDBKeyUtil.productPk(productId);
 		String mediaSk = DynamoDBKeyUtil.productMediaSk(mediaId);
@@ -128,6 +139,7 @@ public class ProductMediaService {
 		ProductTable media = productTableRepository.findMediaByPkAndSk(productPk, mediaSk)
 			.orElseThrow(() -> new IllegalArgumentException("ProductMedia not found with id " + mediaId + " for product " + productId));
 		productTableRepository.deleteByPkAndSk(media.getPk(), media.getSk());
+		productCatalogIndex.refreshProduct(productPk);
 	}
 
 	private ProductTable buildMediaItem(String productId, ProductMediaRequest request, long createdAt, long updatedAt) {
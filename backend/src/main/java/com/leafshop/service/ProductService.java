@@ -1,11 +1,17 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
+import com.leafshop.catalog.ProductCatalogIndex;
+import com.leafshop.dto.common.CursorPageResponse;
 import com.leafshop.dto.product.ProductRequest;
 import com.leafshop.dto.product.ProductResponse;
 import com.leafshop.model.dynamodb.ProductTable;
 import com.leafshop.repository.ProductTableRepository;
+import com.leafshop.repository.ScanPage;
 import com.leafshop.util.DynamoDBKeyUtil;
+import com.leafshop.util.PageCursor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -20,7 +26,9 @@ public class ProductService {
 
     private final ProductTableRepository productTableRepository;
     private final CategoryService categoryService;
+    private final ProductCatalogIndex productCatalogIndex;
 
+    @CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#request.productId)")
     public ProductResponse createProduct(ProductRequest request) {
         String pk = DynamoDBKeyUtil.productPk(request.getProductId());
         Optional<ProductTable> existing = productTableRepository.findProductByPk(pk);
@@ -31,9 +39,11 @@ public class ProductService {
         long now = Instant.now().toEpochMilli();
         ProductTable product = buildProductItem(request, now, now);
         productTableRepository.save(product);
+        productCatalogIndex.refreshProduct(pk);
         return toResponse(product);
     }
 
+    @CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
     public ProductResponse updateProduct(String productId, ProductRequest request) {
         String pk = DynamoDBKeyUtil.productPk(productId);
         ProductTable existing = productTableRepository.findProductByPk(pk)
@@ -42,6 +52,7 @@ public class ProductService {
         long now = Instant.now().toEpochMilli();
         ProductTable updated = mergeProduct(existing, request, now);
         productTableRepository.save(updated);
+        productCatalogIndex.refreshProduct(pk);
         return toResponse(updated);
     }
 
@@ -62,11 +73,28 @@ public class ProductService {
                 .collect(Collectors.toList());
     }
 
+    // Phân trang theo cursor: chỉ đọc đủ một trang từ DynamoDB thay vì scan toàn bộ
+    public CursorPageResponse<ProductResponse> listProductsPage(String categoryId, String typeId, Boolean isActive,
+                                                                String cursor, Integer limit) {
+        int pageSize = PageCursor.limit(limit);
+        ScanPage<ProductTable> page = productTableRepository.scanProductsPage(
+                categoryId, typeId, isActive, pageSize, PageCursor.decode(cursor));
+
+        return CursorPageResponse.<ProductResponse>builder()
+                .content(page.getItems().stream().map(this::toResponse).collect(Collectors.toList()))
+                .size(pageSize)
+                .nextCursor(PageCursor.encode(page.getLastEvaluatedKey()))
+                .hasNext(page.hasMore())
+                .build();
+    }
+
+    @CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
     public void deleteProduct(String productId) {
         String pk = DynamoDBKeyUtil.productPk(productId);
         ProductTable product = productTableRepository.findProductByPk(pk)
                 .orElseThrow(() -> new IllegalArgumentException("Product not found with id " + productId));
         productTableRepository.deleteByPkAndSk(product.getPk(), product.getSk());
+        productCatalogIndex.refreshProduct(pk);
     }
 
     private ProductTable buildProductItem(ProductRequest request, long createdAt, long updatedAt) {
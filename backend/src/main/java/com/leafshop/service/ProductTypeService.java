@@ -1,11 +1,13 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.dto.producttype.ProductTypeRequest;
 import com.leafshop.dto.producttype.ProductTypeResponse;
 import com.leafshop.model.dynamodb.ProductTable;
 import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -20,6 +22,7 @@ public class ProductTypeService {
 
 	private final ProductTableRepository productTableRepository;
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCT_TYPES, allEntries = true)
 	public ProductTypeResponse createProductType(ProductTypeRequest request) {
 		String pk = DynamoDBKeyUtil.typePk(request.getTypeId());
 		Optional<ProductTable> existing = productTableRepository.findTypeByPk(pk);
@@ -33,6 +36,7 @@ public class ProductTypeService {
 		return toResponse(productType);
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCT_TYPES, allEntries = true)
 	public ProductTypeResponse updateProductType(String typeId, ProductTypeRequest request) {
 		String pk = DynamoDBKeyUtil.typePk(typeId);
 		ProductTable existing = productTableRepository.findTypeByPk(pk)
@@ -58,6 +62,7 @@ public class ProductTypeService {
 			.collect(Collectors.toList());
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCT_TYPES, allEntries = true)
 	public void deleteProductType(String typeId) {
 		String pk = DynamoDBKeyUtil.typePk(typeId);
 		ProductTable productType = productTableRepository.findTypeByPk(pk)
@@ -1,11 +1,14 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
+import com.leafshop.catalog.ProductCatalogIndex;
 import com.leafshop.dto.productvariant.ProductVariantRequest;
 import com.leafshop.dto.productvariant.ProductVariantResponse;
 import com.leafshop.model.dynamodb.ProductTable;
 import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.util.DynamoDBKeyUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -19,7 +22,9 @@ import java.util.stream.Collectors;
 public class ProductVariantService {
 
 	private final ProductTableRepository productTableRepository;
+	private final ProductCatalogIndex productCatalogIndex;
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public ProductVariantResponse createProductVariant(String productId, ProductVariantRequest request) {
 		// Verify product exists
 		String productPk = DynamoDBKeyUtil.productPk(productId);
@@ -38,9 +43,11 @@ public class ProductVariantService {
 		long now = Instant.now().toEpochMilli();
 		ProductTable variant = buildVariantItem(productId, request, now, now);
 		productTableRepository.save(variant);
+		productCatalogIndex.refreshProduct(productPk);
 		return toResponse(productId, variant);
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public ProductVariantResponse updateProductVariant(String productId, String variantId, ProductVariantRequest request) {
 		String productPk = DynamoDBKeyUtil.productPk(productId);
 		String variantSk = DynamoDBKeyUtil.productVariantSk(variantId);
@@ -51,6 +58,7 @@ public class ProductVariantService {
 		long now = Instant.now().toEpochMilli();
 		ProductTable updated = mergeVariant(existing, request, now);
 		productTableRepository.save(updated);
+		productCatalogIndex.refreshProduct(productPk);
 		return toResponse(productId, updated);
 	}
 
@@ -78,6 +86,7 @@ public class ProductVariantService {
 			.collect(Collectors.toList());
 	}
 
+	@CacheEvict(cacheNames = CacheNames.PRODUCTS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productPk(#productId)")
 	public void deleteProductVariant(String productId, String variantId) {
 		String productPk = DynamoDBKeyUtil.productPk(productId);
 		String variantSk = DynamoDBKeyUtil.productVariantSk(variantId);
@@ -85,6 +94,7 @@ public class ProductVariantService {
 		ProductTable variant = productTableRepository.findVariantByPkAndSk(productPk, variantSk)
 			.orElseThrow(() -> new IllegalArgumentException("ProductVariant not found with id " + variantId + " for product " + productId));
 		productTableRepository.deleteByPkAndSk(variant.getPk(), variant.getSk());
+		productCatalogIndex.refreshProduct(productPk);
 	}
 
 	private ProductTable buildVariantItem(String productId, ProductVariantRequest request, long createdAt, long updatedAt) {
@@ -1,8 +1,8 @@
 package com.leafshop.service;
 
+import com.leafshop.auth.RevokedTokenFilter;
 import com.leafshop.model.dynamodb.UserTable;
 import com.leafshop.repository.UserTableRepository;
-import com.leafshop.repository.RevokedTokenRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -16,12 +16,11 @@ import org.springframework.transaction.annotation.Transactional;
 public class RefreshTokenService {
 
     private final UserTableRepository userTableRepository;
-    private final RevokedTokenRepository revokedTokenRepository;
+    private final RevokedTokenFilter revokedTokenFilter;
 
     public Optional<UserTable> findByValue(String refreshToken) {
         // if token is revoked, return empty
-        var revoked = revokedTokenRepository.findByTokenValue(refreshToken);
-        if (revoked.isPresent()) return Optional.empty();
+        if (revokedTokenFilter.isRevoked(refreshToken)) return Optional.empty();
         return userTableRepository.findTokenByValueAndType(refreshToken, "REFRESH_TOKEN");
     }
 
@@ -31,10 +30,15 @@ public class RefreshTokenService {
         userTableRepository.save(token);
         // store in revoked tokens table for quick checks
         if (token.getTokenValue() != null) {
-            revokedTokenRepository.save(token.getTokenValue(), token.getExpiresAt());
+            revokedTokenFilter.revoke(token.getTokenValue(), token.getExpiresAt());
         }
     }
 
+    // Thu hồi access token (theo jti) trước khi hết hạn, ví dụ khi logout
+    public void revokeAccessToken(String tokenId, Long expiresAt) {
+        revokedTokenFilter.revoke(tokenId, expiresAt);
+    }
+
     @Transactional
     public Optional<UserTable> rotateToken(UserTable oldToken, long validityMs) {
         if (oldToken == null) return Optional.empty();
@@ -45,7 +49,7 @@ public class RefreshTokenService {
         oldToken.setTokenType("USED");
         userTableRepository.save(oldToken);
         if (oldToken.getTokenValue() != null) {
-            revokedTokenRepository.save(oldToken.getTokenValue(), oldToken.getExpiresAt());
+            revokedTokenFilter.revoke(oldToken.getTokenValue(), oldToken.getExpiresAt());
         }
 
         // create new refresh token under same PK
@@ -1,5 +1,7 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
+import com.leafshop.dto.common.CursorPageResponse;
 import com.leafshop.dto.review.ApproveReviewRequest;
 import com.leafshop.dto.review.ReviewRequest;
 import com.leafshop.dto.review.ReviewResponse;
@@ -7,8 +9,11 @@ import com.leafshop.model.dynamodb.ProductTable;
 import com.leafshop.model.dynamodb.ReviewTable;
 import com.leafshop.repository.ProductTableRepository;
 import com.leafshop.repository.ReviewTableRepository;
+import com.leafshop.repository.ScanPage;
 import com.leafshop.util.DynamoDBKeyUtil;
+import com.leafshop.util.PageCursor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -108,7 +113,21 @@ public class ReviewService {
 			.collect(Collectors.toList());
 	}
 
+	// Danh sách đánh giá theo cursor: mỗi request chỉ scan đủ một trang
+	public CursorPageResponse<ReviewResponse> listReviewsPage(Boolean isApproved, String cursor, Integer limit) {
+		int pageSize = PageCursor.limit(limit);
+		ScanPage<ReviewTable> page = reviewTableRepository.findReviewsPage(isApproved, pageSize, PageCursor.decode(cursor));
+
+		return CursorPageResponse.<ReviewResponse>builder()
+			.content(page.getItems().stream().map(this::toResponse).collect(Collectors.toList()))
+			.size(pageSize)
+			.nextCursor(PageCursor.encode(page.getLastEvaluatedKey()))
+			.hasNext(page.hasMore())
+			.build();
+	}
+
 	// API cho Manager duyệt đánh giá
+	@CacheEvict(cacheNames = CacheNames.APPROVED_REVIEWS, key = "T(com.leafshop.util.DynamoDBKeyUtil).productReviewPk(#productId)")
 	public ReviewResponse approveReview(String productId, String reviewId, ApproveReviewRequest request) {
 		String productPk = DynamoDBKeyUtil.productReviewPk(productId);
 		String reviewSk = DynamoDBKeyUtil.reviewSk(reviewId);
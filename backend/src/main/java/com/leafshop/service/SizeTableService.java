@@ -1,10 +1,12 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.CacheNames;
 import com.leafshop.dto.size.SizeTableResponse;
 import com.leafshop.model.dynamodb.SizeTable;
 import com.leafshop.repository.SizeTableRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
@@ -40,6 +42,7 @@ public class SizeTableService {
         log.info("Default sizes created: S, M, L, XL");
     }
     
+    @Cacheable(cacheNames = CacheNames.SIZES, key = "'active'")
     public List<SizeTableResponse> getAllActiveSizes() {
         return sizeTableRepository.findByIsActiveTrueOrderBySizeOrder()
                 .stream()
@@ -1,135 +1,106 @@
 package com.leafshop.service;
 
 import com.leafshop.dto.staff.CustomerResponse;
-import com.leafshop.dto.order.OrderItemResponse;
 import com.leafshop.dto.order.OrderResponse;
-import com.leafshop.dto.order.ShippingAddress;
 import com.leafshop.dto.staff.CustomerPurchaseHistoryResponse;
 import com.leafshop.model.dynamodb.OrderTable;
 import com.leafshop.model.dynamodb.UserTable;
+import com.leafshop.orders.OrderReadModel;
 import com.leafshop.repository.OrderTableRepository;
 import com.leafshop.repository.UserTableRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class StaffService {
 
     private final UserTableRepository userRepository;
     private final OrderTableRepository orderRepository;
+    private final OrderAssembler orderAssembler;
+    private final OrderReadModel orderReadModel;
 
-    // Helper: Convert Map to ShippingAddress
-    private ShippingAddress mapToShippingAddress(Map<String, String> map) {
-        if (map == null || map.isEmpty()) {
-            return null;
-        }
-        return ShippingAddress.builder()
-                .fullName(map.get("fullName"))
-                .phoneNumber(map.get("phoneNumber"))
-                .addressLine1(map.get("addressLine1"))
-                .addressLine2(map.get("addressLine2"))
-                .ward(map.get("ward"))
-                .district(map.get("district"))
-                .city(map.get("city"))
-                .postalCode(map.get("postalCode"))
-                .country(map.get("country"))
-                .notes(map.get("notes"))
-                .build();
-    }
-
-    // Get list of all customers (OPTIMIZED - no order queries)
+    // Get list of all customers
+    // User META được scan song song và xử lý theo từng trang; ACCOUNT lấy bằng BatchGetItem,
+    // tổng đơn hàng gom từ một lần parallel scan OrderTable thay vì query GSI cho từng user
     public List<CustomerResponse> getAllCustomers() {
         try {
-            // Scan all users with META records
-            List<UserTable> metaUsers = userRepository.scanAllUsersMeta();
-            System.out.println("📊 [getAllCustomers] Found " + metaUsers.size() + " META users");
-
-            // Limit to first 50 users to avoid timeout
-            if (metaUsers.size() > 50) {
-                System.out.println("⚠️ [getAllCustomers] Limiting to first 50 users for performance");
-                metaUsers = metaUsers.subList(0, 50);
+            Map<String, double[]> orderTotalsByUser = new java.util.HashMap<>();
+            for (OrderTable order : orderRepository.scanAllOrdersMeta()) {
+                if (order.getUserId() == null || order.getPk() == null || order.getPk().startsWith("CART#")) {
+                    continue;
+                }
+                double[] totals = orderTotalsByUser.computeIfAbsent(order.getUserId(), k -> new double[2]);
+                totals[0]++;
+                totals[1] += order.getTotalAmount() != null ? order.getTotalAmount() : 0.0;
             }
 
-            // For each user, get ACCOUNT record to check role
             List<CustomerResponse> customerResponses = new java.util.ArrayList<>();
+            var scan = userRepository.scanUsersMeta(metaUsers -> {
+                Map<String, UserTable> accounts = userRepository.batchGetAccounts(metaUsers.stream()
+                        .map(UserTable::getPk)
+                        .filter(java.util.Objects::nonNull)
+                        .collect(Collectors.toList()));
 
-            for (UserTable metaUser : metaUsers) {
-                try {
-                    // Extract userId from PK (format: USER#<user_id>)
-                    String userPk = metaUser.getPk();
-                    String userId = userPk != null ? userPk.replace("USER#", "") : "";
-
-                    // Get ACCOUNT record to check role
-                    UserTable accountRecord = userRepository.findByPkAndSk(userPk, "ACCOUNT")
-                            .orElse(null);
-
-                    if (accountRecord == null) {
-                        continue;
-                    }
-
-                    String role = accountRecord.getRole();
-                    String roleId = accountRecord.getRoleId();
+                for (UserTable metaUser : metaUsers) {
+                    try {
+                        // Extract userId from PK (format: USER#<user_id>)
+                        String userPk = metaUser.getPk();
+                        String userId = userPk != null ? userPk.replace("USER#", "") : "";
 
-                    // Filter only customers
-                    boolean isCustomer = (role != null && role.equalsIgnoreCase("customer"))
-                            || (roleId != null && roleId.equalsIgnoreCase("CUSTOMER"));
+                        UserTable accountRecord = accounts.get(userPk);
+                        if (accountRecord == null) {
+                            continue;
+                        }
 
-                    if (!isCustomer) {
-                        continue;
-                    }
+                        String role = accountRecord.getRole();
+                        String roleId = accountRecord.getRoleId();
 
-                    // Query orders using GSI userId-createdAt-index for better performance
-                    // NOTE: OrderTable stores email as userId, not UUID
-                    int totalOrders = 0;
-                    double totalSpent = 0.0;
+                        // Filter only customers
+                        boolean isCustomer = (role != null && role.equalsIgnoreCase("customer"))
+                                || (roleId != null && roleId.equalsIgnoreCase("CUSTOMER"));
 
-                    try {
-                        String userEmail = accountRecord.getEmail();
-                        if (userEmail != null && !userEmail.isEmpty()) {
-                            List<OrderTable> userOrders = orderRepository.findOrdersByUserId(userEmail);
-                            totalOrders = userOrders.size();
-                            totalSpent = userOrders.stream()
-                                    .filter(order -> order.getTotalAmount() != null)
-                                    .mapToDouble(OrderTable::getTotalAmount)
-                                    .sum();
-                            System.out.println("📦 [getAllCustomers] User " + userEmail + " has " + totalOrders + " orders, total: " + totalSpent);
+                        if (!isCustomer) {
+                            continue;
                         }
-                    } catch (Exception orderEx) {
-                        System.err.println("⚠️ [getAllCustomers] Failed to get orders for user " + userId + ": " + orderEx.getMessage());
-                        // Continue with 0 values if order query fails
-                    }
 
-                    CustomerResponse response = CustomerResponse.builder()
-                            .userId(userId)
-                            .email(accountRecord.getEmail())
-                            .phone(metaUser.getPhoneNumber())
-                            .firstName(metaUser.getFirstName())
-                            .lastName(metaUser.getLastName())
-                            .registrationDate(metaUser.getCreatedAt())
-                            .formattedDate(CustomerResponse.formatDate(metaUser.getCreatedAt()))
-                            .totalOrders(totalOrders)
-                            .totalSpent(totalSpent)
-                            .status(accountRecord.getIsActive() != null && accountRecord.getIsActive() ? "active" : "inactive")
-                            .build();
-
-                    customerResponses.add(response);
-
-                } catch (Exception e) {
-                    // Log error but continue processing other users
-                    System.err.println("❌ [getAllCustomers] Error processing user: " + metaUser.getPk() + " - " + e.getMessage());
+                        // NOTE: OrderTable stores email as userId, not UUID
+                        double[] totals = accountRecord.getEmail() != null
+                                ? orderTotalsByUser.getOrDefault(accountRecord.getEmail(), new double[2])
+                                : new double[2];
+
+                        CustomerResponse response = CustomerResponse.builder()
+                                .userId(userId)
+                                .email(accountRecord.getEmail())
+                                .phone(metaUser.getPhoneNumber())
+                                .firstName(metaUser.getFirstName())
+                                .lastName(metaUser.getLastName())
+                                .registrationDate(metaUser.getCreatedAt())
+                                .formattedDate(CustomerResponse.formatDate(metaUser.getCreatedAt()))
+                                .totalOrders((int) totals[0])
+                                .totalSpent(totals[1])
+                                .status(accountRecord.getIsActive() != null && accountRecord.getIsActive() ? "active" : "inactive")
+                                .build();
+
+                        customerResponses.add(response);
+
+                    } catch (Exception e) {
+                        // Log error but continue processing other users
+                        log.warn("[getAllCustomers] Error processing user {}: {}", metaUser.getPk(), e.getMessage());
+                    }
                 }
-            }
+            });
 
-            System.out.println("✅ [getAllCustomers] Total customers returned: " + customerResponses.size());
+            log.debug("[getAllCustomers] Scanned {} META users, total customers returned: {}", scan.getItemCount(), customerResponses.size());
             return customerResponses;
         } catch (Exception e) {
-            System.err.println("Error in getAllCustomers: " + e.getMessage());
-            e.printStackTrace();
+            log.warn("Error in getAllCustomers", e);
             throw new RuntimeException("Failed to get customers", e);
         }
     }
@@ -177,38 +148,9 @@ public class StaffService {
     }
 
     public List<OrderResponse> getAllOrders() {
-        List<OrderTable> orders = orderRepository.scanAllOrdersMeta();
-
-        return orders.stream()
-                // Lọc bỏ CART
-                .filter(order -> order.getPk() != null && !order.getPk().startsWith("CART#"))
-                .map(order -> OrderResponse.builder()
-                .orderId(order.getOrderId())
-                .orderPk(order.getPk())
-                .userId(order.getUserId())
-                .orderStatus(order.getOrderStatus())
-                .subtotal(order.getSubtotal() != null ? order.getSubtotal() : 0)
-                .shippingAmount(order.getShippingAmount() != null ? order.getShippingAmount() : 0)
-                .discountAmount(order.getDiscountAmount() != null ? order.getDiscountAmount() : 0)
-                .totalAmount(order.getTotalAmount() != null ? order.getTotalAmount() : 0)
-                .shippingAddress(mapToShippingAddress(order.getShippingAddress()))
-                .paymentMethod(order.getPaymentMethod())
-                .paymentStatus(order.getPaymentStatus())
-                .assignedTo(order.getAssignedTo())
-                .createdAt(order.getCreatedAt())
-                .updatedAt(order.getUpdatedAt())
-                .items(orderRepository.findOrderItemsByPk(order.getPk()).stream()
-                        .map(item -> OrderItemResponse.builder()
-                        .itemId(item.getSk())
-                        .productId(item.getProductId())
-                        .variantId(item.getVariantId())
-                        .productName(item.getProductName())
-                        .quantity(item.getQuantity())
-                        .unitPrice(item.getUnitPrice())
-                        .itemTotal(item.getItemTotal())
-                        .build())
-                        .collect(Collectors.toList()))
-                .build())
+        // Read model danh sách đơn (không scan/query DynamoDB)
+        return orderReadModel.all().stream()
+                .map(orderAssembler::fromRow)
                 .collect(Collectors.toList());
     }
 }
@@ -1,5 +1,10 @@
 package com.leafshop.service;
 
+import com.leafshop.cache.ResponseCache;
+import com.leafshop.dto.TranslationBatchRequest;
+import com.leafshop.dto.TranslationBatchResponse;
+import com.leafshop.repository.TranslationMemoryRepository;
+import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,12 +19,29 @@ import software.amazon.awssdk.services.translate.model.TranslateTextResponse;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@RequiredArgsConstructor
 public class TranslationService {
 
     private static final Logger log = LoggerFactory.getLogger(TranslationService.class);
 
+    private final ResponseCache responseCache;
+    private final TranslationMemoryRepository translationMemoryRepository;
+
     @Value("${aws.access.key.id:#{null}}")
     private String awsAccessKeyId;
 
@@ -32,7 +54,18 @@ public class TranslationService {
     @Value("${aws.translate.enabled:true}")
     private boolean translateEnabled;
 
+    @Value("${translate.batch.concurrency:4}")
+    private int batchConcurrency;
+
+    @Value("${translate.batch.requests-per-second:20}")
+    private double requestsPerSecond;
+
+    @Value("${translate.batch.max-segments:500}")
+    private int maxBatchSegments;
+
     private TranslateClient translateClient;
+    private ExecutorService batchExecutor;
+    private long nextPermitAt;
 
     @PostConstruct
     public void init() {
@@ -59,6 +92,12 @@ public class TranslationService {
                     .credentialsProvider(credentialsProvider)
                     .build();
 
+            batchExecutor = Executors.newFixedThreadPool(Math.max(1, batchConcurrency), r -> {
+                Thread t = new Thread(r, "translate-batch");
+                t.setDaemon(true);
+                return t;
+            });
+
             log.info("AWS Translate client initialized successfully in region: {}", awsRegion);
         } catch (Exception e) {
             log.error("Failed to initialize AWS Translate client: {}", e.getMessage(), e);
@@ -70,6 +109,9 @@ public class TranslationService {
 
     @PreDestroy
     public void cleanup() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
         if (translateClient != null) {
             translateClient.close();
             log.info("AWS Translate client closed");
@@ -94,7 +136,118 @@ public class TranslationService {
             return text;
         }
 
+        return translateSegments(List.of(text), sourceLanguage, targetLanguage).translations.get(text);
+    }
+
+    /**
+     * Dịch nhiều đoạn (và/hoặc các field của một trang sản phẩm) trong một lần gọi.
+     * Đoạn trùng chỉ dịch một lần; thứ tự kết quả giữ nguyên theo texts.
+     */
+    public TranslationBatchResponse translateBatch(TranslationBatchRequest request) {
+        List<String> texts = request.getTexts() != null ? request.getTexts() : List.of();
+        Map<String, String> fields = request.getFields() != null ? request.getFields() : Map.of();
+        if (texts.size() + fields.size() > maxBatchSegments) {
+            throw new IllegalArgumentException("Batch exceeds " + maxBatchSegments + " segments");
+        }
+        String sourceLanguage = request.getSourceLanguage() != null ? request.getSourceLanguage() : "auto";
+        if (request.getTargetLanguage() == null || request.getTargetLanguage().isBlank()) {
+            throw new IllegalArgumentException("targetLanguage is required");
+        }
+
+        List<String> segments = new ArrayList<>(texts);
+        segments.addAll(fields.values());
+        BatchOutcome outcome = translateSegments(segments, sourceLanguage, request.getTargetLanguage());
+
+        List<String> translations = new ArrayList<>(texts.size());
+        texts.forEach(text -> translations.add(outcome.translations.getOrDefault(text, text)));
+        Map<String, String> translatedFields = new LinkedHashMap<>();
+        fields.forEach((name, text) -> translatedFields.put(name, outcome.translations.getOrDefault(text, text)));
+
+        return TranslationBatchResponse.builder()
+                .translations(translations)
+                .fields(translatedFields)
+                .sourceLanguage(sourceLanguage)
+                .targetLanguage(request.getTargetLanguage())
+                .segments(segments.size())
+                .uniqueSegments(outcome.unique)
+                .cacheHits(outcome.cacheHits)
+                .memoryHits(outcome.memoryHits)
+                .translated(outcome.translated)
+                .build();
+    }
+
+    // Cache phản hồi -> translation memory (DynamoDB) -> AWS Translate song song, có giới hạn tốc độ
+    private BatchOutcome translateSegments(List<String> segments, String sourceLanguage, String targetLanguage) {
+        long start = System.currentTimeMillis();
+        Set<String> unique = new LinkedHashSet<>();
+        segments.forEach(text -> {
+            if (text != null && !text.trim().isEmpty()) {
+                unique.add(text);
+            }
+        });
+        BatchOutcome outcome = new BatchOutcome(unique.size());
+        if (unique.isEmpty() || !isInitialized()) {
+            return outcome;
+        }
+
+        String scope = sourceLanguage + ">" + targetLanguage;
+        List<String> misses = new ArrayList<>();
+        for (String text : unique) {
+            Optional<String> cached = responseCache.get(ResponseCache.Namespace.TRANSLATE, scope, text);
+            if (cached.isPresent()) {
+                outcome.translations.put(text, cached.get());
+                outcome.cacheHits++;
+            } else {
+                misses.add(text);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<String, String> remembered = findInMemory(misses, sourceLanguage, targetLanguage);
+            remembered.forEach((text, translated) -> {
+                outcome.translations.put(text, translated);
+                responseCache.put(ResponseCache.Namespace.TRANSLATE, scope, text, translated);
+            });
+            outcome.memoryHits = remembered.size();
+            misses.removeAll(remembered.keySet());
+        }
+
+        if (!misses.isEmpty()) {
+            Map<String, String> fresh = new ConcurrentHashMap<>();
+            List<CompletableFuture<Void>> calls = new ArrayList<>(misses.size());
+            for (String text : misses) {
+                calls.add(CompletableFuture.runAsync(
+                        () -> fresh.put(text, callTranslate(text, sourceLanguage, targetLanguage)), batchExecutor));
+            }
+            RuntimeException failure = null;
+            try {
+                CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            // Lưu cả các đoạn đã dịch xong trước khi báo lỗi để lần sau không phải gọi lại
+            fresh.forEach((text, translated) -> {
+                outcome.translations.put(text, translated);
+                responseCache.put(ResponseCache.Namespace.TRANSLATE, scope, text, translated);
+            });
+            saveToMemory(fresh, sourceLanguage, targetLanguage);
+            outcome.translated = fresh.size();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        if (segments.size() > 1) {
+            log.info("Translated batch {} -> {}: {} segments, {} unique, {} cache hits, {} memory hits, {} Translate calls in {} ms",
+                    sourceLanguage, targetLanguage, segments.size(), outcome.unique, outcome.cacheHits,
+                    outcome.memoryHits, outcome.translated, System.currentTimeMillis() - start);
+        }
+        return outcome;
+    }
+
+    private String callTranslate(String text, String sourceLanguage, String targetLanguage) {
         try {
+            acquirePermit();
             TranslateTextRequest request = TranslateTextRequest.builder()
                     .text(text)
                     .sourceLanguageCode(sourceLanguage)
@@ -104,7 +257,7 @@ public class TranslationService {
             TranslateTextResponse response = translateClient.translateText(request);
             String translatedText = response.translatedText();
 
-            log.info("Translated text from {} to {}: '{}' -> '{}'",
+            log.debug("Translated text from {} to {}: '{}' -> '{}'",
                     sourceLanguage, targetLanguage,
                     text.substring(0, Math.min(50, text.length())),
                     translatedText.substring(0, Math.min(50, translatedText.length())));
@@ -117,6 +270,45 @@ public class TranslationService {
         }
     }
 
+    // Giãn đều các lần gọi Translate theo translate.batch.requests-per-second (dùng chung mọi luồng)
+    private void acquirePermit() throws InterruptedException {
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long permitAt = Math.max(now, nextPermitAt);
+            nextPermitAt = permitAt + intervalNanos;
+            waitNanos = permitAt - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Translation memory chỉ là tầng tối ưu: lỗi DynamoDB không được làm hỏng việc dịch
+    private Map<String, String> findInMemory(List<String> texts, String sourceLanguage, String targetLanguage) {
+        try {
+            return translationMemoryRepository.findTranslations(texts, sourceLanguage, targetLanguage);
+        } catch (Exception e) {
+            log.warn("Translation memory lookup failed: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void saveToMemory(Map<String, String> translations, String sourceLanguage, String targetLanguage) {
+        if (translations.isEmpty()) {
+            return;
+        }
+        try {
+            translationMemoryRepository.saveAll(translations, sourceLanguage, targetLanguage);
+        } catch (Exception e) {
+            log.warn("Failed to save {} translations to translation memory: {}", translations.size(), e.getMessage());
+        }
+    }
+
     /**
      * Translate text with auto-detect source language
      *
@@ -156,4 +348,16 @@ public class TranslationService {
     public boolean isInitialized() {
         return translateEnabled && translateClient != null;
     }
+
+    private static final class BatchOutcome {
+        private final Map<String, String> translations = new LinkedHashMap<>();
+        private final int unique;
+        private int cacheHits;
+        private int memoryHits;
+        private int translated;
+
+        private BatchOutcome(int unique) {
+            this.unique = unique;
+        }
+    }
 }
@@ -15,10 +15,12 @@ import com.leafshop.dto.payment.PaymentResponse;
 import com.leafshop.dto.payment.RefundRequest;
 import com.leafshop.dto.payment.WebhookRequest;
 import com.leafshop.model.dynamodb.PaymentTable;
-import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.model.dynamodb.WebhookEvent;
 import com.leafshop.repository.PaymentTableRepository;
-import com.leafshop.repository.OrderTableRepository;
+import com.leafshop.service.IdempotencyService;
+import com.leafshop.service.MoMoService;
 import com.leafshop.service.PaymentService;
+import com.leafshop.service.PaymentWebhookQueue;
 import com.leafshop.service.VNPayService;
 import com.stripe.Stripe;
 import com.stripe.exception.SignatureVerificationException;
@@ -30,6 +32,7 @@ import com.stripe.net.Webhook;
 import com.stripe.param.PaymentIntentCreateParams;
 import com.stripe.param.RefundCreateParams;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -45,13 +48,16 @@ import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.TreeMap;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class PaymentServiceImpl implements PaymentService {
 
     private final PaymentTableRepository paymentRepo;
-    private final OrderTableRepository orderRepo;
     private final VNPayService vnPayService;
+    private final MoMoService moMoService;
+    private final IdempotencyService idempotencyService;
+    private final PaymentWebhookQueue webhookQueue;
 
     @Value("${stripe.api.key:}")
     private String stripeApiKey;
@@ -66,6 +72,13 @@ public class PaymentServiceImpl implements PaymentService {
         }
     }
 
+    @Override
+    public PaymentResponse initiatePayment(InitiatePaymentRequest req, String idempotencyKey) {
+        // Chỉ lưu kết quả tạo được giao dịch; FAILED (lỗi provider) cho phép thử lại cùng key
+        return idempotencyService.execute("PAYMENT#" + req.getOrderId(), idempotencyKey, req, PaymentResponse.class,
+                () -> initiatePayment(req), response -> !"FAILED".equals(response.getStatus()));
+    }
+
     @Override
     public PaymentResponse initiatePayment(InitiatePaymentRequest req) {
         String paymentId = UUID.randomUUID().toString();
@@ -177,114 +190,60 @@ public class PaymentServiceImpl implements PaymentService {
                 .build();
     }
 
+    /**
+     * Xác thực chữ ký, chuẩn hoá callback thành {@link WebhookEvent} rồi ghi vào hàng đợi; payment/order
+     * được cập nhật trên worker của {@link PaymentWebhookQueue}.
+     * Trả về ACCEPTED, DUPLICATE (đã nhận trước đó), INVALID_SIGNATURE hoặc INVALID (thiếu mã giao dịch,
+     * provider không hỗ trợ). Chỉ nhận callback của provider xác thực được chữ ký (VNPay, MoMo).
+     */
     @Override
     public PaymentResponse handleWebhook(WebhookRequest webhookRequest) {
-        Map<String, String> payload = webhookRequest.getPayload();
-        String paymentId = payload != null ? payload.get("paymentId") : null;
-        String providerTx = payload != null ? payload.get("providerTransactionId") : null;
-
-        // VNPay specific: vnp_TxnRef contains orderId (may have _timestamp suffix)
-        String vnpTxnRef = payload != null ? payload.get("vnp_TxnRef") : null;
-        String orderId = vnpTxnRef;
-
-        // Extract orderId from vnp_TxnRef (remove _timestamp if present)
-        // Format: orderId_timestamp (e.g., 87907458-849d-46e2-96a6-3ef9f4a2dd0c_1765026748703)
-        if (orderId != null && orderId.contains("_")) {
-            orderId = orderId.substring(0, orderId.lastIndexOf("_"));
-            System.out.println("[PaymentService] Extracted orderId from vnp_TxnRef: " + vnpTxnRef + " → " + orderId);
-        }
-
-        System.out.println("[PaymentService] === WEBHOOK RECEIVED ===");
-        System.out.println("[PaymentService] Provider: " + webhookRequest.getProvider());
-        System.out.println("[PaymentService] PaymentId: " + paymentId + ", OrderId: " + orderId + ", ProviderTx: " + providerTx);
-        System.out.println("[PaymentService] Response Code: " + payload.get("vnp_ResponseCode"));
-
-        Optional<PaymentTable> opt = Optional.empty();
-        if (paymentId != null) {
-            opt = paymentRepo.findByPaymentId(paymentId);
-        }
-
-        if (opt.isEmpty() && providerTx != null) {
-            opt = paymentRepo.findByProviderTransactionId(providerTx);
-        }
-
-        // Try to find by orderId (VNPay uses vnp_TxnRef as orderId)
-        if (opt.isEmpty() && orderId != null) {
-            System.out.println("[PaymentService] Searching by orderId: " + orderId);
-            opt = paymentRepo.findByOrderId(orderId);
-            System.out.println("[PaymentService] Search result: " + (opt.isPresent() ? "FOUND" : "NOT FOUND"));
-        }
-
-        if (opt.isEmpty()) {
-            System.err.println("[PaymentService] ❌ Payment NOT FOUND! paymentId=" + paymentId + ", orderId=" + orderId);
-            return PaymentResponse.builder().status("UNKNOWN").build();
-        }
-
-        PaymentTable p = opt.get();
-        System.out.println("[PaymentService] ✅ Payment FOUND: " + p.getPaymentId() + ", current status: " + p.getStatus());
-
-        // Provider specific status mapping
-        String provider = webhookRequest.getProvider();
-        String providerStatus = payload.getOrDefault("status", payload.getOrDefault("result", ""));
-        boolean verified = true;
-
-        // Use provider-specific services for signature verification
-        if ("VNPAY".equalsIgnoreCase(provider)) {
-            verified = vnPayService.verifyCallback(payload);
-            providerStatus = payload.getOrDefault("vnp_ResponseCode", providerStatus);
-        }
-
-        if (!verified) {
-            p.setStatus("FAILED");
-        } else {
-            // Map provider status codes to internal status
-            if (providerStatus != null) {
-                // Success codes
-                if (providerStatus.equalsIgnoreCase("SUCCESS")
-                        || providerStatus.equalsIgnoreCase("PAID")
-                        || providerStatus.equals("00")
-                        || providerStatus.equals("0")) {
-                    p.setStatus("PAID");
-                } // Cancelled codes (VNPay: 24 = user cancelled, MoMo: 1006 = user cancelled)
-                else if (providerStatus.equals("24")
-                        || providerStatus.equals("1006")
-                        || providerStatus.equals("99")) { // VNPay error code 99
-                    p.setStatus("CANCELLED");
-                } // All other codes = failed
-                else {
-                    p.setStatus("FAILED");
-                }
-            } else {
-                p.setStatus("FAILED");
+        Map<String, String> payload = webhookRequest.getPayload() != null ? webhookRequest.getPayload() : Map.of();
+        String provider = webhookRequest.getProvider() != null ? webhookRequest.getProvider().toUpperCase() : "UNKNOWN";
+
+        WebhookEvent.WebhookEventBuilder event = WebhookEvent.builder()
+                .provider(provider)
+                .payload(new TreeMap<>(payload));
+        String transactionId;
+        String providerStatus;
+        if ("VNPAY".equals(provider)) {
+            if (!vnPayService.verifyCallback(payload)) {
+                log.warn("Rejected VNPay callback with invalid signature (vnp_TxnRef={})", payload.get("vnp_TxnRef"));
+                return PaymentResponse.builder().provider(provider).status("INVALID_SIGNATURE").build();
             }
+            // vnp_TxnRef = orderId_timestamp (vd. 87907458-849d-46e2-96a6-3ef9f4a2dd0c_1765026748703)
+            String txnRef = payload.get("vnp_TxnRef");
+            String orderId = txnRef != null && txnRef.contains("_") ? txnRef.substring(0, txnRef.lastIndexOf("_")) : txnRef;
+            String transactionNo = payload.get("vnp_TransactionNo");
+            transactionId = transactionNo != null && !transactionNo.isEmpty() && !"0".equals(transactionNo) ? transactionNo : txnRef;
+            providerStatus = payload.getOrDefault("vnp_ResponseCode", "");
+            event.orderId(orderId);
+        } else if ("MOMO".equals(provider)) {
+            if (!moMoService.verifyCallback(payload)) {
+                log.warn("Rejected MoMo callback with invalid signature (orderId={})", payload.get("orderId"));
+                return PaymentResponse.builder().provider(provider).status("INVALID_SIGNATURE").build();
+            }
+            // orderId là mã đơn lúc tạo thanh toán; giao dịch lỗi có thể không có transId thì dùng requestId của lần trả
+            String transId = payload.get("transId");
+            boolean hasTransId = transId != null && !transId.isEmpty() && !"0".equals(transId);
+            transactionId = hasTransId ? transId : payload.get("requestId");
+            providerStatus = payload.getOrDefault("resultCode", "");
+            event.orderId(payload.get("orderId")).providerTransactionId(hasTransId ? transId : null);
+        } else {
+            log.warn("Rejected webhook from unsupported provider {}", provider);
+            return PaymentResponse.builder().provider(provider).status("INVALID").build();
         }
-
-        if (providerTx != null) {
-            p.setProviderTransactionId(providerTx);
-        }
-        p.setUpdatedAt(Instant.now().toEpochMilli());
-        paymentRepo.save(p);
-
-        System.out.println("[PaymentService] ✅ Payment status updated to: " + p.getStatus());
-
-        // Update order status and paymentStatus in OrderTable based on payment result
-        if ("PAID".equals(p.getStatus())) {
-            System.out.println("[PaymentService] Updating order " + p.getOrderId() + " paymentStatus to PAID");
-            updateOrderPaymentStatus(p.getOrderId(), "PAID");
-        } else if ("CANCELLED".equals(p.getStatus()) || "FAILED".equals(p.getStatus())) {
-            System.out.println("[PaymentService] Updating order " + p.getOrderId() + " status to CANCELLED");
-            updateOrderStatus(p.getOrderId(), "CANCELLED");
+        if (transactionId == null || transactionId.isEmpty()) {
+            log.warn("Rejected {} webhook without a transaction reference", provider);
+            return PaymentResponse.builder().provider(provider).status("INVALID").build();
         }
 
-        return PaymentResponse.builder()
-                .paymentId(p.getPaymentId())
-                .orderId(p.getOrderId())
-                .amount(p.getAmount())
-                .currency(p.getCurrency())
-                .method(p.getMethod())
-                .provider(p.getProvider())
-                .status(p.getStatus())
+        WebhookEvent built = event
+                .transactionId(transactionId)
+                .providerStatus(providerStatus)
+                .paymentStatus(mapProviderStatus(providerStatus))
                 .build();
+        return accept(built);
     }
 
     @Override
@@ -296,53 +255,60 @@ public class PaymentServiceImpl implements PaymentService {
             return PaymentResponse.builder().status("INVALID_SIGNATURE").build();
         }
 
+        String paymentStatus;
         if ("payment_intent.succeeded".equals(event.getType())) {
-            PaymentIntent intent = (PaymentIntent) event.getDataObjectDeserializer().getObject().orElse(null);
-            if (intent != null) {
-                String paymentId = intent.getMetadata().get("paymentId");
-                Optional<PaymentTable> opt = paymentRepo.findByPaymentId(paymentId);
-                if (opt.isPresent()) {
-                    PaymentTable p = opt.get();
-                    p.setStatus("PAID");
-                    p.setProviderTransactionId(intent.getId());
-                    p.setUpdatedAt(Instant.now().toEpochMilli());
-                    paymentRepo.save(p);
-                    return PaymentResponse.builder()
-                            .paymentId(p.getPaymentId())
-                            .orderId(p.getOrderId())
-                            .amount(p.getAmount())
-                            .currency(p.getCurrency())
-                            .method(p.getMethod())
-                            .provider(p.getProvider())
-                            .status(p.getStatus())
-                            .build();
-                }
-            }
+            paymentStatus = "PAID";
         } else if ("payment_intent.payment_failed".equals(event.getType())) {
-            PaymentIntent intent = (PaymentIntent) event.getDataObjectDeserializer().getObject().orElse(null);
-            if (intent != null) {
-                String paymentId = intent.getMetadata().get("paymentId");
-                Optional<PaymentTable> opt = paymentRepo.findByPaymentId(paymentId);
-                if (opt.isPresent()) {
-                    PaymentTable p = opt.get();
-                    p.setStatus("FAILED");
-                    p.setProviderTransactionId(intent.getId());
-                    p.setUpdatedAt(Instant.now().toEpochMilli());
-                    paymentRepo.save(p);
-                    return PaymentResponse.builder()
-                            .paymentId(p.getPaymentId())
-                            .orderId(p.getOrderId())
-                            .amount(p.getAmount())
-                            .currency(p.getCurrency())
-                            .method(p.getMethod())
-                            .provider(p.getProvider())
-                            .status(p.getStatus())
-                            .build();
-                }
-            }
+            paymentStatus = "FAILED";
+        } else {
+            return PaymentResponse.builder().status("IGNORED").build();
+        }
+        PaymentIntent intent = (PaymentIntent) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (intent == null) {
+            return PaymentResponse.builder().status("IGNORED").build();
         }
 
-        return PaymentResponse.builder().status("IGNORED").build();
+        return accept(WebhookEvent.builder()
+                .provider("STRIPE")
+                .transactionId(intent.getId())
+                .providerTransactionId(intent.getId())
+                .paymentId(intent.getMetadata().get("paymentId"))
+                .orderId(intent.getMetadata().get("orderId"))
+                .providerStatus(event.getType())
+                .paymentStatus(paymentStatus)
+                .payload(Map.of("eventId", event.getId()))
+                .build());
+    }
+
+    private PaymentResponse accept(WebhookEvent event) {
+        boolean accepted = webhookQueue.submit(event);
+        return PaymentResponse.builder()
+                .paymentId(event.getPaymentId())
+                .orderId(event.getOrderId())
+                .provider(event.getProvider())
+                .status(accepted ? "ACCEPTED" : "DUPLICATE")
+                .build();
+    }
+
+    // Mã trạng thái của provider -> trạng thái thanh toán nội bộ
+    private static String mapProviderStatus(String providerStatus) {
+        if (providerStatus == null) {
+            return "FAILED";
+        }
+        // Thành công
+        if (providerStatus.equalsIgnoreCase("SUCCESS")
+                || providerStatus.equalsIgnoreCase("PAID")
+                || providerStatus.equals("00")
+                || providerStatus.equals("0")) {
+            return "PAID";
+        }
+        // Huỷ (VNPay: 24 = khách huỷ, 99 = lỗi khác; MoMo: 1006 = khách huỷ)
+        if (providerStatus.equals("24")
+                || providerStatus.equals("1006")
+                || providerStatus.equals("99")) {
+            return "CANCELLED";
+        }
+        return "FAILED";
     }
 
     // Utility HMAC helpers
@@ -422,75 +388,6 @@ public class PaymentServiceImpl implements PaymentService {
                 .build();
     }
 
-    /**
-     * Helper method to update order paymentStatus when payment succeeds
-     */
-    private void updateOrderPaymentStatus(String orderId, String paymentStatus) {
-        if (orderId == null || orderId.isEmpty()) {
-            return;
-        }
-
-        try {
-            // Search for order by orderId attribute (regardless of PK structure)
-            Optional<OrderTable> orderMetaOpt = orderRepo.findByOrderId(orderId);
-
-            if (orderMetaOpt.isPresent()) {
-                OrderTable orderMeta = orderMetaOpt.get();
-
-                // Update paymentStatus and orderStatus
-                orderMeta.setPaymentStatus(paymentStatus);
-                // If payment is PAID, change order status from PENDING_PAYMENT to PENDING (ready for processing)
-                if ("PAID".equals(paymentStatus) && "PENDING_PAYMENT".equals(orderMeta.getOrderStatus())) {
-                    orderMeta.setOrderStatus("PENDING");
-                }
-                orderMeta.setUpdatedAt(Instant.now().toEpochMilli());
-                orderRepo.save(orderMeta);
-
-                System.out.println("[PaymentService] ✅ Updated order " + orderId + " paymentStatus to " + paymentStatus + ", orderStatus to " + orderMeta.getOrderStatus());
-            } else {
-                System.err.println("[PaymentService] ❌ Order not found with orderId: " + orderId);
-            }
-        } catch (Exception e) {
-            System.err.println("[PaymentService] ❌ Error updating order payment status: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Helper method to update order status when payment fails/cancels
-     */
-    private void updateOrderStatus(String orderId, String newStatus) {
-        if (orderId == null || orderId.isEmpty()) {
-            return;
-        }
-
-        try {
-            // Search for order by orderId attribute (regardless of PK structure)
-            Optional<OrderTable> orderMetaOpt = orderRepo.findByOrderId(orderId);
-
-            if (orderMetaOpt.isPresent()) {
-                OrderTable orderMeta = orderMetaOpt.get();
-
-                // Update both orderStatus and paymentStatus
-                orderMeta.setOrderStatus(newStatus);
-
-                // Map order status to payment status
-                String paymentStatus = newStatus.equals("CANCELLED") ? "FAILED" : newStatus;
-                orderMeta.setPaymentStatus(paymentStatus);
-
-                orderMeta.setUpdatedAt(Instant.now().toEpochMilli());
-                orderRepo.save(orderMeta);
-
-                System.out.println("[PaymentService] ✅ Updated order " + orderId + " - orderStatus: " + newStatus + ", paymentStatus: " + paymentStatus);
-            } else {
-                System.err.println("[PaymentService] ❌ Order not found with orderId: " + orderId);
-            }
-        } catch (Exception e) {
-            System.err.println("[PaymentService] ❌ Error updating order status: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
     @Override
     public PaymentResponse processCOD(String orderId, Double amount, String currency) {
         InitiatePaymentRequest req = new InitiatePaymentRequest();
@@ -0,0 +1,80 @@
+package com.leafshop.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.exception.InvalidCursorException;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mã hoá LastEvaluatedKey của DynamoDB thành cursor dạng chuỗi (Base64 URL-safe) cho client
+ * và ngược lại. Chỉ hỗ trợ thuộc tính khoá kiểu S và N.
+ */
+public class PageCursor {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Map<String, String>>> CURSOR_TYPE = new TypeReference<>() {
+    };
+
+    private PageCursor() {
+    }
+
+    public static String encode(Map<String, AttributeValue> key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        Map<String, Map<String, String>> json = new LinkedHashMap<>();
+        key.forEach((name, value) -> {
+            if (value.s() != null) {
+                json.put(name, Map.of("S", value.s()));
+            } else if (value.n() != null) {
+                json.put(name, Map.of("N", value.n()));
+            } else {
+                throw new IllegalStateException("Unsupported key attribute type for " + name);
+            }
+        });
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(json));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to encode page cursor", e);
+        }
+    }
+
+    public static Map<String, AttributeValue> decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        Map<String, Map<String, String>> json;
+        try {
+            json = MAPPER.readValue(Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII)), CURSOR_TYPE);
+        } catch (Exception e) {
+            throw new InvalidCursorException();
+        }
+        Map<String, AttributeValue> key = new LinkedHashMap<>();
+        json.forEach((name, value) -> {
+            if (value.get("S") != null) {
+                key.put(name, AttributeValue.builder().s(value.get("S")).build());
+            } else if (value.get("N") != null) {
+                key.put(name, AttributeValue.builder().n(value.get("N")).build());
+            } else {
+                throw new InvalidCursorException();
+            }
+        });
+        return key;
+    }
+
+    // Giới hạn kích thước trang trong [1, MAX_LIMIT], mặc định DEFAULT_LIMIT
+    public static int limit(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(requested, MAX_LIMIT);
+    }
+}
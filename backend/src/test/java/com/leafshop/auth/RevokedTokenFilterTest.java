@@ -0,0 +1,121 @@
+package com.leafshop.auth;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheInvalidationBus;
+import com.leafshop.model.dynamodb.RevokedToken;
+import com.leafshop.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RevokedTokenFilterTest {
+
+    // Bảng token đã thu hồi phía sau repository mock; scan chụp kết quả rồi chờ releaseScan để giả lập scan chậm
+    private final Map<String, Long> tokens = Collections.synchronizedMap(new HashMap<>());
+    private volatile CountDownLatch scanStarted = new CountDownLatch(0);
+    private volatile CountDownLatch releaseScan = new CountDownLatch(0);
+    private final RevokedTokenRepository repository = Mockito.mock(RevokedTokenRepository.class);
+    private final CacheInvalidationBus bus = Mockito.mock(CacheInvalidationBus.class);
+    private final RevokedTokenFilter filter = new RevokedTokenFilter(repository, bus, 1_000, 0.01);
+
+    public RevokedTokenFilterTest() {
+        doAnswer(invocation -> tokens.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(repository).save(anyString(), any());
+        when(repository.findByTokenValue(anyString())).thenAnswer(invocation -> {
+            String value = invocation.getArgument(0);
+            return tokens.containsKey(value) ? Optional.of(token(value, tokens.get(value))) : Optional.empty();
+        });
+        when(repository.findAllUnexpired(anyLong())).thenAnswer(invocation -> {
+            long now = invocation.getArgument(0);
+            // Chụp kết quả trước khi chờ: thu hồi đến trong lúc "scan" không có trong kết quả
+            List<RevokedToken> result = new ArrayList<>();
+            tokens.forEach((value, expiresAt) -> {
+                if (expiresAt == null || expiresAt > now) {
+                    result.add(token(value, expiresAt));
+                }
+            });
+            scanStarted.countDown();
+            releaseScan.await(5, TimeUnit.SECONDS);
+            return result;
+        });
+    }
+
+    private static RevokedToken token(String value, Long expiresAt) {
+        return RevokedToken.builder().pk(RevokedTokenRepository.PK_PREFIX + value).expiresAt(expiresAt).build();
+    }
+
+    @Test
+    public void isRevoked_skipsTableLookupForTokensNotInFilter() {
+        tokens.put("revoked", null);
+        filter.rebuild();
+
+        Assertions.assertFalse(filter.isRevoked("fresh"));
+        verify(repository, never()).findByTokenValue(anyString());
+    }
+
+    @Test
+    public void revoke_isVisibleImmediatelyAndBroadcast() {
+        filter.rebuild();
+
+        filter.revoke("t1", null);
+
+        Assertions.assertTrue(filter.isRevoked("t1"));
+        verify(bus).publish(RevokedTokenFilter.CHANNEL_NAME, "t1");
+    }
+
+    @Test
+    public void rebuild_keepsRevocationArrivingDuringScan() throws Exception {
+        filter.rebuild();
+        scanStarted = new CountDownLatch(1);
+        releaseScan = new CountDownLatch(1);
+        Thread rebuild = new Thread(filter::rebuild);
+        rebuild.start();
+        Assertions.assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+
+        filter.revoke("during-scan", null);
+        releaseScan.countDown();
+        rebuild.join(5_000);
+
+        Assertions.assertTrue(filter.isRevoked("during-scan"));
+        // Lần dựng lại sau: token đã có trong bảng nên vẫn bị chặn khi rời khỏi danh sách gần đây
+        filter.rebuild();
+        filter.rebuild();
+        Assertions.assertTrue(filter.isRevoked("during-scan"));
+    }
+
+    @Test
+    public void rebuild_dropsExpiredTokens() {
+        tokens.put("expired", System.currentTimeMillis() - 1_000);
+        filter.rebuild();
+
+        Assertions.assertFalse(filter.isRevoked("expired"));
+    }
+
+    @Test
+    public void remoteRevocation_isAppliedLocally() {
+        filter.rebuild();
+
+        filter.onRemoteRevocation(new CacheInvalidatedEvent(RevokedTokenFilter.CHANNEL_NAME, "remote"));
+        filter.onRemoteRevocation(new CacheInvalidatedEvent("products", "other"));
+
+        Assertions.assertTrue(filter.isRevoked("remote"));
+        Assertions.assertFalse(filter.isRevoked("other"));
+    }
+}
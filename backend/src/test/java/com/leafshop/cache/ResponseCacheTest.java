@@ -0,0 +1,63 @@
+package com.leafshop.cache;
+
+import com.leafshop.testsupport.InMemoryRedis;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public class ResponseCacheTest {
+
+    private static final String SCOPE = "products:abc";
+
+    // Ngưỡng thấp: câu khác từ khoá vẫn đủ giống theo cosine, chỉ phép so từ khoá chặn được
+    private static ResponseCache cache() {
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test",
+                Map.of("response-cache.chat.similarity-threshold", "0.5")));
+        return new ResponseCache(new InMemoryRedis().template(), env);
+    }
+
+    @Test
+    public void get_matchesSameQuestionWithDifferentFillerWordsAndPunctuation() {
+        ResponseCache cache = cache();
+        cache.put(ResponseCache.Namespace.CHAT, SCOPE, "Shop có áo khoác đỏ size M không?", "Có ạ");
+
+        Assertions.assertEquals(Optional.of("Có ạ"),
+                cache.get(ResponseCache.Namespace.CHAT, SCOPE, "shop ơi, có áo khoác đỏ size M không"));
+    }
+
+    @Test
+    public void get_doesNotMatchNearDuplicateDifferingInKeyTerm() {
+        ResponseCache cache = cache();
+        cache.put(ResponseCache.Namespace.CHAT, SCOPE, "Shop có áo khoác đỏ size M không?", "Có ạ");
+
+        Assertions.assertEquals(Optional.empty(),
+                cache.get(ResponseCache.Namespace.CHAT, SCOPE, "Shop có áo khoác đen size M không?"));
+        Assertions.assertEquals(Optional.empty(),
+                cache.get(ResponseCache.Namespace.CHAT, SCOPE, "Shop có áo khoác đỏ size L không?"));
+        Assertions.assertEquals(Optional.empty(),
+                cache.get(ResponseCache.Namespace.CHAT, SCOPE, "Shop có áo khoác đỏ size M giá dưới 500k không?"));
+    }
+
+    @Test
+    public void get_doesNotMatchAcrossScopes() {
+        ResponseCache cache = cache();
+        cache.put(ResponseCache.Namespace.CHAT, SCOPE, "Shop có áo khoác đỏ không?", "Có ạ");
+
+        Assertions.assertEquals(Optional.empty(),
+                cache.get(ResponseCache.Namespace.CHAT, "products:def", "Shop có áo khoác đỏ không?"));
+    }
+
+    @Test
+    public void keyTerms_keepDiacriticsAndDropFillerWords() {
+        Assertions.assertEquals(Set.of("áo", "khoác", "đỏ"),
+                ResponseCache.keyTerms(ResponseCache.Namespace.CHAT, "Shop ơi, có áo khoác đỏ không?"));
+        Assertions.assertNotEquals(ResponseCache.keyTerms(ResponseCache.Namespace.CHAT, "áo đỏ"),
+                ResponseCache.keyTerms(ResponseCache.Namespace.CHAT, "áo đó"));
+    }
+}
@@ -0,0 +1,152 @@
+package com.leafshop.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class TwoLevelCacheTest {
+
+    private static final String CACHE = "products";
+
+    /**
+     * L2 Redis giả: ConcurrentMapCache đếm số lần đọc; down = true thì mọi thao tác ném lỗi kết nối.
+     */
+    private static final class FakeRedisCache extends ConcurrentMapCache {
+        final AtomicInteger reads = new AtomicInteger();
+        volatile boolean down;
+
+        FakeRedisCache() {
+            super(CACHE);
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            check();
+            reads.incrementAndGet();
+            return super.get(key);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            check();
+            super.put(key, value);
+        }
+
+        @Override
+        public void evict(Object key) {
+            check();
+            super.evict(key);
+        }
+
+        private void check() {
+            if (down) {
+                throw new RedisConnectionFailureException("Redis is down");
+            }
+        }
+    }
+
+    private final FakeRedisCache redis = new FakeRedisCache();
+    // Kênh pub/sub giả: convertAndSend giao thông điệp cho mọi bus đã đăng ký (kể cả bus gửi)
+    private final List<CacheInvalidationBus> subscribers = new ArrayList<>();
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> pubSub = Mockito.mock(RedisTemplate.class);
+    private final List<Object> events = new ArrayList<>();
+
+    public TwoLevelCacheTest() {
+        when(pubSub.convertAndSend(anyString(), any())).thenAnswer(invocation -> {
+            DefaultMessage message = new DefaultMessage(invocation.<String>getArgument(0).getBytes(StandardCharsets.UTF_8),
+                    invocation.getArgument(1).toString().getBytes(StandardCharsets.UTF_8));
+            subscribers.forEach(bus -> bus.onMessage(message, null));
+            return (long) subscribers.size();
+        });
+    }
+
+    private TwoLevelCache node(RedisAvailability availability) {
+        CacheInvalidationBus bus = new CacheInvalidationBus(pubSub, events::add);
+        subscribers.add(bus);
+        TwoLevelCache cache = new TwoLevelCache(CACHE, redis, new LocalTtlCache(100, 1_000, 60_000), availability, bus);
+        bus.onRemoteInvalidation((cacheName, key) -> cache.evictLocal(key));
+        return cache;
+    }
+
+    @Test
+    public void get_servesFromL1AfterFirstL2Hit() {
+        TwoLevelCache cache = node(new RedisAvailability());
+        redis.put("p1", "Áo khoác");
+
+        Assertions.assertEquals("Áo khoác", cache.get("p1").get());
+        Assertions.assertEquals("Áo khoác", cache.get("p1").get());
+
+        Assertions.assertEquals(1, redis.reads.get());
+        Assertions.assertEquals(1, cache.stats().getL2Hits());
+    }
+
+    @Test
+    public void get_fallsBackToL1WhileRedisIsDown() {
+        TwoLevelCache cache = node(new RedisAvailability());
+        cache.put("p1", "Áo khoác");
+        redis.down = true;
+
+        Assertions.assertEquals("Áo khoác", cache.get("p1").get());
+        Assertions.assertNull(cache.get("p2"));
+        // Sau lỗi đầu tiên Redis bị bỏ qua, lần đọc tiếp theo không gọi Redis nữa
+        Assertions.assertNull(cache.get("p3"));
+        Assertions.assertEquals(1, cache.stats().getL2Errors());
+        Assertions.assertEquals("v", cache.get("p4", () -> "v"));
+    }
+
+    @Test
+    public void evict_invalidatesL1OnOtherNodesOnly() {
+        TwoLevelCache first = node(new RedisAvailability());
+        TwoLevelCache second = node(new RedisAvailability());
+        first.put("p1", "v1");
+        Assertions.assertEquals("v1", second.get("p1").get());
+
+        first.evict("p1");
+
+        Assertions.assertNull(second.get("p1"));
+        Assertions.assertEquals(0, first.stats().getRemoteInvalidations());
+        Assertions.assertEquals(1, second.stats().getRemoteInvalidations());
+        Assertions.assertEquals(List.of(new CacheInvalidatedEvent(CACHE, "p1")), events);
+    }
+
+    @Test
+    public void clear_broadcastsWholeCacheInvalidation() {
+        TwoLevelCache first = node(new RedisAvailability());
+        TwoLevelCache second = node(new RedisAvailability());
+        second.put("p1", "v1");
+        second.put("p2", "v2");
+        redis.clear();
+
+        first.clear();
+
+        Assertions.assertNull(second.get("p1"));
+        Assertions.assertNull(second.get("p2"));
+        Assertions.assertEquals(List.of(new CacheInvalidatedEvent(CACHE, null)), events);
+    }
+
+    @Test
+    public void localCache_evictsByWeight() {
+        LocalTtlCache local = new LocalTtlCache(10, 5, 60_000);
+        local.put("big", List.of(1, 2, 3, 4));
+        local.put("small", "x");
+        local.put("other", "y");
+
+        Assertions.assertNull(local.get("big"));
+        Assertions.assertEquals("x", local.get("small"));
+        Assertions.assertEquals("y", local.get("other"));
+    }
+}
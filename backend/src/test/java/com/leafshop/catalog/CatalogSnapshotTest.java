@@ -0,0 +1,121 @@
+package com.leafshop.catalog;
+
+import com.leafshop.dto.customer.FacetCount;
+import com.leafshop.model.dynamodb.ProductTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class CatalogSnapshotTest {
+
+    private static ProductTable variant(String id, String size, List<String> colors) {
+        return ProductTable.builder()
+                .pk("PRODUCT#" + id)
+                .sk("VARIANT#" + size)
+                .size(size)
+                .colors(colors)
+                .build();
+    }
+
+    private static CatalogProduct product(String id, String categoryId, double price, boolean active,
+                                          ProductTable... variants) {
+        ProductTable meta = ProductTable.builder()
+                .pk("PRODUCT#" + id)
+                .sk("META")
+                .name("Sản phẩm " + id)
+                .categoryId(categoryId)
+                .price(price)
+                .isActive(active)
+                .createdAt(Long.parseLong(id))
+                .build();
+        List<ProductTable> items = new ArrayList<>();
+        items.add(meta);
+        items.addAll(List.of(variants));
+        return CatalogProduct.fromItems(meta.getPk(), items);
+    }
+
+    private static CatalogSnapshot snapshot() {
+        return CatalogSnapshot.of(List.of(
+                product("1", "AO", 150_000, true,
+                        variant("1", "M", List.of("Đen")), variant("1", "L", List.of("Trắng"))),
+                product("2", "AO", 250_000, true,
+                        variant("2", "M", List.of("Trắng"))),
+                product("3", "QUAN", 450_000, true,
+                        variant("3", "L", List.of("Đen"))),
+                product("4", "AO", 120_000, false,
+                        variant("4", "M", List.of("Đen")))));
+    }
+
+    private static List<String> pks(CatalogSearchResult result) {
+        return result.getProducts().stream().map(CatalogProduct::getPk).collect(Collectors.toList());
+    }
+
+    private static long count(CatalogSearchResult result, String facet, String value) {
+        return result.getFacets().get(facet).stream()
+                .filter(c -> c.getValue().equals(value))
+                .mapToLong(FacetCount::getCount)
+                .findFirst()
+                .orElse(0);
+    }
+
+    @Test
+    public void search_sizeAndColorMustMatchSameVariant() {
+        CatalogSearchResult result = snapshot().search(
+                CatalogQuery.builder().size("m").color("đen").build(), null);
+
+        // Sản phẩm 1 có M/Đen; sản phẩm 3 chỉ có L/Đen, sản phẩm 4 không active
+        Assertions.assertEquals(List.of("PRODUCT#1"), pks(result));
+    }
+
+    @Test
+    public void search_filtersByCategoryAndPriceRange() {
+        CatalogSearchResult result = snapshot().search(
+                CatalogQuery.builder().categoryId("AO").minPrice(200_000.0).maxPrice(300_000.0).build(), null);
+
+        Assertions.assertEquals(List.of("PRODUCT#2"), pks(result));
+    }
+
+    @Test
+    public void search_inactiveProductsOnlyWhenRequested() {
+        CatalogSnapshot snapshot = snapshot();
+
+        Assertions.assertEquals(3, snapshot.search(CatalogQuery.builder().build(), null).getProducts().size());
+        Assertions.assertEquals(4, snapshot.search(CatalogQuery.builder().activeOnly(false).build(), null)
+                .getProducts().size());
+    }
+
+    @Test
+    public void facets_countEachFacetWithoutItsOwnFilter() {
+        CatalogSearchResult result = snapshot().search(
+                CatalogQuery.builder().categoryId("AO").size("M").includeFacets(true).build(), null);
+
+        Assertions.assertEquals(List.of("PRODUCT#1", "PRODUCT#2"), pks(result).stream().sorted().collect(Collectors.toList()));
+        // Facet category bỏ qua bộ lọc category nhưng vẫn giữ size=M
+        Assertions.assertEquals(2, count(result, CatalogSnapshot.FACET_CATEGORY, "AO"));
+        Assertions.assertEquals(0, count(result, CatalogSnapshot.FACET_CATEGORY, "QUAN"));
+        // Facet size bỏ qua bộ lọc size: L có ở sản phẩm 1
+        Assertions.assertEquals(2, count(result, CatalogSnapshot.FACET_SIZE, "M"));
+        Assertions.assertEquals(1, count(result, CatalogSnapshot.FACET_SIZE, "L"));
+        // Facet color khi đang chọn size M chỉ tính cặp M/<màu>
+        Assertions.assertEquals(1, count(result, CatalogSnapshot.FACET_COLOR, "Đen"));
+        Assertions.assertEquals(1, count(result, CatalogSnapshot.FACET_COLOR, "Trắng"));
+        Assertions.assertEquals(1, count(result, CatalogSnapshot.FACET_PRICE, "100000-200000"));
+        Assertions.assertEquals(1, count(result, CatalogSnapshot.FACET_PRICE, "200000-500000"));
+    }
+
+    @Test
+    public void with_replacesProductAndWithoutRemovesIt() {
+        CatalogSnapshot snapshot = snapshot()
+                .with(product("2", "QUAN", 250_000, true, variant("2", "S", List.of("Xanh"))))
+                .without("PRODUCT#3");
+
+        Assertions.assertEquals(3, snapshot.size());
+        Assertions.assertEquals("QUAN", snapshot.find("PRODUCT#2").get().getMeta().getCategoryId());
+        Assertions.assertFalse(snapshot.find("PRODUCT#3").isPresent());
+        Assertions.assertEquals(List.of("PRODUCT#2"), pks(snapshot.search(
+                CatalogQuery.builder().categoryId("QUAN").build(), null)));
+    }
+}
@@ -0,0 +1,198 @@
+package com.leafshop.catalog;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheNames;
+import com.leafshop.model.dynamodb.ProductTable;
+import com.leafshop.repository.ProductHydrator;
+import com.leafshop.repository.ProductTableRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProductCatalogIndexTest {
+
+    // ProductTable trong bộ nhớ phía sau repository/hydrator mock
+    private final Map<String, ProductTable> items = new ConcurrentHashMap<>();
+    private final ProductTableRepository repository = Mockito.mock(ProductTableRepository.class);
+    private final ProductHydrator hydrator = Mockito.mock(ProductHydrator.class);
+    private final List<String> hydrated = new ArrayList<>();
+    private volatile CountDownLatch scanStarted = new CountDownLatch(0);
+    private volatile CountDownLatch releaseScan = new CountDownLatch(0);
+    private volatile CountDownLatch releaseFind = new CountDownLatch(0);
+
+    public ProductCatalogIndexTest() {
+        when(repository.findByPk(anyString())).thenAnswer(invocation -> {
+            await(releaseFind);
+            ProductTable item = items.get(invocation.<String>getArgument(0));
+            return item != null ? List.of(item) : List.of();
+        });
+        when(repository.findAllProductItems()).thenAnswer(invocation -> {
+            List<ProductTable> scanned = new ArrayList<>(items.values());
+            scanStarted.countDown();
+            await(releaseScan);
+            return scanned;
+        });
+        when(hydrator.loadPartitions(any())).thenAnswer(invocation -> {
+            Collection<String> pks = invocation.getArgument(0);
+            hydrated.addAll(pks);
+            Map<String, List<ProductTable>> result = new LinkedHashMap<>();
+            for (String pk : pks) {
+                ProductTable item = items.get(pk);
+                if (item != null) {
+                    result.put(pk, List.of(item));
+                }
+            }
+            return result;
+        });
+    }
+
+    private static ProductTable meta(String id, String name, long updatedAt) {
+        return ProductTable.builder()
+                .pk("PRODUCT#" + id)
+                .sk("META")
+                .name(name)
+                .isActive(true)
+                .updatedAt(updatedAt)
+                .build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ProductCatalogIndex index(double missLoadsPerSecond) {
+        return new ProductCatalogIndex(repository, new ProductSearchIndex(), hydrator, 60_000, 10, missLoadsPerSecond);
+    }
+
+    @Test
+    public void findProduct_cachesUnknownIds() {
+        ProductCatalogIndex index = index(50);
+
+        Assertions.assertTrue(index.findProduct("PRODUCT#missing").isEmpty());
+        Assertions.assertTrue(index.findProduct("PRODUCT#missing").isEmpty());
+
+        verify(repository, times(1)).findByPk("PRODUCT#missing");
+    }
+
+    @Test
+    public void findProducts_capsDynamoDbLoadsForUnknownIds() {
+        items.put("PRODUCT#known", meta("known", "Áo thun", 1));
+        ProductCatalogIndex index = index(15);
+        index.snapshot();
+
+        List<String> pks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pks.add("PRODUCT#unknown-" + i);
+        }
+        pks.add("PRODUCT#known");
+
+        Assertions.assertEquals(1, index.findProducts(pks).size());
+        Assertions.assertEquals(10, hydrated.size());
+
+        // Lần hai: 10 pk đã biết là không tồn tại, token còn lại cho tối đa 5 pk mới
+        index.findProducts(pks);
+        Assertions.assertEquals(15, hydrated.size());
+    }
+
+    @Test
+    public void findProduct_concurrentMissesShareOneLoad() throws Exception {
+        ProductCatalogIndex index = index(50);
+        index.snapshot();
+        items.put("PRODUCT#1", meta("1", "Áo thun", 1));
+        releaseFind = new CountDownLatch(1);
+
+        List<Thread> readers = new ArrayList<>();
+        AtomicInteger found = new AtomicInteger();
+        for (int i = 0; i < 8; i++) {
+            Thread reader = new Thread(() -> index.findProduct("PRODUCT#1").ifPresent(p -> found.incrementAndGet()));
+            readers.add(reader);
+            reader.start();
+        }
+        Thread.sleep(200);
+        releaseFind.countDown();
+        for (Thread reader : readers) {
+            reader.join(5000);
+        }
+
+        Assertions.assertEquals(8, found.get());
+        verify(repository, times(1)).findByPk("PRODUCT#1");
+    }
+
+    @Test
+    public void reload_keepsProductRefreshedDuringScan() throws Exception {
+        items.put("PRODUCT#1", meta("1", "Áo thun", 1));
+        ProductCatalogIndex index = index(50);
+        index.snapshot();
+
+        scanStarted = new CountDownLatch(1);
+        releaseScan = new CountDownLatch(1);
+        Thread reload = new Thread(index::reload);
+        reload.start();
+        Assertions.assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+
+        // Sản phẩm sửa sau khi scan đã đọc bảng: refresh không phải chờ reload
+        items.put("PRODUCT#1", meta("1", "Sơ mi", 2));
+        Assertions.assertEquals("Sơ mi", index.refreshProduct("PRODUCT#1").get().getMeta().getName());
+
+        releaseScan.countDown();
+        reload.join(5000);
+
+        Assertions.assertEquals("Sơ mi", index.snapshot().find("PRODUCT#1").get().getMeta().getName());
+    }
+
+    @Test
+    public void refreshProduct_ignoresReadOlderThanIndexedVersion() {
+        items.put("PRODUCT#1", meta("1", "Sơ mi", 2));
+        ProductCatalogIndex index = index(50);
+        index.snapshot();
+
+        // Lần đọc trước lần sửa về sau cùng (ghi cục bộ + thông báo từ node khác)
+        items.put("PRODUCT#1", meta("1", "Áo thun", 1));
+
+        Assertions.assertEquals("Sơ mi", index.refreshProduct("PRODUCT#1").get().getMeta().getName());
+        Assertions.assertEquals("Sơ mi", index.snapshot().find("PRODUCT#1").get().getMeta().getName());
+    }
+
+    @Test
+    public void onProductInvalidated_doesNotBlockListenerThread() throws Exception {
+        items.put("PRODUCT#1", meta("1", "Áo thun", 1));
+        ProductCatalogIndex index = index(50);
+        index.snapshot();
+        items.put("PRODUCT#1", meta("1", "Sơ mi", 2));
+        releaseFind = new CountDownLatch(1);
+        try {
+            long start = System.currentTimeMillis();
+            index.onProductInvalidated(new CacheInvalidatedEvent(CacheNames.PRODUCTS, "PRODUCT#1"));
+            Assertions.assertTrue(System.currentTimeMillis() - start < 1_000);
+
+            releaseFind.countDown();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!"Sơ mi".equals(index.snapshot().find("PRODUCT#1").get().getMeta().getName())) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            index.shutdown();
+        }
+    }
+}
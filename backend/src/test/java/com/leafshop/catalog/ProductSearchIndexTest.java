@@ -0,0 +1,65 @@
+package com.leafshop.catalog;
+
+import com.leafshop.model.dynamodb.ProductTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class ProductSearchIndexTest {
+
+    private static CatalogProduct product(String id, String name, String description, List<String> tags) {
+        ProductTable meta = ProductTable.builder()
+                .pk("PRODUCT#" + id)
+                .sk("META")
+                .name(name)
+                .description(description)
+                .tags(tags)
+                .isActive(true)
+                .build();
+        return CatalogProduct.fromItems(meta.getPk(), List.of(meta));
+    }
+
+    @Test
+    public void fold_removesVietnameseDiacritics() {
+        Assertions.assertEquals("ao khoac do", VietnameseTextAnalyzer.fold("Áo Khoác Đỏ"));
+        Assertions.assertEquals(List.of("quan", "the", "thao", "quan_the", "the_thao"),
+                VietnameseTextAnalyzer.terms("Quần thể-thao"));
+    }
+
+    @Test
+    public void search_matchesWithoutDiacriticsAndRanksNameFirst() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.rebuild(List.of(
+                product("1", "Áo khoác gió", "Chống nước", List.of("outdoor")),
+                product("2", "Quần jean", "Phối cùng áo khoác", List.of()),
+                product("3", "Váy dạ hội", "Thanh lịch", List.of("elegant"))));
+
+        Map<String, Double> scores = index.search("ao khoac", true);
+
+        Assertions.assertEquals(List.of("PRODUCT#1", "PRODUCT#2"), ProductSearchIndex.rank(scores, 10));
+    }
+
+    @Test
+    public void search_expandsLastTokenAsPrefix() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.rebuild(List.of(product("1", "Áo khoác gió", null, null)));
+
+        Assertions.assertTrue(index.search("ao kho", true).containsKey("PRODUCT#1"));
+        Assertions.assertTrue(index.search("quan kho", true).isEmpty());
+    }
+
+    @Test
+    public void index_replacesAndRemovesDocuments() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.rebuild(List.of(product("1", "Áo thun", null, null)));
+
+        index.index(product("1", "Sơ mi", null, null));
+        Assertions.assertTrue(index.search("thun", false).isEmpty());
+        Assertions.assertTrue(index.search("so mi", true).containsKey("PRODUCT#1"));
+
+        index.remove("PRODUCT#1");
+        Assertions.assertEquals(0, index.size());
+    }
+}
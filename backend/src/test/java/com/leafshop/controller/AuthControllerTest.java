@@ -1,7 +1,9 @@
 package com.leafshop.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.auth.AuthenticatedPrincipalCache;
 import com.leafshop.auth.JwtUtil;
+import com.leafshop.auth.RevokedTokenFilter;
 import com.leafshop.dto.auth.AuthResponse;
 import com.leafshop.dto.auth.LoginRequest;
 import com.leafshop.dto.auth.RegisterRequest;
@@ -49,6 +51,12 @@ public class AuthControllerTest {
     @MockBean
     private JwtUtil jwtUtil;
 
+    @MockBean
+    private AuthenticatedPrincipalCache principalCache;
+
+    @MockBean
+    private RevokedTokenFilter revokedTokenFilter;
+
     @MockBean
     private UserTableRepository userTableRepository;
 
@@ -0,0 +1,146 @@
+package com.leafshop.orders;
+
+import com.leafshop.cache.CacheInvalidatedEvent;
+import com.leafshop.cache.CacheInvalidationBus;
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.repository.OrderTableRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class OrderReadModelTest {
+
+    // Bảng order trong bộ nhớ phía sau repository mock; scan META chụp kết quả rồi chờ releaseScan để giả lập scan chậm
+    private final Map<String, OrderTable> metas = Collections.synchronizedMap(new HashMap<>());
+    private final OrderTableRepository repository = Mockito.mock(OrderTableRepository.class);
+    private volatile CountDownLatch scanStarted = new CountDownLatch(0);
+    private volatile CountDownLatch releaseScan = new CountDownLatch(0);
+    private final OrderReadModel readModel = new OrderReadModel(repository, Mockito.mock(CacheInvalidationBus.class));
+
+    public OrderReadModelTest() {
+        when(repository.scanAllOrderItems()).thenAnswer(invocation -> new ArrayList<>());
+        when(repository.scanAllOrdersMeta()).thenAnswer(invocation -> {
+            List<OrderTable> result;
+            synchronized (metas) {
+                result = new ArrayList<>(metas.values());
+            }
+            scanStarted.countDown();
+            try {
+                releaseScan.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        });
+        when(repository.findByPk(anyString())).thenAnswer(invocation -> {
+            OrderTable meta = metas.get(invocation.<String>getArgument(0));
+            return meta != null ? List.of(meta) : List.of();
+        });
+    }
+
+    private static OrderTable meta(String orderId, String status, long updatedAt) {
+        return OrderTable.builder()
+                .pk("ORDER#" + orderId).sk("META").orderId(orderId)
+                .orderStatus(status).createdAt(1_000L).updatedAt(updatedAt)
+                .build();
+    }
+
+    // Ghi vào "bảng" rồi phát sự kiện, như OrderService sau khi lưu META
+    private void write(OrderTable meta) {
+        metas.put(meta.getPk(), meta);
+        readModel.onOrderChanged(OrderChangedEvent.metaChanged(meta));
+    }
+
+    private Thread reloadInBackground() throws InterruptedException {
+        scanStarted = new CountDownLatch(1);
+        releaseScan = new CountDownLatch(1);
+        Thread reload = new Thread(readModel::reload);
+        reload.start();
+        Assertions.assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+        return reload;
+    }
+
+    private Map<String, String> statuses() {
+        return readModel.all().stream().collect(Collectors.toMap(OrderListRow::getOrderId, OrderListRow::getOrderStatus));
+    }
+
+    @Test
+    public void reload_keepsChangesAppliedDuringScan() throws Exception {
+        write(meta("o1", "PENDING", 1));
+        readModel.all();
+        Thread reload = reloadInBackground();
+
+        // Sự kiện không phải chờ scan, và hiện ngay trên store đang dùng
+        Thread writer = new Thread(() -> {
+            write(meta("o1", "SHIPPED", 2));
+            write(meta("o2", "PENDING", 2));
+        });
+        writer.start();
+        writer.join(2_000);
+        Assertions.assertFalse(writer.isAlive());
+        Assertions.assertEquals(Map.of("o1", "SHIPPED", "o2", "PENDING"), statuses());
+
+        releaseScan.countDown();
+        reload.join(5_000);
+
+        // Scan chỉ thấy o1 PENDING nhưng các thay đổi trong lúc scan được phát lại lên store mới
+        Assertions.assertEquals(Map.of("o1", "SHIPPED", "o2", "PENDING"), statuses());
+    }
+
+    @Test
+    public void reload_replaysRemoteInvalidationDuringScan() throws Exception {
+        write(meta("o1", "PENDING", 1));
+        readModel.all();
+        Thread reload = reloadInBackground();
+
+        // Node khác xoá o1 sau khi scan đã chụp nó
+        metas.remove("ORDER#o1");
+        readModel.onOrderInvalidated(new CacheInvalidatedEvent(OrderReadModel.INVALIDATION_CHANNEL, "ORDER#o1"));
+        releaseScan.countDown();
+        reload.join(5_000);
+
+        Assertions.assertEquals(Map.of(), statuses());
+    }
+
+    @Test
+    public void reload_doesNotLetOlderReplayOverwriteNewerScan() throws Exception {
+        readModel.all();
+        metas.put("ORDER#o1", meta("o1", "DELIVERED", 3));
+        Thread reload = reloadInBackground();
+
+        // Sự kiện trễ (updatedAt = 1) đến trong lúc scan đã đọc bản mới hơn
+        readModel.onOrderChanged(OrderChangedEvent.metaChanged(meta("o1", "PENDING", 1)));
+        releaseScan.countDown();
+        reload.join(5_000);
+
+        Assertions.assertEquals(Map.of("o1", "DELIVERED"), statuses());
+    }
+
+    @Test
+    public void firstLoad_keepsChangesArrivingDuringLazyLoad() throws Exception {
+        metas.put("ORDER#o1", meta("o1", "PENDING", 1));
+        scanStarted = new CountDownLatch(1);
+        releaseScan = new CountDownLatch(1);
+        Thread reader = new Thread(readModel::all);
+        reader.start();
+        Assertions.assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+
+        write(meta("o2", "PENDING", 2));
+        releaseScan.countDown();
+        reader.join(5_000);
+
+        Assertions.assertEquals(Map.of("o1", "PENDING", "o2", "PENDING"), statuses());
+    }
+}
@@ -0,0 +1,177 @@
+package com.leafshop.repository;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.testsupport.InMemoryRedis;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class CartDocumentStoreTest {
+
+    private static final String PK = "CART#u1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final InMemoryRedis redis = new InMemoryRedis();
+    // Cart document trong OrderTable phía sau repository mock, giữ điều kiện version của saveCartIfNewer
+    private final Map<String, OrderTable> carts = new ConcurrentHashMap<>();
+    private final OrderTableRepository repository = Mockito.mock(OrderTableRepository.class);
+    // Hai node dùng chung Redis và DynamoDB; thử lại Redis ngay ở lần gọi kế tiếp để test không phải chờ
+    private final CartDocumentStore store = new CartDocumentStore(repository, redis.template(), 60, 100, 0);
+    private final CartDocumentStore otherNode = new CartDocumentStore(repository, redis.template(), 60, 100, 0);
+
+    public CartDocumentStoreTest() {
+        when(repository.findCartByPk(anyString())).thenAnswer(invocation ->
+                Optional.ofNullable(carts.get(invocation.<String>getArgument(0))));
+        when(repository.saveCartIfNewer(any())).thenAnswer(invocation -> {
+            OrderTable cart = invocation.getArgument(0);
+            OrderTable stored = carts.get(cart.getPk());
+            if (stored != null && stored.getVersion() != null && stored.getVersion() >= cart.getVersion()) {
+                return false;
+            }
+            carts.put(cart.getPk(), cart);
+            return true;
+        });
+        redis.onScript(CartDocumentStore.COMPARE_AND_SET, (keys, args) -> {
+            OrderTable current = parse(redis.values.get(keys.get(0)));
+            if (current != null && version(current) != Long.parseLong(args[1].toString())) {
+                return 0L;
+            }
+            redis.values.put(keys.get(0), args[0]);
+            return 1L;
+        });
+        redis.onScript(CartDocumentStore.SET_IF_NEWER, (keys, args) -> {
+            OrderTable current = parse(redis.values.get(keys.get(0)));
+            if (current != null && version(current) >= Long.parseLong(args[1].toString())) {
+                return 0L;
+            }
+            redis.values.put(keys.get(0), args[0]);
+            return 1L;
+        });
+    }
+
+    private OrderTable parse(Object json) {
+        try {
+            return json != null ? objectMapper.readValue(json.toString(), OrderTable.class) : null;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long version(OrderTable cart) {
+        return cart.getVersion() != null ? cart.getVersion() : 0;
+    }
+
+    private static List<Map<String, String>> lines(String... productIds) {
+        List<Map<String, String>> lines = new ArrayList<>();
+        for (String productId : productIds) {
+            lines.add(new HashMap<>(Map.of(CartDocumentStore.LINE_ITEM_ID, productId,
+                    CartDocumentStore.LINE_PRODUCT_ID, productId,
+                    CartDocumentStore.LINE_QUANTITY, "1")));
+        }
+        return lines;
+    }
+
+    // Đọc giỏ hiện tại (hoặc giỏ mới) rồi lưu với các dòng cho trước
+    private static OrderTable edit(CartDocumentStore node, String... productIds) {
+        OrderTable cart = node.find(PK).orElseGet(() -> OrderTable.builder().pk(PK).sk("META").build());
+        cart.setCartItems(lines(productIds));
+        node.save(cart);
+        return cart;
+    }
+
+    private OrderTable redisCopy() {
+        return parse(redis.values.get("cart:" + PK));
+    }
+
+    @Test
+    public void find_keepsEditsMadeWhileRedisWasDown() {
+        edit(store, "A");
+        store.flushPending();
+
+        redis.down = true;
+        edit(store, "A", "B");
+        redis.down = false;
+
+        // Redis vẫn giữ bản cũ (chỉ có A) nhưng không được thắng bản sửa trong lúc Redis lỗi
+        Assertions.assertEquals(1, redisCopy().getCartItems().size());
+        Assertions.assertEquals(2, store.find(PK).get().getCartItems().size());
+
+        store.flushPending();
+
+        Assertions.assertEquals(2, redisCopy().getCartItems().size());
+        Assertions.assertEquals(2, carts.get(PK).getCartItems().size());
+    }
+
+    @Test
+    public void find_prefersUnflushedCartOverOlderRedisCopy() throws Exception {
+        edit(store, "A", "B");
+        OrderTable older = OrderTable.builder().pk(PK).sk("META").cartItems(lines("A")).build();
+        redis.values.put("cart:" + PK, objectMapper.writeValueAsString(older));
+
+        Assertions.assertEquals(2, store.find(PK).get().getCartItems().size());
+    }
+
+    @Test
+    public void save_rejectsWriteBasedOnCartReadBeforeCheckout() {
+        edit(store, "A");
+        OrderTable readBeforeCheckout = store.find(PK).get();
+
+        // Node khác checkout: bỏ các dòng đã đặt, giỏ rỗng là tombstone với version mới
+        edit(otherNode);
+
+        readBeforeCheckout.getCartItems().addAll(lines("B"));
+        Assertions.assertThrows(OptimisticLockingFailureException.class, () -> store.save(readBeforeCheckout));
+        Assertions.assertTrue(store.find(PK).get().getCartItems().isEmpty());
+    }
+
+    @Test
+    public void modify_retriesWhenAnotherNodeWritesBetweenReadAndSave() {
+        edit(store, "A");
+        AtomicInteger attempts = new AtomicInteger();
+
+        store.modify(PK, () -> {
+            OrderTable cart = store.find(PK).get();
+            if (attempts.incrementAndGet() == 1) {
+                // Request đồng thời trên node khác thêm B sau khi request này đã đọc giỏ
+                OrderTable concurrent = otherNode.find(PK).get();
+                concurrent.getCartItems().addAll(lines("B"));
+                otherNode.save(concurrent);
+            }
+            cart.getCartItems().addAll(lines("C"));
+            store.save(cart);
+            return null;
+        });
+
+        Assertions.assertEquals(2, attempts.get());
+        Assertions.assertEquals(3, store.find(PK).get().getCartItems().size());
+        Assertions.assertEquals(3, otherNode.find(PK).get().getCartItems().size());
+    }
+
+    @Test
+    public void flushPending_doesNotOverwriteNewerStoredVersion() {
+        edit(store, "A");
+        edit(otherNode, "A", "B");
+
+        otherNode.flushPending();
+        store.flushPending();
+
+        Assertions.assertEquals(2, carts.get(PK).getCartItems().size());
+        Assertions.assertEquals(2L, carts.get(PK).getVersion().longValue());
+    }
+}
@@ -0,0 +1,235 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.model.dynamodb.WarehouseTable;
+import com.leafshop.util.DynamoDBKeyUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class InventoryReservationEngineTest {
+
+    private static final String WAREHOUSE_1 = "WAREHOUSE#1";
+    private static final String WAREHOUSE_2 = "WAREHOUSE#2";
+
+    /**
+     * DynamoDbClient trong bộ nhớ: chỉ hỗ trợ BatchGetItem và TransactWriteItems theo đúng các biểu thức
+     * engine sử dụng. Transaction được áp dụng nguyên tử (synchronized) như DynamoDB.
+     */
+    private static final class InMemoryDynamoDbClient implements DynamoDbClient {
+        private final Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+
+        synchronized void put(String table, Map<String, AttributeValue> item) {
+            items.put(key(table, item), new HashMap<>(item));
+        }
+
+        synchronized Map<String, AttributeValue> get(String table, String pk, String sk) {
+            return items.get(table + "|" + pk + "|" + sk);
+        }
+
+        synchronized long count(String table) {
+            return items.keySet().stream().filter(k -> k.startsWith(table + "|")).count();
+        }
+
+        @Override
+        public synchronized BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+            Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+            request.requestItems().forEach((table, keys) -> {
+                List<Map<String, AttributeValue>> found = new ArrayList<>();
+                for (Map<String, AttributeValue> key : keys.keys()) {
+                    Map<String, AttributeValue> item = items.get(key(table, key));
+                    if (item != null) {
+                        found.add(new HashMap<>(item));
+                    }
+                }
+                responses.put(table, found);
+            });
+            return BatchGetItemResponse.builder()
+                    .responses(responses)
+                    .unprocessedKeys(Map.<String, KeysAndAttributes>of())
+                    .build();
+        }
+
+        @Override
+        public synchronized TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+            List<CancellationReason> reasons = new ArrayList<>();
+            boolean failed = false;
+            for (TransactWriteItem write : request.transactItems()) {
+                boolean ok = write.put() != null
+                        ? write.put().conditionExpression() == null
+                                || !items.containsKey(key(write.put().tableName(), write.put().item()))
+                        : available(write.update()) >= number(write.update().expressionAttributeValues().get(":qty"));
+                reasons.add(CancellationReason.builder().code(ok ? "None" : "ConditionalCheckFailed").build());
+                failed |= !ok;
+            }
+            if (failed) {
+                throw TransactionCanceledException.builder().message("Transaction cancelled").cancellationReasons(reasons).build();
+            }
+            for (TransactWriteItem write : request.transactItems()) {
+                if (write.put() != null) {
+                    put(write.put().tableName(), write.put().item());
+                } else {
+                    Update update = write.update();
+                    Map<String, AttributeValue> item = items.get(key(update.tableName(), update.key()));
+                    long qty = number(update.expressionAttributeValues().get(":qty"));
+                    item.put("availableQuantity", numberValue(number(item.get("availableQuantity")) - qty));
+                    item.put("reservedQuantity", numberValue(number(item.get("reservedQuantity")) + qty));
+                }
+            }
+            return TransactWriteItemsResponse.builder().build();
+        }
+
+        private long available(Update update) {
+            Map<String, AttributeValue> item = items.get(key(update.tableName(), update.key()));
+            return item != null ? number(item.get("availableQuantity")) : Long.MIN_VALUE;
+        }
+
+        private static String key(String table, Map<String, AttributeValue> item) {
+            return table + "|" + item.get("PK").s() + "|" + item.get("SK").s();
+        }
+
+        private static long number(AttributeValue value) {
+            return value != null && value.n() != null ? Long.parseLong(value.n()) : 0;
+        }
+
+        private static AttributeValue numberValue(long value) {
+            return AttributeValue.builder().n(Long.toString(value)).build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+
+    private InventoryReservationEngine engine(int maxAttempts) {
+        DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient(client).build();
+        return new InventoryReservationEngine(client, enhancedClient, Mockito.mock(DashboardMetricsRepository.class),
+                new InventoryAvailabilityCache(enhancedClient, 30_000),
+                new UserOrderHistoryCache(new ConcurrentMapCacheManager()), maxAttempts, 0);
+    }
+
+    private void stock(String warehousePk, String productId, int available) {
+        WarehouseTable row = WarehouseTable.builder()
+                .pk(warehousePk)
+                .sk(DynamoDBKeyUtil.warehouseProductSk(productId))
+                .productId(productId)
+                .quantity(available)
+                .availableQuantity(available)
+                .reservedQuantity(0)
+                .build();
+        client.put("WarehouseTable", TableSchema.fromBean(WarehouseTable.class).itemToMap(row, true));
+    }
+
+    private long available(String warehousePk, String productId) {
+        return Long.parseLong(client.get("WarehouseTable", warehousePk,
+                DynamoDBKeyUtil.warehouseProductSk(productId)).get("availableQuantity").n());
+    }
+
+    private static OrderTable meta(String orderId) {
+        return OrderTable.builder()
+                .pk("ORDER#" + orderId)
+                .sk("META")
+                .orderId(orderId)
+                .createdAt(System.currentTimeMillis())
+                .build();
+    }
+
+    private static OrderTable item(String orderId, String productId, int quantity) {
+        return OrderTable.builder()
+                .pk("ORDER#" + orderId)
+                .sk("ITEM#" + productId)
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(quantity)
+                .build();
+    }
+
+    @Test
+    public void placeOrder_concurrentCheckoutsNeverOversell() throws Exception {
+        stock(WAREHOUSE_1, "P1", 10);
+        InventoryReservationEngine engine = engine(100);
+        int buyers = 25;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < buyers; i++) {
+            String orderId = "O" + i;
+            results.add(pool.submit(() -> {
+                start.await();
+                try {
+                    engine.placeOrder(meta(orderId), List.of(item(orderId, "P1", 1)), List.of(WAREHOUSE_1));
+                    return true;
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int placed = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(10, TimeUnit.SECONDS)) {
+                placed++;
+            }
+        }
+        pool.shutdown();
+
+        Assertions.assertEquals(10, placed);
+        Assertions.assertEquals(0, available(WAREHOUSE_1, "P1"));
+        // Mỗi đơn thành công có META + 1 ITEM#, đơn thất bại không để lại gì
+        Assertions.assertEquals(20, client.count("OrderTable"));
+    }
+
+    @Test
+    public void placeOrder_splitsQuantityAcrossWarehousesInOrder() {
+        stock(WAREHOUSE_1, "P1", 2);
+        stock(WAREHOUSE_2, "P1", 5);
+
+        engine(3).placeOrder(meta("O1"), List.of(item("O1", "P1", 3)), List.of(WAREHOUSE_1, WAREHOUSE_2));
+
+        Assertions.assertEquals(0, available(WAREHOUSE_1, "P1"));
+        Assertions.assertEquals(4, available(WAREHOUSE_2, "P1"));
+    }
+
+    @Test
+    public void placeOrder_insufficientStockLeavesNoPartialOrder() {
+        stock(WAREHOUSE_1, "P1", 1);
+        stock(WAREHOUSE_1, "P2", 5);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> engine(3).placeOrder(meta("O1"),
+                List.of(item("O1", "P2", 2), item("O1", "P1", 2)), List.of(WAREHOUSE_1)));
+
+        Assertions.assertEquals(5, available(WAREHOUSE_1, "P2"));
+        Assertions.assertEquals(0, client.count("OrderTable"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.leafshop.repository;
+
+import com.leafshop.model.dynamodb.OrderTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.core.pagination.sync.SdkIterable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class OrderTableRepositoryTest {
+
+    // Các dòng có userId của u1 trong OrderTable: 5 đơn và giỏ hàng đang dùng (tạo sau đơn o4)
+    private final List<OrderTable> rows = new ArrayList<>();
+    private final DynamoDbEnhancedClient enhancedClient = Mockito.mock(DynamoDbEnhancedClient.class);
+    @SuppressWarnings("unchecked")
+    private final DynamoDbTable<OrderTable> table = Mockito.mock(DynamoDbTable.class);
+    @SuppressWarnings("unchecked")
+    private final DynamoDbIndex<OrderTable> index = Mockito.mock(DynamoDbIndex.class);
+    private final OrderTableRepository repository = new OrderTableRepository(enhancedClient, new IndexQueryExecutor(),
+            Mockito.mock(ParallelScanExecutor.class), Mockito.mock(DashboardMetricsRepository.class),
+            Mockito.mock(UserOrderHistoryCache.class));
+
+    @SuppressWarnings("unchecked")
+    public OrderTableRepositoryTest() {
+        for (int i = 1; i <= 5; i++) {
+            rows.add(OrderTable.builder().pk("ORDER#o" + i).sk("META").orderId("o" + i).userId("u1")
+                    .createdAt(1000L * i).build());
+        }
+        rows.add(OrderTable.builder().pk("CART#u1").sk("META").userId("u1").createdAt(4500L).build());
+
+        when(enhancedClient.table(anyString(), any())).thenReturn((DynamoDbTable) table);
+        when(table.tableName()).thenReturn("OrderTable");
+        when(table.index(OrderTableRepository.USER_ORDERS_INDEX)).thenReturn(index);
+        // GSI: mới nhất trước, Limit tính trên số dòng đọc, filter bỏ dòng sau khi đã đếm
+        when(index.query(any(QueryEnhancedRequest.class))).thenAnswer(invocation -> {
+            QueryEnhancedRequest request = invocation.getArgument(0);
+            List<OrderTable> indexed = newestFirst();
+            int from = 0;
+            if (request.exclusiveStartKey() != null) {
+                String pk = request.exclusiveStartKey().get("PK").s();
+                from = indexed.stream().map(OrderTable::getPk).collect(Collectors.toList()).indexOf(pk) + 1;
+            }
+            int to = Math.min(indexed.size(), from + request.limit());
+            List<OrderTable> items = indexed.subList(from, to).stream()
+                    .filter(row -> request.filterExpression() == null || !row.getPk().startsWith("CART#"))
+                    .collect(Collectors.toList());
+            Map<String, AttributeValue> lastEvaluatedKey =
+                    to < indexed.size() ? OrderTableRepository.userOrdersCursorKey(indexed.get(to - 1)) : null;
+            return pages(Page.create(items, lastEvaluatedKey));
+        });
+        when(table.scan(any(ScanEnhancedRequest.class))).thenAnswer(invocation -> pages(Page.create(rows)));
+    }
+
+    private List<OrderTable> newestFirst() {
+        return rows.stream()
+                .sorted(Comparator.comparing(OrderTable::getCreatedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static PageIterable<OrderTable> pages(Page<OrderTable> page) {
+        SdkIterable<Page<OrderTable>> iterable = () -> List.of(page).iterator();
+        return PageIterable.create(iterable);
+    }
+
+    private static List<String> orderIds(ScanPage<OrderTable> page) {
+        return page.getItems().stream().map(OrderTable::getOrderId).collect(Collectors.toList());
+    }
+
+    private void assertPagesSkipCart() {
+        ScanPage<OrderTable> first = repository.queryUserOrdersPage("u1", 2, null);
+        Assertions.assertEquals(List.of("o5", "o4"), orderIds(first));
+        Assertions.assertTrue(first.hasMore());
+
+        ScanPage<OrderTable> second = repository.queryUserOrdersPage("u1", 2, first.getLastEvaluatedKey());
+        Assertions.assertEquals(List.of("o3", "o2"), orderIds(second));
+        Assertions.assertTrue(second.hasMore());
+
+        ScanPage<OrderTable> last = repository.queryUserOrdersPage("u1", 2, second.getLastEvaluatedKey());
+        Assertions.assertEquals(List.of("o1"), orderIds(last));
+        Assertions.assertFalse(last.hasMore());
+    }
+
+    @Test
+    public void queryUserOrdersPage_fillsPageWithOrdersWhenCartIsInIndex() {
+        assertPagesSkipCart();
+    }
+
+    @Test
+    public void queryUserOrdersPage_scanFallbackSkipsCart() {
+        when(index.query(any(QueryEnhancedRequest.class)))
+                .thenThrow(ResourceNotFoundException.builder().message("Requested resource not found").build());
+
+        assertPagesSkipCart();
+    }
+}
@@ -0,0 +1,195 @@
+package com.leafshop.service;
+
+import com.leafshop.exception.IdempotencyConflictException;
+import com.leafshop.model.dynamodb.IdempotencyRecord;
+import com.leafshop.repository.IdempotencyRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+public class IdempotencyServiceTest {
+
+    private static final String SCOPE = "checkout";
+
+    /**
+     * IdempotencyRepository (mock) trên bảng trong bộ nhớ, giữ đúng điều kiện ghi của repository thật.
+     */
+    private static IdempotencyRepository repositoryOver(Map<String, IdempotencyRecord> records) {
+        IdempotencyRepository repository = Mockito.mock(IdempotencyRepository.class);
+        when(repository.find(anyString())).thenAnswer(invocation ->
+                Optional.ofNullable(records.get(invocation.<String>getArgument(0))));
+        when(repository.tryLock(any(), anyLong())).thenAnswer(invocation -> {
+            IdempotencyRecord record = invocation.getArgument(0);
+            long now = invocation.getArgument(1);
+            synchronized (records) {
+                IdempotencyRecord existing = records.get(record.getPk());
+                boolean free = existing == null
+                        || (IdempotencyRepository.STATUS_IN_PROGRESS.equals(existing.getStatus()) && existing.getLockedUntil() < now)
+                        || existing.getExpiresAt() < now / 1000;
+                if (free) {
+                    records.put(record.getPk(), copy(record));
+                }
+                return free;
+            }
+        });
+        when(repository.complete(any(), anyString())).thenAnswer(invocation -> {
+            IdempotencyRecord record = invocation.getArgument(0);
+            synchronized (records) {
+                IdempotencyRecord existing = records.get(record.getPk());
+                if (existing == null || !invocation.<String>getArgument(1).equals(existing.getLockToken())) {
+                    return false;
+                }
+                records.put(record.getPk(), copy(record));
+                return true;
+            }
+        });
+        doAnswer(invocation -> {
+            String pk = invocation.getArgument(0);
+            synchronized (records) {
+                IdempotencyRecord existing = records.get(pk);
+                if (existing != null && invocation.<String>getArgument(1).equals(existing.getLockToken())) {
+                    records.remove(pk);
+                }
+            }
+            return null;
+        }).when(repository).release(anyString(), anyString());
+        return repository;
+    }
+
+    private static IdempotencyRecord copy(IdempotencyRecord record) {
+        return IdempotencyRecord.builder()
+                .pk(record.getPk()).sk(record.getSk()).scope(record.getScope())
+                .requestHash(record.getRequestHash()).status(record.getStatus())
+                .lockToken(record.getLockToken()).lockedUntil(record.getLockedUntil())
+                .responseBody(record.getResponseBody()).createdAt(record.getCreatedAt())
+                .updatedAt(record.getUpdatedAt()).expiresAt(record.getExpiresAt())
+                .build();
+    }
+
+    public static class CheckoutRequest {
+        public String cartId;
+        public int quantity;
+
+        public CheckoutRequest() {
+        }
+
+        CheckoutRequest(String cartId, int quantity) {
+            this.cartId = cartId;
+            this.quantity = quantity;
+        }
+    }
+
+    public static class Receipt {
+        public String orderId;
+
+        public Receipt() {
+        }
+
+        Receipt(String orderId) {
+            this.orderId = orderId;
+        }
+    }
+
+    private final Map<String, IdempotencyRecord> records = new ConcurrentHashMap<>();
+    private final IdempotencyService service = new IdempotencyService(repositoryOver(records), 24, 30_000);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private Receipt checkout(String key, CheckoutRequest request) {
+        return service.execute(SCOPE, key, request, Receipt.class,
+                () -> new Receipt("order-" + runs.incrementAndGet()));
+    }
+
+    @Test
+    public void execute_replaysStoredResponseWithoutRunningActionAgain() {
+        Receipt first = checkout("k1", new CheckoutRequest("c1", 2));
+        Receipt second = checkout("k1", new CheckoutRequest("c1", 2));
+
+        Assertions.assertEquals("order-1", first.orderId);
+        Assertions.assertEquals("order-1", second.orderId);
+        Assertions.assertEquals(1, runs.get());
+        Assertions.assertEquals(IdempotencyRepository.STATUS_COMPLETED,
+                records.get(IdempotencyRepository.pk(SCOPE, "k1")).getStatus());
+    }
+
+    @Test
+    public void execute_rejectsSameKeyWithDifferentRequest() {
+        checkout("k1", new CheckoutRequest("c1", 2));
+
+        Assertions.assertThrows(IdempotencyConflictException.class,
+                () -> checkout("k1", new CheckoutRequest("c1", 3)));
+        Assertions.assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void execute_releasesKeyWhenActionFails() {
+        Assertions.assertThrows(IllegalStateException.class, () -> service.execute(SCOPE, "k1",
+                new CheckoutRequest("c1", 2), Receipt.class, () -> {
+                    throw new IllegalStateException("Out of stock");
+                }));
+        Assertions.assertNull(records.get(IdempotencyRepository.pk(SCOPE, "k1")));
+
+        // Gửi lại cùng key sau khi lỗi thì được xử lý lại
+        Assertions.assertEquals("order-1", checkout("k1", new CheckoutRequest("c1", 2)).orderId);
+    }
+
+    @Test
+    public void execute_releasesKeyWhenResultIsNotReplayable() {
+        Receipt failed = service.execute(SCOPE, "k1", new CheckoutRequest("c1", 2), Receipt.class,
+                () -> new Receipt(null), receipt -> receipt.orderId != null);
+
+        Assertions.assertNull(failed.orderId);
+        Assertions.assertNull(records.get(IdempotencyRepository.pk(SCOPE, "k1")));
+        Assertions.assertEquals("order-1", checkout("k1", new CheckoutRequest("c1", 2)).orderId);
+    }
+
+    @Test
+    public void execute_rejectsWhileAnotherRequestHoldsTheLock() {
+        long now = System.currentTimeMillis();
+        records.put(IdempotencyRepository.pk(SCOPE, "k1"), inProgress("k1", new CheckoutRequest("c1", 2), now + 30_000));
+
+        Assertions.assertThrows(IdempotencyConflictException.class,
+                () -> checkout("k1", new CheckoutRequest("c1", 2)));
+        Assertions.assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void execute_takesOverExpiredLock() {
+        long now = System.currentTimeMillis();
+        records.put(IdempotencyRepository.pk(SCOPE, "k1"), inProgress("k1", new CheckoutRequest("c1", 2), now - 1));
+
+        Assertions.assertEquals("order-1", checkout("k1", new CheckoutRequest("c1", 2)).orderId);
+    }
+
+    @Test
+    public void execute_withoutKeyAlwaysRunsAction() {
+        checkout(null, new CheckoutRequest("c1", 2));
+        checkout(" ", new CheckoutRequest("c1", 2));
+
+        Assertions.assertEquals(2, runs.get());
+        Assertions.assertTrue(records.isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> checkout("bad key!", new CheckoutRequest("c1", 2)));
+    }
+
+    // Khoá của một request khác cùng nội dung (hash lấy từ một lần chạy thật để khớp cách service băm)
+    private IdempotencyRecord inProgress(String key, CheckoutRequest request, long lockedUntil) {
+        Map<String, IdempotencyRecord> scratch = new ConcurrentHashMap<>();
+        new IdempotencyService(repositoryOver(scratch), 24, 30_000).execute(SCOPE, key, request, Receipt.class, () -> new Receipt("x"));
+        IdempotencyRecord record = scratch.get(IdempotencyRepository.pk(SCOPE, key));
+        record.setStatus(IdempotencyRepository.STATUS_IN_PROGRESS);
+        record.setResponseBody(null);
+        record.setLockToken("other");
+        record.setLockedUntil(lockedUntil);
+        return record;
+    }
+}
@@ -0,0 +1,314 @@
+package com.leafshop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leafshop.model.dynamodb.OrderTable;
+import com.leafshop.model.dynamodb.PaymentTable;
+import com.leafshop.model.dynamodb.WebhookEvent;
+import com.leafshop.repository.OrderTableRepository;
+import com.leafshop.repository.PaymentTableRepository;
+import com.leafshop.repository.WebhookEventRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+public class PaymentWebhookQueueTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // WebhookEventTable trong bộ nhớ phía sau repository mock, giữ đúng điều kiện ghi của repository thật
+    private final Map<String, WebhookEvent> events = new ConcurrentHashMap<>();
+    private final WebhookEventRepository repository = Mockito.mock(WebhookEventRepository.class);
+    // Processor mock: ghi lại thứ tự áp theo đơn, lỗi cho các lần đầu theo failuresLeft
+    private final PaymentWebhookProcessor processor = Mockito.mock(PaymentWebhookProcessor.class);
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, AtomicInteger> activePerOrder = new ConcurrentHashMap<>();
+    private final AtomicInteger overlaps = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile long delayMs;
+
+    public PaymentWebhookQueueTest() {
+        when(repository.find(anyString())).thenAnswer(invocation ->
+                Optional.ofNullable(events.get(invocation.<String>getArgument(0))).map(PaymentWebhookQueueTest::copy));
+        when(repository.insertIfAbsent(any())).thenAnswer(invocation -> {
+            WebhookEvent event = invocation.getArgument(0);
+            return events.putIfAbsent(event.getPk(), copy(event)) == null;
+        });
+        when(repository.claim(anyString(), anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            String pk = invocation.getArgument(0);
+            long now = invocation.getArgument(2);
+            synchronized (events) {
+                WebhookEvent current = events.get(pk);
+                if (current == null || current.getPending() == null) {
+                    return Optional.empty();
+                }
+                boolean claimable = (WebhookEventRepository.STATUS_RECEIVED.equals(current.getStatus())
+                        && (current.getNextAttemptAt() == null || current.getNextAttemptAt() <= now))
+                        || (WebhookEventRepository.STATUS_PROCESSING.equals(current.getStatus()) && current.getClaimedUntil() < now);
+                if (!claimable) {
+                    return Optional.empty();
+                }
+                WebhookEvent claimed = copy(current);
+                claimed.setStatus(WebhookEventRepository.STATUS_PROCESSING);
+                claimed.setClaimToken(invocation.getArgument(1));
+                claimed.setClaimedUntil(now + invocation.<Long>getArgument(3));
+                events.put(pk, copy(claimed));
+                return Optional.of(claimed);
+            }
+        });
+        when(repository.release(any(), anyString())).thenAnswer(invocation -> {
+            WebhookEvent event = invocation.getArgument(0);
+            synchronized (events) {
+                WebhookEvent current = events.get(event.getPk());
+                if (current == null || !invocation.<String>getArgument(1).equals(current.getClaimToken())) {
+                    return false;
+                }
+                events.put(event.getPk(), copy(event));
+                return true;
+            }
+        });
+        when(repository.findPending(anyInt())).thenAnswer(invocation -> events.values().stream()
+                .filter(event -> event.getPending() != null)
+                .sorted(Comparator.comparing(WebhookEvent::getReceivedAt))
+                .limit(invocation.<Integer>getArgument(0))
+                .map(PaymentWebhookQueueTest::copy)
+                .collect(Collectors.toList()));
+
+        doAnswer(invocation -> {
+            WebhookEvent event = invocation.getArgument(0);
+            AtomicInteger active = activePerOrder.computeIfAbsent(event.getOrderId(), k -> new AtomicInteger());
+            if (active.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+                if (failuresLeft.getAndUpdate(left -> left > 0 ? left - 1 : 0) > 0) {
+                    throw new IllegalStateException("Payment not found for webhook " + event.getPk());
+                }
+                applied.add(event.getOrderId() + ":" + event.getTransactionId());
+            } finally {
+                active.decrementAndGet();
+            }
+            return null;
+        }).when(processor).apply(any());
+    }
+
+    private static WebhookEvent copy(WebhookEvent event) {
+        return MAPPER.convertValue(event, WebhookEvent.class);
+    }
+
+    // Thử lại ngay (retry-delay 0) để sweep nhận lại sự kiện lỗi không phải chờ
+    private PaymentWebhookQueue queue(int workers, int maxAttempts) {
+        return queue(processor, workers, maxAttempts);
+    }
+
+    private PaymentWebhookQueue queue(PaymentWebhookProcessor processor, int workers, int maxAttempts) {
+        return new PaymentWebhookQueue(repository, processor, workers, 100, maxAttempts, 0, 60_000, 7);
+    }
+
+    private static WebhookEvent event(String orderId, String transactionId, String paymentStatus) {
+        return WebhookEvent.builder()
+                .provider("vnpay")
+                .orderId(orderId)
+                .transactionId(transactionId)
+                .paymentStatus(paymentStatus)
+                .build();
+    }
+
+    private WebhookEvent stored(String transactionId, String paymentStatus) {
+        return events.get(WebhookEventRepository.pk("vnpay", transactionId, paymentStatus));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for webhook worker");
+            Thread.sleep(10);
+        }
+    }
+
+    // Chờ worker ghi xong lần xử lý thứ attempts với trạng thái status
+    private void awaitAttempt(String transactionId, String paymentStatus, int attempts, String status)
+            throws InterruptedException {
+        await(() -> {
+            WebhookEvent event = stored(transactionId, paymentStatus);
+            return event != null && event.getAttempts() == attempts && status.equals(event.getStatus())
+                    && event.getClaimToken() == null;
+        });
+    }
+
+    @Test
+    public void submit_ignoresDuplicateCallbackForSameTransactionAndResult() throws Exception {
+        PaymentWebhookQueue queue = queue(2, 3);
+        try {
+            Assertions.assertTrue(queue.submit(event("o1", "t1", "PAID")));
+            // IPN và return URL của cùng giao dịch
+            Assertions.assertFalse(queue.submit(event("o1", "t1", "PAID")));
+            // Kết quả khác của cùng giao dịch là sự kiện riêng
+            Assertions.assertTrue(queue.submit(event("o1", "t1", "FAILED")));
+
+            awaitAttempt("t1", "PAID", 1, WebhookEventRepository.STATUS_PROCESSED);
+            awaitAttempt("t1", "FAILED", 1, WebhookEventRepository.STATUS_PROCESSED);
+            Assertions.assertEquals(2, applied.size());
+            Assertions.assertEquals(2, events.size());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void submit_processesEventsOfOneOrderSequentiallyInArrivalOrder() throws Exception {
+        PaymentWebhookQueue queue = queue(4, 3);
+        delayMs = 5;
+        try {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                queue.submit(event("o1", "a" + i, "PAID"));
+                queue.submit(event("o2", "b" + i, "PAID"));
+                expected.add("o1:a" + i);
+            }
+
+            await(() -> applied.size() == 20);
+            List<String> o1 = applied.stream().filter(applied -> applied.startsWith("o1:")).collect(Collectors.toList());
+            Assertions.assertEquals(expected, o1);
+            Assertions.assertEquals(0, overlaps.get());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void sweep_retriesFailedEventUntilItSucceeds() throws Exception {
+        PaymentWebhookQueue queue = queue(1, 3);
+        failuresLeft.set(1);
+        try {
+            queue.submit(event("o1", "t1", "PAID"));
+            awaitAttempt("t1", "PAID", 1, WebhookEventRepository.STATUS_RECEIVED);
+            WebhookEvent failed = stored("t1", "PAID");
+            Assertions.assertEquals(1, failed.getAttempts().intValue());
+            Assertions.assertNotNull(failed.getLastError());
+            Assertions.assertEquals(WebhookEventRepository.PENDING, failed.getPending());
+
+            queue.sweep();
+
+            awaitAttempt("t1", "PAID", 2, WebhookEventRepository.STATUS_PROCESSED);
+            WebhookEvent processed = stored("t1", "PAID");
+            Assertions.assertEquals(2, processed.getAttempts().intValue());
+            Assertions.assertNull(processed.getPending());
+            Assertions.assertNull(processed.getLastError());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void sweep_parksEventAfterMaxAttempts() throws Exception {
+        PaymentWebhookQueue queue = queue(1, 2);
+        failuresLeft.set(Integer.MAX_VALUE);
+        try {
+            queue.submit(event("o1", "t1", "PAID"));
+            awaitAttempt("t1", "PAID", 1, WebhookEventRepository.STATUS_RECEIVED);
+            queue.sweep();
+            awaitAttempt("t1", "PAID", 2, WebhookEventRepository.STATUS_FAILED);
+
+            WebhookEvent parked = stored("t1", "PAID");
+            Assertions.assertEquals(2, parked.getAttempts().intValue());
+            Assertions.assertNull(parked.getPending());
+
+            // Đã rời hàng đợi: sweep sau không xử lý lại
+            queue.sweep();
+            Thread.sleep(50);
+            Assertions.assertEquals(2, stored("t1", "PAID").getAttempts().intValue());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void sweep_reclaimsEventOnlyAfterPreviousClaimExpires() throws Exception {
+        PaymentWebhookQueue queue = queue(1, 3);
+        long now = System.currentTimeMillis();
+        try {
+            // Worker trên node khác đang giữ t1; worker của t2 đã chết, claim quá hạn
+            events.put(WebhookEventRepository.pk("vnpay", "t1", "PAID"),
+                    processing(event("o1", "t1", "PAID"), now + 60_000, now));
+            events.put(WebhookEventRepository.pk("vnpay", "t2", "PAID"),
+                    processing(event("o2", "t2", "PAID"), now - 1, now + 1));
+
+            queue.sweep();
+
+            awaitAttempt("t2", "PAID", 1, WebhookEventRepository.STATUS_PROCESSED);
+            Assertions.assertEquals(List.of("o2:t2"), applied);
+            Assertions.assertEquals(WebhookEventRepository.STATUS_PROCESSING, stored("t1", "PAID").getStatus());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void stripePaymentSucceedingAfterFailedAttemptLeavesOrderPaid() throws Exception {
+        PaymentTable payment = PaymentTable.builder().paymentId("p1").orderId("o1").status("PENDING").build();
+        OrderTable order = OrderTable.builder().pk("ORDER#o1").sk("META").orderId("o1")
+                .orderStatus("PENDING_PAYMENT").paymentStatus("PENDING").build();
+        PaymentTableRepository paymentRepo = Mockito.mock(PaymentTableRepository.class);
+        OrderTableRepository orderRepo = Mockito.mock(OrderTableRepository.class);
+        when(paymentRepo.findByPaymentId("p1")).thenReturn(Optional.of(payment));
+        when(orderRepo.findByOrderId("o1")).thenReturn(Optional.of(order));
+        PaymentWebhookQueue queue = queue(new PaymentWebhookProcessor(paymentRepo, orderRepo,
+                Mockito.mock(ApplicationEventPublisher.class)), 2, 3);
+        try {
+            // Thẻ bị từ chối rồi khách trả lại thành công trên cùng PaymentIntent
+            queue.submit(stripeEvent("pi_1", "FAILED"));
+            queue.submit(stripeEvent("pi_1", "PAID"));
+
+            await(() -> "PAID".equals(order.getPaymentStatus()));
+            Assertions.assertEquals("PENDING", order.getOrderStatus());
+            Assertions.assertEquals("PAID", payment.getStatus());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    private static WebhookEvent stripeEvent(String paymentIntentId, String paymentStatus) {
+        return WebhookEvent.builder()
+                .provider("STRIPE")
+                .paymentId("p1")
+                .orderId("o1")
+                .transactionId(paymentIntentId)
+                .providerTransactionId(paymentIntentId)
+                .paymentStatus(paymentStatus)
+                .build();
+    }
+
+    private static WebhookEvent processing(WebhookEvent event, long claimedUntil, long receivedAt) {
+        event.setPk(WebhookEventRepository.pk(event.getProvider(), event.getTransactionId(), event.getPaymentStatus()));
+        event.setSk(WebhookEventRepository.sk());
+        event.setStatus(WebhookEventRepository.STATUS_PROCESSING);
+        event.setPending(WebhookEventRepository.PENDING);
+        event.setAttempts(0);
+        event.setClaimToken("other-node");
+        event.setClaimedUntil(claimedUntil);
+        event.setReceivedAt(receivedAt);
+        return event;
+    }
+}
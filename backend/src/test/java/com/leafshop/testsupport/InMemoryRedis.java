@@ -0,0 +1,82 @@
+package com.leafshop.testsupport;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * RedisTemplate (mock Mockito) trên một Map: get/set/delete và script; down = true giả lập Redis mất kết nối.
+ * Script Lua không chạy được trong bộ nhớ, test đăng ký hàm Java tương đương bằng {@link #onScript}.
+ */
+public class InMemoryRedis {
+
+    public final Map<String, Object> values = new ConcurrentHashMap<>();
+    public volatile boolean down;
+
+    private final Map<RedisScript<?>, BiFunction<List<String>, Object[], Object>> scripts = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    public InMemoryRedis() {
+        ValueOperations<String, Object> ops = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(ops);
+        when(ops.get(any())).thenAnswer(invocation -> {
+            check();
+            return values.get(invocation.<String>getArgument(0));
+        });
+        doAnswer(invocation -> {
+            check();
+            values.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(ops).set(anyString(), any(), anyLong(), any(TimeUnit.class));
+        when(template.delete(anyString())).thenAnswer(invocation -> {
+            check();
+            return values.remove(invocation.<String>getArgument(0)) != null;
+        });
+        when(template.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            check();
+            Object[] arguments = invocation.getArguments();
+            BiFunction<List<String>, Object[], Object> script = scripts.get(invocation.<RedisScript<?>>getArgument(0));
+            if (script == null) {
+                throw new UnsupportedOperationException("No in-memory implementation for script");
+            }
+            synchronized (this) {
+                return script.apply(invocation.getArgument(1), Arrays.copyOfRange(arguments, 2, arguments.length));
+            }
+        });
+    }
+
+    public RedisTemplate<String, Object> template() {
+        return template;
+    }
+
+    /**
+     * Cách script chạy trên Redis: nhận KEYS và ARGV, trả về kết quả script (chạy tuần tự như Redis).
+     */
+    public void onScript(RedisScript<?> script, BiFunction<List<String>, Object[], Object> implementation) {
+        scripts.put(script, implementation);
+    }
+
+    private void check() {
+        if (down) {
+            throw new RedisConnectionFailureException("Redis is down");
+        }
+    }
+}
@@ -124,7 +124,7 @@ const InvoiceModal = ({ isOpen, onClose, order }) => {
 
       if (!response.ok) throw new Error('Không thể gửi email');
 
-      setMessage('Đã gửi hóa đơn qua email thành công!');
+      setMessage('Hóa đơn đang được gửi qua email, vui lòng kiểm tra hộp thư trong ít phút.');
     } catch (error) {
       console.error('Error sending email:', error);
       setMessage('Lỗi: ' + error.message);
@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { useNavigate } from 'react-router-dom';
 import { useCart } from '../context/CartContext';
 import { useAuth } from '../context/AuthContext';
@@ -61,6 +61,9 @@ function CheckoutPage() {
   // eslint-disable-next-line no-unused-vars
   const [userAddresses, setUserAddresses] = useState([]);
 
+  // Idempotency-Key của lần đặt hàng hiện tại: bấm lại / gửi lại không tạo đơn thứ hai
+  const checkoutKeyRef = useRef(null);
+
   // Modal states
   const [showPolicyModal, setShowPolicyModal] = useState(false);
   const [showShippingModal, setShowShippingModal] = useState(false);
@@ -196,11 +199,18 @@ function CheckoutPage() {
           couponCode: formData.couponCode || null
         };
 
+        if (!checkoutKeyRef.current) {
+          checkoutKeyRef.current = (window.crypto && window.crypto.randomUUID)
+            ? window.crypto.randomUUID()
+            : `${Date.now()}-${Math.random().toString(36).slice(2)}`;
+        }
+
         console.log('[CheckoutPage] sending checkout request', checkoutReq);
         const res = await fetch(`${API_BASE_URL}/api/cart/checkout`, {
           method: 'POST',
           headers: {
             'Content-Type': 'application/json',
+            'Idempotency-Key': checkoutKeyRef.current,
             ...(token ? { 'Authorization': `Bearer ${token}` } : {})
           },
           body: JSON.stringify(checkoutReq)
@@ -241,7 +251,11 @@ function CheckoutPage() {
             
             const payRes = await fetch(`${API_BASE_URL}/api/payments/initiate`, {
               method: 'POST',
-              headers: { 'Content-Type': 'application/json', ...(token ? { 'Authorization': `Bearer ${token}` } : {}) },
+              headers: {
+                'Content-Type': 'application/json',
+                'Idempotency-Key': `${checkoutKeyRef.current}-pay`,
+                ...(token ? { 'Authorization': `Bearer ${token}` } : {})
+              },
               body: JSON.stringify(payReq)
             });
             